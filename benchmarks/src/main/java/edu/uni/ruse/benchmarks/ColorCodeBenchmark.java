@@ -0,0 +1,60 @@
+package edu.uni.ruse.benchmarks;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uni.ruse.utilities.MessageColor;
+import edu.uni.ruse.utilities.MessagesManager;
+
+/**
+ * ColorCodeBenchmark class, measuring how the color code in front of each message is read, removed and written, for
+ * colors of the palette and for other colors.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColorCodeBenchmark {
+
+	@Param({ "palette", "rgb" })
+	public String color;
+	private String message;
+	private Color messageColor;
+
+	@Setup
+	public void setUp() {
+		message = "palette".equals(color) ? Frames.PALETTE_CHAT : Frames.RGB_CHAT;
+		messageColor = MessagesManager.getColorFromMessage(message);
+	}
+
+	@Benchmark
+	public Color getColorFromMessage() {
+		return MessagesManager.getColorFromMessage(message);
+	}
+
+	@Benchmark
+	public String removeColorCodeFromMessage() {
+		return MessagesManager.removeColorCodeFromMessage(message);
+	}
+
+	@Benchmark
+	public String encodeColor() {
+		return MessageColor.encode(messageColor);
+	}
+}
@@ -0,0 +1,65 @@
+package edu.uni.ruse.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uni.ruse.server.Server;
+import edu.uni.ruse.utilities.CodeMessages;
+
+/**
+ * CommandDispatchBenchmark class, measuring how the server reads a message from a connection and processes it: a chat
+ * message is recorded and broadcast, a whisper is sent to its receiver and a language change is applied. The users
+ * are connected through in-memory sockets, and a new server is used for each iteration, so the chat history does not
+ * grow from one iteration to the next.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandDispatchBenchmark {
+
+	@Param({ "chat", "whisper", "language" })
+	public String command;
+	private Server server;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		String message;
+		switch (command) {
+		case "chat":
+			message = Frames.CHAT_TEXT;
+			break;
+		case "whisper":
+			message = "alice: " + CodeMessages.WHISPER.getMessage() + " bob are you coming to the meeting?";
+			break;
+		default:
+			message = CodeMessages.CHANGE_LANG.getMessage() + "alice";
+		}
+		server = new Server();
+		server.getNamesToConnections().put("alice", new InMemorySocket(Frames.encode(message)));
+		server.getNamesToConnections().put("bob", new InMemorySocket());
+	}
+
+	@Benchmark
+	public void collectAndProcess() {
+		server.collectNewMessages();
+		server.processOldestMessage();
+		server.getUnprocessedServerMessages().clear();
+	}
+}
@@ -0,0 +1,63 @@
+package edu.uni.ruse.benchmarks;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EncodingBenchmark class, measuring how a frame of the protocol is encoded with writeUTF and decoded with readUTF, for
+ * Latin and for Cyrillic text, which takes two bytes per character.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodingBenchmark {
+
+	@Param({ "latin", "cyrillic" })
+	public String text;
+	private String message;
+	private byte[] frame;
+	private ByteArrayOutputStream bytes;
+	private DataOutputStream out;
+
+	@Setup
+	public void setUp() {
+		message = Frames.colored(Color.BLACK, "latin".equals(text) ? Frames.CHAT_TEXT : Frames.CYRILLIC_TEXT);
+		frame = Frames.encode(message);
+		bytes = new ByteArrayOutputStream(frame.length);
+		out = new DataOutputStream(bytes);
+	}
+
+	@Benchmark
+	public int encode() throws IOException {
+		bytes.reset();
+		out.writeUTF(message);
+		return bytes.size();
+	}
+
+	@Benchmark
+	public String decode() throws IOException {
+		return new DataInputStream(new ByteArrayInputStream(frame)).readUTF();
+	}
+}
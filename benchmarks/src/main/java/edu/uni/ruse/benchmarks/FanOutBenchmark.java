@@ -0,0 +1,59 @@
+package edu.uni.ruse.benchmarks;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uni.ruse.server.Server;
+import edu.uni.ruse.utilities.MessagesManager;
+
+/**
+ * FanOutBenchmark class, measuring how a broadcast message is written to every connected user, for different numbers
+ * of users connected through in-memory sockets. The message is written on the benchmark thread, the way the broadcast
+ * thread of the server writes it.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int recipients;
+	private Server server;
+	private MessagesManager messagesManager;
+	private String message;
+
+	@Setup
+	public void setUp() {
+		server = new Server();
+		for (int i = 0; i < recipients; i++) {
+			server.getNamesToConnections().put("user" + i, new InMemorySocket());
+		}
+		messagesManager = new MessagesManager(server);
+		message = MessagesManager.sequenceTag(123456) + "[12:30:45]" + Frames.CHAT_TEXT;
+	}
+
+	@Benchmark
+	public void broadcast() throws IOException {
+		for (Socket connection : server.getNamesToConnections().values()) {
+			messagesManager.sendMessageToClient(message, connection);
+		}
+	}
+}
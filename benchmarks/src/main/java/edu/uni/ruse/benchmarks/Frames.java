@@ -0,0 +1,49 @@
+package edu.uni.ruse.benchmarks;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import edu.uni.ruse.utilities.MessageColor;
+
+/**
+ * Frames class, holding typical messages of the chat protocol that the benchmarks work on.
+ *
+ * @author Alexander Andreev
+ */
+final class Frames {
+
+	static final String CHAT_TEXT = "alice: Hi everyone, is the build on the main branch green again after the last fix?";
+	static final String CYRILLIC_TEXT = "алиса: Здравейте, минава ли вече компилацията на главния клон след последната поправка?";
+	static final String PALETTE_CHAT = colored(Color.BLACK, "[12:30:45]" + CHAT_TEXT);
+	static final String RGB_CHAT = colored(new Color(0x336699), "[12:30:45]" + CHAT_TEXT);
+
+	private Frames() {
+	}
+
+	/**
+	 * Puts the color code in front of a message, the way the server sends it.
+	 */
+	static String colored(Color color, String message) {
+		return MessageColor.CODE_DELIMITER + MessageColor.encode(color) + MessageColor.CODE_DELIMITER + message;
+	}
+
+	/**
+	 * Encodes a message the way it is written to a connection.
+	 *
+	 * @param message
+	 *            to be encoded
+	 * @return the bytes of the frame
+	 */
+	static byte[] encode(String message) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			new DataOutputStream(bytes).writeUTF(message);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package edu.uni.ruse.benchmarks;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uni.ruse.gateway.Gateway;
+import edu.uni.ruse.utilities.CodeMessages;
+
+/**
+ * GatewayBenchmark class, measuring the round trip of a message to an echo server over the loopback interface, sent
+ * directly or passed through the gateway. The difference between the two is the latency that the gateway adds.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GatewayBenchmark {
+
+	private static final int GATEWAY_PORT = 7190;
+	@Param({ "direct", "gateway" })
+	public String path;
+	private ServerSocket echoServer;
+	private Gateway gateway;
+	private Socket socket;
+	private DataInputStream din;
+	private DataOutputStream dout;
+	private int sent;
+
+	@Setup
+	public void setUp() throws IOException {
+		echoServer = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Thread echoThread = new Thread(this::echo, "benchmark-echo");
+		echoThread.setDaemon(true);
+		echoThread.start();
+		int port = echoServer.getLocalPort();
+		if (path.equals("gateway")) {
+			gateway = new Gateway("127.0.0.1", GATEWAY_PORT);
+			gateway.addBackend("127.0.0.1", echoServer.getLocalPort());
+			gateway.start();
+			port = gateway.getPort();
+		}
+		socket = new Socket("127.0.0.1", port);
+		socket.setTcpNoDelay(true);
+		din = new DataInputStream(socket.getInputStream());
+		dout = new DataOutputStream(socket.getOutputStream());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		socket.close();
+		if (gateway != null) {
+			gateway.stop();
+		}
+		echoServer.close();
+	}
+
+	@Benchmark
+	public String roundTrip() throws IOException {
+		dout.writeUTF("message " + sent++);
+		return din.readUTF();
+	}
+
+	/**
+	 * Echoes the messages of every connection, and answers status requests like a chat server without users.
+	 */
+	private void echo() {
+		while (!echoServer.isClosed()) {
+			try {
+				Socket connection = echoServer.accept();
+				connection.setTcpNoDelay(true);
+				Thread connectionThread = new Thread(() -> echoConnection(connection), "benchmark-echo-connection");
+				connectionThread.setDaemon(true);
+				connectionThread.start();
+			} catch (IOException e) {
+				// echo server closed
+			}
+		}
+	}
+
+	private void echoConnection(Socket connection) {
+		try (Socket echoed = connection) {
+			DataInputStream in = new DataInputStream(echoed.getInputStream());
+			DataOutputStream out = new DataOutputStream(echoed.getOutputStream());
+			while (true) {
+				String message = in.readUTF();
+				if (message.equals(CodeMessages.STATUS_REQUEST.getMessage())) {
+					out.writeUTF(CodeMessages.STATUS.getMessage() + "0:0");
+					return;
+				}
+				out.writeUTF(message);
+			}
+		} catch (IOException e) {
+			// connection ended
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package edu.uni.ruse.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uni.ruse.server.history.HistoryLog;
+import edu.uni.ruse.server.history.HistoryRecord;
+
+/**
+ * HistoryAppendBenchmark class, measuring how many messages per millisecond are appended to the history log, the way
+ * the history writer thread appends them. Each iteration starts with an empty log, so the files of the log do not
+ * grow over the whole run.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HistoryAppendBenchmark {
+
+	private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+	private Path directory;
+	private HistoryLog log;
+	private long sequence;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("chatapp-history");
+		log = new HistoryLog(directory, SEGMENT_SIZE);
+		log.open();
+		sequence = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		log.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public void append() throws IOException {
+		sequence++;
+		log.append(new HistoryRecord(sequence, sequence, "client", HistoryRecord.DEFAULT_ROOM,
+				"Message number " + sequence));
+	}
+}
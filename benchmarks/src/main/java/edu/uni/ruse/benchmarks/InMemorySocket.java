@@ -0,0 +1,125 @@
+package edu.uni.ruse.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * InMemorySocket class, a socket that is never connected to the network. What is written to it is counted and dropped,
+ * and reading from it returns the same frame again and again, so the server can be benchmarked without the cost and
+ * the noise of the loopback interface.
+ *
+ * @author Alexander Andreev
+ */
+public class InMemorySocket extends Socket {
+
+	private final InputStream input;
+	private final CountingOutputStream output = new CountingOutputStream();
+
+	/**
+	 * Constructor of a socket that has nothing to read.
+	 */
+	public InMemorySocket() {
+		this(new byte[0]);
+	}
+
+	/**
+	 * Constructor of a socket that reads the same frame again and again.
+	 *
+	 * @param frame
+	 *            bytes of the frame, as written by writeUTF
+	 */
+	public InMemorySocket(byte[] frame) {
+		input = new RepeatingInputStream(frame);
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return input;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return output;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return false;
+	}
+
+	@Override
+	public synchronized void close() {
+	}
+
+	/**
+	 * Returns the number of bytes written to the socket.
+	 *
+	 * @return the number of bytes
+	 */
+	public long getWrittenBytes() {
+		return output.count;
+	}
+
+	/**
+	 * CountingOutputStream class, that counts the written bytes and drops them.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		private volatile long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	/**
+	 * RepeatingInputStream class, that returns the bytes of a frame again and again. Only the rest of the current
+	 * frame is available, so the reader sees one frame at a time.
+	 */
+	private static class RepeatingInputStream extends InputStream {
+		private final byte[] frame;
+		private int position;
+
+		RepeatingInputStream(byte[] frame) {
+			this.frame = frame;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (frame.length == 0) {
+				return -1;
+			}
+			int b = frame[position] & 0xFF;
+			position = (position + 1) % frame.length;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (frame.length == 0) {
+				return -1;
+			}
+			int count = Math.min(len, frame.length - position);
+			System.arraycopy(frame, position, b, off, count);
+			position = (position + count) % frame.length;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return frame.length - position;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package edu.uni.ruse.benchmarks;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.uni.ruse.client.ChatEventDispatcher;
+import edu.uni.ruse.client.ChatListener;
+import edu.uni.ruse.client.ReceivedMessage;
+import edu.uni.ruse.utilities.CodeMessages;
+import edu.uni.ruse.utilities.MessagesManager;
+
+/**
+ * MessageParsingBenchmark class, measuring how the client decodes a received frame into the events of its chat
+ * listener: the color code is read, the sequence tag and the protocol codes are recognized, and the event is passed on.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageParsingBenchmark {
+
+	@Param({ "chat", "system", "addUser", "scrollback" })
+	public String kind;
+	private String frame;
+	private ChatEventDispatcher dispatcher;
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		switch (kind) {
+		case "chat":
+			frame = Frames.colored(Color.BLACK, MessagesManager.sequenceTag(123456) + "[12:30:45]" + Frames.CHAT_TEXT);
+			break;
+		case "system":
+			frame = Frames.colored(Color.RED, "[12:30:45]Server: bob has left the chat.");
+			break;
+		case "addUser":
+			frame = Frames.colored(Color.BLACK, CodeMessages.ADDUSER.getMessage() + "bob");
+			break;
+		default:
+			StringBuilder lines = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				lines.append(i == 0 ? "" : "\n").append("[12:30:45]").append(Frames.CHAT_TEXT);
+			}
+			frame = Frames.colored(Color.BLACK,
+					MessagesManager.sequenceTag(100) + CodeMessages.SCROLLBACK.getMessage() + lines);
+		}
+		dispatcher = new ChatEventDispatcher(new ChatListener() {
+			@Override
+			public void onMessage(ReceivedMessage message) {
+				blackhole.consume(message);
+			}
+
+			@Override
+			public void onHistory(CodeMessages kind, String lines, long lastSequence) {
+				blackhole.consume(lines);
+			}
+
+			@Override
+			public void onUserJoined(String name) {
+				blackhole.consume(name);
+			}
+		});
+	}
+
+	@Benchmark
+	public void dispatch() {
+		dispatcher.accept(new ReceivedMessage(MessagesManager.removeColorCodeFromMessage(frame),
+				MessagesManager.getColorFromMessage(frame)));
+	}
+}
@@ -0,0 +1,57 @@
+package edu.uni.ruse.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uni.ruse.server.Server;
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.utilities.CodeMessages;
+import edu.uni.ruse.utilities.MessagesManager;
+
+/**
+ * ScrollbackBenchmark class, measuring how the scrollback that fills the first screen of a joining user is read from
+ * the history and written as one frame, after the room has received many messages. It is the part of the time to the
+ * first full screen that the server spends.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScrollbackBenchmark {
+
+	private static final int RECORDED_MESSAGES = 10_000;
+	private Server server;
+	private MessagesManager messagesManager;
+	private InMemorySocket connection;
+
+	@Setup
+	public void setUp() {
+		server = new Server();
+		for (int i = 0; i < RECORDED_MESSAGES; i++) {
+			server.getChatHistory().record("client", HistoryRecord.DEFAULT_ROOM, "Message number " + i);
+		}
+		messagesManager = new MessagesManager(server);
+		connection = new InMemorySocket();
+	}
+
+	@Benchmark
+	public int sendScrollback() throws IOException {
+		return messagesManager.sendHistoryToClient(CodeMessages.SCROLLBACK,
+				server.getChatHistory().getScrollback(HistoryRecord.DEFAULT_ROOM), connection);
+	}
+}
@@ -0,0 +1,160 @@
+package edu.uni.ruse.benchmarks.load;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import edu.uni.ruse.client.ChatListener;
+import edu.uni.ruse.client.ChatSession;
+import edu.uni.ruse.client.ClientIoLoop;
+import edu.uni.ruse.client.ReceivedMessage;
+import edu.uni.ruse.utilities.CodeMessages;
+
+/**
+ * LoadClient class, one simulated user of the load generator. The user speaks the chat protocol through a headless
+ * session, and every message it sends carries the time when it was meant to be sent, so each user that receives it
+ * records how long the delivery took.
+ *
+ * @author Alexander Andreev
+ */
+public class LoadClient implements ChatListener {
+
+	public static final String PAYLOAD_MARKER = "LOAD:";
+	private final ClientIoLoop loop;
+	private final String host;
+	private final int port;
+	private final LoadReport report;
+	private final String baseName;
+	private volatile ChatSession session;
+	private volatile boolean online;
+	private volatile long renameStartNanos;
+	private int renames;
+
+	/**
+	 * Constructor with the loop that runs the session of the user.
+	 *
+	 * @param loop
+	 *            that connects, reads and writes the session
+	 * @param host
+	 *            of the server
+	 * @param port
+	 *            of the server
+	 * @param name
+	 *            of the user
+	 * @param report
+	 *            that collects the results
+	 */
+	public LoadClient(ClientIoLoop loop, String host, int port, String name, LoadReport report) {
+		this.loop = loop;
+		this.host = host;
+		this.port = port;
+		this.baseName = name;
+		this.report = report;
+	}
+
+	/**
+	 * Joins the server with a new session, and records how long it took.
+	 *
+	 * @return completed with true when the server accepts the user
+	 */
+	public CompletableFuture<Boolean> join() {
+		long startNanos = System.nanoTime();
+		session = loop.openSession(renames == 0 ? baseName : baseName + "r" + renames, host, port, this);
+		return session.connect().thenApply(accepted -> {
+			if (accepted) {
+				report.recordJoin(startNanos);
+				online = true;
+			} else {
+				report.countFailedJoin();
+			}
+			return accepted;
+		});
+	}
+
+	/**
+	 * Sends a chat message to everyone.
+	 *
+	 * @param sentNanos
+	 *            time when the message is meant to be sent
+	 */
+	public void sendChat(long sentNanos) {
+		report.countChat();
+		session.send(session.getName() + ": " + PAYLOAD_MARKER + sentNanos + " hello everyone");
+	}
+
+	/**
+	 * Sends a whisper to another user.
+	 *
+	 * @param receiver
+	 *            of the whisper
+	 * @param sentNanos
+	 *            time when the message is meant to be sent
+	 */
+	public void sendWhisper(LoadClient receiver, long sentNanos) {
+		report.countWhisper();
+		session.send(session.getName() + ": " + CodeMessages.WHISPER.getMessage() + " " + receiver.getName() + " "
+				+ PAYLOAD_MARKER + sentNanos + " hello you");
+	}
+
+	/**
+	 * Asks the server to rename the user. The rename is timed until the server confirms it.
+	 */
+	public void rename() {
+		report.countRename();
+		renames++;
+		renameStartNanos = System.nanoTime();
+		session.send(session.getName() + ": " + CodeMessages.CHANGE_USERNAME.getMessage() + " " + baseName + "r"
+				+ renames);
+	}
+
+	/**
+	 * Tells the server that the user leaves. The session is closed later with {@link #closeSession()}, after the
+	 * server has read the message.
+	 */
+	public void leave() {
+		report.countLeave();
+		online = false;
+		session.send(CodeMessages.REMOVEUSER.getMessage() + session.getName());
+	}
+
+	public void closeSession() {
+		session.close();
+	}
+
+	@Override
+	public void onMessage(ReceivedMessage message) {
+		String text = message.getText();
+		int markerIndex = text.indexOf(PAYLOAD_MARKER);
+		if (markerIndex == -1) {
+			return;
+		}
+		int start = markerIndex + PAYLOAD_MARKER.length();
+		int end = start;
+		while (end < text.length() && Character.isDigit(text.charAt(end))) {
+			end++;
+		}
+		if (end > start) {
+			report.recordDelivery(Long.parseLong(text.substring(start, end)));
+		}
+	}
+
+	@Override
+	public void onRenamed(String newName) {
+		report.recordRename(renameStartNanos);
+	}
+
+	@Override
+	public void onDisconnected(IOException cause) {
+		if (online) {
+			online = false;
+			report.countDisconnect();
+		}
+	}
+
+	public String getName() {
+		return session.getName();
+	}
+
+	public boolean isOnline() {
+		return online;
+	}
+}
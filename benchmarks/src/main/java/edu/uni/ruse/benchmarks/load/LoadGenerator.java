@@ -0,0 +1,302 @@
+package edu.uni.ruse.benchmarks.load;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import edu.uni.ruse.benchmarks.load.Scenario.Action;
+import edu.uni.ruse.client.ClientIoLoop;
+import edu.uni.ruse.server.Server;
+
+/**
+ * LoadGenerator class, that runs thousands of simulated users against a chat server and reports how many messages
+ * the server delivers per second and how long the deliveries take. The users join, then act at a fixed total rate for
+ * the length of the run, as the chosen scenario says. Each action is timed from when it was meant to happen, so a
+ * server that falls behind shows in the latencies instead of slowing the users down. The first seconds of the run are
+ * a warmup and are not measured.
+ *
+ * Arguments are given as name=value pairs, for example:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar edu.uni.ruse.benchmarks.load.LoadGenerator scenario=mixed users=2000
+ * </pre>
+ *
+ * By default the server is started in the same JVM. With server=host:port the users connect to a running server
+ * instead.
+ *
+ * @author Alexander Andreev
+ */
+public class LoadGenerator {
+
+	private static final int DEFAULT_PORT = 7300;
+	private static final int JOIN_BATCH_SIZE = 50;
+	private static final long JOIN_TIMEOUT_SECONDS = 120;
+	private static final long CHURN_PAUSE_MS = 1000;
+	private static final long DRAIN_MS = 2000;
+	private static final long COLLECT_INTERVAL_MS = 50;
+	private static final int ACTION_ATTEMPTS = 10;
+	private final Scenario scenario;
+	private final int users;
+	private final int rate;
+	private final int durationSeconds;
+	private final int warmupSeconds;
+	private final int loopCount;
+	private final String host;
+	private final int port;
+	private final boolean embeddedServer;
+	private final LoadReport report = new LoadReport();
+	private final List<ClientIoLoop> loops = new ArrayList<>();
+	private final List<LoadClient> clients = new ArrayList<>();
+	private ScheduledExecutorService scheduler;
+	private Server server;
+	private final List<Thread> serverThreads = new ArrayList<>();
+	private volatile boolean serverRunning;
+	private volatile boolean dropFrameMessages;
+
+	/**
+	 * Constructor with the arguments of the run.
+	 *
+	 * @param arguments
+	 *            of the run, by name
+	 */
+	public LoadGenerator(Map<String, String> arguments) {
+		scenario = Scenario.fromName(arguments.getOrDefault("scenario", Scenario.STEADY_CHAT.getName()));
+		users = Integer.parseInt(arguments.getOrDefault("users", "1000"));
+		rate = Integer.parseInt(arguments.getOrDefault("rate", "100"));
+		durationSeconds = Integer.parseInt(arguments.getOrDefault("duration", "30"));
+		warmupSeconds = Integer.parseInt(arguments.getOrDefault("warmup", "5"));
+		loopCount = Integer.parseInt(
+				arguments.getOrDefault("loops", String.valueOf(Runtime.getRuntime().availableProcessors())));
+		embeddedServer = !arguments.containsKey("server");
+		if (embeddedServer) {
+			host = "127.0.0.1";
+			port = Integer.parseInt(arguments.getOrDefault("port", String.valueOf(DEFAULT_PORT)));
+		} else {
+			String[] serverAddress = arguments.get("server").split(":");
+			host = serverAddress[0];
+			port = Integer.parseInt(serverAddress[1]);
+		}
+	}
+
+	/**
+	 * Main method that runs the load and prints its results. The JSON summary is written to the file given with
+	 * out=path, or to target/load-[scenario].json.
+	 *
+	 * @param args
+	 *            name=value pairs
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> arguments = new HashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator == -1) {
+				throw new IllegalArgumentException("Arguments are expected as name=value, but got " + arg);
+			}
+			arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		LoadGenerator generator = new LoadGenerator(arguments);
+		generator.run();
+		String out = arguments.getOrDefault("out", "target/load-" + generator.scenario.getName() + ".json");
+		System.out.print(generator.report.toText(generator.scenario, generator.users, generator.rate));
+		generator.report.writeJson(Paths.get(out), generator.scenario, generator.users, generator.rate);
+		System.out.println("Summary written to " + out);
+	}
+
+	/**
+	 * Runs the load: starts the server if needed, joins the users, lets them act and stops everything.
+	 */
+	public void run() throws IOException, InterruptedException {
+		if (embeddedServer) {
+			startServer();
+		}
+		for (int i = 0; i < loopCount; i++) {
+			ClientIoLoop loop = new ClientIoLoop();
+			loop.start();
+			loops.add(loop);
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "load-actions");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			report.startMeasuring();
+			joinUsers();
+			System.out.println(report.getJoinLatency());
+			act();
+		} finally {
+			scheduler.shutdownNow();
+			for (ClientIoLoop loop : loops) {
+				loop.close();
+			}
+			if (embeddedServer) {
+				stopServer();
+			}
+		}
+	}
+
+	/**
+	 * Joins all users, at once in a join storm, or otherwise in small batches, each after the previous one has
+	 * joined.
+	 */
+	private void joinUsers() throws InterruptedException {
+		List<CompletableFuture<Boolean>> joins = new ArrayList<>();
+		for (int i = 0; i < users; i++) {
+			LoadClient client = new LoadClient(loops.get(i % loops.size()), host, port, "load" + i, report);
+			clients.add(client);
+			joins.add(client.join());
+			if (!scenario.isJoinStorm() && joins.size() == JOIN_BATCH_SIZE) {
+				awaitJoins(joins);
+				joins.clear();
+			}
+		}
+		awaitJoins(joins);
+	}
+
+	private void awaitJoins(List<CompletableFuture<Boolean>> joins) throws InterruptedException {
+		try {
+			CompletableFuture.allOf(joins.toArray(new CompletableFuture[0])).get(JOIN_TIMEOUT_SECONDS,
+					TimeUnit.SECONDS);
+		} catch (Exception e) {
+			System.out.println(e);
+			System.out.println("Not all users joined in " + JOIN_TIMEOUT_SECONDS + " seconds.");
+		}
+	}
+
+	/**
+	 * Lets the users act at the total rate for the length of the run. The results of the warmup are cleared, and the
+	 * messages still on their way when the users stop are waited for.
+	 */
+	private void act() throws InterruptedException {
+		long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		long startNanos = System.nanoTime();
+		long[] tick = new long[1];
+		scheduler.scheduleAtFixedRate(() -> {
+			try {
+				actOnce(startNanos + tick[0]++ * periodNanos);
+			} catch (RuntimeException e) {
+				System.out.println(e);
+				System.out.println("Action of a simulated user failed.");
+			}
+		}, 0, periodNanos, TimeUnit.NANOSECONDS);
+		if (!scenario.isJoinStorm()) {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+			report.startMeasuring();
+		}
+		Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+		report.stopMeasuring();
+		scheduler.shutdownNow();
+		Thread.sleep(DRAIN_MS);
+	}
+
+	/**
+	 * Makes a random online user do an action of the scenario.
+	 *
+	 * @param intendedNanos
+	 *            time when the action was meant to happen
+	 */
+	private void actOnce(long intendedNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		LoadClient client = pickOnlineClient(random);
+		if (client == null) {
+			return;
+		}
+		Action action = scenario.chooseAction(random.nextDouble());
+		if (action == Action.CHAT) {
+			client.sendChat(intendedNanos);
+		} else if (action == Action.WHISPER) {
+			LoadClient receiver = pickOnlineClient(random);
+			if (receiver != null && receiver != client) {
+				client.sendWhisper(receiver, intendedNanos);
+			}
+		} else if (action == Action.RENAME) {
+			client.rename();
+		} else {
+			client.leave();
+			scheduler.schedule(() -> {
+				client.closeSession();
+				client.join();
+			}, CHURN_PAUSE_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private LoadClient pickOnlineClient(ThreadLocalRandom random) {
+		for (int i = 0; i < ACTION_ATTEMPTS; i++) {
+			LoadClient client = clients.get(random.nextInt(clients.size()));
+			if (client.isOnline()) {
+				return client;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Starts the server in this JVM and the threads that collect and process its messages, the way the server frame
+	 * does. The messages for the server frame are dropped, as there is no frame to show them.
+	 */
+	private void startServer() throws InterruptedException {
+		server = new Server(port, host);
+		server.setAcceptLanes(Server.DEFAULT_ACCEPT_LANES);
+		server.startServer();
+		server.waitForServerToStart();
+		serverRunning = true;
+		dropFrameMessages = true;
+		serverThreads.add(startServerThread("load-server-collector", () -> serverRunning, () -> {
+			server.collectNewMessages();
+			Thread.sleep(COLLECT_INTERVAL_MS);
+		}));
+		serverThreads.add(startServerThread("load-server-processor", () -> serverRunning, () -> {
+			if (server.havesUnprocessedClientMessages()) {
+				server.processOldestMessage();
+			} else {
+				Thread.sleep(1);
+			}
+		}));
+		startServerThread("load-server-frame", () -> dropFrameMessages,
+				() -> server.getUnprocessedServerMessages().poll(COLLECT_INTERVAL_MS, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Work of a server thread, repeated while the server runs.
+	 */
+	private interface ServerWork {
+		void runOnce() throws InterruptedException;
+	}
+
+	private Thread startServerThread(String name, BooleanSupplier running, ServerWork work) {
+		Thread thread = new Thread(() -> {
+			try {
+				while (running.getAsBoolean()) {
+					work.runOnce();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Stops the threads that collect and process the messages, and then the server. The messages for the server
+	 * frame are dropped until the server has stopped, as removing the users fills their queue.
+	 */
+	private void stopServer() throws InterruptedException {
+		serverRunning = false;
+		for (Thread thread : serverThreads) {
+			thread.join();
+		}
+		server.stopServer();
+		dropFrameMessages = false;
+	}
+}
@@ -0,0 +1,219 @@
+package edu.uni.ruse.benchmarks.load;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uni.ruse.utilities.Histogram;
+
+/**
+ * LoadReport class, that collects the results of a load run: the counts of the sent and delivered messages and the
+ * latency histograms of the deliveries, joins and renames. The results are printed as text and written as a JSON
+ * summary, so the runs can be compared over time.
+ *
+ * @author Alexander Andreev
+ */
+public class LoadReport {
+
+	private final Histogram deliveryLatency = new Histogram("delivery latency", "us");
+	private final Histogram joinLatency = new Histogram("join latency", "us");
+	private final Histogram renameLatency = new Histogram("rename latency", "us");
+	private final AtomicLong sentChats = new AtomicLong();
+	private final AtomicLong sentWhispers = new AtomicLong();
+	private final AtomicLong renames = new AtomicLong();
+	private final AtomicLong leaves = new AtomicLong();
+	private final AtomicLong deliveries = new AtomicLong();
+	private final AtomicLong failedJoins = new AtomicLong();
+	private final AtomicLong disconnects = new AtomicLong();
+	private volatile long measureStartNanos;
+	private volatile long measureEndNanos;
+
+	/**
+	 * Clears the results collected so far and starts the measured part of the run, for example after the warmup.
+	 */
+	public void startMeasuring() {
+		deliveryLatency.reset();
+		joinLatency.reset();
+		renameLatency.reset();
+		sentChats.set(0);
+		sentWhispers.set(0);
+		renames.set(0);
+		leaves.set(0);
+		deliveries.set(0);
+		failedJoins.set(0);
+		disconnects.set(0);
+		measureStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * Ends the measured part of the run. Messages delivered after it are still counted, so the messages sent at its
+	 * end are not left out.
+	 */
+	public void stopMeasuring() {
+		measureEndNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records the delivery of a message to a user.
+	 *
+	 * @param sentNanos
+	 *            time when the message was meant to be sent, from System.nanoTime
+	 */
+	public void recordDelivery(long sentNanos) {
+		deliveries.incrementAndGet();
+		deliveryLatency.record((System.nanoTime() - sentNanos) / 1000);
+	}
+
+	public void recordJoin(long startNanos) {
+		joinLatency.record((System.nanoTime() - startNanos) / 1000);
+	}
+
+	public void recordRename(long startNanos) {
+		renameLatency.record((System.nanoTime() - startNanos) / 1000);
+	}
+
+	public void countChat() {
+		sentChats.incrementAndGet();
+	}
+
+	public void countWhisper() {
+		sentWhispers.incrementAndGet();
+	}
+
+	public void countRename() {
+		renames.incrementAndGet();
+	}
+
+	public void countLeave() {
+		leaves.incrementAndGet();
+	}
+
+	public void countFailedJoin() {
+		failedJoins.incrementAndGet();
+	}
+
+	public void countDisconnect() {
+		disconnects.incrementAndGet();
+	}
+
+	/**
+	 * Returns the length of the measured part of the run.
+	 *
+	 * @return seconds between the start and the end of the measuring
+	 */
+	public double getMeasuredSeconds() {
+		return (measureEndNanos - measureStartNanos) / 1e9;
+	}
+
+	/**
+	 * Returns the number of messages sent per second, chat messages and whispers together.
+	 *
+	 * @return sent messages per second
+	 */
+	public double getSentPerSecond() {
+		return (sentChats.get() + sentWhispers.get()) / getMeasuredSeconds();
+	}
+
+	/**
+	 * Returns the number of messages delivered to users per second. A chat message is delivered to every user.
+	 *
+	 * @return delivered messages per second
+	 */
+	public double getDeliveredPerSecond() {
+		return deliveries.get() / getMeasuredSeconds();
+	}
+
+	public Histogram getDeliveryLatency() {
+		return deliveryLatency;
+	}
+
+	public Histogram getJoinLatency() {
+		return joinLatency;
+	}
+
+	public Histogram getRenameLatency() {
+		return renameLatency;
+	}
+
+	public long getFailedJoins() {
+		return failedJoins.get();
+	}
+
+	/**
+	 * Returns the results as readable text.
+	 *
+	 * @param scenario
+	 *            of the run
+	 * @param users
+	 *            number of users of the run
+	 * @param targetRate
+	 *            number of actions per second the users were asked to make
+	 * @return the results
+	 */
+	public String toText(Scenario scenario, int users, int targetRate) {
+		StringBuilder text = new StringBuilder();
+		text.append("Scenario ").append(scenario.getName()).append(", ").append(users).append(" users, ")
+				.append(targetRate).append(" actions/s, measured for ")
+				.append(String.format(Locale.ROOT, "%.1f", getMeasuredSeconds())).append(" s").append('\n');
+		text.append("sent: ").append(sentChats.get()).append(" chat, ").append(sentWhispers.get())
+				.append(" whisper, ").append(renames.get()).append(" rename, ").append(leaves.get()).append(" leave")
+				.append('\n');
+		text.append(String.format(Locale.ROOT, "throughput: %.1f sent/s, %.1f delivered/s", getSentPerSecond(),
+				getDeliveredPerSecond())).append('\n');
+		text.append("failed joins: ").append(failedJoins.get()).append(", disconnects: ").append(disconnects.get())
+				.append('\n');
+		text.append(deliveryLatency).append('\n');
+		text.append(joinLatency).append('\n');
+		text.append(renameLatency).append('\n');
+		return text.toString();
+	}
+
+	/**
+	 * Writes the results as a JSON summary.
+	 *
+	 * @param file
+	 *            to be written
+	 * @param scenario
+	 *            of the run
+	 * @param users
+	 *            number of users of the run
+	 * @param targetRate
+	 *            number of actions per second the users were asked to make
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void writeJson(Path file, Scenario scenario, int users, int targetRate) throws IOException {
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("  \"scenario\": \"").append(scenario.getName()).append("\",\n");
+		json.append("  \"users\": ").append(users).append(",\n");
+		json.append("  \"targetRate\": ").append(targetRate).append(",\n");
+		json.append(String.format(Locale.ROOT, "  \"measuredSeconds\": %.3f,%n", getMeasuredSeconds()));
+		json.append("  \"sent\": {\"chat\": ").append(sentChats.get()).append(", \"whisper\": ")
+				.append(sentWhispers.get()).append(", \"rename\": ").append(renames.get()).append(", \"leave\": ")
+				.append(leaves.get()).append("},\n");
+		json.append("  \"delivered\": ").append(deliveries.get()).append(",\n");
+		json.append(String.format(Locale.ROOT, "  \"sentPerSecond\": %.1f,%n", getSentPerSecond()));
+		json.append(String.format(Locale.ROOT, "  \"deliveredPerSecond\": %.1f,%n", getDeliveredPerSecond()));
+		json.append("  \"failedJoins\": ").append(failedJoins.get()).append(",\n");
+		json.append("  \"disconnects\": ").append(disconnects.get()).append(",\n");
+		json.append("  \"latency\": {\n");
+		json.append("    \"delivery\": ").append(toJson(deliveryLatency)).append(",\n");
+		json.append("    \"join\": ").append(toJson(joinLatency)).append(",\n");
+		json.append("    \"rename\": ").append(toJson(renameLatency)).append('\n');
+		json.append("  }\n}\n");
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String toJson(Histogram histogram) {
+		return String.format(Locale.ROOT,
+				"{\"unit\": \"%s\", \"count\": %d, \"mean\": %.1f, \"p50\": %d, \"p99\": %d, \"p99.9\": %d, \"max\": %d}",
+				histogram.getUnit(), histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile(50),
+				histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMax());
+	}
+}
@@ -0,0 +1,81 @@
+package edu.uni.ruse.benchmarks.load;
+
+/**
+ * Scenario enum, the scripted workloads of the load generator. A scenario tells if the users join all at once or in
+ * small batches, and how often each action is chosen when a user acts: a chat message to everyone, a whisper to
+ * another user, a rename, or leaving and joining again.
+ *
+ * @author Alexander Andreev
+ */
+public enum Scenario {
+
+	JOIN_STORM("join-storm", true, 100, 0, 0, 0),
+	STEADY_CHAT("steady-chat", false, 100, 0, 0, 0),
+	WHISPER_MIX("whisper-mix", false, 50, 50, 0, 0),
+	RENAMES("renames", false, 80, 0, 20, 0),
+	CHURN("churn", false, 80, 0, 0, 20),
+	MIXED("mixed", false, 60, 25, 5, 10);
+
+	/**
+	 * Action of a user, chosen by the weights of the scenario.
+	 */
+	public enum Action {
+		CHAT, WHISPER, RENAME, CHURN
+	}
+
+	private final String name;
+	private final boolean joinStorm;
+	private final int[] weights;
+	private final int totalWeight;
+
+	private Scenario(String name, boolean joinStorm, int chat, int whisper, int rename, int churn) {
+		this.name = name;
+		this.joinStorm = joinStorm;
+		this.weights = new int[] { chat, whisper, rename, churn };
+		this.totalWeight = chat + whisper + rename + churn;
+	}
+
+	/**
+	 * Chooses an action by the weights of the scenario.
+	 *
+	 * @param random
+	 *            number between 0 (inclusive) and 1 (exclusive)
+	 * @return the chosen action
+	 */
+	public Action chooseAction(double random) {
+		int roll = (int) (random * totalWeight);
+		for (int i = 0; i < weights.length; i++) {
+			if (roll < weights[i]) {
+				return Action.values()[i];
+			}
+			roll -= weights[i];
+		}
+		return Action.CHAT;
+	}
+
+	/**
+	 * Returns the scenario with the given name.
+	 *
+	 * @param name
+	 *            of the scenario, for example steady-chat
+	 * @return the scenario
+	 * @throws IllegalArgumentException
+	 *             if there is no scenario with this name
+	 */
+	public static Scenario fromName(String name) {
+		for (Scenario scenario : values()) {
+			if (scenario.name.equalsIgnoreCase(name)) {
+				return scenario;
+			}
+		}
+		throw new IllegalArgumentException("Unknown scenario " + name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isJoinStorm() {
+		return joinStorm;
+	}
+}
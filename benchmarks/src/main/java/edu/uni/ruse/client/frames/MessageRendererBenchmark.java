@@ -0,0 +1,67 @@
+package edu.uni.ruse.client.frames;
+
+import java.awt.Color;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JScrollPane;
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.SimpleAttributeSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uni.ruse.client.ReceivedMessage;
+
+/**
+ * MessageRendererBenchmark class, measuring one frame tick of the message renderer on the event dispatch thread, for
+ * the number of messages that arrive during a frame. At 1000 messages per second a frame holds 16 messages, and the
+ * frame should take less than {@link MessageRenderer#FRAME_INTERVAL_MS}. The benchmark is in the package of the
+ * renderer, because the renderer is not public.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class MessageRendererBenchmark {
+
+	@Param({ "16", "100" })
+	public int messagesPerFrame;
+	private MessageRenderer renderer;
+	private ReceivedMessage[] messages;
+
+	@Setup
+	public void setUp() {
+		JTextPane messagesArea = new JTextPane();
+		JScrollPane scrollPane = new JScrollPane(messagesArea);
+		SimpleAttributeSet style = new SimpleAttributeSet();
+		renderer = new MessageRenderer(messagesArea.getStyledDocument(), scrollPane.getVerticalScrollBar(),
+				message -> renderer.append(message.getText() + System.lineSeparator(), style), color -> style, null);
+		messages = new ReceivedMessage[messagesPerFrame];
+		for (int i = 0; i < messagesPerFrame; i++) {
+			messages[i] = new ReceivedMessage("user" + (i % 10) + ": message " + i, Color.BLACK);
+		}
+	}
+
+	@Benchmark
+	public void renderFrame() throws InterruptedException, InvocationTargetException {
+		for (ReceivedMessage message : messages) {
+			renderer.enqueue(message);
+		}
+		SwingUtilities.invokeAndWait(renderer::renderFrame);
+	}
+}
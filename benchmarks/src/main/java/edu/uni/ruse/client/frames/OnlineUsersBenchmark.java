@@ -0,0 +1,48 @@
+package edu.uni.ruse.client.frames;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OnlineUsersBenchmark class, measuring how a storm of joins is applied to the online users list on the event dispatch
+ * thread, as it happens when the client connects to a busy server. The benchmark is in the package of the model,
+ * because the model is not public.
+ *
+ * @author Alexander Andreev
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class OnlineUsersBenchmark {
+
+	@Param({ "100", "5000" })
+	public int joiningUsers;
+
+	@Benchmark
+	public int applyJoinStorm() throws InterruptedException, InvocationTargetException {
+		OnlineUsersModel model = new OnlineUsersModel("me");
+		SwingUtilities.invokeAndWait(() -> {
+			for (int i = 0; i < joiningUsers; i++) {
+				model.queueAdd("user" + i);
+			}
+			model.applyPendingChanges();
+		});
+		return model.getSize();
+	}
+}
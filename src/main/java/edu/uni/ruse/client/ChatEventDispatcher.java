@@ -0,0 +1,75 @@
+package edu.uni.ruse.client;
+
+import java.util.function.Consumer;
+
+import edu.uni.ruse.utilities.CodeMessages;
+import edu.uni.ruse.utilities.MessagesManager;
+
+/**
+ * ChatEventDispatcher class, that decodes the messages received from the server into the events of a chat listener.
+ * It is shared by all transports of the client, so they all understand the protocol the same way.
+ *
+ * @author Alexander Andreev
+ */
+public class ChatEventDispatcher implements Consumer<ReceivedMessage> {
+
+	private static final CodeMessages[] HISTORY_KINDS = { CodeMessages.SCROLLBACK, CodeMessages.HISTORY_TAIL,
+			CodeMessages.HISTORY_PAGE, CodeMessages.SEARCH_RESULTS };
+	private final ChatListener listener;
+
+	/**
+	 * Constructor with the listener of the decoded events.
+	 *
+	 * @param listener
+	 *            of the events
+	 */
+	public ChatEventDispatcher(ChatListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Decodes a received message and calls the matching method of the listener. The sequence tag of messages kept in
+	 * the chat history is removed and passed on with the message.
+	 *
+	 * @param received
+	 *            message from the server, without its color code
+	 */
+	@Override
+	public void accept(ReceivedMessage received) {
+		String message = MessagesManager.removeColorCodeFromMessage(received.getText());
+		long sequence = -1;
+		if (message.startsWith(CodeMessages.SEQUENCE.getMessage())) {
+			int tagEnd = message.indexOf(':', CodeMessages.SEQUENCE.getMessage().length());
+			try {
+				sequence = Long.parseLong(message.substring(CodeMessages.SEQUENCE.getMessage().length(), tagEnd));
+				message = message.substring(tagEnd + 1);
+			} catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+				sequence = -1;
+			}
+		}
+		if (message.startsWith(CodeMessages.ADDUSER.getMessage())) {
+			listener.onUserJoined(message.substring(CodeMessages.ADDUSER.getMessage().length()));
+		} else if (message.startsWith(CodeMessages.REMOVEUSER.getMessage())) {
+			listener.onUserLeft(message.substring(CodeMessages.REMOVEUSER.getMessage().length()));
+		} else if (message.startsWith(CodeMessages.CHANGE_USERNAME.getMessage())) {
+			listener.onRenamed(message.substring(CodeMessages.CHANGE_USERNAME.getMessage().length()));
+		} else if (!dispatchHistory(message, sequence)) {
+			listener.onMessage(sequence == -1 ? received : new ReceivedMessage(message, received.getColor(), sequence));
+		}
+	}
+
+	/**
+	 * Passes a batch of past messages to the listener.
+	 *
+	 * @return false if the message is not a batch of past messages
+	 */
+	private boolean dispatchHistory(String message, long lastSequence) {
+		for (CodeMessages kind : HISTORY_KINDS) {
+			if (message.startsWith(kind.getMessage())) {
+				listener.onHistory(kind, message.substring(kind.getMessage().length()), lastSequence);
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,74 @@
+package edu.uni.ruse.client;
+
+import java.io.IOException;
+
+import edu.uni.ruse.utilities.CodeMessages;
+
+/**
+ * ChatListener interface, that receives the events of a chat session: messages, history, users that join or leave,
+ * renames of the own user and the loss of the connection. All methods do nothing by default, so a listener implements
+ * only the events it needs. The thread that calls the methods depends on the transport of the session, and they
+ * should return quickly.
+ *
+ * @author Alexander Andreev
+ */
+public interface ChatListener {
+
+	/**
+	 * Called for a chat or system message.
+	 *
+	 * @param message
+	 *            text and color of the message
+	 */
+	default void onMessage(ReceivedMessage message) {
+	}
+
+	/**
+	 * Called for a batch of past messages.
+	 *
+	 * @param kind
+	 *            of the batch, one of SCROLLBACK, HISTORY_TAIL, HISTORY_PAGE and SEARCH_RESULTS
+	 * @param lines
+	 *            of the past messages, separated by new lines, or an empty string if there are none
+	 * @param lastSequence
+	 *            of the newest message in the batch, or -1 if the batch is empty
+	 */
+	default void onHistory(CodeMessages kind, String lines, long lastSequence) {
+	}
+
+	/**
+	 * Called when a user is online, including the users that were online when the session joined.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	default void onUserJoined(String name) {
+	}
+
+	/**
+	 * Called when a user leaves.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	default void onUserLeft(String name) {
+	}
+
+	/**
+	 * Called when the server renames the own user of the session.
+	 *
+	 * @param newName
+	 *            of the own user
+	 */
+	default void onRenamed(String newName) {
+	}
+
+	/**
+	 * Called when the connection with the server is lost.
+	 *
+	 * @param cause
+	 *            of the lost connection
+	 */
+	default void onDisconnected(IOException cause) {
+	}
+}
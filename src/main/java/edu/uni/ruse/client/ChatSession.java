@@ -0,0 +1,302 @@
+package edu.uni.ruse.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import edu.uni.ruse.utilities.CodeMessages;
+import edu.uni.ruse.utilities.MessagesManager;
+
+/**
+ * ChatSession class, a headless connection of one user to a chat server, without any user interface. The session is
+ * connected, read and written by the I/O loop that opened it, and the received messages are decoded into the events
+ * of its chat listener. Messages can be sent from any thread; they are written by the I/O loop, several of them with
+ * one write when they are waiting together.
+ *
+ * @author Alexander Andreev
+ */
+public class ChatSession {
+
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_FRAME_SIZE = 2 + 65535;
+	private final ClientIoLoop loop;
+	private final InetSocketAddress serverAddress;
+	private final ChatEventDispatcher dispatcher;
+	private final ChatListener listener;
+	private final Queue<ByteBuffer> pendingFrames = new ConcurrentLinkedQueue<>();
+	private final CompletableFuture<Boolean> accepted = new CompletableFuture<>();
+	private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private volatile String name;
+	private volatile boolean connected;
+	private SocketChannel channel;
+	private SelectionKey key;
+
+	/**
+	 * Constructor with the loop that the session runs on and the listener of its events.
+	 *
+	 * @param loop
+	 *            that connects, reads and writes the session
+	 * @param name
+	 *            of the user of the session
+	 * @param serverAddress
+	 *            of the chat server
+	 * @param listener
+	 *            of the events of the session
+	 */
+	ChatSession(ClientIoLoop loop, String name, InetSocketAddress serverAddress, ChatListener listener) {
+		this.loop = loop;
+		this.name = name;
+		this.serverAddress = serverAddress;
+		this.listener = listener;
+		dispatcher = new ChatEventDispatcher(new ChatListener() {
+			@Override
+			public void onMessage(ReceivedMessage message) {
+				listener.onMessage(message);
+			}
+
+			@Override
+			public void onHistory(CodeMessages kind, String lines, long lastSequence) {
+				listener.onHistory(kind, lines, lastSequence);
+			}
+
+			@Override
+			public void onUserJoined(String user) {
+				listener.onUserJoined(user);
+			}
+
+			@Override
+			public void onUserLeft(String user) {
+				listener.onUserLeft(user);
+			}
+
+			@Override
+			public void onRenamed(String newName) {
+				ChatSession.this.name = newName;
+				listener.onRenamed(newName);
+			}
+		});
+	}
+
+	/**
+	 * Connects to the server and asks to join with the name of the session, without waiting.
+	 *
+	 * @return completed with true when the server accepts the user, or with false if it declines it or the
+	 *         connection fails
+	 */
+	public CompletableFuture<Boolean> connect() {
+		loop.execute(this::startConnecting);
+		return accepted;
+	}
+
+	/**
+	 * Opens the channel and registers it on the loop. Runs on the I/O loop.
+	 */
+	private void startConnecting() {
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			key = channel.register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+			if (channel.connect(serverAddress)) {
+				onConnected();
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Handles a ready channel of the session. Runs on the I/O loop.
+	 *
+	 * @param readyKey
+	 *            of the session's channel
+	 */
+	void handle(SelectionKey readyKey) {
+		try {
+			if (readyKey.isConnectable() && channel.finishConnect()) {
+				onConnected();
+			}
+			if (readyKey.isValid() && readyKey.isReadable()) {
+				read();
+			}
+			if (readyKey.isValid() && readyKey.isWritable()) {
+				write();
+			}
+		} catch (IOException | CancelledKeyException e) {
+			fail(e instanceof IOException ? (IOException) e : new IOException(e));
+		}
+	}
+
+	/**
+	 * Sends the connection request once the channel is connected.
+	 */
+	private void onConnected() throws IOException {
+		key.interestOps(SelectionKey.OP_READ);
+		pendingFrames.add(encode(CodeMessages.CONREQUEST.getMessage() + name));
+		write();
+	}
+
+	/**
+	 * Reads what is available and decodes all complete frames.
+	 */
+	private void read() throws IOException {
+		if (channel.read(readBuffer) == -1) {
+			throw new EOFException("Server closed the connection.");
+		}
+		readBuffer.flip();
+		while (readBuffer.remaining() >= 2) {
+			int length = readBuffer.getShort(readBuffer.position()) & 0xFFFF;
+			if (readBuffer.remaining() < 2 + length) {
+				break;
+			}
+			DataInputStream frame = new DataInputStream(
+					new ByteArrayInputStream(readBuffer.array(), readBuffer.position(), 2 + length));
+			readBuffer.position(readBuffer.position() + 2 + length);
+			onFrame(frame.readUTF());
+		}
+		readBuffer.compact();
+		if (!readBuffer.hasRemaining() && readBuffer.capacity() < MAX_FRAME_SIZE) {
+			ByteBuffer biggerBuffer = ByteBuffer.allocate(MAX_FRAME_SIZE);
+			readBuffer.flip();
+			biggerBuffer.put(readBuffer);
+			readBuffer = biggerBuffer;
+		}
+	}
+
+	/**
+	 * Handles a received frame: the first one is the answer to the connection request, and the others are passed to
+	 * the listener.
+	 */
+	private void onFrame(String frame) throws IOException {
+		ReceivedMessage message = new ReceivedMessage(MessagesManager.removeColorCodeFromMessage(frame),
+				MessagesManager.getColorFromMessage(frame));
+		if (!connected) {
+			if (CodeMessages.CONN_ACCEPTED.getMessage().equals(message.getText())) {
+				connected = true;
+				accepted.complete(true);
+			} else {
+				accepted.complete(false);
+				close();
+			}
+			return;
+		}
+		dispatcher.accept(message);
+	}
+
+	/**
+	 * Queues a message to the server. Can be called from any thread.
+	 *
+	 * @param message
+	 *            to be sent
+	 */
+	public void send(String message) {
+		try {
+			pendingFrames.add(encode(message));
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("Message could not be encoded and is not sent.");
+			return;
+		}
+		loop.execute(this::startWriting);
+	}
+
+	/**
+	 * Writes the waiting frames, or waits for the channel to be writable. Runs on the I/O loop.
+	 */
+	private void startWriting() {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		try {
+			write();
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Writes the waiting frames with one gathering write, until they are written or the channel is full.
+	 */
+	private void write() throws IOException {
+		ByteBuffer[] frames = pendingFrames.toArray(new ByteBuffer[0]);
+		if (frames.length > 0) {
+			channel.write(frames);
+			for (ByteBuffer frame : frames) {
+				if (frame.hasRemaining()) {
+					break;
+				}
+				pendingFrames.poll();
+			}
+		}
+		if (pendingFrames.isEmpty()) {
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		} else {
+			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * Encodes a message in the frame format of the server.
+	 */
+	private static ByteBuffer encode(String message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length() + 2);
+		new DataOutputStream(bytes).writeUTF(message);
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	/**
+	 * Closes the session after a failure and tells the listener. Runs on the I/O loop.
+	 *
+	 * @param cause
+	 *            of the failure
+	 */
+	void fail(IOException cause) {
+		boolean wasConnected = connected;
+		close();
+		if (!accepted.isDone()) {
+			System.out.println(cause);
+			System.out.println("Session " + name + " could not connect to server " + serverAddress);
+			accepted.complete(false);
+		} else if (wasConnected) {
+			try {
+				listener.onDisconnected(cause);
+			} catch (RuntimeException e) {
+				System.out.println(e);
+				System.out.println("Listener of session " + name + " failed while it was told about the disconnect.");
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection of the session, without telling the listener.
+	 */
+	public void close() {
+		connected = false;
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+}
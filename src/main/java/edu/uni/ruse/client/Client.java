@@ -1,14 +1,18 @@
 package edu.uni.ruse.client;
 
 import edu.uni.ruse.utilities.CodeMessages;
+import edu.uni.ruse.utilities.Histogram;
 import edu.uni.ruse.utilities.InterfaceLang;
 import edu.uni.ruse.utilities.MessagesManager;
 
 import java.awt.*;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.List;
 
 /**
  * Client class that can connect to a server and receive messages from it.
@@ -18,7 +22,10 @@ import java.net.Socket;
 public class Client {
 
 	private static final int WAIT_INTERVAL_MS = 1000;
-	private static final InterfaceLang DEFAULT_LANGUAGE = InterfaceLang.EN;
+	public static final int CONNECT_TIMEOUT_MS = 5000;
+	private static final Histogram CONNECT_TIME = new Histogram("client.connectTime", "us");
+	private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+	public static final InterfaceLang DEFAULT_LANGUAGE = InterfaceLang.EN;
 	private InterfaceLang language = DEFAULT_LANGUAGE;
 	private Socket connection;
 	private String name;
@@ -28,6 +35,10 @@ public class Client {
 	private DataOutputStream dout;
 	private String receivedMessage;
 	private Color currentColor;
+	private long connectStartNanos;
+	private final Object writeLock = new Object();
+	private MessageSender sender;
+	private HistoryStore historyStore;
 
 	/**
 	 * Default constructor with name variable for the name of the client.
@@ -48,7 +59,8 @@ public class Client {
 
 	/**
 	 * Tries to connect to a server with IP and port retrieved from the object's attributes. If the connection is
-	 * successful input and output streams with the server are created.
+	 * successful input and output streams with the server are created. The time from the start of the connection to
+	 * the answer of the server is recorded in the connect time histogram.
 	 * 
 	 * @throws InterruptedException
 	 *             if thread is interrupted while trying to connect to the server.
@@ -57,11 +69,21 @@ public class Client {
 		boolean succesfullConnection = false;
 		try {
 			System.out.println("Trying to connect to server " + serverAddress + ":" + serverPort);
-			connection = new Socket(serverAddress, serverPort);
+			connectStartNanos = System.nanoTime();
+			Socket socket = new Socket();
+			try {
+				socket.connect(new InetSocketAddress(serverAddress, serverPort), CONNECT_TIMEOUT_MS);
+			} catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+			connection = socket;
 			din = new DataInputStream(connection.getInputStream());
-			dout = new DataOutputStream(connection.getOutputStream());
+			dout = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), OUTPUT_BUFFER_SIZE));
 			if (acceptedFromServer()) {
+				CONNECT_TIME.record((System.nanoTime() - connectStartNanos) / 1000);
 				System.out.println("Cleint " + name + " has connected successfully.");
+				StartupTrace.mark(StartupTrace.CONNECTED);
 				succesfullConnection = true;
 			} else {
 				System.out.println("Cleint " + name + " was not able to connect.");
@@ -85,25 +107,27 @@ public class Client {
 
 	/**
 	 * Sends a connection request to the server and retrieves an answer from it, showing if the server will accept the
-	 * client.
+	 * client. If the client has a history store with messages in it, the request tells the server which messages are
+	 * stored, so only the newer ones are sent. The answer is read as soon as it arrives, waiting at most the connect
+	 * timeout.
 	 * 
 	 * @return boolean indicating if the server accepted the client.
-	 * @throws InterruptedException
 	 */
 	public boolean acceptedFromServer() {
-		sendMessage(CodeMessages.CONREQUEST.getMessage() + name);
-		try {
-			Thread.sleep(250);
-		} catch (InterruptedException e) {
-			System.out.println(e);
-			System.out.println("Thread Intrrupted while waiting for answer of connection request");
-			Thread.currentThread().interrupt();
+		String request = CodeMessages.CONREQUEST.getMessage() + name;
+		if (historyStore != null && !historyStore.isEmpty()) {
+			request += "\n" + CodeMessages.HISTORY_CACHED.getMessage() + historyStore.getFirstSequence() + ":"
+					+ historyStore.getLastSequence();
 		}
+		sendMessage(request);
 		try {
+			connection.setSoTimeout(CONNECT_TIMEOUT_MS);
 			receiveMessage();
+			connection.setSoTimeout(0);
 		} catch (IOException e) {
 			System.out.println(e);
 			System.out.println("IOException while trying to be accepted from server.");
+			return false;
 		}
 		receivedMessage = MessagesManager.removeColorCodeFromMessage(receivedMessage);
 		return CodeMessages.CONN_ACCEPTED.getMessage().equals(receivedMessage);
@@ -122,20 +146,52 @@ public class Client {
 	}
 
 	/**
-	 * Sends a message to the server trough the connection's output stream.
+	 * Sends a message to the server trough the connection's output stream, on the calling thread.
 	 * 
 	 * @param message
 	 *            to be sent.
 	 */
 	public void sendMessage(String message) {
 		try {
-			dout.writeUTF(message);
+			synchronized (writeLock) {
+				dout.writeUTF(message);
+				dout.flush();
+			}
 		} catch (IOException e) {
 			System.out.println(e);
 			System.out.println("I/O exception while trying to send message to server.");
 		}
 	}
 
+	/**
+	 * Queues a message to be sent to the server by the client's message sender, so the calling thread never waits for
+	 * the network. The sender is started on first use.
+	 * 
+	 * @param message
+	 *            to be sent.
+	 * @return true if the message is queued, or false if too many messages are waiting to be sent
+	 */
+	public boolean queueMessage(String message) {
+		return getSender().offer(message);
+	}
+
+	/**
+	 * Writes a batch of messages to the connection's output stream and flushes it once.
+	 * 
+	 * @param messages
+	 *            to be sent
+	 * @throws IOException
+	 *             if the messages cannot be written
+	 */
+	void writeMessages(List<String> messages) throws IOException {
+		synchronized (writeLock) {
+			for (String message : messages) {
+				dout.writeUTF(message);
+			}
+			dout.flush();
+		}
+	}
+
 	/**
 	 * Receives a string message trough the socket's input stream.
 	 * 
@@ -147,6 +203,20 @@ public class Client {
 		receivedMessage = MessagesManager.removeColorCodeFromMessage(receivedMessage);
 	}
 
+	/**
+	 * Sets the store of the messages received from the server, which are shown when the client starts.
+	 * 
+	 * @param historyStore
+	 *            of the server's room, or null to not store the messages
+	 */
+	public void setHistoryStore(HistoryStore historyStore) {
+		this.historyStore = historyStore;
+	}
+
+	public HistoryStore getHistoryStore() {
+		return historyStore;
+	}
+
 	public String getReceivedMessage() {
 		return receivedMessage;
 	}
@@ -213,4 +283,25 @@ public class Client {
 	public void setCurrentColor(Color currentColor) {
 		this.currentColor = currentColor;
 	}
+
+	public long getConnectStartNanos() {
+		return connectStartNanos;
+	}
+
+	/**
+	 * Returns the message sender of the client, starting it on first use.
+	 * 
+	 * @return the message sender
+	 */
+	public synchronized MessageSender getSender() {
+		if (sender == null) {
+			sender = new MessageSender(this, MessageSender.DEFAULT_CAPACITY);
+			sender.start();
+		}
+		return sender;
+	}
+
+	public static Histogram getConnectTime() {
+		return CONNECT_TIME;
+	}
 }
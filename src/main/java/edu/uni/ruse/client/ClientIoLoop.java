@@ -0,0 +1,178 @@
+package edu.uni.ruse.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * ClientIoLoop class, the shared I/O layer of headless chat sessions. One selector thread connects, reads and writes
+ * the non-blocking channels of all sessions opened on the loop, so thousands of sessions can run in one JVM without a
+ * thread for each of them. Listeners of the sessions are called on this thread. A session whose listener throws an
+ * exception is closed, while the other sessions of the loop keep running.
+ *
+ * @author Alexander Andreev
+ */
+public class ClientIoLoop implements Closeable {
+
+	private static final long CLOSE_TIMEOUT_MS = 5000;
+	private final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private volatile boolean running;
+	private volatile Thread thread;
+
+	/**
+	 * Constructor that opens the selector of the loop.
+	 *
+	 * @throws IOException
+	 *             if the selector cannot be opened
+	 */
+	public ClientIoLoop() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Starts the selector thread.
+	 */
+	public void start() {
+		running = true;
+		thread = new Thread(this::run, "client-io");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Opens a session that is connected on this loop.
+	 *
+	 * @param name
+	 *            of the user of the session
+	 * @param host
+	 *            of the server
+	 * @param port
+	 *            of the server
+	 * @param listener
+	 *            of the events of the session
+	 * @return the session, not connected yet
+	 */
+	public ChatSession openSession(String name, String host, int port, ChatListener listener) {
+		return new ChatSession(this, name, new InetSocketAddress(host, port), listener);
+	}
+
+	/**
+	 * Runs a task on the selector thread, for example to register a channel or to start writing.
+	 *
+	 * @param task
+	 *            to be run
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	Selector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Waits for ready channels and passes each of them to its session, until the loop is closed.
+	 */
+	private void run() {
+		while (running) {
+			try {
+				selector.select();
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					runTask(task);
+				}
+				if (!running) {
+					return;
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					handle(key);
+				}
+			} catch (ClosedSelectorException e) {
+				return;
+			} catch (IOException e) {
+				System.out.println(e);
+				System.out.println("I/O Exception in the client I/O loop.");
+			}
+		}
+	}
+
+	/**
+	 * Runs a task, so an unexpected exception in it does not stop the loop.
+	 */
+	private static void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			System.out.println(e);
+			System.out.println("Task of the client I/O loop failed.");
+		}
+	}
+
+	/**
+	 * Passes a ready channel to its session. If the session or its listener throws an unexpected exception, only
+	 * that session is closed.
+	 */
+	private static void handle(SelectionKey key) {
+		ChatSession session = (ChatSession) key.attachment();
+		try {
+			session.handle(key);
+		} catch (RuntimeException e) {
+			System.out.println(e);
+			System.out.println("Session " + session.getName() + " failed in the client I/O loop and is closed.");
+			session.fail(new IOException(e));
+		}
+	}
+
+	/**
+	 * Stops the loop and closes the channels of all its sessions. The channels are closed on the selector thread,
+	 * which is waited for, as the keys of the selector must not be used by other threads while it runs.
+	 */
+	@Override
+	public void close() throws IOException {
+		Thread loopThread = thread;
+		if (loopThread != null && loopThread != Thread.currentThread()) {
+			execute(this::closeChannels);
+			try {
+				loopThread.join(CLOSE_TIMEOUT_MS);
+			} catch (InterruptedException e) {
+				System.out.println(e);
+				System.out.println("Interrupted while waiting for the client I/O loop to stop.");
+				Thread.currentThread().interrupt();
+			}
+			if (loopThread.isAlive()) {
+				System.out.println("Client I/O loop did not stop in " + CLOSE_TIMEOUT_MS + " ms.");
+				selector.close();
+				return;
+			}
+		}
+		if (selector.isOpen()) {
+			closeChannels();
+			selector.close();
+		}
+	}
+
+	/**
+	 * Stops the loop and closes the channels of all its sessions. Runs on the I/O loop, or after it has stopped.
+	 */
+	private void closeChannels() {
+		running = false;
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				System.out.println(e);
+			}
+		}
+	}
+}
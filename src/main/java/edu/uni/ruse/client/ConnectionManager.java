@@ -0,0 +1,161 @@
+package edu.uni.ruse.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ConnectionManager class, that connects a client to its server on a background thread, so the thread of the user
+ * interface never waits for the network. A lost connection is tried again a number of times, waiting longer between
+ * the tries, as given by a reconnect backoff. Each change of the connection state is passed to a listener, and the
+ * messages that could not be sent while the connection was lost are sent again once it is restored.
+ *
+ * @author Alexander Andreev
+ */
+public class ConnectionManager {
+
+	public static final int DEFAULT_BASE_DELAY_MS = 1000;
+	public static final int DEFAULT_MAX_DELAY_MS = 30000;
+	private static final int IDLE_THREAD_KEEP_ALIVE_MS = 1000;
+	private final Client client;
+	private final ReconnectBackoff backoff;
+	private final ScheduledThreadPoolExecutor executor;
+	private volatile State state = State.DISCONNECTED;
+	private volatile Consumer<State> stateListener = newState -> {
+	};
+	private volatile int attempt;
+	private volatile int maxAttempts;
+	private volatile long nextDelayMs;
+
+	/**
+	 * State enumeration, listing the states of the connection with the server.
+	 */
+	public enum State {
+		DISCONNECTED, WAITING_TO_RETRY, CONNECTING, CONNECTED, FAILED
+	}
+
+	/**
+	 * Constructor with the client to connect, using the default reconnect backoff.
+	 *
+	 * @param client
+	 *            to be connected
+	 */
+	public ConnectionManager(Client client) {
+		this(client, new ReconnectBackoff(DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS));
+	}
+
+	/**
+	 * Constructor with the client to connect and the waits between the tries.
+	 *
+	 * @param client
+	 *            to be connected
+	 * @param backoff
+	 *            that gives the wait before each try to reconnect
+	 */
+	public ConnectionManager(Client client, ReconnectBackoff backoff) {
+		this.client = client;
+		this.backoff = backoff;
+		executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "client-connect");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setKeepAliveTime(IDLE_THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Tries once to connect to the server, on the background thread.
+	 *
+	 * @return completed with true if the server accepted the client
+	 */
+	public CompletableFuture<Boolean> connect() {
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		maxAttempts = 1;
+		attempt = 1;
+		executor.execute(() -> tryToConnect(result));
+		return result;
+	}
+
+	/**
+	 * Tries to connect to the server again after the connection was lost, waiting before each try.
+	 *
+	 * @param tries
+	 *            number of tries before giving up
+	 * @return completed with true if one of the tries succeeded, or false if all of them failed
+	 */
+	public CompletableFuture<Boolean> reconnect(int tries) {
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		maxAttempts = tries;
+		attempt = 0;
+		scheduleNextTry(result);
+		return result;
+	}
+
+	/**
+	 * Waits before the next try, as long as the backoff gives for it.
+	 */
+	private void scheduleNextTry(CompletableFuture<Boolean> result) {
+		attempt++;
+		nextDelayMs = backoff.getDelayMs(attempt);
+		setState(State.WAITING_TO_RETRY);
+		executor.schedule(() -> tryToConnect(result), nextDelayMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Connects the client and completes the result, or schedules the next try if there are tries left.
+	 */
+	private void tryToConnect(CompletableFuture<Boolean> result) {
+		setState(State.CONNECTING);
+		boolean connected = false;
+		try {
+			connected = client.connectToServer();
+		} catch (InterruptedException e) {
+			System.out.println(e);
+			System.out.println("Thread interrupted while trying to connect to server.");
+			Thread.currentThread().interrupt();
+		}
+		if (connected) {
+			client.getSender().resume();
+			setState(State.CONNECTED);
+			result.complete(true);
+		} else if (attempt < maxAttempts && !Thread.currentThread().isInterrupted()) {
+			scheduleNextTry(result);
+		} else {
+			setState(State.FAILED);
+			result.complete(false);
+		}
+	}
+
+	private void setState(State newState) {
+		state = newState;
+		stateListener.accept(newState);
+	}
+
+	/**
+	 * Sets the listener of the connection state changes. It is called on the background thread.
+	 *
+	 * @param stateListener
+	 *            of the state changes
+	 */
+	public void setStateListener(Consumer<State> stateListener) {
+		this.stateListener = stateListener;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public int getAttempt() {
+		return attempt;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getNextDelayMs() {
+		return nextDelayMs;
+	}
+}
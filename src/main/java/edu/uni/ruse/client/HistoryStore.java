@@ -0,0 +1,237 @@
+package edu.uni.ruse.client;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * HistoryStore class, that keeps the last messages received from a room of a server in a local file, so the client can
+ * show them right after it starts, and asks the server only for the messages it has not received yet. Only messages
+ * kept in the chat history of the server are stored, in the order of their sequence numbers. Each message is appended
+ * to the file as its sequence number, color and text, and the file is rewritten with the newest messages when it
+ * holds twice as many as the store keeps.
+ *
+ * @author Alexander Andreev
+ */
+public class HistoryStore implements Closeable {
+
+	public static final int DEFAULT_CAPACITY = 500;
+	public static final String DEFAULT_ROOM = "general";
+	private static final String FILE_EXTENSION = ".history";
+	private final RandomAccessFile file;
+	private final FileLock lock;
+	private final int capacity;
+	private final Deque<ReceivedMessage> messages = new ArrayDeque<>();
+	private int messagesInFile;
+
+	/**
+	 * Constructor that reads the messages stored in a file. A message that was not completely written, for example
+	 * because the client was stopped, is removed from the file.
+	 *
+	 * @param path
+	 *            of the file
+	 * @param capacity
+	 *            number of newest messages that are kept
+	 * @throws IOException
+	 *             if the file cannot be read, or is used by another client
+	 */
+	public HistoryStore(Path path, int capacity) throws IOException {
+		this.capacity = capacity;
+		file = new RandomAccessFile(path.toFile(), "rw");
+		lock = file.getChannel().tryLock();
+		if (lock == null) {
+			file.close();
+			throw new IOException("History file " + path + " is used by another client.");
+		}
+		readMessages();
+	}
+
+	/**
+	 * Opens the store of a room of a server, in a file of the given directory.
+	 *
+	 * @param directory
+	 *            of the history files
+	 * @param serverAddress
+	 *            of the server
+	 * @param serverPort
+	 *            of the server
+	 * @param room
+	 *            of the stored messages
+	 * @return the opened store
+	 * @throws IOException
+	 *             if the file cannot be read, or is used by another client
+	 */
+	public static HistoryStore open(Path directory, String serverAddress, int serverPort, String room)
+			throws IOException {
+		Files.createDirectories(directory);
+		String fileName = (serverAddress + "_" + serverPort + "_" + room).replaceAll("[^A-Za-z0-9._-]", "_");
+		return new HistoryStore(directory.resolve(fileName + FILE_EXTENSION), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Reads the stored messages and keeps the newest of them. The file holds at most twice the capacity of the store,
+	 * so it is read at once.
+	 */
+	private void readMessages() throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		file.readFully(bytes);
+		ByteArrayInputStream stored = new ByteArrayInputStream(bytes);
+		DataInputStream in = new DataInputStream(stored);
+		int validLength = 0;
+		try {
+			while (stored.available() > 0) {
+				long sequence = in.readLong();
+				Color color = new Color(in.readInt(), true);
+				String text = in.readUTF();
+				keep(new ReceivedMessage(text, color, sequence));
+				messagesInFile++;
+				validLength = bytes.length - stored.available();
+			}
+		} catch (EOFException e) {
+			System.out.println("Incomplete message removed from the end of the history file.");
+			file.setLength(validLength);
+		}
+	}
+
+	/**
+	 * Stores a message, if it is newer than the stored ones.
+	 *
+	 * @param message
+	 *            with its sequence number
+	 * @throws IOException
+	 *             if the message cannot be written to the file
+	 */
+	public synchronized void append(ReceivedMessage message) throws IOException {
+		if (message.getSequence() <= getLastSequence()) {
+			return;
+		}
+		keep(message);
+		write(message);
+	}
+
+	/**
+	 * Stores a batch of past messages, which are numbered backwards from the sequence of the newest of them. Messages
+	 * that are not newer than the stored ones are left out.
+	 *
+	 * @param lines
+	 *            of the past messages, separated by new lines
+	 * @param lastSequence
+	 *            of the newest message
+	 * @param color
+	 *            of the messages
+	 * @throws IOException
+	 *             if the messages cannot be written to the file
+	 */
+	public synchronized void appendHistory(String lines, long lastSequence, Color color) throws IOException {
+		if (lines.isEmpty() || lastSequence < 0) {
+			return;
+		}
+		String[] split = lines.split("\n");
+		for (int i = 0; i < split.length; i++) {
+			long sequence = lastSequence - split.length + 1 + i;
+			if (sequence > getLastSequence()) {
+				ReceivedMessage message = new ReceivedMessage(split[i], color, sequence);
+				keep(message);
+				write(message);
+			}
+		}
+	}
+
+	/**
+	 * Removes all stored messages, when the server does not have the messages that follow them.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be emptied
+	 */
+	public synchronized void clear() throws IOException {
+		messages.clear();
+		file.setLength(0);
+		messagesInFile = 0;
+	}
+
+	private void keep(ReceivedMessage message) {
+		messages.addLast(message);
+		if (messages.size() > capacity) {
+			messages.removeFirst();
+		}
+	}
+
+	/**
+	 * Appends a message to the file, or rewrites the file with the kept messages if it holds too many.
+	 */
+	private void write(ReceivedMessage message) throws IOException {
+		if (messagesInFile >= capacity * 2) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			for (ReceivedMessage kept : messages) {
+				writeRecord(out, kept);
+			}
+			file.setLength(0);
+			file.seek(0);
+			file.write(bytes.toByteArray());
+			messagesInFile = messages.size();
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeRecord(new DataOutputStream(bytes), message);
+		file.seek(file.length());
+		file.write(bytes.toByteArray());
+		messagesInFile++;
+	}
+
+	private static void writeRecord(DataOutputStream out, ReceivedMessage message) throws IOException {
+		out.writeLong(message.getSequence());
+		out.writeInt(message.getColor().getRGB());
+		out.writeUTF(message.getText());
+	}
+
+	/**
+	 * Returns the stored messages, from the oldest to the newest.
+	 *
+	 * @return copy of the stored messages
+	 */
+	public synchronized List<ReceivedMessage> getMessages() {
+		return new ArrayList<>(messages);
+	}
+
+	/**
+	 * Returns the sequence number of the oldest stored message.
+	 *
+	 * @return the sequence number, or -1 if no messages are stored
+	 */
+	public synchronized long getFirstSequence() {
+		return messages.isEmpty() ? -1 : messages.getFirst().getSequence();
+	}
+
+	/**
+	 * Returns the sequence number of the newest stored message.
+	 *
+	 * @return the sequence number, or -1 if no messages are stored
+	 */
+	public synchronized long getLastSequence() {
+		return messages.isEmpty() ? -1 : messages.getLast().getSequence();
+	}
+
+	public synchronized boolean isEmpty() {
+		return messages.isEmpty();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		lock.release();
+		file.close();
+	}
+}
@@ -0,0 +1,68 @@
+package edu.uni.ruse.client;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * MessageReader class, that reads the messages of a client's connection on a dedicated thread and passes each of them
+ * on, so the thread that displays them never waits for the network.
+ *
+ * @author Alexander Andreev
+ */
+public class MessageReader {
+
+	private final Client client;
+	private final Consumer<ReceivedMessage> consumer;
+	private final Consumer<IOException> disconnectHandler;
+	private volatile boolean running;
+
+	/**
+	 * Constructor with the client to read from and the handlers of the read messages and of a lost connection.
+	 *
+	 * @param client
+	 *            connected to the server
+	 * @param consumer
+	 *            that the read messages are passed to, on the reader thread
+	 * @param disconnectHandler
+	 *            called on the reader thread when the connection is lost, for example to reconnect the client
+	 */
+	public MessageReader(Client client, Consumer<ReceivedMessage> consumer, Consumer<IOException> disconnectHandler) {
+		this.client = client;
+		this.consumer = consumer;
+		this.disconnectHandler = disconnectHandler;
+	}
+
+	/**
+	 * Starts reading messages.
+	 */
+	public void start() {
+		running = true;
+		new Thread(this::readMessages, "client-reader").start();
+	}
+
+	/**
+	 * Stops reading messages, after the message being read.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Reads messages until the reader is stopped. When the connection is lost, the disconnect handler is called, and
+	 * reading continues afterwards.
+	 */
+	private void readMessages() {
+		while (running) {
+			try {
+				client.receiveMessage();
+				if (client.getReceivedMessage() != null) {
+					consumer.accept(new ReceivedMessage(client.getReceivedMessage(), client.getCurrentColor()));
+				}
+			} catch (IOException e) {
+				if (running) {
+					disconnectHandler.accept(e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package edu.uni.ruse.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import edu.uni.ruse.utilities.Histogram;
+
+/**
+ * MessageSender class, that sends the messages of a client from a queue on a dedicated writer thread, so the thread
+ * that queues them never waits for the network. All messages waiting in the queue are written together, with one
+ * flush of the connection's stream. The queue has a limited capacity, and the number of messages that are not sent yet
+ * is passed to a listener whenever it changes. A batch that cannot be written is kept and written again once the
+ * connection is restored.
+ *
+ * @author Alexander Andreev
+ */
+public class MessageSender {
+
+	public static final int DEFAULT_CAPACITY = 1000;
+	private final Client client;
+	private final BlockingQueue<String> pendingMessages;
+	private final AtomicInteger unsentMessages = new AtomicInteger();
+	private final Histogram batchSize = new Histogram("client.sendBatch", "messages");
+	private volatile IntConsumer pendingListener = count -> {
+	};
+	private volatile boolean running;
+	private long reconnects;
+
+	/**
+	 * Constructor with the client whose connection the messages are written to.
+	 *
+	 * @param client
+	 *            connected to the server
+	 * @param capacity
+	 *            number of messages that can wait to be sent
+	 */
+	public MessageSender(Client client, int capacity) {
+		this.client = client;
+		pendingMessages = new ArrayBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * Starts the writer thread.
+	 */
+	public void start() {
+		running = true;
+		Thread thread = new Thread(this::writeMessages, "client-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the writer thread after the batch that is being written.
+	 */
+	public void stop() {
+		running = false;
+		pendingMessages.offer("");
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the batch that could not be sent again, after the connection with the server is restored.
+	 */
+	public synchronized void resume() {
+		reconnects++;
+		notifyAll();
+	}
+
+	/**
+	 * Queues a message to be sent. Can be called from any thread and never waits.
+	 *
+	 * @param message
+	 *            to be sent
+	 * @return true if the message is queued, or false if the queue is full
+	 */
+	public boolean offer(String message) {
+		if (!pendingMessages.offer(message)) {
+			return false;
+		}
+		pendingListener.accept(unsentMessages.incrementAndGet());
+		return true;
+	}
+
+	/**
+	 * Writes the queued messages in batches until the sender is stopped.
+	 */
+	private void writeMessages() {
+		List<String> batch = new ArrayList<>();
+		while (running) {
+			try {
+				batch.add(pendingMessages.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (!running) {
+				return;
+			}
+			pendingMessages.drainTo(batch);
+			if (!writeBatch(batch)) {
+				System.out.println("Messages not sent to server: " + batch);
+				return;
+			}
+			batchSize.record(batch.size());
+			int unsent = unsentMessages.addAndGet(-batch.size());
+			batch.clear();
+			pendingListener.accept(unsent);
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes a batch, waiting for the connection to be restored and writing it again each time it fails.
+	 *
+	 * @return true if the batch is written, or false if the sender is stopped first
+	 */
+	private boolean writeBatch(List<String> batch) {
+		while (true) {
+			long connection;
+			synchronized (this) {
+				connection = reconnects;
+			}
+			try {
+				client.writeMessages(batch);
+				return true;
+			} catch (IOException e) {
+				System.out.println(e);
+				System.out.println("I/O exception while trying to send " + batch.size()
+						+ " messages to server, they will be sent again after reconnecting.");
+			}
+			try {
+				synchronized (this) {
+					while (reconnects == connection && running) {
+						wait();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			if (!running) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Waits until all queued messages are written, for example before the client exits.
+	 *
+	 * @param timeoutMs
+	 *            longest time to wait in milliseconds
+	 * @return true if all messages are written
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public synchronized boolean awaitSent(long timeoutMs) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		while (unsentMessages.get() > 0) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the listener of the number of messages that are not sent yet. It is called on the thread that queues a
+	 * message and on the writer thread.
+	 *
+	 * @param pendingListener
+	 *            of the number of unsent messages
+	 */
+	public void setPendingListener(IntConsumer pendingListener) {
+		this.pendingListener = pendingListener;
+	}
+
+	public int getUnsentMessages() {
+		return unsentMessages.get();
+	}
+
+	public Histogram getBatchSize() {
+		return batchSize;
+	}
+}
@@ -0,0 +1,61 @@
+package edu.uni.ruse.client;
+
+import java.awt.Color;
+
+/**
+ * ReceivedMessage class, holding a message received from the server, without its color code, and the color it is
+ * displayed in. Messages kept in the chat history of the server also hold their sequence number in it.
+ *
+ * @author Alexander Andreev
+ */
+public class ReceivedMessage {
+
+	private final String text;
+	private final Color color;
+	private final long sequence;
+
+	/**
+	 * Constructor with the text and color of a message that is not kept in the chat history.
+	 *
+	 * @param text
+	 *            of the message, without the color code
+	 * @param color
+	 *            of the message
+	 */
+	public ReceivedMessage(String text, Color color) {
+		this(text, color, -1);
+	}
+
+	/**
+	 * Constructor with the text, color and sequence number of the message.
+	 *
+	 * @param text
+	 *            of the message, without the color code
+	 * @param color
+	 *            of the message
+	 * @param sequence
+	 *            of the message in the chat history of the server, or -1 if it is not kept there
+	 */
+	public ReceivedMessage(String text, Color color, long sequence) {
+		this.text = text;
+		this.color = color;
+		this.sequence = sequence;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,54 @@
+package edu.uni.ruse.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ReconnectBackoff class, that gives the time to wait before each try to connect to a server. The time doubles with
+ * every try up to a limit, and a random part of it is left out, so clients that lost the same server do not all try
+ * to connect again at the same moment.
+ *
+ * @author Alexander Andreev
+ */
+public class ReconnectBackoff {
+
+	private final long baseDelayMs;
+	private final long maxDelayMs;
+
+	/**
+	 * Constructor with the wait before the first try and the longest wait.
+	 *
+	 * @param baseDelayMs
+	 *            longest wait before the first try, in milliseconds
+	 * @param maxDelayMs
+	 *            longest wait before any try, in milliseconds
+	 */
+	public ReconnectBackoff(long baseDelayMs, long maxDelayMs) {
+		this.baseDelayMs = baseDelayMs;
+		this.maxDelayMs = maxDelayMs;
+	}
+
+	/**
+	 * Returns the time to wait before a try, chosen at random between half of the exponential delay and the whole of
+	 * it.
+	 *
+	 * @param attempt
+	 *            number of the try, starting from 1
+	 * @return the time to wait in milliseconds
+	 */
+	public long getDelayMs(int attempt) {
+		long delay = getMaxDelayMs(attempt);
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	/**
+	 * Returns the exponential delay of a try, before the random part is left out.
+	 *
+	 * @param attempt
+	 *            number of the try, starting from 1
+	 * @return the longest time to wait in milliseconds
+	 */
+	public long getMaxDelayMs(int attempt) {
+		int doublings = Math.min(Math.max(attempt - 1, 0), 30);
+		return Math.min(maxDelayMs, baseDelayMs << doublings);
+	}
+}
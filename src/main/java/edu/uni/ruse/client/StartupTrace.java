@@ -0,0 +1,53 @@
+package edu.uni.ruse.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StartupTrace class, that records when the steps of the client's start are reached, measured from the start of the
+ * virtual machine, and logs each of them. Only the first time a step is reached is recorded, so the trace shows the
+ * cold start of the client and not the later reconnects.
+ *
+ * @author Alexander Andreev
+ */
+public final class StartupTrace {
+
+	public static final String LOGIN_WINDOW_SHOWN = "login window shown";
+	public static final String CLIENT_FRAME_BUILT = "client frame built";
+	public static final String CONNECTED = "connected";
+	public static final String FIRST_MESSAGE_SHOWN = "first message shown";
+	private static final Map<String, Long> MARKS = new LinkedHashMap<>();
+
+	private StartupTrace() {
+	}
+
+	/**
+	 * Records that a step of the start is reached, if it was not reached before.
+	 *
+	 * @param step
+	 *            of the start
+	 */
+	public static void mark(String step) {
+		long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+		synchronized (MARKS) {
+			if (MARKS.putIfAbsent(step, uptimeMs) != null) {
+				return;
+			}
+		}
+		System.out.println("Startup: " + step + " " + uptimeMs + " ms after start.");
+	}
+
+	/**
+	 * Returns the time when a step of the start was reached.
+	 *
+	 * @param step
+	 *            of the start
+	 * @return milliseconds from the start of the virtual machine, or -1 if the step was not reached
+	 */
+	public static long getMark(String step) {
+		synchronized (MARKS) {
+			return MARKS.getOrDefault(step, -1L);
+		}
+	}
+}
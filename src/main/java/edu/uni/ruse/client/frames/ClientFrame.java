@@ -3,20 +3,34 @@ package edu.uni.ruse.client.frames;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.*;
 
 import edu.uni.ruse.utilities.BilingualMessages;
+import edu.uni.ruse.client.ChatEventDispatcher;
+import edu.uni.ruse.client.ChatListener;
 import edu.uni.ruse.client.Client;
+import edu.uni.ruse.client.ConnectionManager;
+import edu.uni.ruse.client.HistoryStore;
+import edu.uni.ruse.client.MessageReader;
+import edu.uni.ruse.client.ReceivedMessage;
+import edu.uni.ruse.client.StartupTrace;
 import edu.uni.ruse.utilities.CodeMessages;
 import edu.uni.ruse.utilities.InterfaceLang;
-import edu.uni.ruse.utilities.MessagesManager;
+import edu.uni.ruse.utilities.MessageColor;
 
 
 /**
@@ -28,38 +42,98 @@ public class ClientFrame extends JFrame {
 
 	private static final long serialVersionUID = -8613537186396001161L;
 	private static final int MESSAGE_MAX_LENGHT = 200;
-	public static final int SERVER_RECONNECT_INTERVAL_MS = 10000;
-	public static final int SERVER_RECONNECT_TRIES = 4;
-	private static List<String> users;
+	public static final int SERVER_RECONNECT_TRIES = 6;
+	public static final int FIRST_SCREEN_TARGET_MS = 500;
+	private static final int EXIT_SEND_TIMEOUT_MS = 1000;
 	private Client client;
 	private JScrollPane messagesScrollPane;
 	private JTextPane messagesArea;
-	private JTextArea usersTextArea;
+	private JList<String> usersList;
+	private transient OnlineUsersModel usersModel;
+	private JTextField usersFilterField;
 	private JPanel messagesPanel;
 	private JPanel rightPanel;
 	private JPanel settingsPanel;
 	private JTextField messageField;
 	private JLabel charCountLabel;
+	private JLabel pendingMessagesLabel;
 	private JButton langButton;
 	private JLabel usersOnlineLabel;
 	private JButton sendButton;
 	private JButton disconnectButton;
 	private SimpleAttributeSet textStyle;
+	private Map<Color, AttributeSet> colorStyles;
+	private transient MessageRenderer messageRenderer;
+	private transient MessageReader messageReader;
+	private transient ConnectionManager connectionManager;
+	private final transient ChatListener chatListener = new ChatEventsListener();
+	private final transient ExecutorService storeWriter = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "history-store");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private boolean restoringLines;
+	private boolean firstMessageShown;
 
 	/**
 	 * Constructor of ClientFrame that creates a LoginFrame to get a valid user, and arranges the elements of the
-	 * client.
+	 * client. The elements are arranged while the user logs in and the client connects, and the frame is shown once
+	 * the server accepts the client.
 	 */
 	public ClientFrame() {
+		InterfaceLang.preloadFlags();
+		new LoginFrame(this);
+		initializeFrameComponents();
+		StartupTrace.mark(StartupTrace.CLIENT_FRAME_BUILT);
 		try {
-			logInToServer();
+			waitForLogIn();
 		} catch (InterruptedException e) {
 			System.out.println(e);
 			System.out.println("Thread interrupted while waiting for the client to log in.");
 			Thread.currentThread().interrupt();
 		}
-		users = new ArrayList<>();
-		initializeFrameComponents();
+		connectionManager = new ConnectionManager(client);
+		connectionManager.setStateListener(this::showConnectionState);
+		showFrameOfClient();
+		client.getSender().setPendingListener(this::showPendingMessages);
+		SwingUtilities.invokeLater(this::showStoredMessages);
+	}
+
+	/**
+	 * Shows the frame with the name of the logged in client.
+	 */
+	private void showFrameOfClient() {
+		this.setTitle("ChatApp: " + client.getName());
+		usersModel.setOwnName(client.getName());
+		this.setVisible(true);
+	}
+
+	/**
+	 * Records the time when the first message is displayed, as a step of the start of the client.
+	 */
+	private void markFirstMessageShown() {
+		if (!firstMessageShown) {
+			firstMessageShown = true;
+			StartupTrace.mark(StartupTrace.FIRST_MESSAGE_SHOWN);
+		}
+	}
+
+	/**
+	 * Displays the messages stored from the previous runs of the client, before the messages from the server are
+	 * read, so the user sees the conversation as soon as the frame is shown.
+	 */
+	private void showStoredMessages() {
+		HistoryStore historyStore = client.getHistoryStore();
+		if (historyStore == null || historyStore.isEmpty()) {
+			return;
+		}
+		List<ReceivedMessage> storedMessages = historyStore.getMessages();
+		markFirstMessageShown();
+		for (ReceivedMessage stored : storedMessages) {
+			messageRenderer.append(stored.getText() + System.lineSeparator(), getTextStyle(stored.getColor()));
+		}
+		System.out.println(storedMessages.size() + " stored messages shown "
+				+ (System.nanoTime() - client.getConnectStartNanos()) / 1_000_000 + " ms after connecting.");
 	}
 
 	/**
@@ -71,98 +145,268 @@ public class ClientFrame extends JFrame {
 	public static void main(String[] args) {
 		ClientFrame clientFrame = new ClientFrame();
 		System.out.println("Starting client frame with client: " + clientFrame.client.getName());
-		clientFrame.reVisualiseOnlineUsers();
-		while (true) {
-			try {
-				clientFrame.client.receiveMessage();
-				if (clientFrame.client.getReceivedMessage() != null) {
-					processReceivedMessage(clientFrame);
+		clientFrame.startReceivingMessages();
+	}
+
+	/**
+	 * Starts reading the messages from the server on a reader thread and displaying them on the event dispatch
+	 * thread, once per frame tick.
+	 */
+	private void startReceivingMessages() {
+		messageRenderer.start();
+		messageReader = new MessageReader(client, messageRenderer::enqueue, chatListener::onDisconnected);
+		messageReader.start();
+	}
+
+	/**
+	 * Tells the user that the connection with the server is lost and tries to reconnect. Called on the reader thread.
+	 * 
+	 * @param e
+	 *            exception that ended the connection
+	 */
+	private void handleLostConnection(IOException e) {
+		System.out.println(e);
+		System.out.println("Disconnected from server, trying to reconnect..");
+		displaySystemMessageBilingual(BilingualMessages.LOST_CONNECTION);
+		tryToReconnect();
+	}
+
+	/**
+	 * ChatEventsListener class, that displays the events of the chat session in the client frame. Called on the event
+	 * dispatch thread by the message renderer, except for the lost connection, which is reported by the reader thread.
+	 */
+	private class ChatEventsListener implements ChatListener {
+
+		@Override
+		public void onMessage(ReceivedMessage received) {
+			markFirstMessageShown();
+			messageRenderer.append(received.getText() + System.lineSeparator(), getTextStyle(received.getColor()));
+			if (received.getSequence() != -1) {
+				storeMessages(historyStore -> historyStore.append(received));
+			}
+		}
+
+		@Override
+		public void onHistory(CodeMessages kind, String lines, long lastSequence) {
+			if (kind == CodeMessages.SCROLLBACK) {
+				storeMessages(historyStore -> {
+					historyStore.clear();
+					historyStore.appendHistory(lines, lastSequence, MessageColor.GRAY.getColor());
+				});
+			} else if (kind == CodeMessages.HISTORY_TAIL) {
+				storeMessages(historyStore -> historyStore.appendHistory(lines, lastSequence,
+						MessageColor.GRAY.getColor()));
+			}
+			if (lines.isEmpty()) {
+				return;
+			}
+			displayHistory(lines, kind == CodeMessages.HISTORY_PAGE);
+			if (kind == CodeMessages.SCROLLBACK || kind == CodeMessages.HISTORY_TAIL) {
+				long firstScreenMs = (System.nanoTime() - client.getConnectStartNanos()) / 1_000_000;
+				System.out.println("Time to first full screen: " + firstScreenMs + " ms");
+				if (firstScreenMs > FIRST_SCREEN_TARGET_MS) {
+					System.out.println("Time to first full screen is over the target of " + FIRST_SCREEN_TARGET_MS + " ms");
 				}
-			} catch (IOException e) {
-				System.out.println(e);
-				System.out.println("Disconnected from server, trying to reconnect..");
-				clientFrame.displaySystemMessageBilingual(BilingualMessages.LOST_CONNECTION);
-				clientFrame.tryToReconnect();
 			}
 		}
+
+		@Override
+		public void onUserJoined(String name) {
+			if (!name.equals(client.getName())) {
+				System.out.println("Adding user '" + name + "' to list of online users");
+				usersModel.queueAdd(name);
+			}
+		}
+
+		@Override
+		public void onUserLeft(String name) {
+			usersModel.queueRemove(name);
+			System.out.println("Removing user '" + name + "' to list of online users");
+		}
+
+		@Override
+		public void onRenamed(String newName) {
+			client.setName(newName);
+			usersModel.setOwnName(newName);
+			setTitle("ChatApp: " + newName);
+		}
+
+		@Override
+		public void onDisconnected(IOException cause) {
+			handleLostConnection(cause);
+		}
 	}
 
 	/**
-	 * Processes a message received from the server.
+	 * StoreUpdate interface, a change of the history store that can fail with an I/O exception.
+	 */
+	private interface StoreUpdate {
+		void apply(HistoryStore historyStore) throws IOException;
+	}
+
+	/**
+	 * Changes the store of the received messages, if the client has one. The change is written by the store writer
+	 * thread, in the order the changes were made, so the file is not written on the event dispatch thread.
 	 * 
-	 * @param clientFrame
-	 */
-	private static void processReceivedMessage(ClientFrame clientFrame) {
-		String message = MessagesManager.removeColorCodeFromMessage(clientFrame.client.getReceivedMessage());
-		if (clientFrame.receivedMessageIsToAddUser()) {
-			String userToAdd = message.substring(CodeMessages.ADDUSER.getMessage().length());
-			if (!userToAdd.equals(clientFrame.client.getName())) {
-				System.out.println("Adding user '" + userToAdd + "' to list of online users");
-				users.add(userToAdd);
-				clientFrame.reVisualiseOnlineUsers();
-			}
-		} else if (clientFrame.receivedMessageIsToRenameUser()) {
-			String newName = message.substring(message.toLowerCase().indexOf(CodeMessages.CHANGE_USERNAME.getMessage()) +
-					CodeMessages.CHANGE_USERNAME.getMessage().length());
-			clientFrame.client.setName(newName);
-			clientFrame.setTitle("ChatApp: " + newName);
-		} else if (clientFrame.receivedMessageIsToRemoveUser()) {
-			String userToRemove = message.substring(CodeMessages.REMOVEUSER.getMessage().length());
-			users.remove(userToRemove);
-			System.out.println("Removing user '" + userToRemove + "' to list of online users");
-			clientFrame.reVisualiseOnlineUsers();
-		} else {
-			StyledDocument doc = clientFrame.messagesArea.getStyledDocument();
+	 * @param update
+	 *            of the store
+	 */
+	private void storeMessages(StoreUpdate update) {
+		HistoryStore historyStore = client.getHistoryStore();
+		if (historyStore == null) {
+			return;
+		}
+		storeWriter.execute(() -> {
 			try {
-				clientFrame.textStyle.addAttribute(StyleConstants.Foreground, clientFrame.client.getCurrentColor());
-				doc.insertString(doc.getLength(), clientFrame.client.getReceivedMessage() + System.lineSeparator(), clientFrame.textStyle);
-				clientFrame.textStyle.removeAttribute(StyleConstants.Foreground);
-			} catch (BadLocationException e) {
+				update.apply(historyStore);
+			} catch (IOException e) {
 				System.out.println(e);
+				System.out.println("I/O Exception while storing received messages.");
 			}
-			clientFrame.messagesScrollPane.getVerticalScrollBar()
-					.setValue(clientFrame.messagesScrollPane.getVerticalScrollBar().getMaximum());
+		});
+	}
+
+	/**
+	 * Exits the client after the received messages are stored, logging the connect time percentiles of the session.
+	 */
+	private void exitClient() {
+		finishStoringMessages();
+		System.out.println(Client.getConnectTime());
+		System.exit(0);
+	}
+
+	/**
+	 * Waits for the received messages to be written to the store, before the client exits.
+	 */
+	private void finishStoringMessages() {
+		storeWriter.shutdown();
+		try {
+			storeWriter.awaitTermination(EXIT_SEND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			System.out.println(e);
+			System.out.println("Thread interrupted while waiting for the received messages to be stored.");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Displays a batch of past messages with a single document update.
+	 * 
+	 * @param lines
+	 *            of the past messages, separated by new lines
+	 * @param olderThanDisplayed
+	 *            true if the messages are older than the displayed ones and have to be added on top
+	 */
+	private void displayHistory(String lines, boolean olderThanDisplayed) {
+		markFirstMessageShown();
+		String text = lines.replace("\n", System.lineSeparator()) + System.lineSeparator();
+		if (olderThanDisplayed) {
+			messageRenderer.prepend(text, MessageColor.GRAY.getColor());
+		} else {
+			messageRenderer.append(text, getTextStyle(MessageColor.GRAY.getColor()));
 		}
 	}
 
 	/**
-	 * Logs in to the server using the LoginFrame class.
+	 * Displays again the cached lines before the oldest displayed one, when the messages are scrolled to the top. The
+	 * view is kept on the line that was at the top, so the user can continue scrolling up.
+	 * 
+	 * @param e
+	 *            adjustment of the messages scroll bar
+	 */
+	private void restoreLinesAtTop(AdjustmentEvent e) {
+		JScrollBar scrollBar = messagesScrollPane.getVerticalScrollBar();
+		if (restoringLines || e.getValue() != scrollBar.getMinimum()
+				|| scrollBar.getMaximum() - scrollBar.getMinimum() <= scrollBar.getVisibleAmount()) {
+			return;
+		}
+		int restoredLength = messageRenderer.restoreOlderLines();
+		if (restoredLength > 0) {
+			restoringLines = true;
+			SwingUtilities.invokeLater(() -> {
+				try {
+					// modelToView2D is not available on source level 8
+					@SuppressWarnings("deprecation")
+					Rectangle previousTop = messagesArea.modelToView(restoredLength);
+					if (previousTop != null) {
+						scrollBar.setValue(previousTop.y);
+					}
+				} catch (BadLocationException ex) {
+					System.out.println(ex);
+				}
+				restoringLines = false;
+			});
+		}
+	}
+
+	/**
+	 * Returns the pre-built text style for messages in a specific color. Styles for colors outside of the palette are
+	 * built on first use and reused afterwards.
+	 * 
+	 * @param color
+	 *            of the message
+	 * @return text style with that foreground color
+	 */
+	private AttributeSet getTextStyle(Color color) {
+		AttributeSet style = colorStyles.get(color);
+		if (style == null) {
+			style = createTextStyle(color);
+			colorStyles.put(color, style);
+		}
+		return style;
+	}
+
+	/**
+	 * Creates an immutable text style with a specific foreground color.
+	 * 
+	 * @param color
+	 *            of the text
+	 * @return the created style
+	 */
+	private AttributeSet createTextStyle(Color color) {
+		SimpleAttributeSet style = new SimpleAttributeSet(textStyle);
+		StyleConstants.setForeground(style, color);
+		return style.copyAttributes();
+	}
+
+	/**
+	 * Waits until the user logs in to the server using the LoginFrame class.
 	 * 
 	 * @throws InterruptedException
 	 */
-	private void logInToServer() throws InterruptedException {
-		new LoginFrame(this);
+	private void waitForLogIn() throws InterruptedException {
 		while (client == null) {
 			Thread.sleep(150);
 		}
 	}
 
 	/**
-	 * Makes specified number of tries to reconnect to the server between specified intervals.
+	 * Makes specified number of tries to reconnect to the server, waiting longer and a random part less before each
+	 * one. Waits on the reader thread until the server is reconnected or all tries have failed.
 	 */
 	private void tryToReconnect() {
 		System.out.println("Lost connection with server, trying to reconnect.");
-		boolean recconnectSuccessful = false;
-		int numberOfReconnectTries = 0;
-		while (numberOfReconnectTries < SERVER_RECONNECT_TRIES && !recconnectSuccessful) {
-			try {
-				numberOfReconnectTries++;
-				displaySystemMessageBilingual(BilingualMessages.TRY_TO_RECONNECT,
-						"(" + numberOfReconnectTries + "/" + SERVER_RECONNECT_TRIES + ")..");
-				Thread.sleep(SERVER_RECONNECT_INTERVAL_MS);
-				recconnectSuccessful = client.connectToServer();
-			} catch (InterruptedException e1) {
-				System.out.println(e1);
-				System.out.println("Thread interrupted while trying to reconnect.");
-				Thread.currentThread().interrupt();
-			}
-		}
+		boolean recconnectSuccessful = connectionManager.reconnect(SERVER_RECONNECT_TRIES).join();
 		if (recconnectSuccessful) {
 			displaySystemMessageBilingual(BilingualMessages.SUCCESSFUL_RECONNECT);
 		} else {
 			displaySystemMessageBilingual(BilingualMessages.UNSUCCESSFUL_RECONNECT);
 			System.out.println("Server disconnected while trying to read messages.");
-			System.exit(0);
+			exitClient();
+		}
+	}
+
+	/**
+	 * Tells the user about the next try to reconnect to the server.
+	 * 
+	 * @param state
+	 *            of the connection with the server
+	 */
+	private void showConnectionState(ConnectionManager.State state) {
+		if (state == ConnectionManager.State.WAITING_TO_RETRY) {
+			System.out.println("Trying to reconnect in " + connectionManager.getNextDelayMs() + " ms.");
+			displaySystemMessageBilingual(BilingualMessages.TRY_TO_RECONNECT,
+					"(" + connectionManager.getAttempt() + "/" + connectionManager.getMaxAttempts() + ")..");
 		}
 	}
 
@@ -186,30 +430,37 @@ public class ClientFrame extends JFrame {
 	 *            to be appended to the bilingual message
 	 */
 	private void displaySystemMessageBilingual(BilingualMessages message, String postfix) {
-		StyledDocument doc = messagesArea.getStyledDocument();
-		try {
-			if (client.getLanguage() == InterfaceLang.EN) {
-				doc.insertString(doc.getLength(), message.inEnglish() + postfix + System.lineSeparator(), textStyle);
-			} else if (client.getLanguage() == InterfaceLang.BG) {
-				doc.insertString(doc.getLength(), message.inBulgarian() + postfix + System.lineSeparator(), textStyle);
-			}
-		} catch (BadLocationException e) {
-			System.out.println(e);
-		}
+		String text = message.inSpecificLang(client.getLanguage()) + postfix + System.lineSeparator();
+		SwingUtilities.invokeLater(() -> messageRenderer.append(text, textStyle));
 	}
 
 	/**
-	 * Sends a message to the server via the connection's output stream.
+	 * Queues a message to be sent to the server by the client's message sender. If too many messages are waiting to
+	 * be sent, the message stays in the message field.
 	 */
 	public void sendMessageToServer() {
 		String messageToSend = messageField.getText().trim();
 		if (messageToSend.length() > 0) {
 			messageToSend = messageToSend.substring(0, 1).toUpperCase() + messageToSend.substring(1);
-			client.sendMessage(client.getName() + ": " + messageToSend);
-			messageField.setText("");
+			if (client.queueMessage(client.getName() + ": " + messageToSend)) {
+				messageField.setText("");
+			} else {
+				displaySystemMessageBilingual(BilingualMessages.SEND_QUEUE_FULL);
+			}
 		}
 	}
 
+	/**
+	 * Shows the number of messages that are waiting to be sent, or nothing if all are sent.
+	 * 
+	 * @param unsentMessages
+	 *            number of messages waiting to be sent
+	 */
+	private void showPendingMessages(int unsentMessages) {
+		SwingUtilities.invokeLater(() -> pendingMessagesLabel.setText(unsentMessages == 0 ? " "
+				: BilingualMessages.PENDING_MESSAGES.inSpecificLang(client.getLanguage()) + unsentMessages));
+	}
+
 	/**
 	 * Shows a option pane, asking for confirmation to close the client.
 	 */
@@ -224,42 +475,15 @@ public class ClientFrame extends JFrame {
 		}
 		if (chosedOption == JOptionPane.YES_OPTION) {
 			displaySystemMessageBilingual(BilingualMessages.DISCONNECTING);
-			client.sendMessage(CodeMessages.REMOVEUSER.getMessage() + client.getName());
-			System.exit(0);
-		}
-	}
-
-	/**
-	 * Returns if the last received message is to remove user.
-	 * 
-	 * @return true if the message is telling to remove a specific user.
-	 */
-	private boolean receivedMessageIsToRemoveUser() {
-		return client.getReceivedMessage().startsWith(CodeMessages.REMOVEUSER.getMessage());
-	}
-
-	private boolean receivedMessageIsToRenameUser() {
-		String message = client.getReceivedMessage();
-		return message.startsWith(CodeMessages.CHANGE_USERNAME.getMessage());
-	}
-
-	/**
-	 * Returns if the last received message is to add user.
-	 * 
-	 * @return true if the message is telling to add a specific user.
-	 */
-	private boolean receivedMessageIsToAddUser() {
-		return client.getReceivedMessage().startsWith(CodeMessages.ADDUSER.getMessage());
-	}
-
-	/**
-	 * Updates the users text area with the clien's user list.
-	 */
-	public void reVisualiseOnlineUsers() {
-		usersTextArea.setText("");
-		usersTextArea.append(client.getName() + System.lineSeparator());
-		for (String user : users) {
-			usersTextArea.append(user + System.lineSeparator());
+			client.queueMessage(CodeMessages.REMOVEUSER.getMessage() + client.getName());
+			try {
+				client.getSender().awaitSent(EXIT_SEND_TIMEOUT_MS);
+			} catch (InterruptedException e) {
+				System.out.println(e);
+				System.out.println("Thread interrupted while waiting for the messages to be sent.");
+				Thread.currentThread().interrupt();
+			}
+			exitClient();
 		}
 	}
 
@@ -276,8 +500,6 @@ public class ClientFrame extends JFrame {
 		initializeSettingsPanel();
 
 		rightPanel.add(settingsPanel, BorderLayout.PAGE_END);
-
-		this.setVisible(true);
 	}
 
 	/**
@@ -285,7 +507,7 @@ public class ClientFrame extends JFrame {
 	 */
 	private void setupMainFrame() {
 		this.setSize(800, 600);
-		this.setTitle("ChatApp: " + client.getName());
+		this.setTitle("ChatApp");
 		setLocationOnCenter();
 		this.setResizable(true);
 		this.setMinimumSize(new Dimension(600, 400));
@@ -321,6 +543,10 @@ public class ClientFrame extends JFrame {
 		messagesArea.setSize(350, 350);
 
 		textStyle = new SimpleAttributeSet();
+		colorStyles = new HashMap<>();
+		for (MessageColor paletteColor : MessageColor.values()) {
+			colorStyles.put(paletteColor.getColor(), createTextStyle(paletteColor.getColor()));
+		}
 		//messagesArea.setLineWrap(true);
 		messagesArea.setEditable(false);
 		messagesArea.setVisible(true);
@@ -328,6 +554,16 @@ public class ClientFrame extends JFrame {
 		messagesScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
 		messagesScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
 		messagesPanel.add(messagesScrollPane, BorderLayout.CENTER);
+		MessageCache messageCache = null;
+		try {
+			messageCache = MessageCache.createTemporary();
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("Message cache could not be created. Old messages will not be displayed again.");
+		}
+		messageRenderer = new MessageRenderer(messagesArea.getStyledDocument(), messagesScrollPane.getVerticalScrollBar(),
+				new ChatEventDispatcher(chatListener), this::getTextStyle, messageCache);
+		messagesScrollPane.getVerticalScrollBar().addAdjustmentListener(this::restoreLinesAtTop);
 
 		ChartypeListener chartypeListener = new ChartypeListener();
 		messageField = new JTextField();
@@ -345,19 +581,20 @@ public class ClientFrame extends JFrame {
 		BorderLayout rightPanelLayout = new BorderLayout();
 		rightPanel = new JPanel(rightPanelLayout);
 
-		usersOnlineLabel = new JLabel(BilingualMessages.USERS_ONLINE.inSpecificLang(client.getLanguage()));
-		rightPanel.add(usersOnlineLabel, BorderLayout.NORTH);
-		usersTextArea = new JTextArea(13, 30);
-		usersTextArea.setSize(350, messageField.getY() * 2);
-		usersTextArea.setLineWrap(true);
-		usersTextArea.setEditable(false);
-		usersTextArea.setVisible(true);
-		JScrollPane usersScrollPane = new JScrollPane(usersTextArea);
+		JPanel usersHeaderPanel = new JPanel(new BorderLayout());
+		usersOnlineLabel = new JLabel(BilingualMessages.USERS_ONLINE.inSpecificLang(Client.DEFAULT_LANGUAGE));
+		usersHeaderPanel.add(usersOnlineLabel, BorderLayout.NORTH);
+		usersFilterField = new JTextField();
+		usersFilterField.getDocument().addDocumentListener(new UsersFilterListener());
+		usersHeaderPanel.add(usersFilterField, BorderLayout.SOUTH);
+		rightPanel.add(usersHeaderPanel, BorderLayout.NORTH);
+		usersModel = new OnlineUsersModel("");
+		usersList = new JList<>(usersModel);
+		usersList.setPrototypeCellValue("WWWWWWWWWWWWWWWWWWWW");
+		JScrollPane usersScrollPane = new JScrollPane(usersList);
 		usersScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
 		usersScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
 		usersScrollPane.setPreferredSize(new Dimension(200, 220));
-		DefaultCaret caret = (DefaultCaret) usersTextArea.getCaret();
-		caret.setUpdatePolicy(DefaultCaret.ALWAYS_UPDATE);
 		rightPanel.add(usersScrollPane, BorderLayout.CENTER);
 		this.getContentPane().add(rightPanel, BorderLayout.LINE_END);
 	}
@@ -367,12 +604,15 @@ public class ClientFrame extends JFrame {
 	 */
 	private void initializeSettingsPanel() {
 		settingsPanel = new JPanel();
-		GridLayout bottomRightPanelLayout = new GridLayout(2, 1);
+		GridLayout bottomRightPanelLayout = new GridLayout(3, 1);
 		settingsPanel.setLayout(bottomRightPanelLayout);
 		charCountLabel = new JLabel(
-				BilingualMessages.CHARS_REMAINING.inSpecificLang(client.getLanguage()) + MESSAGE_MAX_LENGHT);
+				BilingualMessages.CHARS_REMAINING.inSpecificLang(Client.DEFAULT_LANGUAGE) + MESSAGE_MAX_LENGHT);
 		charCountLabel.setHorizontalAlignment(SwingConstants.CENTER);
 		settingsPanel.add(charCountLabel);
+		pendingMessagesLabel = new JLabel(" ");
+		pendingMessagesLabel.setHorizontalAlignment(SwingConstants.CENTER);
+		settingsPanel.add(pendingMessagesLabel);
 		initializeButtonsPanel();
 		rightPanel.add(settingsPanel, BorderLayout.PAGE_END);
 	}
@@ -383,12 +623,12 @@ public class ClientFrame extends JFrame {
 	private void initializeButtonsPanel() {
 		JPanel buttonsPanel = new JPanel();
 
-		sendButton = new JButton(BilingualMessages.SEND.inSpecificLang(client.getLanguage()));
+		sendButton = new JButton(BilingualMessages.SEND.inSpecificLang(Client.DEFAULT_LANGUAGE));
 		MessageSendListener messageSendListener = new MessageSendListener();
 		sendButton.addActionListener(messageSendListener);
 		buttonsPanel.add(sendButton);
 
-		disconnectButton = new JButton(BilingualMessages.DISCONNECT.inSpecificLang(client.getLanguage()));
+		disconnectButton = new JButton(BilingualMessages.DISCONNECT.inSpecificLang(Client.DEFAULT_LANGUAGE));
 		DisconnectListener disconnectListener = new DisconnectListener();
 		disconnectButton.addActionListener(disconnectListener);
 		buttonsPanel.add(disconnectButton);
@@ -396,8 +636,7 @@ public class ClientFrame extends JFrame {
 		langButton = new JButton();
 		langButton.setMaximumSize(new Dimension(50, 50));
 		try {
-			Image img = client.getLanguage().getFlag();
-			langButton.setIcon(new ImageIcon(img));
+			langButton.setIcon(Client.DEFAULT_LANGUAGE.getFlagIcon());
 		} catch (IOException e) {
 			System.out.println(e);
 			System.out.println("Could not retrieve flag for specific language, the button will be blank");
@@ -450,7 +689,7 @@ public class ClientFrame extends JFrame {
 			} else if (client.getLanguage() == InterfaceLang.EN) {
 				client.setLanguage(InterfaceLang.BG);
 			}
-			client.sendMessage(CodeMessages.CHANGE_LANG.getMessage() + client.getName());
+			client.queueMessage(CodeMessages.CHANGE_LANG.getMessage() + client.getName());
 			reloadInterfaceWithNewLanguage();
 		}
 
@@ -465,8 +704,7 @@ public class ClientFrame extends JFrame {
 			disconnectButton.setText(BilingualMessages.DISCONNECT.inSpecificLang(client.getLanguage()));
 
 			try {
-				Image img = client.getLanguage().getFlag();
-				langButton.setIcon(new ImageIcon(img));
+				langButton.setIcon(client.getLanguage().getFlagIcon());
 			} catch (IOException e1) {
 				System.out.println(e1);
 				System.out.println("Could not load lang flag.");
@@ -487,6 +725,28 @@ public class ClientFrame extends JFrame {
 		}
 	}
 
+	/**
+	 * UsersFilterListener that shows only the online users whose name starts with the text of the filter field.
+	 * 
+	 * @author Alexander Andreev
+	 */
+	private class UsersFilterListener implements DocumentListener {
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			usersModel.setFilter(usersFilterField.getText());
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			usersModel.setFilter(usersFilterField.getText());
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	}
+
 	/**
 	 * DisconnectListener that disconnects with the server.
 	 * 
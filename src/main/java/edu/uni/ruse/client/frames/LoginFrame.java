@@ -5,8 +5,13 @@ import java.awt.FlowLayout;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -15,8 +20,12 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
 import edu.uni.ruse.client.Client;
+import edu.uni.ruse.client.ConnectionManager;
+import edu.uni.ruse.client.HistoryStore;
+import edu.uni.ruse.client.StartupTrace;
 
 
 /**
@@ -33,7 +42,8 @@ public class LoginFrame extends JFrame {
 	private static final int DEFAULT_PORT = 7000;
 	private static final int PORT_MIN = 0;
 	private static final int PORT_MAX = 65536;
-	private String defaultIpAddress;
+	private static final String HISTORY_DIRECTORY = "client-history";
+	private CompletableFuture<String> defaultIpAddress;
 	private ClientFrame parentFrame;
 	private LoginFrame thisFrame;
 	private Client client;
@@ -43,23 +53,34 @@ public class LoginFrame extends JFrame {
 	private JTextField portField;
 	private JPanel serverSetupPanel;
 	private JCheckBox serverSetupCheckBox;
+	private JButton connectionButton;
 	private Boolean accepted;
 
 	/**
-	 * Constructor of ClientFrame that creates and arranges the elements of the window.
+	 * Constructor of ClientFrame that creates and arranges the elements of the window. The address of the local host
+	 * is looked up in the background, as it can take a while and is needed only when the user connects.
 	 */
 	public LoginFrame(ClientFrame parent) {
 		this.parentFrame = parent;
+		defaultIpAddress = CompletableFuture.supplyAsync(LoginFrame::findLocalHostAddress);
+		initializeComponents();
+		thisFrame = this;
+
+	}
+
+	/**
+	 * Returns the address of the local host, used as the default address of the server.
+	 * 
+	 * @return the address, or 127.0.0.1 if it cannot be found
+	 */
+	private static String findLocalHostAddress() {
 		try {
-			defaultIpAddress = InetAddress.getLocalHost().getHostAddress();
+			return InetAddress.getLocalHost().getHostAddress();
 		} catch (UnknownHostException e) {
-			defaultIpAddress = "127.0.0.1";
 			System.out.println(
 					"Could not retrieve default localhost address to set it as a default ip address. 127.0.0.1 is set as an IP.");
+			return "127.0.0.1";
 		}
-		initializeComponents();
-		thisFrame = this;
-
 	}
 
 	private void initializeComponents() {
@@ -72,7 +93,7 @@ public class LoginFrame extends JFrame {
 		usernameField.setPreferredSize(new Dimension(210, 30));
 		this.getContentPane().add(usernameField);
 
-		JButton connectionButton = new JButton("Connect");
+		connectionButton = new JButton("Connect");
 		ConnectionListener connectionListener = new ConnectionListener();
 		connectionButton.addActionListener(connectionListener);
 		this.getContentPane().add(connectionButton);
@@ -82,7 +103,12 @@ public class LoginFrame extends JFrame {
 		serverSetupCheckBox.addActionListener(checkboxListener);
 		this.getContentPane().add(serverSetupCheckBox);
 
-		initializeServerSetupPanel();
+		this.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowOpened(WindowEvent e) {
+				StartupTrace.mark(StartupTrace.LOGIN_WINDOW_SHOWN);
+			}
+		});
 		this.setVisible(true);
 	}
 
@@ -109,6 +135,10 @@ public class LoginFrame extends JFrame {
 		this.setLocation(xPos, yPos);
 	}
 
+	/**
+	 * Initializes the panel to setup the server location. It is built the first time the user chooses to setup the
+	 * location, as most users connect to the default server.
+	 */
 	private void initializeServerSetupPanel() {
 		serverSetupPanel = new JPanel();
 		serverSetupPanel.setPreferredSize(new Dimension(300, 200));
@@ -116,7 +146,7 @@ public class LoginFrame extends JFrame {
 		JLabel ipLabel = new JLabel("IP: ");
 		serverSetupPanel.add(ipLabel);
 
-		ipField = new JTextField(defaultIpAddress);
+		ipField = new JTextField(defaultIpAddress.join());
 		ipField.setPreferredSize(new Dimension(100, 30));
 		serverSetupPanel.add(ipField);
 
@@ -127,7 +157,6 @@ public class LoginFrame extends JFrame {
 		portField.setPreferredSize(new Dimension(40, 30));
 		serverSetupPanel.add(portField);
 
-		serverSetupPanel.setVisible(false);
 		this.getContentPane().add(serverSetupPanel);
 	}
 
@@ -145,34 +174,74 @@ public class LoginFrame extends JFrame {
 				setCustomServerAddressValues();
 			} else {
 				client.setServerPort(DEFAULT_PORT);
-				client.setServerAddress(defaultIpAddress);
+				client.setServerAddress(defaultIpAddress.join());
 			}
 
 			if (client.getServerPort() > PORT_MIN && client.getServerPort() < PORT_MAX) {
-				try {
-					accepted = client.connectToServer();
-				} catch (InterruptedException e1) {
-					System.out.println(e);
-					System.out.println("Thread interrupted while trying to connect to server");
-					Thread.currentThread().interrupt();
-				}
-				if (accepted) {
-					parentFrame.setClient(client);
-					JOptionPane.showMessageDialog(parentFrame,
-							"Connected to server with username: " + client.getName());
-					logedIn = true;
-					dispose();
-				} else {
-					System.out.println("The user's username is already taken or invalid.");
-					JOptionPane.showMessageDialog(null,
-							"The username is taken or invalid, please enter a new one. The following characters are forbidden: ']', '['");
-				}
+				connectionButton.setEnabled(false);
+				client.setHistoryStore(openHistoryStore());
+				new ConnectionManager(client).connect()
+						.thenAccept(connected -> SwingUtilities.invokeLater(() -> showConnectionResult(connected)));
 			} else {
 				JOptionPane.showMessageDialog(null, "Port number not in accepted limits. Please enter a new one");
 				portField.setText("");
 			}
 		}
 
+		/**
+		 * Passes the client to the parent frame if the server accepted it, or asks for another username.
+		 * 
+		 * @param connected
+		 *            true if the server accepted the client
+		 */
+		private void showConnectionResult(boolean connected) {
+			accepted = connected;
+			connectionButton.setEnabled(true);
+			if (accepted) {
+				parentFrame.setClient(client);
+				JOptionPane.showMessageDialog(parentFrame, "Connected to server with username: " + client.getName());
+				logedIn = true;
+				dispose();
+			} else {
+				closeHistoryStore();
+				System.out.println("The user's username is already taken or invalid.");
+				JOptionPane.showMessageDialog(null,
+						"The username is taken or invalid, please enter a new one. The following characters are forbidden: ']', '['");
+			}
+		}
+
+		/**
+		 * Opens the store of the messages received from the chosen server, so the server sends only the messages the
+		 * client has not received yet.
+		 * 
+		 * @return the opened store, or null if it cannot be opened
+		 */
+		private HistoryStore openHistoryStore() {
+			try {
+				return HistoryStore.open(Paths.get(HISTORY_DIRECTORY), client.getServerAddress(),
+						client.getServerPort(), HistoryStore.DEFAULT_ROOM);
+			} catch (IOException e) {
+				System.out.println(e);
+				System.out.println("History store could not be opened, received messages will not be stored.");
+				return null;
+			}
+		}
+
+		/**
+		 * Closes the store of the messages after an unsuccessful connection, so it can be opened again.
+		 */
+		private void closeHistoryStore() {
+			if (client.getHistoryStore() == null) {
+				return;
+			}
+			try {
+				client.getHistoryStore().close();
+			} catch (IOException e) {
+				System.out.println(e);
+			}
+			client.setHistoryStore(null);
+		}
+
 		/**
 		 * Server address values are set from the specified text fields.
 		 */
@@ -187,7 +256,7 @@ public class LoginFrame extends JFrame {
 				client.setServerAddress(ipField.getText());
 			} else {
 				System.out.println("Invalid ip entered. The default one will be used");
-				client.setServerAddress(defaultIpAddress);
+				client.setServerAddress(defaultIpAddress.join());
 			}
 		}
 
@@ -230,6 +299,9 @@ public class LoginFrame extends JFrame {
 		 * Enables the additional setting to setup server ip and port.
 		 */
 		private void enableServerSettings() {
+			if (serverSetupPanel == null) {
+				initializeServerSetupPanel();
+			}
 			thisFrame.setSize(300, 140);
 			serverSetupPanel.setVisible(true);
 		}
@@ -239,7 +311,9 @@ public class LoginFrame extends JFrame {
 		 */
 		private void disableServerSettings() {
 			thisFrame.setSize(300, 100);
-			serverSetupPanel.setVisible(false);
+			if (serverSetupPanel != null) {
+				serverSetupPanel.setVisible(false);
+			}
 		}
 	}
 }
\ No newline at end of file
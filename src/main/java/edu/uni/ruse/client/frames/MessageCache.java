@@ -0,0 +1,166 @@
+package edu.uni.ruse.client.frames;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.uni.ruse.client.ReceivedMessage;
+
+/**
+ * MessageCache class, that keeps the lines removed from the messages view in a file, so they can be shown again when
+ * the user scrolls up. Lines are numbered in the order they are displayed and the cache holds one continuous range of
+ * them. They are written in chunks, and only the position of each chunk in the file is kept in memory.
+ *
+ * @author Alexander Andreev
+ */
+class MessageCache implements Closeable {
+
+	private final RandomAccessFile file;
+	private final TreeMap<Long, Chunk> chunks = new TreeMap<>();
+	private long lowestLine;
+	private long highestLine;
+
+	/**
+	 * Constructor with the file that the lines are written to.
+	 *
+	 * @param file
+	 *            that the lines are written to, its content is replaced
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	MessageCache(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+	}
+
+	/**
+	 * Creates a cache in a temporary file, deleted when the client exits.
+	 *
+	 * @return the created cache
+	 * @throws IOException
+	 *             if the temporary file cannot be created
+	 */
+	static MessageCache createTemporary() throws IOException {
+		File cacheFile = File.createTempFile("chatapp-messages", ".cache");
+		cacheFile.deleteOnExit();
+		return new MessageCache(cacheFile);
+	}
+
+	/**
+	 * Writes a chunk of lines, which must be right before or right after the cached range.
+	 *
+	 * @param firstLine
+	 *            number of the first written line
+	 * @param lines
+	 *            text and color of each line, without the line separator
+	 * @throws IOException
+	 *             if the lines cannot be written to the file
+	 */
+	void write(long firstLine, List<ReceivedMessage> lines) throws IOException {
+		if (lines.isEmpty()) {
+			return;
+		}
+		long endLine = firstLine + lines.size();
+		if (isEmpty()) {
+			lowestLine = firstLine;
+			highestLine = endLine;
+		} else if (firstLine == highestLine) {
+			highestLine = endLine;
+		} else if (endLine == lowestLine) {
+			lowestLine = firstLine;
+		} else {
+			throw new IllegalArgumentException("Lines " + firstLine + " to " + endLine
+					+ " do not continue the cached lines " + lowestLine + " to " + highestLine);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (ReceivedMessage line : lines) {
+			out.writeInt(line.getColor().getRGB());
+			out.writeUTF(line.getText());
+		}
+		long position = file.length();
+		file.seek(position);
+		file.write(bytes.toByteArray());
+		chunks.put(firstLine, new Chunk(position, bytes.size(), lines.size()));
+	}
+
+	/**
+	 * Reads the lines of the chunk that holds the line right before the given one, up to that line.
+	 *
+	 * @param line
+	 *            number of the line that the read lines are before
+	 * @return the read lines, from the oldest to the newest, or an empty list if there are no cached lines before it
+	 * @throws IOException
+	 *             if the lines cannot be read from the file
+	 */
+	List<ReceivedMessage> readBefore(long line) throws IOException {
+		List<ReceivedMessage> lines = new ArrayList<>();
+		Map.Entry<Long, Chunk> entry = chunks.floorEntry(line - 1);
+		if (entry == null || line <= lowestLine || line - 1 >= highestLine) {
+			return lines;
+		}
+		Chunk chunk = entry.getValue();
+		byte[] bytes = new byte[chunk.length];
+		file.seek(chunk.position);
+		file.readFully(bytes);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		int count = (int) Math.min(chunk.lines, line - entry.getKey());
+		for (int i = 0; i < count; i++) {
+			Color color = new Color(in.readInt(), true);
+			lines.add(new ReceivedMessage(in.readUTF(), color));
+		}
+		return lines;
+	}
+
+	boolean isEmpty() {
+		return chunks.isEmpty();
+	}
+
+	/**
+	 * Returns the number of the oldest cached line.
+	 *
+	 * @return number of the line
+	 */
+	long getLowestLine() {
+		return lowestLine;
+	}
+
+	/**
+	 * Returns the number after the newest cached line.
+	 *
+	 * @return number of the line
+	 */
+	long getHighestLine() {
+		return highestLine;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Chunk class, holding the position of written lines in the file.
+	 */
+	private static class Chunk {
+		private final long position;
+		private final int length;
+		private final int lines;
+
+		Chunk(long position, int length, int lines) {
+			this.position = position;
+			this.length = length;
+			this.lines = lines;
+		}
+	}
+}
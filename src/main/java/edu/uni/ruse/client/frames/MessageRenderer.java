@@ -0,0 +1,296 @@
+package edu.uni.ruse.client.frames;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.swing.JScrollBar;
+import javax.swing.Timer;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+import edu.uni.ruse.client.ReceivedMessage;
+import edu.uni.ruse.utilities.Histogram;
+
+/**
+ * MessageRenderer class, that displays received messages on the event dispatch thread. Messages are queued from any
+ * thread, and once per frame tick all queued messages are handled together. Text appended while handling them is
+ * joined into one insert per run of the same style, and the messages are scrolled to the end once per tick. Only a
+ * window of the last lines is kept in the document. Older lines are moved to a message cache and are displayed again
+ * when the user scrolls up, so the memory used by the view does not grow with the time the client runs.
+ *
+ * @author Alexander Andreev
+ */
+class MessageRenderer {
+
+	public static final int FRAME_INTERVAL_MS = 16;
+	public static final int DEFAULT_WINDOW_LINES = 1000;
+	private final Queue<ReceivedMessage> pendingMessages = new ConcurrentLinkedQueue<>();
+	private final StyledDocument document;
+	private final JScrollBar scrollBar;
+	private final Consumer<ReceivedMessage> handler;
+	private final Function<Color, AttributeSet> styles;
+	private final MessageCache cache;
+	private final Histogram frameTime = new Histogram("client.frameTime", "us");
+	private final AtomicLong renderedMessages = new AtomicLong();
+	private final StringBuilder runText = new StringBuilder();
+	private AttributeSet runStyle;
+	private boolean appended;
+	private Timer timer;
+	private int windowLines = DEFAULT_WINDOW_LINES;
+	private long firstLine;
+
+	/**
+	 * Constructor with the document to display the messages in.
+	 *
+	 * @param document
+	 *            that the messages are appended to
+	 * @param scrollBar
+	 *            that is moved to the end after new text is appended
+	 * @param handler
+	 *            that handles each message on the event dispatch thread, appending its text through this renderer
+	 * @param styles
+	 *            that gives the style of a line with the given color, when it is displayed again from the cache
+	 * @param cache
+	 *            that the lines removed from the document are kept in, or null to discard them
+	 */
+	MessageRenderer(StyledDocument document, JScrollBar scrollBar, Consumer<ReceivedMessage> handler,
+			Function<Color, AttributeSet> styles, MessageCache cache) {
+		this.document = document;
+		this.scrollBar = scrollBar;
+		this.handler = handler;
+		this.styles = styles;
+		this.cache = cache;
+	}
+
+	/**
+	 * Starts handling the queued messages once per frame tick.
+	 */
+	void start() {
+		timer = new Timer(FRAME_INTERVAL_MS, event -> renderFrame());
+		timer.setCoalesce(true);
+		timer.start();
+	}
+
+	/**
+	 * Stops handling the queued messages.
+	 */
+	void stop() {
+		if (timer != null) {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Queues a message to be handled on the next frame tick. Can be called from any thread.
+	 *
+	 * @param message
+	 *            received from the server
+	 */
+	void enqueue(ReceivedMessage message) {
+		pendingMessages.offer(message);
+	}
+
+	/**
+	 * Handles all queued messages, inserts the appended text and scrolls to the end once. Must be called on the event
+	 * dispatch thread.
+	 */
+	void renderFrame() {
+		if (pendingMessages.isEmpty() && runText.length() == 0) {
+			return;
+		}
+		long start = System.nanoTime();
+		ReceivedMessage message;
+		int handled = 0;
+		while ((message = pendingMessages.poll()) != null) {
+			handler.accept(message);
+			handled++;
+		}
+		flushRun();
+		if (appended) {
+			appended = false;
+			trimToWindow();
+			scrollBar.setValue(scrollBar.getMaximum());
+		}
+		renderedMessages.addAndGet(handled);
+		frameTime.record((System.nanoTime() - start) / 1000);
+	}
+
+	/**
+	 * Appends text to the end of the document. The text is inserted at the end of the frame tick, together with the
+	 * other text of the same style appended before it. Must be called on the event dispatch thread.
+	 *
+	 * @param text
+	 *            to be appended
+	 * @param style
+	 *            of the text
+	 */
+	void append(String text, AttributeSet style) {
+		if (style != runStyle) {
+			flushRun();
+			runStyle = style;
+		}
+		runText.append(text);
+	}
+
+	/**
+	 * Inserts the collected run of text of the same style.
+	 */
+	private void flushRun() {
+		if (runText.length() == 0) {
+			return;
+		}
+		try {
+			document.insertString(document.getLength(), runText.toString(), runStyle);
+			appended = true;
+		} catch (BadLocationException e) {
+			System.out.println(e);
+		}
+		runText.setLength(0);
+	}
+
+	/**
+	 * Adds past messages before the oldest displayed line. If older lines are in the cache, the messages are added to
+	 * the cache before them instead, and are displayed when the user scrolls up to them. Must be called on the event
+	 * dispatch thread.
+	 *
+	 * @param text
+	 *            of the messages, ending with a line separator
+	 * @param color
+	 *            of the messages
+	 */
+	void prepend(String text, Color color) {
+		List<ReceivedMessage> lines = new ArrayList<>();
+		for (String line : text.split("\r?\n")) {
+			lines.add(new ReceivedMessage(line, color));
+		}
+		boolean olderLinesHidden = cache != null && !cache.isEmpty() && cache.getLowestLine() < firstLine;
+		if (cache != null) {
+			try {
+				cache.write((cache.isEmpty() ? firstLine : cache.getLowestLine()) - lines.size(), lines);
+			} catch (IOException e) {
+				System.out.println(e);
+				System.out.println("Past messages could not be cached.");
+			}
+		}
+		if (!olderLinesHidden) {
+			insertAtTop(lines);
+		}
+	}
+
+	/**
+	 * Displays again the chunk of cached lines right before the oldest displayed line. Must be called on the event
+	 * dispatch thread.
+	 *
+	 * @return the number of characters added at the top of the document, or 0 if there are no older lines
+	 */
+	int restoreOlderLines() {
+		if (cache == null || cache.isEmpty() || cache.getLowestLine() >= firstLine) {
+			return 0;
+		}
+		try {
+			return insertAtTop(cache.readBefore(firstLine));
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("Cached messages could not be read.");
+			return 0;
+		}
+	}
+
+	/**
+	 * Inserts lines at the top of the document, one insert per run of the same color.
+	 */
+	private int insertAtTop(List<ReceivedMessage> lines) {
+		StringBuilder text = new StringBuilder();
+		int offset = 0;
+		try {
+			for (int i = 0; i < lines.size(); i++) {
+				ReceivedMessage line = lines.get(i);
+				text.append(line.getText()).append(System.lineSeparator());
+				if (i == lines.size() - 1 || !lines.get(i + 1).getColor().equals(line.getColor())) {
+					document.insertString(offset, text.toString(), styles.apply(line.getColor()));
+					offset += text.length();
+					text.setLength(0);
+				}
+			}
+		} catch (BadLocationException e) {
+			System.out.println(e);
+		}
+		firstLine -= lines.size();
+		return offset;
+	}
+
+	/**
+	 * Removes the oldest lines once the document holds a quarter more lines than the window, caching those that are
+	 * not cached yet.
+	 */
+	private void trimToWindow() {
+		Element root = document.getDefaultRootElement();
+		int lines = root.getElementCount() - 1;
+		if (lines <= windowLines + windowLines / 4) {
+			return;
+		}
+		int removed = lines - windowLines;
+		try {
+			cacheLines(root, removed);
+			document.remove(0, root.getElement(removed).getStartOffset());
+			firstLine += removed;
+		} catch (BadLocationException e) {
+			System.out.println(e);
+		}
+	}
+
+	/**
+	 * Writes the oldest lines of the document to the cache, skipping the ones that are already there.
+	 */
+	private void cacheLines(Element root, int count) throws BadLocationException {
+		if (cache == null) {
+			return;
+		}
+		long cachedUntil = cache.isEmpty() ? firstLine : cache.getHighestLine();
+		List<ReceivedMessage> lines = new ArrayList<>();
+		for (int i = (int) Math.max(0, cachedUntil - firstLine); i < count; i++) {
+			Element line = root.getElement(i);
+			String text = document.getText(line.getStartOffset(), line.getEndOffset() - line.getStartOffset());
+			Color color = StyleConstants.getForeground(document.getCharacterElement(line.getStartOffset()).getAttributes());
+			lines.add(new ReceivedMessage(text.replaceAll("\r?\n$", ""), color));
+		}
+		try {
+			cache.write(firstLine + count - lines.size(), lines);
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("Messages removed from the view could not be cached.");
+		}
+	}
+
+	/**
+	 * Sets the number of last lines kept in the document.
+	 *
+	 * @param windowLines
+	 *            number of lines
+	 */
+	void setWindowLines(int windowLines) {
+		this.windowLines = windowLines;
+	}
+
+	int getWindowLines() {
+		return windowLines;
+	}
+
+	Histogram getFrameTime() {
+		return frameTime;
+	}
+
+	long getRenderedMessages() {
+		return renderedMessages.get();
+	}
+}
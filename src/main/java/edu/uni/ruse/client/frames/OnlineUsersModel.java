@@ -0,0 +1,235 @@
+package edu.uni.ruse.client.frames;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * OnlineUsersModel class, that holds the online users shown in the users list of the client, with the client's own
+ * user first and the others sorted by name. Joins and leaves are queued and applied together once per event dispatch
+ * cycle, each one as an insert or remove notification of its row, or as a single change of the whole list when many of
+ * them come at once. Users can be filtered by the prefix of their name.
+ *
+ * @author Alexander Andreev
+ */
+class OnlineUsersModel extends AbstractListModel<String> {
+
+	private static final long serialVersionUID = 4620317835518203751L;
+	private static final Comparator<String> NAME_ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(
+			Comparator.naturalOrder());
+	private static final int BULK_CHANGE_SIZE = 64;
+	private final List<String> sortedUsers = new ArrayList<>();
+	private final Set<String> users = new HashSet<>();
+	private final Map<String, Boolean> pendingChanges = new LinkedHashMap<>();
+	private boolean changesScheduled;
+	private String ownName;
+	private String filter = "";
+	private int filterFrom;
+	private int filterTo;
+
+	/**
+	 * Constructor with the name of the client's own user.
+	 *
+	 * @param ownName
+	 *            of the client's user
+	 */
+	OnlineUsersModel(String ownName) {
+		this.ownName = ownName;
+	}
+
+	/**
+	 * Queues a user that joined, to be added at the end of the current event dispatch cycle.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	void queueAdd(String name) {
+		queueChange(name, true);
+	}
+
+	/**
+	 * Queues a user that left, to be removed at the end of the current event dispatch cycle.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	void queueRemove(String name) {
+		queueChange(name, false);
+	}
+
+	private void queueChange(String name, boolean online) {
+		pendingChanges.put(name, online);
+		if (!changesScheduled) {
+			changesScheduled = true;
+			SwingUtilities.invokeLater(this::applyPendingChanges);
+		}
+	}
+
+	/**
+	 * Applies the queued joins and leaves. Only the last change of each user counts. Must be called on the event
+	 * dispatch thread.
+	 */
+	void applyPendingChanges() {
+		changesScheduled = false;
+		if (pendingChanges.size() >= BULK_CHANGE_SIZE) {
+			for (Map.Entry<String, Boolean> change : pendingChanges.entrySet()) {
+				if (change.getValue()) {
+					users.add(change.getKey());
+				} else {
+					users.remove(change.getKey());
+				}
+			}
+			int oldSize = getSize();
+			sortedUsers.clear();
+			sortedUsers.addAll(users);
+			sortedUsers.sort(NAME_ORDER);
+			pendingChanges.clear();
+			updateFilterRange();
+			fireListReplaced(oldSize);
+			return;
+		}
+		for (Map.Entry<String, Boolean> change : pendingChanges.entrySet()) {
+			if (change.getValue()) {
+				add(change.getKey());
+			} else {
+				remove(change.getKey());
+			}
+		}
+		pendingChanges.clear();
+	}
+
+	/**
+	 * Adds a user in its sorted place and notifies the list if the user passes the filter.
+	 */
+	private void add(String name) {
+		if (name.equals(ownName) || !users.add(name)) {
+			return;
+		}
+		int index = -Collections.binarySearch(sortedUsers, name, NAME_ORDER) - 1;
+		sortedUsers.add(index, name);
+		if (matchesFilter(name)) {
+			filterTo++;
+			int row = ownRows() + index - filterFrom;
+			fireIntervalAdded(this, row, row);
+		} else if (index <= filterFrom) {
+			filterFrom++;
+			filterTo++;
+		}
+	}
+
+	/**
+	 * Removes a user and notifies the list if the user passed the filter.
+	 */
+	private void remove(String name) {
+		if (!users.remove(name)) {
+			return;
+		}
+		int index = Collections.binarySearch(sortedUsers, name, NAME_ORDER);
+		sortedUsers.remove(index);
+		if (matchesFilter(name)) {
+			filterTo--;
+			int row = ownRows() + index - filterFrom;
+			fireIntervalRemoved(this, row, row);
+		} else if (index < filterFrom) {
+			filterFrom--;
+			filterTo--;
+		}
+	}
+
+	/**
+	 * Shows only the users whose name starts with a prefix, ignoring the case. Must be called on the event dispatch
+	 * thread.
+	 *
+	 * @param prefix
+	 *            of the shown names, or an empty string to show all users
+	 */
+	void setFilter(String prefix) {
+		int oldSize = getSize();
+		filter = prefix;
+		updateFilterRange();
+		fireListReplaced(oldSize);
+	}
+
+	/**
+	 * Finds the range of sorted users that pass the filter. Names with the same prefix are next to each other in the
+	 * sorted list, so two binary searches are enough.
+	 */
+	private void updateFilterRange() {
+		filterFrom = firstNotBefore(filter);
+		filterTo = filter.isEmpty() ? sortedUsers.size() : firstNotBefore(filter + Character.MAX_VALUE);
+	}
+
+	private int firstNotBefore(String name) {
+		int low = 0;
+		int high = sortedUsers.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (String.CASE_INSENSITIVE_ORDER.compare(sortedUsers.get(middle), name) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private boolean matchesFilter(String name) {
+		return name.regionMatches(true, 0, filter, 0, filter.length());
+	}
+
+	private int ownRows() {
+		return matchesFilter(ownName) ? 1 : 0;
+	}
+
+	/**
+	 * Notifies the list that all of its rows changed.
+	 */
+	private void fireListReplaced(int oldSize) {
+		int newSize = getSize();
+		if (newSize < oldSize) {
+			fireIntervalRemoved(this, newSize, oldSize - 1);
+		} else if (newSize > oldSize) {
+			fireIntervalAdded(this, oldSize, newSize - 1);
+		}
+		if (newSize > 0) {
+			fireContentsChanged(this, 0, newSize - 1);
+		}
+	}
+
+	/**
+	 * Changes the name of the client's own user.
+	 *
+	 * @param ownName
+	 *            new name of the client's user
+	 */
+	void setOwnName(String ownName) {
+		int oldSize = getSize();
+		this.ownName = ownName;
+		fireListReplaced(oldSize);
+	}
+
+	boolean contains(String name) {
+		return users.contains(name);
+	}
+
+	@Override
+	public int getSize() {
+		return ownRows() + filterTo - filterFrom;
+	}
+
+	@Override
+	public String getElementAt(int index) {
+		if (ownRows() == 1) {
+			return index == 0 ? ownName : sortedUsers.get(filterFrom + index - 1);
+		}
+		return sortedUsers.get(filterFrom + index);
+	}
+}
@@ -0,0 +1,149 @@
+package edu.uni.ruse.gateway;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uni.ruse.utilities.CodeMessages;
+import edu.uni.ruse.utilities.MessagesManager;
+
+/**
+ * Backend class, representing a chat server behind the connection gateway, with the load it last reported.
+ *
+ * @author Alexander Andreev
+ */
+public class Backend {
+
+	private static final int PROBE_TIMEOUT_MS = 1000;
+	private final String host;
+	private final int port;
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	private final AtomicInteger connectionsSinceProbe = new AtomicInteger();
+	private volatile int sessions;
+	private volatile int queueDepth;
+	private volatile boolean reachable;
+	private volatile boolean draining;
+
+	/**
+	 * Constructor with the address of the chat server.
+	 *
+	 * @param host
+	 *            of the chat server
+	 * @param port
+	 *            of the chat server
+	 */
+	public Backend(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Asks the chat server for its number of sessions and its queue depth. If the server cannot be reached, it is not
+	 * given new connections until it answers again.
+	 */
+	void probe() {
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(host, port), PROBE_TIMEOUT_MS);
+			socket.setSoTimeout(PROBE_TIMEOUT_MS);
+			new DataOutputStream(socket.getOutputStream()).writeUTF(CodeMessages.STATUS_REQUEST.getMessage());
+			String status = MessagesManager
+					.removeColorCodeFromMessage(new DataInputStream(socket.getInputStream()).readUTF());
+			if (status.startsWith(CodeMessages.STATUS.getMessage())) {
+				String[] values = status.substring(CodeMessages.STATUS.getMessage().length()).split(":");
+				sessions = Integer.parseInt(values[0]);
+				queueDepth = Integer.parseInt(values[1]);
+				connectionsSinceProbe.set(0);
+				reachable = true;
+			}
+		} catch (IOException | RuntimeException e) {
+			if (reachable) {
+				System.out.println(e);
+				System.out.println("Backend " + this + " cannot be reached and will not get new connections.");
+			}
+			reachable = false;
+		}
+	}
+
+	/**
+	 * Returns the load of the server: its sessions, the connections given to it since it last reported them, and the
+	 * messages it has not processed yet.
+	 *
+	 * @return load of the server
+	 */
+	int getLoad() {
+		return sessions + connectionsSinceProbe.get() + queueDepth;
+	}
+
+	/**
+	 * Counts a connection that was given to the server.
+	 */
+	void connectionOpened() {
+		activeConnections.incrementAndGet();
+		connectionsSinceProbe.incrementAndGet();
+	}
+
+	/**
+	 * Counts a connection to the server that was closed.
+	 */
+	void connectionClosed() {
+		activeConnections.decrementAndGet();
+	}
+
+	/**
+	 * Checks if the server can be given new connections.
+	 *
+	 * @return true if the server is reachable and not draining
+	 */
+	boolean isAvailable() {
+		return reachable && !draining;
+	}
+
+	/**
+	 * Checks if a draining server has no connections left, so it can be restarted.
+	 *
+	 * @return true if the server is draining and has no connections
+	 */
+	public boolean isDrained() {
+		return draining && activeConnections.get() == 0;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	public int getSessions() {
+		return sessions;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public boolean isReachable() {
+		return reachable;
+	}
+
+	public boolean isDraining() {
+		return draining;
+	}
+
+	public void setDraining(boolean draining) {
+		this.draining = draining;
+	}
+
+	@Override
+	public String toString() {
+		return host + ":" + port;
+	}
+}
@@ -0,0 +1,335 @@
+package edu.uni.ruse.gateway;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uni.ruse.server.Server;
+
+/**
+ * Gateway class, that accepts the connections of clients and passes each of them to the least loaded of several chat
+ * servers. The load of the servers is probed periodically from their number of sessions and queue depth. The bytes of
+ * a connection are passed between the client and the server through direct buffers, without being decoded. A server
+ * can be drained for a restart: it gets no new connections, while its existing ones stay open until they end.
+ *
+ * @author Alexander Andreev
+ */
+public class Gateway {
+
+	public static final int DEFAULT_PORT = Server.PORT_RANGE_MIN;
+	private static final int PROBE_INTERVAL_MS = 500;
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private final String address;
+	private final int port;
+	private final List<Backend> backends = new CopyOnWriteArrayList<>();
+	private final AtomicLong acceptedConnections = new AtomicLong();
+	private final AtomicLong rejectedConnections = new AtomicLong();
+	private volatile boolean running;
+	private ServerSocketChannel serverChannel;
+	private ScheduledExecutorService prober;
+	private ExecutorService spliceThreads;
+
+	/**
+	 * Constructor with the address that the gateway listens on for clients.
+	 *
+	 * @param address
+	 *            that the gateway listens on
+	 * @param port
+	 *            that the gateway listens on
+	 */
+	public Gateway(String address, int port) {
+		this.address = address;
+		this.port = port;
+	}
+
+	/**
+	 * Main method that starts a gateway. The first argument is the port to listen on, and the others are the chat
+	 * servers in the format "host:port".
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) throws IOException {
+		Gateway gateway = new Gateway("0.0.0.0", args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+		for (int i = 1; i < args.length; i++) {
+			String[] backendAddress = args[i].split(":");
+			gateway.addBackend(backendAddress[0], Integer.parseInt(backendAddress[1]));
+		}
+		gateway.start();
+	}
+
+	/**
+	 * Adds a chat server that clients can be passed to.
+	 *
+	 * @param host
+	 *            of the chat server
+	 * @param port
+	 *            of the chat server
+	 * @return the added backend
+	 */
+	public Backend addBackend(String host, int port) {
+		Backend backend = new Backend(host, port);
+		backends.add(backend);
+		return backend;
+	}
+
+	/**
+	 * Starts probing the chat servers and accepting clients.
+	 *
+	 * @throws IOException
+	 *             if the gateway cannot listen on its address
+	 */
+	public void start() throws IOException {
+		for (Backend backend : backends) {
+			backend.probe();
+		}
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(address, port));
+		running = true;
+		spliceThreads = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "gateway-splice");
+			thread.setDaemon(true);
+			return thread;
+		});
+		prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "gateway-probe");
+			thread.setDaemon(true);
+			return thread;
+		});
+		prober.scheduleWithFixedDelay(this::probeBackends, PROBE_INTERVAL_MS, PROBE_INTERVAL_MS,
+				TimeUnit.MILLISECONDS);
+		Thread acceptThread = new Thread(this::acceptClients, "gateway-accept");
+		acceptThread.start();
+		System.out.println("Gateway started on " + address + ":" + port + " with " + backends.size() + " servers.");
+	}
+
+	/**
+	 * Stops accepting clients and closes all passed connections.
+	 */
+	public void stop() {
+		running = false;
+		prober.shutdownNow();
+		spliceThreads.shutdownNow();
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("I/O Exception while stopping the gateway.");
+		}
+		System.out.println("Gateway stopped. Accepted " + acceptedConnections.get() + " and rejected "
+				+ rejectedConnections.get() + " connections.");
+	}
+
+	/**
+	 * Probes the load of all chat servers.
+	 */
+	private void probeBackends() {
+		for (Backend backend : backends) {
+			backend.probe();
+		}
+	}
+
+	/**
+	 * Accepts clients until the gateway is stopped.
+	 */
+	private void acceptClients() {
+		while (running) {
+			try {
+				SocketChannel client = serverChannel.accept();
+				spliceThreads.execute(() -> passToBackend(client));
+			} catch (IOException e) {
+				if (running) {
+					System.out.println(e);
+					System.out.println("I/O Exception while accepting a client on the gateway.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the least loaded chat server that can take new connections.
+	 *
+	 * @return the chosen server, or null if none is available
+	 */
+	Backend selectBackend() {
+		Backend selected = null;
+		for (Backend backend : backends) {
+			if (backend.isAvailable() && (selected == null || backend.getLoad() < selected.getLoad())) {
+				selected = backend;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Connects a client to the least loaded chat server and passes the bytes between them until both sides are
+	 * closed.
+	 */
+	private void passToBackend(SocketChannel client) {
+		Backend backend = selectBackend();
+		SocketChannel server = null;
+		try {
+			if (backend == null) {
+				throw new IOException("No chat server is available.");
+			}
+			server = SocketChannel.open(new InetSocketAddress(backend.getHost(), backend.getPort()));
+			client.socket().setTcpNoDelay(true);
+			server.socket().setTcpNoDelay(true);
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("Gateway could not pass a client to server " + backend + ". Client will be disconnected.");
+			rejectedConnections.incrementAndGet();
+			closeQuietly(client);
+			closeQuietly(server);
+			return;
+		}
+		acceptedConnections.incrementAndGet();
+		backend.connectionOpened();
+		Splice splice = new Splice(client, server, backend);
+		spliceThreads.execute(splice::pumpToClient);
+		splice.pumpToServer();
+	}
+
+	/**
+	 * Closes a channel, ignoring errors.
+	 */
+	private static void closeQuietly(SocketChannel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				System.out.println(e);
+			}
+		}
+	}
+
+	/**
+	 * Starts draining a chat server, so it gets no new connections.
+	 *
+	 * @param host
+	 *            of the chat server
+	 * @param port
+	 *            of the chat server
+	 * @return the drained backend, or null if it is not found
+	 */
+	public Backend drain(String host, int port) {
+		Backend backend = findBackend(host, port);
+		if (backend != null) {
+			backend.setDraining(true);
+			System.out.println("Draining server " + backend + " with " + backend.getActiveConnections()
+					+ " connections.");
+		}
+		return backend;
+	}
+
+	/**
+	 * Lets a drained chat server get new connections again, for example after its restart.
+	 *
+	 * @param host
+	 *            of the chat server
+	 * @param port
+	 *            of the chat server
+	 */
+	public void undrain(String host, int port) {
+		Backend backend = findBackend(host, port);
+		if (backend != null) {
+			backend.setDraining(false);
+			backend.probe();
+		}
+	}
+
+	/**
+	 * Finds a chat server by its address.
+	 */
+	private Backend findBackend(String host, int port) {
+		for (Backend backend : backends) {
+			if (backend.getHost().equals(host) && backend.getPort() == port) {
+				return backend;
+			}
+		}
+		return null;
+	}
+
+	public List<Backend> getBackends() {
+		return backends;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public long getAcceptedConnections() {
+		return acceptedConnections.get();
+	}
+
+	public long getRejectedConnections() {
+		return rejectedConnections.get();
+	}
+
+	/**
+	 * Splice class, holding the two channels of a passed connection. Each direction is pumped by its own thread, and
+	 * the channels are closed when both directions have ended.
+	 */
+	private static class Splice {
+		private final SocketChannel client;
+		private final SocketChannel server;
+		private final Backend backend;
+		private final AtomicInteger openDirections = new AtomicInteger(2);
+
+		Splice(SocketChannel client, SocketChannel server, Backend backend) {
+			this.client = client;
+			this.server = server;
+			this.backend = backend;
+		}
+
+		/**
+		 * Copies the bytes sent by the server to the client.
+		 */
+		void pumpToClient() {
+			pump(server, client);
+		}
+
+		/**
+		 * Copies the bytes sent by the client to the server.
+		 */
+		void pumpToServer() {
+			pump(client, server);
+		}
+
+		/**
+		 * Copies bytes from one channel to the other until the first one reaches its end, then ends the output of the
+		 * other one.
+		 */
+		private void pump(SocketChannel from, SocketChannel to) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			try {
+				while (from.read(buffer) != -1) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						to.write(buffer);
+					}
+					buffer.clear();
+				}
+				to.shutdownOutput();
+			} catch (IOException e) {
+				closeQuietly(from);
+				closeQuietly(to);
+			} finally {
+				if (openDirections.decrementAndGet() == 0) {
+					closeQuietly(client);
+					closeQuietly(server);
+					backend.connectionClosed();
+				}
+			}
+		}
+	}
+}
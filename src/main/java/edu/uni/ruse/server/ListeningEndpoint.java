@@ -0,0 +1,129 @@
+package edu.uni.ruse.server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uni.ruse.utilities.Histogram;
+
+/**
+ * ListeningEndpoint class, representing an address and port that a server accepts clients on, with the number of
+ * accepted connections, the rate of the recent accepts and the time the accepted connections waited for a lane to run
+ * their handshake.
+ *
+ * @author Alexander Andreev
+ */
+public class ListeningEndpoint {
+
+	public static final int RATE_WINDOW_SECONDS = 10;
+	private final ServerSocket serverSocket;
+	private final String name;
+	private final AtomicLong acceptedConnections = new AtomicLong();
+	private final Histogram acceptQueueWait;
+	private final long openedNanos = System.nanoTime();
+	private final long[] windowAccepts = new long[RATE_WINDOW_SECONDS];
+	private final long[] windowSeconds = new long[RATE_WINDOW_SECONDS];
+
+	/**
+	 * Constructor with the bound socket of the endpoint.
+	 *
+	 * @param serverSocket
+	 *            bound to the address and port of the endpoint
+	 */
+	public ListeningEndpoint(ServerSocket serverSocket) {
+		this.serverSocket = serverSocket;
+		name = serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+		acceptQueueWait = new Histogram("endpoint." + name + ".acceptQueueWait", "us");
+	}
+
+	/**
+	 * Waits for a connection on the endpoint and counts it.
+	 *
+	 * @return the accepted connection
+	 * @throws IOException
+	 *             if the endpoint is closed
+	 */
+	Socket accept() throws IOException {
+		Socket connection = serverSocket.accept();
+		acceptedConnections.incrementAndGet();
+		countInWindow();
+		return connection;
+	}
+
+	/**
+	 * Counts an accepted connection in the slot of the current second, clearing the slot first if it still holds the
+	 * accepts of an older second.
+	 */
+	private synchronized void countInWindow() {
+		long second = getSecondsOpen();
+		int slot = (int) (second % RATE_WINDOW_SECONDS);
+		if (windowSeconds[slot] != second) {
+			windowSeconds[slot] = second;
+			windowAccepts[slot] = 0;
+		}
+		windowAccepts[slot]++;
+	}
+
+	private long getSecondsOpen() {
+		return (System.nanoTime() - openedNanos) / 1000000000L;
+	}
+
+	/**
+	 * Records the time an accepted connection waited before its handshake was started.
+	 *
+	 * @param waitNanos
+	 *            time in nanoseconds
+	 */
+	void recordQueueWait(long waitNanos) {
+		acceptQueueWait.record(waitNanos / 1000);
+	}
+
+	/**
+	 * Closes the endpoint, so no more connections are accepted on it.
+	 *
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		serverSocket.close();
+	}
+
+	boolean isClosed() {
+		return serverSocket.isClosed();
+	}
+
+	/**
+	 * Returns the average number of connections accepted per second over the last {@link #RATE_WINDOW_SECONDS}
+	 * seconds, or since the endpoint was opened if it is open for less time.
+	 *
+	 * @return accepted connections per second
+	 */
+	public synchronized double getAcceptsPerSecond() {
+		long second = getSecondsOpen();
+		long accepts = 0;
+		for (int slot = 0; slot < RATE_WINDOW_SECONDS; slot++) {
+			if (second - windowSeconds[slot] < RATE_WINDOW_SECONDS) {
+				accepts += windowAccepts[slot];
+			}
+		}
+		double seconds = Math.min(RATE_WINDOW_SECONDS, (System.nanoTime() - openedNanos) / 1e9);
+		return seconds == 0 ? 0 : accepts / seconds;
+	}
+
+	public long getAcceptedConnections() {
+		return acceptedConnections.get();
+	}
+
+	public Histogram getAcceptQueueWait() {
+		return acceptQueueWait;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
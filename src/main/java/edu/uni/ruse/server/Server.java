@@ -1,7 +1,27 @@
 package edu.uni.ruse.server;
 
 import com.sun.org.apache.bcel.internal.classfile.Code;
+import edu.uni.ruse.server.cluster.ClusterListener;
+import edu.uni.ruse.server.cluster.ClusterNode;
+import edu.uni.ruse.server.events.MessageDispatchedEvent;
+import edu.uni.ruse.server.events.MessageReceivedEvent;
+import edu.uni.ruse.server.history.ChatHistory;
+import edu.uni.ruse.server.history.DurabilityMode;
+import edu.uni.ruse.server.history.HistoryLog;
+import edu.uni.ruse.server.history.HistoryMaintenance;
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.server.history.HistoryWriter;
+import edu.uni.ruse.server.history.RetentionPolicy;
+import edu.uni.ruse.server.metrics.Counter;
+import edu.uni.ruse.server.metrics.HttpMonitor;
+import edu.uni.ruse.server.metrics.MetricsRegistry;
+import edu.uni.ruse.server.replication.ReplicationSource;
+import edu.uni.ruse.server.replication.StandbyReplica;
+import edu.uni.ruse.server.search.SearchResult;
+import edu.uni.ruse.server.snapshot.ServerSnapshot;
+import edu.uni.ruse.server.snapshot.SnapshotStore;
 import edu.uni.ruse.utilities.CodeMessages;
+import edu.uni.ruse.utilities.Histogram;
 import edu.uni.ruse.utilities.InterfaceLang;
 import edu.uni.ruse.utilities.MessagesManager;
 
@@ -9,38 +29,113 @@ import java.awt.*;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Server class, that creates connections between multiple clients, receives and sends messages from them.
+ * Server class, that creates connections between multiple clients, receives and sends messages from them. If a
+ * cluster port is set, the server also relays messages and presence changes to the other servers of a cluster. If a
+ * replication port is set, the sessions and delivered messages are streamed to a standby server, which takes the
+ * address of the server over when it fails.
  *
  * @author Alexander Andreev
  */
-public class Server {
+public class Server implements ClusterListener {
 
     public static final int PORT_RANGE_MIN = 7000;
     private static final int PORT_RANGE_MAX = 7020;
     private static final int WAIT_INTERVAL_MS = 1000;
     private static final int MIN_USERNAME_LENGHT = 3;
     private static final int CONNECTION_QUEUE_LIMIT = 32;
+    public static final int DEFAULT_HANDSHAKE_TIMEOUT_MS = 10 * 1000;
     private static final InterfaceLang DEFAULT_LANGUAGE = InterfaceLang.EN;
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private static final int SEARCH_PAGE_SIZE = 10;
+    private static final String SEARCH_PAGE_PREFIX = "#";
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_MS = 30 * 1000;
+    private static final long RETURNING_USERS_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final int TAKE_OVER_ATTEMPTS = 50;
+    private static final int TAKE_OVER_RETRY_MS = 100;
+    public static final int DEFAULT_ACCEPT_LANES = Runtime.getRuntime().availableProcessors();
+    public static final String DEFAULT_HTTP_ADDRESS = "127.0.0.1";
     private ServerSocket serverSocket;
+    private volatile ListeningEndpoint mainEndpoint;
+    private List<InetSocketAddress> extraEndpointAddresses = new ArrayList<>();
+    private List<ListeningEndpoint> endpoints = new ArrayList<>();
+    private int acceptLanes;
+    private int handshakeTimeoutMs = DEFAULT_HANDSHAKE_TIMEOUT_MS;
+    private ExecutorService[] acceptLaneExecutors;
+    private final AtomicInteger nextAcceptLane = new AtomicInteger();
+    private final Object registryLock = new Object();
+    private final Set<String> joiningNames = ConcurrentHashMap.newKeySet();
+    private final Object historyLock = new Object();
     private String ipAddress;
     private int port;
-    private volatile Map<String, Socket> namesToConnections = new HashMap<>();
-    private volatile Map<Socket, InterfaceLang> langPreferences = new HashMap<>();
+    private volatile Map<String, Socket> namesToConnections = new ConcurrentHashMap<>();
+    private volatile Map<Socket, InterfaceLang> langPreferences = new ConcurrentHashMap<>();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Counter inboundMessages = metrics.counter("messages.inbound");
+    private final Counter inboundBytes = metrics.counter("bytes.inbound");
+    private final Counter removedUsers = metrics.counter("users.removed");
+    private final Histogram handshakeTime = metrics.histogram("connections.handshakeTime", "us");
+    private volatile long lastCollectionEndNanos;
     private volatile MessagesManager messagesManager = new MessagesManager(this);
     private volatile Socket connectionToBeAccepted;
-    private String nameOfNextUserToJoin;
+    private volatile String nameOfNextUserToJoin;
     private LocalDateTime currentTime;
     private Boolean isRunning = false;
+    private Path historyDirectory;
+    private int historySegmentSize = HistoryLog.DEFAULT_SEGMENT_SIZE;
+    private DurabilityMode historyDurabilityMode = HistoryWriter.DEFAULT_DURABILITY_MODE;
+    private RetentionPolicy historyRetentionPolicy = RetentionPolicy.keepAll();
+    private long historyMaintenanceIntervalMs = HistoryMaintenance.DEFAULT_INTERVAL_MS;
+    private volatile HistoryMaintenance historyMaintenance;
+    private int scrollbackSize = ChatHistory.DEFAULT_SCROLLBACK_SIZE;
+    private volatile ChatHistory chatHistory = new ChatHistory(scrollbackSize);
+    private Map<Socket, Long> historyCursors = new ConcurrentHashMap<>();
+    private Path snapshotFile;
+    private long snapshotIntervalMs = DEFAULT_SNAPSHOT_INTERVAL_MS;
+    private volatile SnapshotStore snapshotStore;
+    private ScheduledExecutorService snapshotExecutor;
+    private final AtomicLong presenceVersion = new AtomicLong();
+    private Map<String, InterfaceLang> returningUsers = new ConcurrentHashMap<>();
+    private long returningUsersDeadlineNanos;
+    private long startNanos;
+    private long restartToReadyMs = -1;
+    private int clusterPort = -1;
+    private List<InetSocketAddress> clusterPeers = new ArrayList<>();
+    private volatile ClusterNode clusterNode;
+    private volatile ExecutorService clusterRenameExecutor;
+    private int replicationPort = -1;
+    private InetSocketAddress primaryReplicationAddress;
+    private volatile ReplicationSource replicationSource;
+    private volatile StandbyReplica standbyReplica;
+    private ServerSnapshot replicatedState;
+    private long failoverMs = -1;
+    private int httpPort = -1;
+    private String httpAddress = DEFAULT_HTTP_ADDRESS;
+    private volatile HttpMonitor httpMonitor;
 
     /**
      * Default constructor.
@@ -113,18 +208,50 @@ public class Server {
     }
 
     /**
-     * Starts the server on local host and on the specified port.
+     * Starts the server on local host and on the specified port. If the server is a standby of another server, it
+     * only follows the other server until it fails.
      */
     public void startServer() {
+        if (primaryReplicationAddress != null && replicatedState == null) {
+            startStandby();
+            return;
+        }
         try {
+            startNanos = System.nanoTime();
             InetAddress serverAddress;
             if (ipAddress == null) {
                 ipAddress = InetAddress.getLocalHost().getHostAddress();
             }
             serverAddress = InetAddress.getByName(ipAddress);
             serverSocket = new ServerSocket(port, CONNECTION_QUEUE_LIMIT, serverAddress);
+            mainEndpoint = new ListeningEndpoint(serverSocket);
+            openEndpoints();
+            chatHistory = new ChatHistory(scrollbackSize);
+            openHistory();
+            ServerSnapshot snapshot = loadSnapshot();
+            if (replicatedState != null) {
+                snapshot = replicatedState;
+            }
+            if (snapshot != null) {
+                restoreState(snapshot);
+            }
+            startSnapshots();
+            startCluster();
+            startReplication();
             isRunning = true;
+            startAcceptLoops();
+            publishMetrics();
+            startHttpMonitor();
+            restartToReadyMs = (System.nanoTime() - startNanos) / 1_000_000;
             System.out.println("Server started on " + serverAddress.getHostAddress() + ":" + port);
+            if (replicatedState != null) {
+                failoverMs = (System.nanoTime() - standbyReplica.getFailureDetectedNanos()) / 1_000_000;
+                System.out.println("Standby server took over " + failoverMs + " ms after the primary server failed. "
+                        + returningUsers.size() + " users can return through the fast path.");
+            } else if (snapshot != null) {
+                System.out.println("Server restored from snapshot and ready " + restartToReadyMs + " ms after start. "
+                        + returningUsers.size() + " users can return through the fast path.");
+            }
         } catch (IOException e) {
             System.out.println(e);
             System.out.println("I/O Exception while trying to start server.");
@@ -132,14 +259,463 @@ public class Server {
     }
 
     /**
-     * Stops the server.
+     * Publishes the metrics of the server as MBeans, with the gauges of the connections and the histograms of the
+     * endpoints that were opened.
+     */
+    private void publishMetrics() {
+        metrics.gauge("connections.open", () -> namesToConnections.size());
+        metrics.gauge("connections.accepted",
+                () -> endpoints.stream().mapToLong(ListeningEndpoint::getAcceptedConnections).sum());
+        metrics.gauge("connections.acceptsPerSecond",
+                () -> endpoints.stream().mapToDouble(ListeningEndpoint::getAcceptsPerSecond).sum());
+        for (ListeningEndpoint endpoint : endpoints) {
+            metrics.register(endpoint.getAcceptQueueWait());
+        }
+        metrics.publish(ipAddress + ":" + port);
+    }
+
+    /**
+     * Starts the HTTP monitor of the server, if an HTTP port is set. The monitor has no authentication, so it listens
+     * on the loopback address unless another address is set for it.
+     */
+    private void startHttpMonitor() {
+        if (httpPort != -1) {
+            httpMonitor = new HttpMonitor(httpAddress, httpPort, this);
+            try {
+                httpMonitor.start();
+            } catch (IOException e) {
+                System.out.println(e);
+                System.out.println("I/O Exception while starting the HTTP monitor. The server runs without it.");
+                httpMonitor = null;
+            }
+        }
+    }
+
+    /**
+     * Opens the main endpoint of the server and the extra ones that were added. If an extra endpoint cannot be opened,
+     * the server runs without it.
+     */
+    private void openEndpoints() {
+        endpoints = new ArrayList<>();
+        endpoints.add(mainEndpoint);
+        for (InetSocketAddress address : extraEndpointAddresses) {
+            try {
+                endpoints.add(new ListeningEndpoint(new ServerSocket(address.getPort(), CONNECTION_QUEUE_LIMIT,
+                        address.getAddress())));
+            } catch (IOException e) {
+                System.out.println(e);
+                System.out.println("I/O Exception while opening endpoint " + address + ". The server runs without it.");
+            }
+        }
+    }
+
+    /**
+     * Starts an accept loop on each endpoint, if accept lanes are set. The accept loops only accept connections, and
+     * the handshakes of the accepted connections are run on the lanes, taken in turn.
+     */
+    private void startAcceptLoops() {
+        if (acceptLanes > 0) {
+            acceptLaneExecutors = new ExecutorService[acceptLanes];
+            for (int i = 0; i < acceptLanes; i++) {
+                String laneName = "accept-lane-" + i;
+                acceptLaneExecutors[i] = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, laneName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            for (ListeningEndpoint endpoint : endpoints) {
+                Thread acceptThread = new Thread(() -> acceptConnections(endpoint), "accept-loop-" + endpoint);
+                acceptThread.setDaemon(true);
+                acceptThread.start();
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on an endpoint until it is closed, and passes each of them to the next accept lane.
+     *
+     * @param endpoint to accept connections on
+     */
+    private void acceptConnections(ListeningEndpoint endpoint) {
+        ExecutorService[] lanes = acceptLaneExecutors;
+        while (!endpoint.isClosed()) {
+            Socket connection = null;
+            try {
+                connection = endpoint.accept();
+                long acceptedNanos = System.nanoTime();
+                Socket acceptedConnection = connection;
+                lanes[Math.floorMod(nextAcceptLane.getAndIncrement(), lanes.length)].execute(() -> {
+                    endpoint.recordQueueWait(System.nanoTime() - acceptedNanos);
+                    runHandshakeOnLane(acceptedConnection, acceptedNanos);
+                });
+            } catch (IOException e) {
+                if (!endpoint.isClosed()) {
+                    System.out.println(e);
+                    System.out.println("I/O Exception while accepting a new client on " + endpoint + ".");
+                }
+            } catch (RejectedExecutionException e) {
+                closeConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Runs the handshake of a connection, accepted by an accept loop, and refreshes the users list of the server's
+     * interface.
+     *
+     * @param connection    accepted connection
+     * @param acceptedNanos time when the connection was accepted
+     */
+    private void runHandshakeOnLane(Socket connection, long acceptedNanos) {
+        try {
+            handshake(connection, acceptedNanos);
+            messagesManager.sendRefreshMessageToServerFrame();
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("I/O Exception during the handshake of a new client. Client will be disconnected.");
+            closeConnection(connection);
+        }
+    }
+
+    /**
+     * Closes a connection that could not be handled.
+     *
+     * @param connection to be closed, or null
+     */
+    private void closeConnection(Socket connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }
+    }
+
+    /**
+     * Closes all endpoints and stops the accept lanes.
+     *
+     * @throws IOException
+     */
+    private void closeEndpoints() throws IOException {
+        for (ListeningEndpoint endpoint : endpoints) {
+            endpoint.close();
+        }
+        if (acceptLaneExecutors != null) {
+            for (ExecutorService lane : acceptLaneExecutors) {
+                lane.shutdownNow();
+            }
+            acceptLaneExecutors = null;
+        }
+    }
+
+    /**
+     * Opens the history log and starts its writer and maintenance, if a history directory is set. The latencies, batch
+     * sizes, queued and dropped messages of the writer are added to the metrics of the server. If the log cannot be
+     * opened, the server runs without persisting messages.
+     */
+    private void openHistory() {
+        if (historyDirectory != null) {
+            try {
+                HistoryLog historyLog = new HistoryLog(historyDirectory, historySegmentSize);
+                historyLog.open();
+                HistoryWriter historyWriter = new HistoryWriter(historyLog, historyDurabilityMode,
+                        HistoryWriter.DEFAULT_COMMIT_WINDOW_MS, HistoryWriter.DEFAULT_FORCE_INTERVAL_MS);
+                historyWriter.start();
+                metrics.register(historyWriter.getDurableAckLatency());
+                metrics.register(historyWriter.getBatchSize());
+                metrics.gauge("history.droppedRecords", historyWriter::getDroppedRecords);
+                metrics.gauge("history.pendingRecords", historyWriter::getPendingRecords);
+                chatHistory.attachWriter(historyWriter);
+                historyMaintenance = new HistoryMaintenance(historyLog, historyRetentionPolicy);
+                historyMaintenance.start(historyMaintenanceIntervalMs);
+            } catch (IOException e) {
+                System.out.println(e);
+                System.out.println("I/O Exception while opening the history log. Messages will not be persisted.");
+            }
+        }
+    }
+
+    /**
+     * Starts the cluster node of the server, if a cluster port is set. If the node cannot be started, the server runs
+     * on its own.
+     */
+    private void startCluster() {
+        if (clusterPort != -1) {
+            clusterNode = new ClusterNode(ipAddress, clusterPort, clusterPeers, this);
+            try {
+                clusterNode.start();
+                clusterRenameExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "cluster-rename");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            } catch (IOException e) {
+                System.out.println(e);
+                System.out.println("I/O Exception while starting the cluster node. The server runs on its own.");
+                clusterNode = null;
+            }
+        }
+    }
+
+    /**
+     * Follows a primary server as its standby, without listening for clients. When the primary server fails, the
+     * server is started on the same address with the state copied from the primary.
+     */
+    private void startStandby() {
+        standbyReplica = new StandbyReplica(primaryReplicationAddress, scrollbackSize, this::takeOver);
+        standbyReplica.start();
+    }
+
+    /**
+     * Takes the place of a failed primary server, retrying while its address is still held.
+     *
+     * @param state copied from the primary server
+     */
+    private void takeOver(ServerSnapshot state) {
+        replicatedState = state;
+        for (int attempt = 0; attempt < TAKE_OVER_ATTEMPTS && !isRunning; attempt++) {
+            startServer();
+            if (!isRunning) {
+                try {
+                    Thread.sleep(TAKE_OVER_RETRY_MS);
+                } catch (InterruptedException e) {
+                    System.out.println(e);
+                    System.out.println("Interrupted while taking over the address of the primary server.");
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts streaming the state of the server to a standby server, if a replication port is set. If the port cannot
+     * be opened, the server runs without a standby.
+     */
+    private void startReplication() {
+        if (replicationPort != -1) {
+            replicationSource = new ReplicationSource(ipAddress, replicationPort, this::captureState);
+            try {
+                replicationSource.start();
+            } catch (IOException e) {
+                System.out.println(e);
+                System.out.println("I/O Exception while starting the replication. The server runs without a standby.");
+                replicationSource = null;
+            }
+        }
+    }
+
+    /**
+     * Stops streaming the state of the server, so a standby server takes over.
+     */
+    private void stopReplication() {
+        ReplicationSource source = replicationSource;
+        if (source != null) {
+            replicationSource = null;
+            source.stop();
+        }
+    }
+
+    /**
+     * Publishes a connected user and its language preference to the standby server, if there is one.
+     *
+     * @param name     of the user
+     * @param language preference of the user
+     */
+    private void replicateSession(String name, InterfaceLang language) {
+        ReplicationSource source = replicationSource;
+        if (source != null) {
+            source.publishSession(name, language, presenceVersion.get());
+        }
+    }
+
+    /**
+     * Publishes a user that left to the standby server, if there is one.
+     *
+     * @param name of the user
+     */
+    private void replicateSessionClosed(String name) {
+        ReplicationSource source = replicationSource;
+        if (source != null) {
+            source.publishSessionClosed(name, presenceVersion.get());
+        }
+    }
+
+    /**
+     * Loads the snapshot of the previous run, if a snapshot file is set.
+     *
+     * @return the loaded snapshot, or null if there is none
+     */
+    private ServerSnapshot loadSnapshot() {
+        if (snapshotFile == null) {
+            return null;
+        }
+        snapshotStore = new SnapshotStore(snapshotFile);
+        ServerSnapshot snapshot;
+        try {
+            snapshot = snapshotStore.read();
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("I/O Exception while reading the server snapshot. The server starts without it.");
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Restores the state held in a snapshot of the previous run or in the state copied from a failed primary server.
+     * The users that were connected are remembered for a while, so they can be re-admitted through a fast path.
+     *
+     * @param snapshot state to be restored
+     */
+    private void restoreState(ServerSnapshot snapshot) {
+        presenceVersion.set(snapshot.getPresenceVersion());
+        returningUsers = new ConcurrentHashMap<>(snapshot.getSessions());
+        returningUsersDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETURNING_USERS_TIMEOUT_MS);
+        if (chatHistory.getHistoryWriter() == null) {
+            chatHistory.restoreRecentRecords(snapshot.getRecentMessages());
+        }
+        for (String message : snapshot.getPendingMessages()) {
+            if (isSessionIndependent(message)) {
+                messagesManager.getUnprocessedClientMessages().offer(message);
+            }
+        }
+    }
+
+    /**
+     * Checks if a message can be processed after a restart. Commands and session control messages refer to
+     * connections that no longer exist, so only plain chat messages are restored.
+     *
+     * @param message waiting to be processed
+     * @return true if the message is a plain chat message
+     */
+    private boolean isSessionIndependent(String message) {
+        return !message.startsWith(CodeMessages.REMOVEUSER.getMessage())
+                && !message.startsWith(CodeMessages.CHANGE_LANG.getMessage()) && !message.contains(": /");
+    }
+
+    /**
+     * Starts writing snapshots of the server periodically, if a snapshot file is set.
+     */
+    private void startSnapshots() {
+        if (snapshotStore != null) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "server-snapshot");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            snapshotExecutor.scheduleWithFixedDelay(this::writeSnapshot, snapshotIntervalMs, snapshotIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the connected users, their language preferences, the messages waiting to be processed and
+     * the last delivered messages.
+     *
+     * @return size of the written snapshot in bytes, or -1 if it was not written
+     */
+    private int writeSnapshot() {
+        try {
+            return snapshotStore.write(captureState());
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("I/O Exception while writing the server snapshot.");
+        }
+        return -1;
+    }
+
+    /**
+     * Captures the connected users, their language preferences, the messages waiting to be processed and the last
+     * delivered messages.
+     *
+     * @return the captured state
+     */
+    private ServerSnapshot captureState() {
+        Map<String, InterfaceLang> sessions = new LinkedHashMap<>();
+        for (Map.Entry<String, Socket> connection : namesToConnections.entrySet()) {
+            sessions.put(connection.getKey(), langPreferences.getOrDefault(connection.getValue(), DEFAULT_LANGUAGE));
+        }
+        return new ServerSnapshot(System.currentTimeMillis(), presenceVersion.get(), sessions,
+                new ArrayList<>(messagesManager.getUnprocessedClientMessages()), chatHistory.getRecentRecords());
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a last snapshot, before the users are disconnected.
+     */
+    private void stopSnapshots() {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdown();
+            try {
+                snapshotExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                System.out.println(e);
+                System.out.println("Interrupted while waiting for the server snapshot to be written.");
+                Thread.currentThread().interrupt();
+            }
+            snapshotExecutor = null;
+        }
+        if (snapshotStore != null) {
+            int size = writeSnapshot();
+            if (size != -1) {
+                System.out.println("Server snapshot of " + size + " bytes written to " + snapshotStore.getFile());
+            }
+        }
+    }
+
+    /**
+     * Stops the thread that claims the new names of renamed users in the cluster, letting the started renames finish.
+     */
+    private void stopClusterRenames() {
+        if (clusterRenameExecutor != null) {
+            clusterRenameExecutor.shutdown();
+            try {
+                clusterRenameExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                System.out.println(e);
+                System.out.println("Interrupted while waiting for the renames of users to finish.");
+                Thread.currentThread().interrupt();
+            }
+            clusterRenameExecutor = null;
+        }
+    }
+
+    /**
+     * Stops the server. The replication is stopped first, so a standby server takes over with the users that were
+     * connected.
      */
     public void stopServer() {
+        if (standbyReplica != null && !isRunning) {
+            standbyReplica.stop();
+            standbyReplica = null;
+            System.out.println("Standby server stopped.");
+            return;
+        }
         try {
-            for (String user : namesToConnections.keySet()) {
+            stopReplication();
+            stopSnapshots();
+            stopClusterRenames();
+            for (String user : new ArrayList<>(namesToConnections.keySet())) {
                 removeUser(user);
             }
-            serverSocket.close();
+            if (clusterNode != null) {
+                clusterNode.stop();
+                clusterNode = null;
+            }
+            closeEndpoints();
+            if (historyMaintenance != null) {
+                historyMaintenance.stop();
+                historyMaintenance = null;
+            }
+            chatHistory.close();
+            metrics.unpublish();
+            if (httpMonitor != null) {
+                httpMonitor.stop();
+                httpMonitor = null;
+            }
             isRunning = false;
             System.out.println("Server stopped.");
         } catch (IOException e) {
@@ -149,24 +725,11 @@ public class Server {
     }
 
     /**
-     * Accepts a new client.
+     * Accepts a new client on the main endpoint and runs its handshake.
      */
     public void getNewConnection() {
         try {
-            connectionToBeAccepted = serverSocket.accept();
-            String message = messagesManager.retrieveMessageFromClient(connectionToBeAccepted);
-            if (message.startsWith(CodeMessages.CONREQUEST.getMessage())) {
-                nameOfNextUserToJoin = getUserNameFromConnectionRequest(message);
-                if (userCanJoin(nameOfNextUserToJoin)) {
-                    acceptNewClient(nameOfNextUserToJoin, connectionToBeAccepted);
-                } else {
-                    rejectNewClient(nameOfNextUserToJoin, connectionToBeAccepted);
-                }
-            } else {
-                System.out.println(
-                        "The received connection request message was not a valid one, client will be disconnected.");
-                connectionToBeAccepted.close();
-            }
+            handshake(mainEndpoint.accept(), System.nanoTime());
         } catch (IOException e) {
             if (isRunning) {
                 System.out.println(e);
@@ -175,28 +738,374 @@ public class Server {
         }
     }
 
+    /**
+     * Reads the first message of an accepted connection and accepts, re-admits or rejects the client, or answers a
+     * status request. A client that does not send its first message in time is disconnected, so a silent connection
+     * cannot hold its accept lane. The registry lock is held only while the name is checked and reserved, so the
+     * cluster claim and the messages sent to the client do not make the other handshakes wait.
+     *
+     * @param connection    accepted connection
+     * @param acceptedNanos time when the connection was accepted
+     * @throws IOException
+     */
+    private void handshake(Socket connection, long acceptedNanos) throws IOException {
+        String message;
+        connection.setSoTimeout(handshakeTimeoutMs);
+        try {
+            message = messagesManager.retrieveMessageFromClient(connection);
+        } catch (SocketTimeoutException e) {
+            System.out.println("No connection request received in " + handshakeTimeoutMs
+                    + " ms, client will be disconnected.");
+            connection.close();
+            return;
+        }
+        connection.setSoTimeout(0);
+        if (message.startsWith(CodeMessages.CONREQUEST.getMessage())) {
+            String name = getUserNameFromConnectionRequest(message);
+            connectionToBeAccepted = connection;
+            nameOfNextUserToJoin = name;
+            if (reserveName(name)) {
+                try {
+                    if (clusterNode == null || clusterNode.getUserDirectory().claim(name)) {
+                        admitClient(name, connection, message, acceptedNanos);
+                    } else {
+                        rejectNewClient(name, connection);
+                    }
+                } finally {
+                    joiningNames.remove(name.toLowerCase());
+                }
+            } else {
+                rejectNewClient(name, connection);
+            }
+        } else if (message.startsWith(CodeMessages.STATUS_REQUEST.getMessage())) {
+            sendStatus(connection);
+        } else {
+            System.out.println(
+                    "The received connection request message was not a valid one, client will be disconnected.");
+            connection.close();
+        }
+        handshakeTime.record((System.nanoTime() - acceptedNanos) / 1000);
+    }
+
+    /**
+     * Accepts or re-admits a client, whose name is claimed in the cluster. If the handshake fails before the user is
+     * added to the registry, the claim is released, so the name can be taken again.
+     *
+     * @param name          of the user to join
+     * @param connection    accepted connection
+     * @param request       connection request of the client
+     * @param acceptedNanos time when the connection was accepted
+     * @throws IOException
+     */
+    private void admitClient(String name, Socket connection, String request, long acceptedNanos) throws IOException {
+        boolean admitted = false;
+        try {
+            InterfaceLang returningLanguage = takeReturningUser(name);
+            long[] cachedHistory = getCachedHistoryFromConnectionRequest(request);
+            if (returningLanguage != null) {
+                readmitReturningClient(name, connection, returningLanguage, cachedHistory, acceptedNanos);
+            } else {
+                acceptNewClient(name, connection, cachedHistory, acceptedNanos);
+            }
+            admitted = true;
+        } finally {
+            ClusterNode node = clusterNode;
+            if (!admitted && node != null && namesToConnections.get(name) != connection) {
+                System.out.println("Handshake of user '" + name + "' failed, its name is released in the cluster.");
+                node.getUserDirectory().release(name);
+            }
+        }
+    }
+
+    /**
+     * Reserves a user name for a handshake, if the name is valid and not taken by a connected or joining user. The
+     * name stays reserved until the handshake has added the user to the registry or rejected it.
+     *
+     * @param name of the user to join
+     * @return true if the name was reserved
+     */
+    private boolean reserveName(String name) {
+        synchronized (registryLock) {
+            if (!isValidUsername(name) || isNameTaken(name)) {
+                return false;
+            }
+            joiningNames.add(name.toLowerCase());
+            return true;
+        }
+    }
+
+    /**
+     * Checks if a user name, ignoring case, is taken by a user online on the server or in the cluster, or by a user
+     * that is joining the server.
+     *
+     * @param name to be checked
+     * @return true if the name is taken
+     */
+    private boolean isNameTaken(String name) {
+        if (joiningNames.contains(name.toLowerCase())) {
+            return true;
+        }
+        for (String onlineUser : getOnlineUserNames()) {
+            if (onlineUser.compareToIgnoreCase(name) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Answers a status request, for example from a connection gateway, with the number of connected users and the
+     * number of messages waiting to be processed, and closes the connection.
+     *
+     * @param connection that requested the status
+     * @throws IOException
+     */
+    private void sendStatus(Socket connection) throws IOException {
+        messagesManager.sendMessageToClient(CodeMessages.STATUS.getMessage() + namesToConnections.size() + ":"
+                + messagesManager.getUnprocessedClientMessages().size(), connection);
+        connection.close();
+    }
+
     /**
      * Introduces client to the server and to the other users.
      *
-     * @param name       of user to join
-     * @param connection to be accepted
+     * @param name          of user to join
+     * @param connection    to be accepted
+     * @param cachedHistory first and last sequence of the messages the client has cached, or null
+     * @param acceptedNanos time when the connection was accepted
      * @throws IOException
      */
-    private void acceptNewClient(String name, Socket connection) throws IOException {
+    private void acceptNewClient(String name, Socket connection, long[] cachedHistory, long acceptedNanos)
+            throws IOException {
         System.out.println("Accepting client: " + name);
         messagesManager.sendNewUserMessageToServerFrame(name);
+        // the acceptance is sent before the user is listed, so broadcasts of other joins cannot reach the client first
+        messagesManager.sendAcceptedMessageToClient(connection);
         namesToConnections.put(name, connection);
+        presenceVersion.incrementAndGet();
         System.out.println("User '" + name + "' added to the list of users.");
         langPreferences.put(connection, DEFAULT_LANGUAGE);
+        replicateSession(name, DEFAULT_LANGUAGE);
         messagesManager.sendUserAddedToListMessageToServerFrame(name);
         System.out.println("User '" + name + "' was sended to the other online users.");
-        messagesManager.sendAcceptedMessageToClient(connection);
+        sendScrollbackToClient(connection, cachedHistory, acceptedNanos);
         messagesManager.sendNewUserMessageToEveryone(name);
         messagesManager.sendMessageToServerFrame(
                 getCurrentTime() + "Sended messages, notifying the connection of client " + name);
         messagesManager.sendAddUserMessageToEveryone(name);
         messagesManager.sendUsersListToClient(connection);
         messagesManager.sendWellcomeMessageToCLient(connection);
+        if (clusterNode != null) {
+            clusterNode.publishUserJoined(name);
+        }
+    }
+
+    /**
+     * Returns the language preference of a user that was connected before the restart of the server, and forgets the
+     * user, so the fast path is taken only once. Returning users are forgotten after a timeout.
+     *
+     * @param name of the user
+     * @return language preference of the user, or null if the user is not returning
+     */
+    private InterfaceLang takeReturningUser(String name) {
+        if (returningUsers.isEmpty()) {
+            return null;
+        }
+        if (System.nanoTime() > returningUsersDeadlineNanos) {
+            returningUsers.clear();
+            return null;
+        }
+        return returningUsers.remove(name);
+    }
+
+    /**
+     * Re-admits a client that was connected before the restart of the server. The language preference of the client
+     * is restored, and the join announcement and welcome message are skipped. If the client has cached the messages it
+     * received, the messages delivered while it was away are sent as by acceptNewClient. Otherwise the scrollback is
+     * skipped as well, because the client still shows it from before the restart.
+     *
+     * @param name          of the returning user
+     * @param connection    to be accepted
+     * @param language      preference of the user before the restart
+     * @param cachedHistory first and last sequence of the messages the client has cached, or null
+     * @param acceptedNanos time when the connection was accepted
+     * @throws IOException
+     */
+    private void readmitReturningClient(String name, Socket connection, InterfaceLang language, long[] cachedHistory,
+            long acceptedNanos) throws IOException {
+        System.out.println("Re-admitting returning client: " + name);
+        messagesManager.sendAcceptedMessageToClient(connection);
+        namesToConnections.put(name, connection);
+        presenceVersion.incrementAndGet();
+        langPreferences.put(connection, language);
+        replicateSession(name, language);
+        if (cachedHistory != null) {
+            sendScrollbackToClient(connection, cachedHistory, acceptedNanos);
+        } else {
+            historyCursors.put(connection, chatHistory.getLastSequence() + 1);
+        }
+        messagesManager.sendUserAddedToListMessageToServerFrame(name);
+        messagesManager.sendAddUserMessageToEveryone(name);
+        messagesManager.sendUsersListToClient(connection);
+        if (clusterNode != null) {
+            clusterNode.publishUserJoined(name);
+        }
+        if (returningUsers.isEmpty()) {
+            System.out.println("All returning users re-admitted " + (System.nanoTime() - startNanos) / 1_000_000
+                    + " ms after start.");
+        }
+    }
+
+    /**
+     * Sends the last messages of the room to a newly accepted client as a single frame, and measures the time from
+     * accepting the connection until the frame is sent. If the client has cached the messages it received before and
+     * the scrollback continues them, only the messages after the cached ones are sent. Otherwise the whole scrollback
+     * is sent, even if it is empty, so the client knows to drop its cache.
+     *
+     * @param connection    of the accepted client
+     * @param cachedHistory first and last sequence of the messages the client has cached, or null
+     * @param acceptedNanos time when the connection was accepted
+     * @throws IOException
+     */
+    private void sendScrollbackToClient(Socket connection, long[] cachedHistory, long acceptedNanos)
+            throws IOException {
+        List<HistoryRecord> scrollback = chatHistory.getScrollback(HistoryRecord.DEFAULT_ROOM);
+        if (cachedHistory != null && continuesCachedHistory(scrollback, cachedHistory[1])) {
+            sendHistoryTailToClient(connection, scrollback, cachedHistory, acceptedNanos);
+            return;
+        }
+        if (cachedHistory != null && scrollback.isEmpty()) {
+            messagesManager.sendHistoryToClient(CodeMessages.SCROLLBACK, scrollback, connection);
+        }
+        if (scrollback.isEmpty()) {
+            historyCursors.put(connection, chatHistory.getLastSequence() + 1);
+            return;
+        }
+        int sent = messagesManager.sendHistoryToClient(CodeMessages.SCROLLBACK, scrollback, connection);
+        historyCursors.put(connection, sent == 0 ? chatHistory.getLastSequence() + 1
+                : scrollback.get(scrollback.size() - sent).getSequence());
+        System.out.println("Scrollback of " + sent + " messages sent "
+                + (System.nanoTime() - acceptedNanos) / 1_000_000 + " ms after accepting the connection.");
+    }
+
+    /**
+     * Checks if the messages cached by a client are followed by the scrollback without a gap, so the client is only
+     * missing the newer messages.
+     *
+     * @param scrollback   of the room
+     * @param lastSequence of the newest message cached by the client
+     * @return true if only the messages after the cached ones have to be sent
+     */
+    private boolean continuesCachedHistory(List<HistoryRecord> scrollback, long lastSequence) {
+        if (scrollback.isEmpty()) {
+            return false;
+        }
+        return scrollback.get(0).getSequence() <= lastSequence + 1
+                && lastSequence <= scrollback.get(scrollback.size() - 1).getSequence();
+    }
+
+    /**
+     * Sends to a client the messages of the scrollback that are newer than the ones it has cached. The messages are
+     * sent in as many frames as they need, so the client cache has no gap. Older pages of history are then read from
+     * before the oldest cached message.
+     *
+     * @param connection    of the accepted client
+     * @param scrollback    of the room
+     * @param cachedHistory first and last sequence of the messages the client has cached
+     * @param acceptedNanos time when the connection was accepted
+     * @throws IOException
+     */
+    private void sendHistoryTailToClient(Socket connection, List<HistoryRecord> scrollback, long[] cachedHistory,
+            long acceptedNanos) throws IOException {
+        historyCursors.put(connection, cachedHistory[0]);
+        List<HistoryRecord> tail = new ArrayList<>();
+        for (HistoryRecord record : scrollback) {
+            if (record.getSequence() > cachedHistory[1]) {
+                tail.add(record);
+            }
+        }
+        if (tail.isEmpty()) {
+            return;
+        }
+        int frames = messagesManager.sendHistoryInFramesToClient(CodeMessages.HISTORY_TAIL, tail, connection);
+        System.out.println("History tail of " + tail.size() + " messages sent in " + frames + " frames "
+                + (System.nanoTime() - acceptedNanos) / 1_000_000 + " ms after accepting the connection. "
+                + (scrollback.size() - tail.size()) + " messages were cached by the client.");
+    }
+
+    /**
+     * Sends the page of messages, older than the ones the client already has, to a client.
+     *
+     * @param userName of the client
+     */
+    private void sendHistoryPageToClient(String userName) {
+        Socket connection = namesToConnections.get(userName);
+        if (connection == null) {
+            return;
+        }
+        long cursor = historyCursors.getOrDefault(connection, chatHistory.getLastSequence() + 1);
+        List<HistoryRecord> page = chatHistory.getPageBefore(HistoryRecord.DEFAULT_ROOM, cursor, HISTORY_PAGE_SIZE);
+        try {
+            if (page.isEmpty()) {
+                messagesManager.sendMessageToClient(getCurrentTime() + "No older messages.", connection);
+            } else {
+                int sent = messagesManager.sendHistoryToClient(CodeMessages.HISTORY_PAGE, page, connection);
+                if (sent > 0) {
+                    historyCursors.put(connection, page.get(page.size() - sent).getSequence());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("IOException while sending history to user " + userName);
+        }
+    }
+
+    /**
+     * Searches the chat history and sends a page of the matching messages to a client. If the query ends with a page
+     * number in the format "#2", that page is sent, otherwise the first one.
+     *
+     * @param userName of the client
+     * @param query    text of the query
+     */
+    private void sendSearchResultsToClient(String userName, String query) {
+        Socket connection = namesToConnections.get(userName);
+        if (connection == null) {
+            return;
+        }
+        long page = 1;
+        int pageStart = query.lastIndexOf(" " + SEARCH_PAGE_PREFIX);
+        if (pageStart != -1 && query.substring(pageStart + 2).matches("[0-9]+")) {
+            page = Math.max(1, parsePageNumber(query.substring(pageStart + 2)));
+            query = query.substring(0, pageStart).trim();
+        }
+        SearchResult result = chatHistory.search(query, page, SEARCH_PAGE_SIZE);
+        try {
+            messagesManager.sendMessageToClient(getCurrentTime() + "Search results for '" + query + "': "
+                    + result.getTotalMatches() + " matches, page " + result.getPage() + "/" + result.getPageCount() + ".",
+                    connection);
+            if (!result.getSequences().isEmpty()) {
+                messagesManager.sendHistoryToClient(CodeMessages.SEARCH_RESULTS,
+                        chatHistory.getRecords(result.getSequences()), connection);
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("IOException while sending search results to user " + userName);
+        }
+    }
+
+    /**
+     * Parses the page number of a search query. Numbers too large for a long are read as the largest long, the search
+     * returns no messages for pages after the last one anyway.
+     *
+     * @param digits of the page number
+     * @return the page number
+     */
+    private static long parsePageNumber(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
     }
 
     /**
@@ -225,23 +1134,44 @@ public class Server {
      * @return user name
      */
     public String getUserNameFromConnectionRequest(String request) {
-        return request.substring(CodeMessages.CONREQUEST.getMessage().length());
+        int nameEnd = request.indexOf('\n');
+        if (nameEnd == -1) {
+            nameEnd = request.length();
+        }
+        return request.substring(CodeMessages.CONREQUEST.getMessage().length(), nameEnd);
     }
 
     /**
-     * Checks if a given user name can join the server.
+     * Gets the range of messages that the client has cached from a connection request. The range is sent on the line
+     * after the user name, as the first and last sequence number of the cached messages.
+     *
+     * @param request
+     * @return first and last sequence of the cached messages, or null if the client has no cached messages
+     */
+    public long[] getCachedHistoryFromConnectionRequest(String request) {
+        int hintStart = request.indexOf("\n" + CodeMessages.HISTORY_CACHED.getMessage());
+        if (hintStart == -1) {
+            return null;
+        }
+        String[] range = request.substring(hintStart + 1 + CodeMessages.HISTORY_CACHED.getMessage().length()).split(":");
+        try {
+            return new long[] { Long.parseLong(range[0]), Long.parseLong(range[1]) };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("Invalid cached history in connection request, the whole scrollback will be sent.");
+            return null;
+        }
+    }
+
+    /**
+     * Checks if a given user name can join the server. In a cluster, the name must not be taken on the other servers
+     * either. The name is only looked up, it is claimed by the handshake of the joining user.
      *
      * @param userName to join the server.
      * @return true if that user name can join the server.
-     */
-    public boolean userCanJoin(String userName) {
-        if (isValidUsername(userName)) {
-            for (Map.Entry<String, Socket> connection : namesToConnections.entrySet()) {
-                if (connection.getKey().compareToIgnoreCase(userName) == 0) {
-                    return false;
-                }
-            }
-            return true;
+     */
+    public boolean userCanJoin(String userName) {
+        if (isValidUsername(userName) && !isNameTaken(userName)) {
+            return clusterNode == null || clusterNode.getUserDirectory().lookup(userName) == null;
         } else {
             return false;
         }
@@ -273,41 +1203,119 @@ public class Server {
             System.out.println(e);
             System.out.println("IOException while trying to end the connection with user: " + userToBeRemoved);
         }
-        namesToConnections.remove(userToBeRemoved);
-        langPreferences.remove(userToBeRemoved);
+        Socket removedConnection = namesToConnections.remove(userToBeRemoved);
+        if (removedConnection != null) {
+            removedUsers.increment();
+            historyCursors.remove(removedConnection);
+            langPreferences.remove(removedConnection);
+            presenceVersion.incrementAndGet();
+            replicateSessionClosed(userToBeRemoved);
+            if (clusterNode != null) {
+                clusterNode.publishUserLeft(userToBeRemoved);
+                clusterNode.getUserDirectory().release(userToBeRemoved);
+            }
+        }
         messagesManager.sendRefreshMessageToServerFrame();
         System.out.println("User succesfully removed.");
     }
 
     /**
-     * Changes an username, but the connection stays the same.
+     * Changes an username, but the connection stays the same. The new name is reserved while it is claimed in the
+     * cluster. The claim waits for the directory node, so in a cluster it is made on the rename thread, not on the
+     * thread that processes messages.
      *
      * @param oldName of user
      * @param newName of user
      */
     public void renameUser(String oldName, String newName) {
-        if (!namesToConnections.containsKey(newName)) {
+        boolean reserved;
+        synchronized (registryLock) {
+            reserved = !namesToConnections.containsKey(newName) && !joiningNames.contains(newName.toLowerCase());
+            if (reserved) {
+                joiningNames.add(newName.toLowerCase());
+            }
+        }
+        ExecutorService renameExecutor = clusterRenameExecutor;
+        ClusterNode node = clusterNode;
+        if (!reserved) {
+            rejectRename(oldName, newName);
+        } else if (node == null || renameExecutor == null) {
+            completeRename(oldName, newName, true);
+        } else {
+            try {
+                renameExecutor.execute(() -> completeRename(oldName, newName,
+                        node.getUserDirectory().rename(oldName, newName)));
+            } catch (RejectedExecutionException e) {
+                joiningNames.remove(newName.toLowerCase());
+                rejectRename(oldName, newName);
+            }
+        }
+    }
+
+    /**
+     * Renames a user, whose new name is reserved, if the name was claimed, and releases the reservation.
+     *
+     * @param oldName of user
+     * @param newName of user
+     * @param claimed true if the new name was claimed in the cluster
+     */
+    private void completeRename(String oldName, String newName, boolean claimed) {
+        try {
+            if (!claimed) {
+                rejectRename(oldName, newName);
+                return;
+            }
+            Socket connection = namesToConnections.remove(oldName);
+            if (connection == null) {
+                System.out.println("User '" + oldName + "' left before it was renamed to '" + newName + "'.");
+                ClusterNode node = clusterNode;
+                if (node != null) {
+                    node.getUserDirectory().release(newName);
+                }
+                return;
+            }
             System.out.println("Renaming user '" + oldName + " to " + newName + "' on the server.");
             try {
-                messagesManager.sendMessageToClient(CodeMessages.CHANGE_USERNAME.getMessage() + newName, namesToConnections.get(oldName));
+                messagesManager.sendMessageToClient(CodeMessages.CHANGE_USERNAME.getMessage() + newName, connection);
             } catch (IOException e) {
                 System.out.println(e);
                 System.out.println("User not found to have the name changed.");
             }
-            Socket connection = namesToConnections.remove(oldName);
             namesToConnections.put(newName, connection);
+            presenceVersion.incrementAndGet();
+            replicateSessionClosed(oldName);
+            replicateSession(newName, langPreferences.getOrDefault(connection, DEFAULT_LANGUAGE));
             messagesManager.sendRemoveUserMessageToEveryone(oldName);
             messagesManager.sendAddUserMessageToEveryone(newName);
-        } else {
-            System.out.println("Cannot rename user '" + oldName + " to " + newName + "' on the server, because "
-                    + newName + " already exists");
-            try {
-                messagesManager.sendMessageToClient("Cannot change name. Username " + newName + " already exists!", namesToConnections.get(oldName));
-            } catch (IOException e) {
-                System.out.println(e);
-                System.out.println("User not found to send warning.");
+            ClusterNode node = clusterNode;
+            if (node != null) {
+                node.publishUserLeft(oldName);
+                node.publishUserJoined(newName);
             }
+        } finally {
+            joiningNames.remove(newName.toLowerCase());
+        }
+    }
 
+    /**
+     * Tells a user that the name it wanted to take already exists.
+     *
+     * @param oldName of user
+     * @param newName that was not taken
+     */
+    private void rejectRename(String oldName, String newName) {
+        System.out.println("Cannot rename user '" + oldName + " to " + newName + "' on the server, because "
+                + newName + " already exists");
+        Socket connection = namesToConnections.get(oldName);
+        if (connection == null) {
+            return;
+        }
+        try {
+            messagesManager.sendMessageToClient("Cannot change name. Username " + newName + " already exists!",
+                    connection);
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("User not found to send warning.");
         }
     }
 
@@ -329,43 +1337,17 @@ public class Server {
         if (!messagesManager.getUnprocessedClientMessages().isEmpty()) {
             try {
                 String message = messagesManager.getUnprocessedClientMessages().take();
-                if (message.startsWith(CodeMessages.REMOVEUSER.getMessage())) {
-                    String userToBeRemoved = message.substring(CodeMessages.REMOVEUSER.getMessage().length());
-                    removeUser(userToBeRemoved);
-                    messagesManager.sendUserLeftMessageToEveryone(userToBeRemoved);
-                    messagesManager.sendRemoveUserMessageToEveryone(userToBeRemoved);
-                } else if (message.startsWith(CodeMessages.CHANGE_LANG.getMessage())) {
-                    String userToChangeLang = message.substring(CodeMessages.CHANGE_LANG.getMessage().length());
-                    messagesManager.changeUserLanguage(namesToConnections.get(userToChangeLang));
-                } else if (message.toLowerCase().indexOf(CodeMessages.CHANGE_USERNAME.getMessage()) != -1) {
-                    String sender = message.substring(0, message.toLowerCase().indexOf(": " + CodeMessages.CHANGE_USERNAME.getMessage()));
-                    String newName = message.substring(message.toLowerCase().indexOf(CodeMessages.CHANGE_USERNAME.getMessage()) +
-                            CodeMessages.CHANGE_USERNAME.getMessage().length() + 1);
-                    renameUser(sender, newName);
-                    System.out.println(message);
-                } else if (message.toLowerCase().indexOf(CodeMessages.WHISPER.getMessage()) != -1 &&
-                        message.toLowerCase().indexOf(CodeMessages.WHISPER.getMessage()) < message.indexOf(" ", message.indexOf(" ") + 1)) {
-                    String sender = message.substring(0, message.toLowerCase().indexOf(": " + CodeMessages.WHISPER.getMessage()));
-                    String restOfMessage = message.substring(message.toLowerCase().indexOf(CodeMessages.WHISPER.getMessage()) +
-                            CodeMessages.WHISPER.getMessage().length() + 1);
-                    String receiver = restOfMessage.substring(0, restOfMessage.indexOf(" "));
-                    restOfMessage = restOfMessage.substring(restOfMessage.indexOf(" "));
-
-                    if (namesToConnections.containsKey(receiver) && namesToConnections.containsKey(sender)) {
-                        try {
-                            messagesManager.sendMessageToClient(getCurrentTime() + "Whisper from (" + sender + "):" + restOfMessage, getNamesToConnections().get(receiver), Color.MAGENTA);
-                            messagesManager.sendMessageToClient(getCurrentTime() + "Whisper to (" + receiver + "):" + restOfMessage, getNamesToConnections().get(sender), Color.BLUE);
-
-                        } catch (IOException e) {
-                            System.out.println(e);
-                            System.out.println("Error while trying to send whisper message");
-                        }
-                    } else {
-                        System.out.println("Either sender (" + sender + ") or receiver (" + receiver +
-                                ") does not exsist in the application while whisper message is trying to be send");
-                    }
-                } else {
-                    messagesManager.sendMessageToAllUsers(getCurrentTime() + message);
+                MessageDispatchedEvent dispatched = new MessageDispatchedEvent();
+                dispatched.begin();
+                dispatchMessage(message);
+                dispatched.end();
+                long queueWait = messagesManager.takeQueueWait(message);
+                if (dispatched.shouldCommit()) {
+                    int senderEnd = message.indexOf(": ");
+                    dispatched.user = senderEnd == -1 ? "" : message.substring(0, senderEnd);
+                    dispatched.size = 2 + MessagesManager.encodedLength(message);
+                    dispatched.queueWait = queueWait;
+                    dispatched.commit();
                 }
             } catch (InterruptedException e) {
                 System.out.println(e);
@@ -375,18 +1357,205 @@ public class Server {
         }
     }
 
+    /**
+     * Processes a message taken from the queue of received messages: a command of a user, a whisper, or a message to
+     * everyone.
+     *
+     * @param message to be processed
+     */
+    private void dispatchMessage(String message) {
+        if (message.startsWith(CodeMessages.REMOVEUSER.getMessage())) {
+            String userToBeRemoved = message.substring(CodeMessages.REMOVEUSER.getMessage().length());
+            removeUser(userToBeRemoved);
+            messagesManager.sendUserLeftMessageToEveryone(userToBeRemoved);
+            messagesManager.sendRemoveUserMessageToEveryone(userToBeRemoved);
+        } else if (message.startsWith(CodeMessages.CHANGE_LANG.getMessage())) {
+            String userToChangeLang = message.substring(CodeMessages.CHANGE_LANG.getMessage().length());
+            Socket connection = namesToConnections.get(userToChangeLang);
+            if (connection != null) {
+                messagesManager.changeUserLanguage(connection);
+                replicateSession(userToChangeLang, langPreferences.get(connection));
+            }
+        } else if (message.toLowerCase().indexOf(CodeMessages.CHANGE_USERNAME.getMessage()) != -1) {
+            String sender = message.substring(0, message.toLowerCase().indexOf(": " + CodeMessages.CHANGE_USERNAME.getMessage()));
+            String newName = message.substring(message.toLowerCase().indexOf(CodeMessages.CHANGE_USERNAME.getMessage()) +
+                    CodeMessages.CHANGE_USERNAME.getMessage().length() + 1);
+            renameUser(sender, newName);
+            System.out.println(message);
+        } else if (message.toLowerCase().endsWith(": " + CodeMessages.HISTORY.getMessage())) {
+            sendHistoryPageToClient(message.substring(0, message.length()
+                    - CodeMessages.HISTORY.getMessage().length() - 2));
+        } else if (message.toLowerCase().indexOf(": " + CodeMessages.SEARCH.getMessage() + " ") != -1) {
+            int commandStart = message.toLowerCase().indexOf(": " + CodeMessages.SEARCH.getMessage() + " ");
+            sendSearchResultsToClient(message.substring(0, commandStart),
+                    message.substring(commandStart + CodeMessages.SEARCH.getMessage().length() + 3).trim());
+        } else if (message.toLowerCase().indexOf(CodeMessages.WHISPER.getMessage()) != -1 &&
+                message.toLowerCase().indexOf(CodeMessages.WHISPER.getMessage()) < message.indexOf(" ", message.indexOf(" ") + 1)) {
+            String sender = message.substring(0, message.toLowerCase().indexOf(": " + CodeMessages.WHISPER.getMessage()));
+            String restOfMessage = message.substring(message.toLowerCase().indexOf(CodeMessages.WHISPER.getMessage()) +
+                    CodeMessages.WHISPER.getMessage().length() + 1);
+            String receiver = restOfMessage.substring(0, restOfMessage.indexOf(" "));
+            restOfMessage = restOfMessage.substring(restOfMessage.indexOf(" "));
+
+            if (namesToConnections.containsKey(receiver) && namesToConnections.containsKey(sender)) {
+                try {
+                    messagesManager.sendMessageToClient(getCurrentTime() + "Whisper from (" + sender + "):" + restOfMessage, getNamesToConnections().get(receiver), Color.MAGENTA);
+                    messagesManager.sendMessageToClient(getCurrentTime() + "Whisper to (" + receiver + "):" + restOfMessage, getNamesToConnections().get(sender), Color.BLUE);
+
+                } catch (IOException e) {
+                    System.out.println(e);
+                    System.out.println("Error while trying to send whisper message");
+                }
+            } else if (namesToConnections.containsKey(sender) && clusterNode != null) {
+                String text = restOfMessage;
+                clusterNode.relayWhisper(sender, receiver, text)
+                        .thenAccept(relayed -> confirmRelayedWhisper(sender, receiver, text, relayed));
+            } else {
+                System.out.println("Either sender (" + sender + ") or receiver (" + receiver +
+                        ") does not exsist in the application while whisper message is trying to be send");
+            }
+        } else {
+            HistoryRecord record = recordDeliveredMessage(message);
+            messagesManager.sendMessageToAllUsers(
+                    MessagesManager.sequenceTag(record.getSequence()) + getCurrentTime() + message);
+            if (clusterNode != null) {
+                clusterNode.relayBroadcast(message);
+            }
+        }
+    }
+
+    /**
+     * Adds a message, delivered to all users, to the chat history. The message is expected to be in the format
+     * "sender: text". Messages of local users are recorded by the thread that processes messages, and the ones relayed
+     * by other nodes of the cluster by the threads of the cluster links, so the message is recorded and published to
+     * the standby server as one step, and the standby gets the messages in the order of their sequence numbers.
+     *
+     * @param message that was delivered
+     * @return the record of the message
+     */
+    private HistoryRecord recordDeliveredMessage(String message) {
+        int senderEnd = message.indexOf(": ");
+        synchronized (historyLock) {
+            HistoryRecord record;
+            if (senderEnd != -1) {
+                record = chatHistory.record(message.substring(0, senderEnd), HistoryRecord.DEFAULT_ROOM,
+                        message.substring(senderEnd + 2));
+            } else {
+                record = chatHistory.record("", HistoryRecord.DEFAULT_ROOM, message);
+            }
+            ReplicationSource source = replicationSource;
+            if (source != null) {
+                source.publishRecord(record);
+            }
+            return record;
+        }
+    }
+
+    @Override
+    public void onRemoteBroadcast(String message) {
+        HistoryRecord record = recordDeliveredMessage(message);
+        messagesManager.sendMessageToAllUsers(
+                MessagesManager.sequenceTag(record.getSequence()) + getCurrentTime() + message);
+    }
+
+    /**
+     * Shows the sender of a whisper to a user of another node that the whisper was sent. The receiver can be looked
+     * up in the user directory first, so this may be called after the message that held the whisper was processed.
+     *
+     * @param sender   of the whisper
+     * @param receiver of the whisper
+     * @param text     of the whisper
+     * @param relayed  true if the whisper was relayed to the node of the receiver
+     */
+    private void confirmRelayedWhisper(String sender, String receiver, String text, boolean relayed) {
+        Socket connection = namesToConnections.get(sender);
+        if (!relayed || connection == null) {
+            System.out.println("Either sender (" + sender + ") or receiver (" + receiver +
+                    ") does not exsist in the application while whisper message is trying to be send");
+            return;
+        }
+        try {
+            messagesManager.sendMessageToClient(getCurrentTime() + "Whisper to (" + receiver + "):" + text, connection, Color.BLUE);
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("Error while trying to send whisper message");
+        }
+    }
+
+    @Override
+    public void onRemoteWhisper(String sender, String receiver, String text) {
+        Socket connection = namesToConnections.get(receiver);
+        if (connection == null) {
+            System.out.println("Receiver (" + receiver + ") of a relayed whisper is no longer on this server.");
+            return;
+        }
+        try {
+            messagesManager.sendMessageToClient(getCurrentTime() + "Whisper from (" + sender + "):" + text, connection,
+                    Color.MAGENTA);
+        } catch (IOException e) {
+            System.out.println(e);
+            System.out.println("Error while trying to send relayed whisper message");
+        }
+    }
+
+    @Override
+    public void onRemoteUserJoined(String name) {
+        messagesManager.sendAddUserMessageToEveryone(name);
+    }
+
+    @Override
+    public void onRemoteUserLeft(String name) {
+        messagesManager.sendRemoveUserMessageToEveryone(name);
+    }
+
+    @Override
+    public Collection<String> getLocalUserNames() {
+        return new ArrayList<>(namesToConnections.keySet());
+    }
+
+    /**
+     * Returns the names of all online users, including the users of the other servers in a cluster.
+     *
+     * @return names of the online users
+     */
+    public List<String> getOnlineUserNames() {
+        List<String> onlineUsers = new ArrayList<>(namesToConnections.keySet());
+        ClusterNode node = clusterNode;
+        if (node != null) {
+            onlineUsers.addAll(node.getRemoteUserNames());
+        }
+        return onlineUsers;
+    }
+
     /**
      * Goes trough each connection and if a connection has send a message, adds it to the queue to messages to process.
+     * The time since the previous collection is kept, so the flight recorder shows how long received messages could
+     * have waited to be collected.
      */
     public void collectNewMessages() {
+        long previousCollectionEndNanos = lastCollectionEndNanos;
+        long sincePreviousCollection = previousCollectionEndNanos == 0 ? 0
+                : System.nanoTime() - previousCollectionEndNanos;
         namesToConnections.forEach((name, connection) -> {
             DataInputStream dataIn;
             String message;
             try {
                 dataIn = new DataInputStream(connection.getInputStream());
                 if (dataIn.available() > 0) {
+                    MessageReceivedEvent received = new MessageReceivedEvent();
+                    received.begin();
                     message = dataIn.readUTF();
-                    messagesManager.getUnprocessedClientMessages().put(message);
+                    received.end();
+                    int size = 2 + MessagesManager.encodedLength(message);
+                    inboundMessages.increment();
+                    inboundBytes.add(size);
+                    if (received.shouldCommit()) {
+                        received.user = name;
+                        received.size = size;
+                        received.sincePreviousCollection = sincePreviousCollection;
+                        received.commit();
+                    }
+                    messagesManager.enqueueClientMessage(name, message, size);
                 }
             } catch (Exception e) {
                 removeUser(name);
@@ -397,6 +1566,7 @@ public class Server {
                         + name + ". Connection will be removed");
             }
         });
+        lastCollectionEndNanos = System.nanoTime();
     }
 
     /**
@@ -479,6 +1649,10 @@ public class Server {
         return nameOfNextUserToJoin;
     }
 
+    public ArrayBlockingQueue<String> getUnprocessedClientMessages() {
+        return messagesManager.getUnprocessedClientMessages();
+    }
+
     public ArrayBlockingQueue<String> getUnprocessedServerMessages() {
         return messagesManager.getUnprocessedServerMessages();
     }
@@ -486,4 +1660,284 @@ public class Server {
     public Map<Socket, InterfaceLang> getLangPreferences() {
         return langPreferences;
     }
+
+    public Path getHistoryDirectory() {
+        return historyDirectory;
+    }
+
+    /**
+     * Sets the directory, where delivered messages are persisted, if the server is not running. If no directory is
+     * set, messages are not persisted.
+     *
+     * @param historyDirectory directory of the history log
+     */
+    public void setHistoryDirectory(Path historyDirectory) {
+        if (!isRunning) {
+            this.historyDirectory = historyDirectory;
+        } else {
+            System.out.println("Cannot change history directory while server is running.");
+        }
+    }
+
+    /**
+     * Sets the size in bytes, at which the history log starts a new segment file, if the server is not running.
+     *
+     * @param historySegmentSize size of each segment file
+     */
+    public void setHistorySegmentSize(int historySegmentSize) {
+        if (!isRunning) {
+            this.historySegmentSize = historySegmentSize;
+        } else {
+            System.out.println("Cannot change history segment size while server is running.");
+        }
+    }
+
+    /**
+     * Sets when the persisted messages are forced to the storage device, if the server is not running.
+     *
+     * @param historyDurabilityMode durability mode of the history writer
+     */
+    public void setHistoryDurabilityMode(DurabilityMode historyDurabilityMode) {
+        if (!isRunning) {
+            this.historyDurabilityMode = historyDurabilityMode;
+        } else {
+            System.out.println("Cannot change history durability mode while server is running.");
+        }
+    }
+
+    /**
+     * Sets how long and how much of the history of each room is kept, if the server is not running.
+     *
+     * @param historyRetentionPolicy retention policy of the history log
+     */
+    public void setHistoryRetentionPolicy(RetentionPolicy historyRetentionPolicy) {
+        if (!isRunning) {
+            this.historyRetentionPolicy = historyRetentionPolicy;
+        } else {
+            System.out.println("Cannot change history retention policy while server is running.");
+        }
+    }
+
+    /**
+     * Sets the time between two runs of the history maintenance, if the server is not running.
+     *
+     * @param historyMaintenanceIntervalMs time in milliseconds
+     */
+    public void setHistoryMaintenanceInterval(long historyMaintenanceIntervalMs) {
+        if (!isRunning) {
+            this.historyMaintenanceIntervalMs = historyMaintenanceIntervalMs;
+        } else {
+            System.out.println("Cannot change history maintenance interval while server is running.");
+        }
+    }
+
+    /**
+     * Sets the port that the server listens on for the other servers of a cluster, if the server is not running.
+     *
+     * @param clusterPort port for the cluster links, or -1 to run the server on its own
+     */
+    public void setClusterPort(int clusterPort) {
+        if (!isRunning) {
+            this.clusterPort = clusterPort;
+        } else {
+            System.out.println("Cannot change cluster port while server is running.");
+        }
+    }
+
+    /**
+     * Adds another server of the cluster to link to, if the server is not running.
+     *
+     * @param address of the other server
+     * @param port    that the other server listens on for cluster links
+     */
+    public void addClusterPeer(String address, int port) {
+        if (!isRunning) {
+            clusterPeers.add(new InetSocketAddress(address, port));
+        } else {
+            System.out.println("Cannot add cluster peers while server is running.");
+        }
+    }
+
+    /**
+     * Adds an address and port that the server also accepts clients on, if the server is not running. The extra
+     * endpoints are served by the accept loops, so accept lanes must be set.
+     *
+     * @param address to accept clients on
+     * @param port    to accept clients on
+     */
+    public void addEndpoint(String address, int port) {
+        if (!isRunning) {
+            extraEndpointAddresses.add(new InetSocketAddress(address, port));
+        } else {
+            System.out.println("Cannot add endpoints while server is running.");
+        }
+    }
+
+    /**
+     * Sets the number of lanes that run the handshakes of new clients, if the server is not running. With lanes set,
+     * the server runs its own accept loop on each endpoint. Without lanes, clients are accepted on the main endpoint
+     * by calling getNewConnection.
+     *
+     * @param acceptLanes number of lanes, or 0 to accept clients through getNewConnection
+     */
+    public void setAcceptLanes(int acceptLanes) {
+        if (!isRunning) {
+            this.acceptLanes = acceptLanes;
+        } else {
+            System.out.println("Cannot change accept lanes while server is running.");
+        }
+    }
+
+    /**
+     * Sets how long a handshake waits for the first message of an accepted connection before it disconnects the client.
+     *
+     * @param handshakeTimeoutMs time to wait in milliseconds
+     */
+    public void setHandshakeTimeoutMs(int handshakeTimeoutMs) {
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+    }
+
+    /**
+     * Sets the port that the server streams its state on to a standby server, if the server is not running.
+     *
+     * @param replicationPort port for the standby server, or -1 to run the server without a standby
+     */
+    public void setReplicationPort(int replicationPort) {
+        if (!isRunning) {
+            this.replicationPort = replicationPort;
+        } else {
+            System.out.println("Cannot change replication port while server is running.");
+        }
+    }
+
+    /**
+     * Sets the port of the HTTP monitor of the server, if the server is not running.
+     *
+     * @param httpPort port for the HTTP monitor, or -1 to run the server without it
+     */
+    public void setHttpPort(int httpPort) {
+        if (!isRunning) {
+            this.httpPort = httpPort;
+        } else {
+            System.out.println("Cannot change HTTP port while server is running.");
+        }
+    }
+
+    /**
+     * Sets the address that the HTTP monitor of the server listens on, if the server is not running. The monitor
+     * serves the connected users and the metrics without authentication, so the address should only be reachable by
+     * the operators of the server.
+     *
+     * @param httpAddress address for the HTTP monitor, the loopback address by default
+     */
+    public void setHttpAddress(String httpAddress) {
+        if (!isRunning) {
+            this.httpAddress = httpAddress;
+        } else {
+            System.out.println("Cannot change HTTP address while server is running.");
+        }
+    }
+
+    /**
+     * Makes the server a standby of a primary server, if the server is not running. The server must be given the same
+     * address and port as the primary server, so it can take them over.
+     *
+     * @param address of the primary server
+     * @param port    that the primary server streams its state on
+     */
+    public void setStandbyOf(String address, int port) {
+        if (!isRunning) {
+            primaryReplicationAddress = new InetSocketAddress(address, port);
+        } else {
+            System.out.println("Cannot make the server a standby while it is running.");
+        }
+    }
+
+    /**
+     * Sets the file that snapshots of the server are written to and loaded from on start, if the server is not
+     * running.
+     *
+     * @param snapshotFile file of the snapshot
+     */
+    public void setSnapshotFile(Path snapshotFile) {
+        if (!isRunning) {
+            this.snapshotFile = snapshotFile;
+        } else {
+            System.out.println("Cannot change snapshot file while server is running.");
+        }
+    }
+
+    /**
+     * Sets the time between two periodic snapshots, if the server is not running.
+     *
+     * @param snapshotIntervalMs time in milliseconds
+     */
+    public void setSnapshotInterval(long snapshotIntervalMs) {
+        if (!isRunning) {
+            this.snapshotIntervalMs = snapshotIntervalMs;
+        } else {
+            System.out.println("Cannot change snapshot interval while server is running.");
+        }
+    }
+
+    /**
+     * Sets the number of last messages, held in memory and sent to joining users, if the server is not running.
+     *
+     * @param scrollbackSize number of messages
+     */
+    public void setScrollbackSize(int scrollbackSize) {
+        if (!isRunning) {
+            this.scrollbackSize = scrollbackSize;
+        } else {
+            System.out.println("Cannot change scrollback size while server is running.");
+        }
+    }
+
+    public ChatHistory getChatHistory() {
+        return chatHistory;
+    }
+
+    public HistoryMaintenance getHistoryMaintenance() {
+        return historyMaintenance;
+    }
+
+    public HttpMonitor getHttpMonitor() {
+        return httpMonitor;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public ClusterNode getClusterNode() {
+        return clusterNode;
+    }
+
+    public long getPresenceVersion() {
+        return presenceVersion.get();
+    }
+
+    public Set<String> getReturningUsers() {
+        return returningUsers.keySet();
+    }
+
+    public long getRestartToReadyMs() {
+        return restartToReadyMs;
+    }
+
+    public List<ListeningEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public ReplicationSource getReplicationSource() {
+        return replicationSource;
+    }
+
+    public StandbyReplica getStandbyReplica() {
+        return standbyReplica;
+    }
+
+    public long getFailoverMs() {
+        return failoverMs;
+    }
 }
@@ -0,0 +1,55 @@
+package edu.uni.ruse.server.cluster;
+
+import java.util.Collection;
+
+/**
+ * Interface for the server of a cluster node, that handles the messages and presence changes relayed from the other
+ * nodes.
+ *
+ * @author Alexander Andreev
+ */
+public interface ClusterListener {
+
+	/**
+	 * Delivers a message, sent by a user of another node to all users, to the local users.
+	 *
+	 * @param message
+	 *            in the format "sender: text"
+	 */
+	void onRemoteBroadcast(String message);
+
+	/**
+	 * Delivers a whisper, sent by a user of another node, to a local user.
+	 *
+	 * @param sender
+	 *            of the whisper
+	 * @param receiver
+	 *            local user that the whisper is for
+	 * @param text
+	 *            of the whisper
+	 */
+	void onRemoteWhisper(String sender, String receiver, String text);
+
+	/**
+	 * Adds a user of another node to the list of online users of the local users.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	void onRemoteUserJoined(String name);
+
+	/**
+	 * Removes a user of another node from the list of online users of the local users.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	void onRemoteUserLeft(String name);
+
+	/**
+	 * Returns the names of the users connected to this node.
+	 *
+	 * @return names of the local users
+	 */
+	Collection<String> getLocalUserNames();
+}
@@ -0,0 +1,509 @@
+package edu.uni.ruse.server.cluster;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClusterNode class, that links a server with the other servers of a cluster over dedicated connections. Every node
+ * keeps one link to every other node, so each relayed message is encoded once and sent once to each node, however many
+ * users it has. Only the events of the local users are relayed, so messages are never forwarded twice. The users of
+ * the other nodes are tracked from the presence changes they relay, so the local users see one merged list. Name
+ * uniqueness and whisper targets are resolved through a user directory, partitioned across the nodes.
+ *
+ * @author Alexander Andreev
+ */
+public class ClusterNode {
+
+	private static final int CONNECT_INTERVAL_MS = 1000;
+	private static final int CONNECT_TIMEOUT_MS = 1000;
+	private static final int ACCEPT_QUEUE_LIMIT = 32;
+	private static final int REQUEST_TIMEOUT_MS = 1000;
+	private final String nodeId;
+	private final String address;
+	private final int port;
+	private final List<InetSocketAddress> peers;
+	private final ClusterListener listener;
+	private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> nodeUsers = new ConcurrentHashMap<>();
+	private final Map<String, String> userNodes = new ConcurrentHashMap<>();
+	private final AtomicLong sentFrames = new AtomicLong();
+	private final AtomicLong receivedFrames = new AtomicLong();
+	private final AtomicLong nextRequestId = new AtomicLong();
+	private final Map<String, CompletableFuture<String>> pendingRequests = new ConcurrentHashMap<>();
+	private final UserDirectory userDirectory;
+	private volatile boolean running;
+	private ServerSocket serverSocket;
+	private ScheduledExecutorService connector;
+	private ExecutorService lookups;
+
+	/**
+	 * Constructor with the address that the node listens on for its peers, and the addresses of the peers.
+	 *
+	 * @param address
+	 *            that the node listens on
+	 * @param port
+	 *            that the node listens on
+	 * @param peers
+	 *            addresses of the other nodes
+	 * @param listener
+	 *            that handles the relayed messages
+	 */
+	public ClusterNode(String address, int port, List<InetSocketAddress> peers, ClusterListener listener) {
+		this.address = address;
+		this.port = port;
+		this.nodeId = address + ":" + port;
+		this.peers = new ArrayList<>(peers);
+		this.listener = listener;
+		this.userDirectory = new UserDirectory(this);
+	}
+
+	/**
+	 * Starts listening for peers and connecting to the configured ones. Peers that are not reachable are retried
+	 * periodically, so the nodes can be started in any order.
+	 *
+	 * @throws IOException
+	 *             if the node cannot listen on its address
+	 */
+	public void start() throws IOException {
+		serverSocket = new ServerSocket(port, ACCEPT_QUEUE_LIMIT, InetAddress.getByName(address));
+		running = true;
+		Thread acceptThread = new Thread(this::acceptPeers, "cluster-accept-" + port);
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		connector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cluster-connect-" + port);
+			thread.setDaemon(true);
+			return thread;
+		});
+		connector.scheduleWithFixedDelay(this::connectToPeers, 0, CONNECT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		lookups = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cluster-lookup-" + port);
+			thread.setDaemon(true);
+			return thread;
+		});
+		System.out.println("Cluster node " + nodeId + " started with " + peers.size() + " configured peers.");
+	}
+
+	/**
+	 * Stops the node, closing all links.
+	 */
+	public void stop() {
+		running = false;
+		if (connector != null) {
+			connector.shutdownNow();
+		}
+		if (lookups != null) {
+			lookups.shutdownNow();
+		}
+		try {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("I/O Exception while closing the cluster socket of node " + nodeId);
+		}
+		for (PeerLink link : links.values()) {
+			link.close();
+		}
+		System.out.println("Cluster node " + nodeId + " stopped.");
+	}
+
+	/**
+	 * Accepts the links opened by other nodes.
+	 */
+	private void acceptPeers() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				startLink(new PeerLink(socket, false));
+			} catch (IOException e) {
+				if (running) {
+					System.out.println(e);
+					System.out.println("I/O Exception while accepting a cluster peer on node " + nodeId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens links to the configured peers that are not linked yet.
+	 */
+	private void connectToPeers() {
+		for (InetSocketAddress peer : peers) {
+			if (!running || links.containsKey(peer.getHostString() + ":" + peer.getPort())) {
+				continue;
+			}
+			Socket socket = new Socket();
+			try {
+				socket.connect(peer, CONNECT_TIMEOUT_MS);
+				startLink(new PeerLink(socket, true));
+			} catch (IOException e) {
+				try {
+					socket.close();
+				} catch (IOException closeException) {
+					System.out.println(closeException);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Identifies this node to the peer and starts the thread that reads the link.
+	 */
+	private void startLink(PeerLink link) throws IOException {
+		link.send(new RelayFrame(RelayFrame.IDENTIFY, nodeId).encode());
+		Thread readerThread = new Thread(() -> readLink(link), "cluster-link-" + port);
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	/**
+	 * Reads and handles the frames of a link until it is closed.
+	 */
+	private void readLink(PeerLink link) {
+		try {
+			while (running) {
+				RelayFrame frame = link.receive();
+				receivedFrames.incrementAndGet();
+				if (frame.getType() == RelayFrame.IDENTIFY) {
+					if (!registerLink(link, frame.getField(0))) {
+						return;
+					}
+				} else if (link.getRemoteNodeId() != null) {
+					handleFrame(link.getRemoteNodeId(), frame);
+				}
+			}
+		} catch (IOException e) {
+			if (running) {
+				System.out.println(e);
+				System.out.println("Lost the cluster link to node " + link.getRemoteNodeId());
+			}
+		} finally {
+			link.close();
+			String remoteNodeId = link.getRemoteNodeId();
+			if (remoteNodeId != null && links.remove(remoteNodeId, link)) {
+				removeNodeUsers(remoteNodeId);
+				userDirectory.removeNode(remoteNodeId);
+			}
+		}
+	}
+
+	/**
+	 * Registers an identified link and sends the local users over it. If both nodes opened a link to each other, both
+	 * keep the one opened by the node with the lower id.
+	 *
+	 * @return false if the link is a duplicate and was closed
+	 */
+	private boolean registerLink(PeerLink link, String remoteNodeId) throws IOException {
+		link.setRemoteNodeId(remoteNodeId);
+		PeerLink existing = links.putIfAbsent(remoteNodeId, link);
+		if (existing != null) {
+			boolean lowerIdOpenedLink = link.isOutbound() == (nodeId.compareTo(remoteNodeId) < 0);
+			if (!lowerIdOpenedLink) {
+				link.setRemoteNodeId(null);
+				return false;
+			}
+			links.put(remoteNodeId, link);
+			existing.setRemoteNodeId(null);
+			existing.close();
+		}
+		List<String> fields = new ArrayList<>(listener.getLocalUserNames());
+		link.send(new RelayFrame(RelayFrame.PRESENCE, fields.toArray(new String[0])).encode());
+		if (existing == null) {
+			userDirectory.addNode(remoteNodeId);
+		}
+		System.out.println("Cluster node " + nodeId + " linked to node " + remoteNodeId);
+		return true;
+	}
+
+	/**
+	 * Handles a frame received from an identified node.
+	 */
+	private void handleFrame(String remoteNodeId, RelayFrame frame) {
+		switch (frame.getType()) {
+		case RelayFrame.PRESENCE:
+			for (String user : frame.getFields()) {
+				addNodeUser(remoteNodeId, user);
+			}
+			break;
+		case RelayFrame.USER_JOINED:
+			addNodeUser(remoteNodeId, frame.getField(0));
+			break;
+		case RelayFrame.USER_LEFT:
+			removeNodeUser(remoteNodeId, frame.getField(0));
+			break;
+		case RelayFrame.BROADCAST:
+			listener.onRemoteBroadcast(frame.getField(0));
+			break;
+		case RelayFrame.WHISPER:
+			listener.onRemoteWhisper(frame.getField(0), frame.getField(1), frame.getField(2));
+			break;
+		case RelayFrame.REPLY:
+			CompletableFuture<String> pendingRequest = pendingRequests.get(frame.getField(0));
+			if (pendingRequest != null) {
+				pendingRequest.complete(frame.getField(1));
+			}
+			break;
+		case RelayFrame.CLAIM:
+		case RelayFrame.RELEASE:
+		case RelayFrame.LOOKUP:
+		case RelayFrame.DIRECTORY_PUT:
+		case RelayFrame.DIRECTORY_REMOVE:
+			userDirectory.handleFrame(remoteNodeId, frame);
+			break;
+		default:
+			System.out.println("Unknown relay frame type " + frame.getType() + " from node " + remoteNodeId);
+		}
+	}
+
+	/**
+	 * Adds a user of another node, notifying the listener if the user was not known.
+	 */
+	private void addNodeUser(String remoteNodeId, String user) {
+		nodeUsers.computeIfAbsent(remoteNodeId, id -> ConcurrentHashMap.newKeySet()).add(user);
+		if (userNodes.put(user, remoteNodeId) == null) {
+			listener.onRemoteUserJoined(user);
+		}
+	}
+
+	/**
+	 * Removes a user of another node, notifying the listener if the user was known.
+	 */
+	private void removeNodeUser(String remoteNodeId, String user) {
+		Set<String> users = nodeUsers.get(remoteNodeId);
+		if (users != null) {
+			users.remove(user);
+		}
+		userDirectory.invalidate(user);
+		if (userNodes.remove(user, remoteNodeId)) {
+			listener.onRemoteUserLeft(user);
+		}
+	}
+
+	/**
+	 * Removes all users of a node that is no longer linked.
+	 */
+	private void removeNodeUsers(String remoteNodeId) {
+		Set<String> users = nodeUsers.remove(remoteNodeId);
+		if (users != null) {
+			for (String user : users) {
+				if (userNodes.remove(user, remoteNodeId)) {
+					listener.onRemoteUserLeft(user);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends an encoded frame to every linked node.
+	 */
+	private void sendToAll(byte[] frame) {
+		for (PeerLink link : links.values()) {
+			send(link, frame);
+		}
+	}
+
+	/**
+	 * Sends an encoded frame to a node. A broken link is closed, and its reader removes it.
+	 */
+	private void send(PeerLink link, byte[] frame) {
+		try {
+			link.send(frame);
+			sentFrames.incrementAndGet();
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("I/O Exception while relaying to node " + link.getRemoteNodeId());
+			link.close();
+		}
+	}
+
+	/**
+	 * Sends an encoded frame to a node, if it is linked.
+	 *
+	 * @param remoteNodeId
+	 *            of the node
+	 * @param frame
+	 *            encoded with its length
+	 */
+	void sendTo(String remoteNodeId, byte[] frame) {
+		PeerLink link = links.get(remoteNodeId);
+		if (link != null) {
+			send(link, frame);
+		}
+	}
+
+	/**
+	 * Sends a request to a node and waits for its reply. The id of the request is added in front of the fields.
+	 *
+	 * @param remoteNodeId
+	 *            of the node
+	 * @param type
+	 *            of the request
+	 * @param fields
+	 *            of the request
+	 * @return the reply, or null if the node is not linked or did not reply in time
+	 */
+	String request(String remoteNodeId, byte type, String... fields) {
+		PeerLink link = links.get(remoteNodeId);
+		if (link == null) {
+			return null;
+		}
+		String requestId = Long.toString(nextRequestId.incrementAndGet());
+		String[] requestFields = new String[fields.length + 1];
+		requestFields[0] = requestId;
+		System.arraycopy(fields, 0, requestFields, 1, fields.length);
+		CompletableFuture<String> reply = new CompletableFuture<>();
+		pendingRequests.put(requestId, reply);
+		try {
+			send(link, new RelayFrame(type, requestFields).encode());
+			return reply.get(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			System.out.println(e);
+			System.out.println("Interrupted while waiting for a reply from node " + remoteNodeId);
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException | TimeoutException e) {
+			System.out.println(e);
+			System.out.println("No reply from node " + remoteNodeId + " in " + REQUEST_TIMEOUT_MS + " ms.");
+			return null;
+		} finally {
+			pendingRequests.remove(requestId);
+		}
+	}
+
+	/**
+	 * Sends the reply to a request of a node.
+	 *
+	 * @param remoteNodeId
+	 *            of the node that sent the request
+	 * @param requestId
+	 *            of the request
+	 * @param value
+	 *            of the reply
+	 */
+	void reply(String remoteNodeId, String requestId, String value) {
+		sendTo(remoteNodeId, new RelayFrame(RelayFrame.REPLY, requestId, value).encode());
+	}
+
+	/**
+	 * Relays a message, sent by a local user to all users, to the other nodes.
+	 *
+	 * @param message
+	 *            in the format "sender: text"
+	 */
+	public void relayBroadcast(String message) {
+		sendToAll(new RelayFrame(RelayFrame.BROADCAST, message).encode());
+	}
+
+	/**
+	 * Relays a whisper to the node of its receiver. The node is taken from the relayed presence if the receiver is
+	 * known there, and is otherwise found through the user directory on the lookup thread, so the caller never waits
+	 * for another node.
+	 *
+	 * @param sender
+	 *            local user that sent the whisper
+	 * @param receiver
+	 *            user of another node
+	 * @param text
+	 *            of the whisper
+	 * @return completed with true if the whisper was relayed, or false if the receiver is not on a linked node
+	 */
+	public CompletableFuture<Boolean> relayWhisper(String sender, String receiver, String text) {
+		String receiverNode = userNodes.get(receiver);
+		if (receiverNode != null) {
+			return CompletableFuture.completedFuture(sendWhisper(receiverNode, sender, receiver, text));
+		}
+		try {
+			return CompletableFuture.supplyAsync(
+					() -> sendWhisper(userDirectory.lookup(receiver), sender, receiver, text), lookups);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.completedFuture(false);
+		}
+	}
+
+	/**
+	 * Sends a whisper to the node of its receiver, if the node is linked.
+	 */
+	private boolean sendWhisper(String receiverNode, String sender, String receiver, String text) {
+		PeerLink link = receiverNode == null ? null : links.get(receiverNode);
+		if (link == null) {
+			return false;
+		}
+		send(link, new RelayFrame(RelayFrame.WHISPER, sender, receiver, text).encode());
+		return true;
+	}
+
+	/**
+	 * Relays that a user joined this node.
+	 *
+	 * @param name
+	 *            of the local user
+	 */
+	public void publishUserJoined(String name) {
+		sendToAll(new RelayFrame(RelayFrame.USER_JOINED, name).encode());
+	}
+
+	/**
+	 * Relays that a user left this node.
+	 *
+	 * @param name
+	 *            of the local user
+	 */
+	public void publishUserLeft(String name) {
+		sendToAll(new RelayFrame(RelayFrame.USER_LEFT, name).encode());
+	}
+
+	/**
+	 * Checks if a user is connected to another node.
+	 *
+	 * @param name
+	 *            of the user
+	 * @return true if the user is on a linked node
+	 */
+	public boolean isRemoteUser(String name) {
+		return userNodes.containsKey(name);
+	}
+
+	public Set<String> getRemoteUserNames() {
+		return Collections.unmodifiableSet(userNodes.keySet());
+	}
+
+	public UserDirectory getUserDirectory() {
+		return userDirectory;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public int getLinkedNodeCount() {
+		return links.size();
+	}
+
+	public long getSentFrames() {
+		return sentFrames.get();
+	}
+
+	public long getReceivedFrames() {
+		return receivedFrames.get();
+	}
+}
@@ -0,0 +1,103 @@
+package edu.uni.ruse.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * HashRing class, that assigns keys to the nodes of a cluster by consistent hashing. Each node is placed on the ring
+ * at a number of virtual positions, so the keys are spread evenly, and adding or removing a node moves only the keys
+ * next to its positions.
+ *
+ * @author Alexander Andreev
+ */
+class HashRing {
+
+	private static final int VIRTUAL_NODES = 64;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private final TreeMap<Long, String> positions = new TreeMap<>();
+
+	/**
+	 * Adds a node to the ring.
+	 *
+	 * @param nodeId
+	 *            of the node
+	 */
+	synchronized void addNode(String nodeId) {
+		for (int i = 0; i < VIRTUAL_NODES; i++) {
+			positions.put(hash(nodeId + "#" + i), nodeId);
+		}
+	}
+
+	/**
+	 * Removes a node from the ring.
+	 *
+	 * @param nodeId
+	 *            of the node
+	 */
+	synchronized void removeNode(String nodeId) {
+		positions.values().removeIf(nodeId::equals);
+	}
+
+	/**
+	 * Returns the nodes that own a key: the first node clockwise from the position of the key, followed by the next
+	 * distinct nodes, which hold its replicas.
+	 *
+	 * @param key
+	 *            to be placed
+	 * @param count
+	 *            number of owners, including the primary one
+	 * @return the owners, starting with the primary one
+	 */
+	synchronized List<String> getOwners(String key, int count) {
+		List<String> owners = new ArrayList<>(count);
+		long keyHash = hash(key);
+		addDistinct(owners, positions.tailMap(keyHash, true).values(), count);
+		addDistinct(owners, positions.headMap(keyHash, false).values(), count);
+		return owners;
+	}
+
+	/**
+	 * Adds nodes to the owners until there are enough of them, skipping the ones already added.
+	 */
+	private static void addDistinct(List<String> owners, Collection<String> nodes, int count) {
+		for (String node : nodes) {
+			if (owners.size() >= count) {
+				return;
+			}
+			if (!owners.contains(node)) {
+				owners.add(node);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a node is on the ring.
+	 *
+	 * @param nodeId
+	 *            of the node
+	 * @return true if the node is on the ring
+	 */
+	synchronized boolean containsNode(String nodeId) {
+		return positions.containsValue(nodeId);
+	}
+
+	/**
+	 * Hashes a text with 64-bit FNV-1a, followed by a final mix so close texts land far apart on the ring.
+	 */
+	static long hash(String text) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
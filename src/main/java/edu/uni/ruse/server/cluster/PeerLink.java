@@ -0,0 +1,89 @@
+package edu.uni.ruse.server.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * PeerLink class, representing the connection between two nodes of a cluster. Frames can be sent from any thread,
+ * while they are received by the thread that reads the link.
+ *
+ * @author Alexander Andreev
+ */
+class PeerLink {
+
+	private final Socket socket;
+	private final boolean outbound;
+	private final DataInputStream in;
+	private final OutputStream out;
+	private volatile String remoteNodeId;
+
+	/**
+	 * Constructor with the socket of the link.
+	 *
+	 * @param socket
+	 *            connected to the peer
+	 * @param outbound
+	 *            true if this node opened the connection
+	 * @throws IOException
+	 *             if the streams of the socket cannot be opened
+	 */
+	PeerLink(Socket socket, boolean outbound) throws IOException {
+		this.socket = socket;
+		this.outbound = outbound;
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new BufferedOutputStream(socket.getOutputStream());
+	}
+
+	/**
+	 * Sends an encoded frame to the peer.
+	 *
+	 * @param frame
+	 *            encoded with its length
+	 * @throws IOException
+	 *             if the link is broken
+	 */
+	synchronized void send(byte[] frame) throws IOException {
+		out.write(frame);
+		out.flush();
+	}
+
+	/**
+	 * Blocks until the next frame is received from the peer.
+	 *
+	 * @return the received frame
+	 * @throws IOException
+	 *             if the link is broken
+	 */
+	RelayFrame receive() throws IOException {
+		return RelayFrame.read(in);
+	}
+
+	/**
+	 * Closes the link, ignoring errors.
+	 */
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("I/O Exception while closing the link to node " + remoteNodeId);
+		}
+	}
+
+	boolean isOutbound() {
+		return outbound;
+	}
+
+	String getRemoteNodeId() {
+		return remoteNodeId;
+	}
+
+	void setRemoteNodeId(String remoteNodeId) {
+		this.remoteNodeId = remoteNodeId;
+	}
+}
@@ -0,0 +1,116 @@
+package edu.uni.ruse.server.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * RelayFrame class, representing a message exchanged between the nodes of a cluster. A frame is encoded as its length,
+ * followed by its type and its text fields. Frames are encoded once and the same bytes are sent to every peer.
+ *
+ * @author Alexander Andreev
+ */
+public class RelayFrame {
+
+	public static final byte IDENTIFY = 1;
+	public static final byte PRESENCE = 2;
+	public static final byte BROADCAST = 3;
+	public static final byte WHISPER = 4;
+	public static final byte USER_JOINED = 5;
+	public static final byte USER_LEFT = 6;
+	public static final byte CLAIM = 7;
+	public static final byte RELEASE = 8;
+	public static final byte LOOKUP = 9;
+	public static final byte REPLY = 10;
+	public static final byte DIRECTORY_PUT = 11;
+	public static final byte DIRECTORY_REMOVE = 12;
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+	private final byte type;
+	private final String[] fields;
+
+	/**
+	 * Constructor with the type of the frame and its fields.
+	 *
+	 * @param type
+	 *            of the frame
+	 * @param fields
+	 *            text fields of the frame
+	 */
+	public RelayFrame(byte type, String... fields) {
+		this.type = type;
+		this.fields = fields;
+	}
+
+	/**
+	 * Encodes the frame, including its length.
+	 *
+	 * @return the encoded frame
+	 */
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(0);
+			out.writeByte(type);
+			out.writeInt(fields.length);
+			for (String field : fields) {
+				out.writeUTF(field);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		byte[] frame = bytes.toByteArray();
+		int length = frame.length - 4;
+		frame[0] = (byte) (length >>> 24);
+		frame[1] = (byte) (length >>> 16);
+		frame[2] = (byte) (length >>> 8);
+		frame[3] = (byte) length;
+		return frame;
+	}
+
+	/**
+	 * Reads the next frame from a stream, blocking until it is received.
+	 *
+	 * @param in
+	 *            stream of a peer link
+	 * @return the read frame
+	 * @throws IOException
+	 *             if the stream is closed or does not hold a valid frame
+	 */
+	public static RelayFrame read(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 5 || length > MAX_FRAME_SIZE) {
+			throw new IOException("Invalid relay frame length: " + length);
+		}
+		byte type = in.readByte();
+		int fieldCount = in.readInt();
+		if (fieldCount < 0 || fieldCount > length) {
+			throw new IOException("Invalid relay frame field count: " + fieldCount);
+		}
+		String[] fields = new String[fieldCount];
+		for (int i = 0; i < fieldCount; i++) {
+			fields[i] = in.readUTF();
+		}
+		return new RelayFrame(type, fields);
+	}
+
+	public byte getType() {
+		return type;
+	}
+
+	public String[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * Returns a field of the frame.
+	 *
+	 * @param index
+	 *            of the field
+	 * @return the field
+	 */
+	public String getField(int index) {
+		return fields[index];
+	}
+}
@@ -0,0 +1,322 @@
+package edu.uni.ruse.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserDirectory class, holding which node of a cluster each user is connected to. The directory is partitioned across
+ * the nodes by consistent hashing of the case-folded user names, and every entry is kept by a primary node and a
+ * replica. Claiming a name, releasing it and finding the node of a user each ask only the primary node of the name,
+ * so they take at most one network hop. Found nodes are cached, and the entries are moved when nodes join or leave.
+ *
+ * @author Alexander Andreev
+ */
+public class UserDirectory {
+
+	public static final int REPLICATION_FACTOR = 2;
+	private static final int CACHE_SIZE = 256;
+	private static final String CLAIMED = "1";
+	private static final String TAKEN = "0";
+	private final ClusterNode node;
+	private final HashRing ring = new HashRing();
+	private final Map<String, String> entries = new HashMap<>();
+	private final Map<String, String> cache = Collections.synchronizedMap(
+			new LinkedHashMap<String, String>(CACHE_SIZE, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+	private final AtomicLong operations = new AtomicLong();
+	private final AtomicLong networkHops = new AtomicLong();
+
+	/**
+	 * Constructor with the node that the directory is part of.
+	 *
+	 * @param node
+	 *            that sends the directory requests to the other nodes
+	 */
+	UserDirectory(ClusterNode node) {
+		this.node = node;
+		ring.addNode(node.getNodeId());
+	}
+
+	/**
+	 * Returns the case-folded form of a user name, used as a directory key.
+	 */
+	private static String fold(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Claims a user name for this node. A name can be claimed by only one node of the cluster at a time.
+	 *
+	 * @param name
+	 *            of the user
+	 * @return true if the name was claimed, false if it is taken on another node
+	 */
+	public boolean claim(String name) {
+		operations.incrementAndGet();
+		String primary = getPrimary(name);
+		if (primary.equals(node.getNodeId())) {
+			return claimLocally(name, node.getNodeId());
+		}
+		networkHops.incrementAndGet();
+		String result = node.request(primary, RelayFrame.CLAIM, name, node.getNodeId());
+		if (result == null) {
+			System.out.println("Directory node " + primary + " did not answer. Name '" + name
+					+ "' is checked against the known users only.");
+			return !node.isRemoteUser(name);
+		}
+		return CLAIMED.equals(result);
+	}
+
+	/**
+	 * Releases a user name, claimed by this node.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	public void release(String name) {
+		operations.incrementAndGet();
+		cache.remove(fold(name));
+		String primary = getPrimary(name);
+		if (primary.equals(node.getNodeId())) {
+			releaseLocally(name, node.getNodeId());
+		} else {
+			networkHops.incrementAndGet();
+			node.sendTo(primary, new RelayFrame(RelayFrame.RELEASE, name, node.getNodeId()).encode());
+		}
+	}
+
+	/**
+	 * Renames a user of this node, claiming the new name before releasing the old one.
+	 *
+	 * @param oldName
+	 *            of the user
+	 * @param newName
+	 *            of the user
+	 * @return true if the new name was claimed
+	 */
+	public boolean rename(String oldName, String newName) {
+		if (!claim(newName)) {
+			return false;
+		}
+		release(oldName);
+		return true;
+	}
+
+	/**
+	 * Finds the node that a user is connected to.
+	 *
+	 * @param name
+	 *            of the user
+	 * @return id of the node, or null if the user is not found
+	 */
+	public String lookup(String name) {
+		operations.incrementAndGet();
+		String key = fold(name);
+		String cachedNode = cache.get(key);
+		if (cachedNode != null) {
+			return cachedNode;
+		}
+		String primary = getPrimary(name);
+		String userNode;
+		if (primary.equals(node.getNodeId())) {
+			synchronized (entries) {
+				userNode = entries.get(key);
+			}
+		} else {
+			networkHops.incrementAndGet();
+			userNode = node.request(primary, RelayFrame.LOOKUP, name);
+			if (userNode != null && userNode.isEmpty()) {
+				userNode = null;
+			}
+		}
+		if (userNode != null) {
+			cache.put(key, userNode);
+		}
+		return userNode;
+	}
+
+	/**
+	 * Forgets the cached node of a user, for example when the user left.
+	 *
+	 * @param name
+	 *            of the user
+	 */
+	void invalidate(String name) {
+		cache.remove(fold(name));
+	}
+
+	/**
+	 * Returns the primary node of a user name.
+	 */
+	private String getPrimary(String name) {
+		List<String> owners = ring.getOwners(fold(name), 1);
+		return owners.isEmpty() ? node.getNodeId() : owners.get(0);
+	}
+
+	/**
+	 * Claims a name in the local part of the directory and replicates the entry.
+	 */
+	private boolean claimLocally(String name, String userNode) {
+		String key = fold(name);
+		synchronized (entries) {
+			String existing = entries.get(key);
+			if (existing != null && !existing.equals(userNode)) {
+				return false;
+			}
+			entries.put(key, userNode);
+		}
+		replicate(key, new RelayFrame(RelayFrame.DIRECTORY_PUT, key, userNode).encode());
+		return true;
+	}
+
+	/**
+	 * Releases a name in the local part of the directory, if it is claimed by the given node, and replicates the
+	 * removal.
+	 */
+	private void releaseLocally(String name, String userNode) {
+		String key = fold(name);
+		synchronized (entries) {
+			if (!entries.remove(key, userNode)) {
+				return;
+			}
+		}
+		replicate(key, new RelayFrame(RelayFrame.DIRECTORY_REMOVE, key, userNode).encode());
+	}
+
+	/**
+	 * Sends a change of an entry to the other owners of its key.
+	 */
+	private void replicate(String key, byte[] frame) {
+		for (String owner : ring.getOwners(key, REPLICATION_FACTOR)) {
+			if (!owner.equals(node.getNodeId())) {
+				node.sendTo(owner, frame);
+			}
+		}
+	}
+
+	/**
+	 * Handles a directory frame received from another node.
+	 *
+	 * @param remoteNodeId
+	 *            node that sent the frame
+	 * @param frame
+	 *            directory request or replication
+	 */
+	void handleFrame(String remoteNodeId, RelayFrame frame) {
+		switch (frame.getType()) {
+		case RelayFrame.CLAIM:
+			node.reply(remoteNodeId, frame.getField(0),
+					claimLocally(frame.getField(1), frame.getField(2)) ? CLAIMED : TAKEN);
+			break;
+		case RelayFrame.RELEASE:
+			releaseLocally(frame.getField(0), frame.getField(1));
+			break;
+		case RelayFrame.LOOKUP:
+			String userNode;
+			synchronized (entries) {
+				userNode = entries.get(fold(frame.getField(1)));
+			}
+			node.reply(remoteNodeId, frame.getField(0), userNode == null ? "" : userNode);
+			break;
+		case RelayFrame.DIRECTORY_PUT:
+			synchronized (entries) {
+				entries.put(frame.getField(0), frame.getField(1));
+			}
+			break;
+		case RelayFrame.DIRECTORY_REMOVE:
+			synchronized (entries) {
+				entries.remove(frame.getField(0), frame.getField(1));
+			}
+			break;
+		default:
+			System.out.println("Unknown directory frame type " + frame.getType() + " from node " + remoteNodeId);
+		}
+	}
+
+	/**
+	 * Adds a node to the ring and moves the entries it now owns to it.
+	 *
+	 * @param nodeId
+	 *            of the node that joined
+	 */
+	void addNode(String nodeId) {
+		ring.addNode(nodeId);
+		rebalance();
+	}
+
+	/**
+	 * Removes a node from the ring, drops the entries of its users and re-replicates the entries it held.
+	 *
+	 * @param nodeId
+	 *            of the node that left
+	 */
+	void removeNode(String nodeId) {
+		ring.removeNode(nodeId);
+		synchronized (entries) {
+			entries.values().removeIf(nodeId::equals);
+		}
+		rebalance();
+	}
+
+	/**
+	 * Sends every local entry to its current owners, and drops the entries that this node no longer owns.
+	 */
+	private void rebalance() {
+		cache.clear();
+		List<Map.Entry<String, String>> localEntries;
+		synchronized (entries) {
+			localEntries = new ArrayList<>(entries.entrySet());
+		}
+		int moved = 0;
+		for (Map.Entry<String, String> entry : localEntries) {
+			List<String> owners = ring.getOwners(entry.getKey(), REPLICATION_FACTOR);
+			byte[] frame = new RelayFrame(RelayFrame.DIRECTORY_PUT, entry.getKey(), entry.getValue()).encode();
+			for (String owner : owners) {
+				if (!owner.equals(node.getNodeId())) {
+					node.sendTo(owner, frame);
+				}
+			}
+			if (!owners.contains(node.getNodeId())) {
+				synchronized (entries) {
+					entries.remove(entry.getKey(), entry.getValue());
+				}
+				moved++;
+			}
+		}
+		System.out.println("User directory of node " + node.getNodeId() + " rebalanced: " + moved + " of "
+				+ localEntries.size() + " entries moved to other nodes.");
+	}
+
+	/**
+	 * Returns the average number of network hops of the directory operations.
+	 *
+	 * @return average hops per operation
+	 */
+	public double getAverageHops() {
+		long count = operations.get();
+		return count == 0 ? 0 : (double) networkHops.get() / count;
+	}
+
+	/**
+	 * Returns the number of entries held by this node, as primary or replica.
+	 *
+	 * @return number of local entries
+	 */
+	public int getLocalEntryCount() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package edu.uni.ruse.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * BroadcastFanOutEvent class, a flight recorder event for a message sent to all users by a broadcast thread. The
+ * duration of the event is the time it took to write the message to every user.
+ *
+ * @author Alexander Andreev
+ */
+@Name("edu.uni.ruse.BroadcastFanOut")
+@Label("Broadcast Fan-Out")
+@Category({ "Chat", "Messages" })
+@Description("A message sent to all users by a broadcast thread")
+public class BroadcastFanOutEvent extends Event {
+
+	@Label("Recipients")
+	public int recipients;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+}
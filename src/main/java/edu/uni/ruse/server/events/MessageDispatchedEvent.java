@@ -0,0 +1,33 @@
+package edu.uni.ruse.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * MessageDispatchedEvent class, a flight recorder event for a message taken from the queue and processed. The duration
+ * of the event is the time the message was processed, and the queue wait is the time it spent in the queue before.
+ *
+ * @author Alexander Andreev
+ */
+@Name("edu.uni.ruse.MessageDispatched")
+@Label("Message Dispatched")
+@Category({ "Chat", "Messages" })
+@Description("A message taken from the queue of received messages and processed")
+public class MessageDispatchedEvent extends Event {
+
+	@Label("User")
+	public String user;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+
+	@Label("Queue Wait")
+	@Timespan(Timespan.NANOSECONDS)
+	public long queueWait;
+}
@@ -0,0 +1,31 @@
+package edu.uni.ruse.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * MessageEnqueuedEvent class, a flight recorder event for a received message put in the queue of messages to be
+ * processed. The duration of the event is the time it took to put the message in the queue.
+ *
+ * @author Alexander Andreev
+ */
+@Name("edu.uni.ruse.MessageEnqueued")
+@Label("Message Enqueued")
+@Category({ "Chat", "Messages" })
+@Description("A received message put in the queue of messages to be processed")
+public class MessageEnqueuedEvent extends Event {
+
+	@Label("User")
+	public String user;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+
+	@Label("Queue Length")
+	public int queueLength;
+}
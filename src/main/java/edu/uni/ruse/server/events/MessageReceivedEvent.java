@@ -0,0 +1,34 @@
+package edu.uni.ruse.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * MessageReceivedEvent class, a flight recorder event for a message read from the connection of a user. The duration
+ * of the event is the time the message was read, and the time since the previous collection shows how long the
+ * message could have waited in the connection before it was collected.
+ *
+ * @author Alexander Andreev
+ */
+@Name("edu.uni.ruse.MessageReceived")
+@Label("Message Received")
+@Category({ "Chat", "Messages" })
+@Description("A message read from the connection of a user")
+public class MessageReceivedEvent extends Event {
+
+	@Label("User")
+	public String user;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+
+	@Label("Since Previous Collection")
+	@Timespan(Timespan.NANOSECONDS)
+	public long sincePreviousCollection;
+}
@@ -0,0 +1,30 @@
+package edu.uni.ruse.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * MessageWrittenEvent class, a flight recorder event for a message written to the connection of a user. A broadcast
+ * writes one for every user, so the event is disabled unless it is enabled in the recording settings.
+ *
+ * @author Alexander Andreev
+ */
+@Name("edu.uni.ruse.MessageWritten")
+@Label("Message Written")
+@Category({ "Chat", "Messages" })
+@Description("A message written to the connection of a user")
+@Enabled(false)
+public class MessageWrittenEvent extends Event {
+
+	@Label("Receiver")
+	public String receiver;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+}
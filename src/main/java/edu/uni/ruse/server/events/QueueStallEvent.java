@@ -0,0 +1,29 @@
+package edu.uni.ruse.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * QueueStallEvent class, a flight recorder event for a thread that waited to put a message in a full queue. The
+ * duration of the event is the time the thread waited.
+ *
+ * @author Alexander Andreev
+ */
+@Name("edu.uni.ruse.QueueStall")
+@Label("Queue Stall")
+@Category({ "Chat", "Stalls" })
+@Description("A message put in a full queue, that waited for the queue to have room")
+public class QueueStallEvent extends Event {
+
+	public static final String CLIENT_MESSAGES = "client messages";
+	public static final String SERVER_MESSAGES = "server messages";
+
+	@Label("Queue")
+	public String queue;
+
+	@Label("Capacity")
+	public int capacity;
+}
@@ -0,0 +1,30 @@
+package edu.uni.ruse.server.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * SlowSocketWriteEvent class, a flight recorder event for a write to the connection of a user that blocked, for example
+ * because the user does not read its messages. Only writes longer than the threshold are recorded.
+ *
+ * @author Alexander Andreev
+ */
+@Name("edu.uni.ruse.SlowSocketWrite")
+@Label("Slow Socket Write")
+@Category({ "Chat", "Stalls" })
+@Description("A write to the connection of a user that took longer than the threshold")
+@Threshold("10 ms")
+public class SlowSocketWriteEvent extends Event {
+
+	@Label("Receiver")
+	public String receiver;
+
+	@Label("Size")
+	@DataAmount
+	public long size;
+}
@@ -10,6 +10,7 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -21,6 +22,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultCaret;
 
 /**
@@ -32,9 +34,11 @@ public class ServerFrame extends JFrame {
 
 	private static final long serialVersionUID = 5900179919035839831L;
 	private static final String MSG_CODE_REFRESH_USERLIST = "REFRESH_USERLIST";
+	private static final String HISTORY_DIRECTORY = "history";
+	private static final String SNAPSHOT_FILE = "server.snapshot";
+	private static final int MESSAGE_AREA_LINES = 1000;
 	private transient ServerMessagesManagerWorker serverMessagesManager;
 	private transient MessagesCollectorWorker messagesCollector;
-	private transient NewConnectionsWatcherWorker connectionsWatcher = new NewConnectionsWatcherWorker();
 	private Server server;
 	private JTextArea messageArea;
 	private JScrollPane messagesScrollPane;
@@ -51,6 +55,9 @@ public class ServerFrame extends JFrame {
 	 */
 	public ServerFrame() {
 		server = new Server();
+		server.setHistoryDirectory(Paths.get(HISTORY_DIRECTORY));
+		server.setSnapshotFile(Paths.get(SNAPSHOT_FILE));
+		server.setAcceptLanes(Server.DEFAULT_ACCEPT_LANES);
 		initializeComponents();
 		this.setVisible(true);
 	}
@@ -119,6 +126,7 @@ public class ServerFrame extends JFrame {
 						revisualiseUsers();
 					} else {
 						messageArea.append(message + System.lineSeparator());
+						trimMessageArea();
 						messagesScrollPane.getVerticalScrollBar()
 								.setValue(messagesScrollPane.getVerticalScrollBar().getMaximum());
 					}
@@ -129,20 +137,20 @@ public class ServerFrame extends JFrame {
 	};
 
 	/**
-	 * NewConnectionsWatcherWorker is a SwingWorker that listens for new connections.
-	 * 
-	 * @author Alexander Andreev
+	 * Removes the oldest lines of the messages area once it holds a quarter more lines than it keeps, so the memory
+	 * it uses does not grow with the time the server runs. The removed lines stay in the server's output.
 	 */
-	private class NewConnectionsWatcherWorker extends SwingWorker<Void, Void> {
-		@Override
-		public Void doInBackground() throws IOException {
-			while (server.isRunning()) {
-				server.getNewConnection();
-				revisualiseUsers();
-			}
-			return null;
+	private void trimMessageArea() {
+		int lines = messageArea.getLineCount();
+		if (lines <= MESSAGE_AREA_LINES + MESSAGE_AREA_LINES / 4) {
+			return;
 		}
-	};
+		try {
+			messageArea.replaceRange("", 0, messageArea.getLineStartOffset(lines - MESSAGE_AREA_LINES));
+		} catch (BadLocationException e) {
+			System.out.println(e);
+		}
+	}
 
 	/**
 	 * Updates the online users text area.
@@ -343,8 +351,6 @@ public class ServerFrame extends JFrame {
 			serverMessagesManager.execute();
 			messagesCollector = new MessagesCollectorWorker();
 			messagesCollector.execute();
-			connectionsWatcher = new NewConnectionsWatcherWorker();
-			connectionsWatcher.execute();
 		}
 	}
 
@@ -374,7 +380,6 @@ public class ServerFrame extends JFrame {
 		public void stopSwingWorkers() {
 			serverMessagesManager.cancel(true);
 			messagesCollector.cancel(true);
-			connectionsWatcher.cancel(true);
 		}
 	}
 
@@ -0,0 +1,255 @@
+package edu.uni.ruse.server.history;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uni.ruse.server.search.SearchIndex;
+import edu.uni.ruse.server.search.SearchResult;
+
+/**
+ * ChatHistory class, that numbers the delivered messages and keeps them available for later reading and searching.
+ * The last messages of each room are held in memory, and if a history writer is attached, all messages are also
+ * persisted and older ones are read from the history log.
+ *
+ * @author Alexander Andreev
+ */
+public class ChatHistory {
+
+	public static final int DEFAULT_SCROLLBACK_SIZE = 100;
+	private static final int MAX_BACKWARD_READS = 16;
+	private final int scrollbackSize;
+	private final Map<String, MessageRing> rooms = new ConcurrentHashMap<>();
+	private final AtomicLong nextSequence = new AtomicLong(1);
+	private volatile HistoryWriter historyWriter;
+	private volatile HistoryLog historyLog;
+	private final SearchIndex searchIndex = new SearchIndex();
+
+	/**
+	 * Constructor with the number of last messages, held in memory for each room.
+	 *
+	 * @param scrollbackSize
+	 *            number of messages held for each room
+	 */
+	public ChatHistory(int scrollbackSize) {
+		this.scrollbackSize = scrollbackSize;
+	}
+
+	/**
+	 * Attaches a writer that persists the messages. The numbering of messages continues after the last persisted one,
+	 * and the in-memory rooms are filled with the last persisted messages.
+	 *
+	 * @param historyWriter
+	 *            with an opened log
+	 */
+	public void attachWriter(HistoryWriter historyWriter) {
+		HistoryLog historyLog = historyWriter.getHistoryLog();
+		long lastSequence = historyLog.getLastSequence();
+		nextSequence.set(lastSequence + 1);
+		for (HistoryRecord record : historyLog.readBefore(lastSequence + 1, scrollbackSize)) {
+			getRoom(record.getRoom()).add(record);
+		}
+		this.historyLog = historyLog;
+		this.historyWriter = historyWriter;
+		searchIndex.indexHistory(historyLog, lastSequence);
+	}
+
+	/**
+	 * Numbers a delivered message, adds it to its room and queues it to be persisted. Messages can be recorded by
+	 * several threads, so numbering a message and adding it to the room, the search index and the history writer is
+	 * done as one step, and all of them see the messages in the order of their sequence numbers.
+	 *
+	 * @param sender
+	 *            of the message
+	 * @param room
+	 *            that the message was delivered in
+	 * @param payload
+	 *            text of the message
+	 * @return the record of the message
+	 */
+	public synchronized HistoryRecord record(String sender, String room, String payload) {
+		HistoryRecord record = new HistoryRecord(nextSequence.getAndIncrement(), System.currentTimeMillis(), sender,
+				room, payload);
+		getRoom(room).add(record);
+		searchIndex.add(record.getSequence(), SearchIndex.indexedText(record));
+		HistoryWriter writer = historyWriter;
+		if (writer != null) {
+			writer.append(record);
+		}
+		return record;
+	}
+
+	/**
+	 * Returns the last messages of a room, held in memory.
+	 *
+	 * @param room
+	 *            to get the messages from
+	 * @return the messages, from the oldest to the newest
+	 */
+	public List<HistoryRecord> getScrollback(String room) {
+		return getRoom(room).getRecords();
+	}
+
+	/**
+	 * Returns a page of messages of a room, older than a given sequence number. The messages are taken from memory if
+	 * possible, and from the history log otherwise.
+	 *
+	 * @param room
+	 *            to get the messages from
+	 * @param beforeSequence
+	 *            exclusive upper bound of the sequence numbers
+	 * @param limit
+	 *            maximum number of messages
+	 * @return the messages, from the oldest to the newest
+	 */
+	public List<HistoryRecord> getPageBefore(String room, long beforeSequence, int limit) {
+		MessageRing ring = getRoom(room);
+		long oldestInMemory = ring.getOldestSequence();
+		if (oldestInMemory != -1 && oldestInMemory < beforeSequence) {
+			List<HistoryRecord> page = ring.getRecordsBefore(beforeSequence, limit);
+			if (page.size() == limit || historyLog == null) {
+				return page;
+			}
+		}
+		HistoryLog log = historyLog;
+		if (log == null) {
+			return new ArrayList<>();
+		}
+		List<HistoryRecord> page = new ArrayList<>();
+		long bound = beforeSequence;
+		for (int i = 0; i < MAX_BACKWARD_READS && page.size() < limit && bound > 1; i++) {
+			List<HistoryRecord> read = log.readBefore(bound, limit);
+			if (read.isEmpty()) {
+				break;
+			}
+			List<HistoryRecord> roomRecords = new ArrayList<>();
+			for (HistoryRecord record : read) {
+				if (record.getRoom().equals(room)) {
+					roomRecords.add(record);
+				}
+			}
+			page.addAll(0, roomRecords.subList(Math.max(0, roomRecords.size() - (limit - page.size())),
+					roomRecords.size()));
+			bound = read.get(0).getSequence();
+		}
+		return page;
+	}
+
+	/**
+	 * Searches the history for messages containing all terms of a query. Messages that were removed from the history
+	 * log are left out.
+	 *
+	 * @param query
+	 *            text of the query
+	 * @param page
+	 *            number, starting from 1
+	 * @param pageSize
+	 *            number of messages on a page
+	 * @return the page of matching messages, from the newest to the oldest
+	 */
+	public SearchResult search(String query, long page, int pageSize) {
+		HistoryLog log = historyLog;
+		if (log != null) {
+			searchIndex.setRetentionFloor(log.getFirstRetainedSequence());
+		}
+		return searchIndex.search(query, page, pageSize);
+	}
+
+	/**
+	 * Returns the messages with the given sequence numbers, taken from memory if possible, and from the history log
+	 * otherwise. Messages that cannot be found are skipped.
+	 *
+	 * @param sequences
+	 *            of the messages
+	 * @return the found messages, in the order of the given sequence numbers
+	 */
+	public List<HistoryRecord> getRecords(List<Long> sequences) {
+		Map<Long, HistoryRecord> inMemory = new HashMap<>();
+		for (MessageRing ring : rooms.values()) {
+			for (HistoryRecord record : ring.getRecords()) {
+				inMemory.put(record.getSequence(), record);
+			}
+		}
+		List<HistoryRecord> records = new ArrayList<>(sequences.size());
+		HistoryLog log = historyLog;
+		for (Long sequence : sequences) {
+			HistoryRecord record = inMemory.get(sequence);
+			if (record == null && log != null) {
+				List<HistoryRecord> read = log.read(sequence, 1);
+				if (!read.isEmpty() && read.get(0).getSequence() == sequence) {
+					record = read.get(0);
+				}
+			}
+			if (record != null) {
+				records.add(record);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Returns the in-memory messages of all rooms.
+	 *
+	 * @return the messages, ordered by sequence number
+	 */
+	public List<HistoryRecord> getRecentRecords() {
+		List<HistoryRecord> records = new ArrayList<>();
+		for (MessageRing ring : rooms.values()) {
+			records.addAll(ring.getRecords());
+		}
+		records.sort((first, second) -> Long.compare(first.getSequence(), second.getSequence()));
+		return records;
+	}
+
+	/**
+	 * Restores in-memory messages, for example from a snapshot taken before a restart. The numbering of messages
+	 * continues after the last restored one. Must be called before any message is recorded.
+	 *
+	 * @param records
+	 *            to be restored, ordered by sequence number
+	 */
+	public void restoreRecentRecords(List<HistoryRecord> records) {
+		for (HistoryRecord record : records) {
+			getRoom(record.getRoom()).add(record);
+			searchIndex.add(record.getSequence(), SearchIndex.indexedText(record));
+			if (record.getSequence() >= nextSequence.get()) {
+				nextSequence.set(record.getSequence() + 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the in-memory messages of a room, creating them if the room is new.
+	 */
+	private MessageRing getRoom(String room) {
+		return rooms.computeIfAbsent(room, name -> new MessageRing(scrollbackSize));
+	}
+
+	/**
+	 * Stops the attached writer, if any, after all queued messages are persisted. Persisted messages can still be
+	 * read afterwards.
+	 */
+	public void close() {
+		searchIndex.close();
+		HistoryWriter writer = historyWriter;
+		historyWriter = null;
+		if (writer != null) {
+			writer.stop();
+		}
+	}
+
+	public HistoryWriter getHistoryWriter() {
+		return historyWriter;
+	}
+
+	public int getScrollbackSize() {
+		return scrollbackSize;
+	}
+
+	public long getLastSequence() {
+		return nextSequence.get() - 1;
+	}
+}
@@ -0,0 +1,389 @@
+package edu.uni.ruse.server.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * ColdSegment class, representing a sealed segment of the history log, stored in a block-compressed format. Records
+ * are grouped in blocks, each compressed on its own, and a block index at the end of the file holds the first sequence
+ * number and the position of each block. A record is read by decompressing only the block that holds it. The records
+ * and bytes of each room are written after the block index, so the history maintenance does not have to decompress
+ * the segment to apply the retention policy. Every rewrite of a segment is written to a new file, named after the
+ * next generation of the segment, so a reader that still uses the previous segment never reads the new file through
+ * the previous block index.
+ *
+ * @author Alexander Andreev
+ */
+class ColdSegment implements LogSegment {
+
+	static final String EXTENSION = ".cold";
+	private static final String FILE_NAME_PREFIX = "history-";
+	private static final String FILE_NAME_FORMAT = FILE_NAME_PREFIX + "%020d.%d" + EXTENSION;
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final int INDEX_ENTRY_SIZE = 8 + 8 + 4 + 4;
+	private static final int FOOTER_SIZE = 8 + 8 + 4 + 4;
+	private static final int MAGIC = 0x43484c44;
+	private final Path file;
+	private final long firstSequence;
+	private final int generation;
+	private final long lastSequence;
+	private final long[] blockSequences;
+	private final long[] blockPositions;
+	private final int[] blockCompressedSizes;
+	private final int[] blockSizes;
+	private final long sizeOnDisk;
+	private final Map<String, RoomTotals> roomTotals;
+
+	/**
+	 * Constructor that opens a cold segment file and reads its block index.
+	 *
+	 * @param file
+	 *            of the segment
+	 * @param firstSequence
+	 *            sequence number that the segment starts from
+	 * @param generation
+	 *            of the segment, counting its rewrites
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid cold segment
+	 */
+	ColdSegment(Path file, long firstSequence, int generation) throws IOException {
+		this.file = file;
+		this.firstSequence = firstSequence;
+		this.generation = generation;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			sizeOnDisk = channel.size();
+			ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+			readFully(channel, footer, sizeOnDisk - FOOTER_SIZE);
+			long indexPosition = footer.getLong(0);
+			lastSequence = footer.getLong(8);
+			int blockCount = footer.getInt(16);
+			int magic = footer.getInt(20);
+			if (magic != MAGIC) {
+				throw new IOException("File " + file + " is not a valid cold history segment.");
+			}
+			ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE);
+			readFully(channel, index, indexPosition);
+			blockSequences = new long[blockCount];
+			blockPositions = new long[blockCount];
+			blockCompressedSizes = new int[blockCount];
+			blockSizes = new int[blockCount];
+			for (int i = 0; i < blockCount; i++) {
+				blockSequences[i] = index.getLong();
+				blockPositions[i] = index.getLong();
+				blockCompressedSizes[i] = index.getInt();
+				blockSizes[i] = index.getInt();
+			}
+			long totalsPosition = indexPosition + (long) blockCount * INDEX_ENTRY_SIZE;
+			ByteBuffer totals = ByteBuffer.allocate((int) (sizeOnDisk - FOOTER_SIZE - totalsPosition));
+			readFully(channel, totals, totalsPosition);
+			roomTotals = readRoomTotals(totals);
+		}
+	}
+
+	/**
+	 * Returns the name of the cold segment file, holding records starting from a given sequence number.
+	 *
+	 * @param firstSequence
+	 *            of the segment
+	 * @param generation
+	 *            of the segment
+	 * @return file name
+	 */
+	static String fileName(long firstSequence, int generation) {
+		return String.format(FILE_NAME_FORMAT, firstSequence, generation);
+	}
+
+	/**
+	 * Parses the first sequence number and the generation of a segment from the name of a cold segment file.
+	 *
+	 * @param fileName
+	 *            of the segment
+	 * @return the first sequence number and the generation, or null if the file is not a cold segment
+	 */
+	static long[] parseFileName(String fileName) {
+		if (!fileName.startsWith(FILE_NAME_PREFIX) || !fileName.endsWith(EXTENSION)) {
+			return null;
+		}
+		String[] parts = fileName.substring(FILE_NAME_PREFIX.length(), fileName.length() - EXTENSION.length())
+				.split("\\.");
+		if (parts.length != 2) {
+			return null;
+		}
+		try {
+			return new long[] { Long.parseLong(parts[0]), Integer.parseInt(parts[1]) };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes records to a new cold segment file, named after the first sequence number and the generation. The file
+	 * is written under a temporary name first, so readers never see a partially written segment. The records and
+	 * bytes of each room are counted while the records are written.
+	 *
+	 * @param directory
+	 *            of the history log
+	 * @param firstSequence
+	 *            sequence number that the segment starts from
+	 * @param generation
+	 *            of the segment, one more than the generation of the cold segment it replaces, if any
+	 * @param records
+	 *            to be written, ordered by sequence number
+	 * @return the written segment
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	static ColdSegment write(Path directory, long firstSequence, int generation, List<HistoryRecord> records)
+			throws IOException {
+		Path file = directory.resolve(fileName(firstSequence, generation));
+		Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+		ByteBuffer index = ByteBuffer.allocate((records.size() / 8 + 1) * INDEX_ENTRY_SIZE);
+		int blockCount = 0;
+		long lastSequence = firstSequence - 1;
+		Map<String, RoomTotals> totals = new HashMap<>();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+			long blockSequence = -1;
+			for (HistoryRecord record : records) {
+				ByteBuffer encodedRecord = record.encode();
+				if (block.position() > 0 && encodedRecord.remaining() > block.remaining()) {
+					index = writeBlock(channel, deflater, block, blockSequence, index);
+					blockCount++;
+				}
+				if (encodedRecord.remaining() > block.capacity()) {
+					block = ByteBuffer.allocate(encodedRecord.remaining());
+				}
+				if (block.position() == 0) {
+					blockSequence = record.getSequence();
+				}
+				totals.computeIfAbsent(record.getRoom(), room -> new RoomTotals()).add(record,
+						encodedRecord.remaining());
+				block.put(encodedRecord);
+				lastSequence = record.getSequence();
+			}
+			if (block.position() > 0) {
+				index = writeBlock(channel, deflater, block, blockSequence, index);
+				blockCount++;
+			}
+			long indexPosition = channel.position();
+			index.flip();
+			writeFully(channel, index);
+			writeFully(channel, writeRoomTotals(totals));
+			ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+			footer.putLong(indexPosition).putLong(lastSequence).putInt(blockCount).putInt(MAGIC).flip();
+			writeFully(channel, footer);
+			channel.force(true);
+		} finally {
+			deflater.end();
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return new ColdSegment(file, firstSequence, generation);
+	}
+
+	/**
+	 * Compresses a block of encoded records, writes it at the current position of the channel and adds it to the
+	 * block index. The block buffer is cleared afterwards.
+	 *
+	 * @return the index buffer, enlarged if it was full
+	 */
+	private static ByteBuffer writeBlock(FileChannel channel, Deflater deflater, ByteBuffer block, long blockSequence,
+			ByteBuffer index) throws IOException {
+		int blockSize = block.position();
+		deflater.reset();
+		deflater.setInput(block.array(), 0, blockSize);
+		deflater.finish();
+		byte[] compressed = new byte[blockSize + blockSize / 8 + 64];
+		int compressedSize = 0;
+		while (!deflater.finished()) {
+			if (compressedSize == compressed.length) {
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			}
+			compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+		}
+		long blockPosition = channel.position();
+		writeFully(channel, ByteBuffer.wrap(compressed, 0, compressedSize));
+		if (index.remaining() < INDEX_ENTRY_SIZE) {
+			ByteBuffer enlarged = ByteBuffer.allocate(index.capacity() * 2);
+			index.flip();
+			enlarged.put(index);
+			index = enlarged;
+		}
+		index.putLong(blockSequence).putLong(blockPosition).putInt(compressedSize).putInt(blockSize);
+		block.clear();
+		return index;
+	}
+
+	/**
+	 * Encodes the totals of the rooms: their number, and for each room its name, bytes, records and the time of its
+	 * oldest record.
+	 *
+	 * @return buffer holding the encoded totals, ready to be read
+	 */
+	private static ByteBuffer writeRoomTotals(Map<String, RoomTotals> totals) {
+		List<byte[]> names = new ArrayList<>(totals.size());
+		int size = 4;
+		for (String room : totals.keySet()) {
+			byte[] name = room.getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			size += 2 + name.length + 8 + 4 + 8;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(totals.size());
+		int i = 0;
+		for (RoomTotals roomTotals : totals.values()) {
+			byte[] name = names.get(i++);
+			buffer.putShort((short) name.length).put(name);
+			buffer.putLong(roomTotals.getBytes()).putInt(roomTotals.getRecords())
+					.putLong(roomTotals.getOldestTimestamp());
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Decodes the totals of the rooms, written by writeRoomTotals.
+	 */
+	private static Map<String, RoomTotals> readRoomTotals(ByteBuffer buffer) {
+		int roomCount = buffer.getInt();
+		Map<String, RoomTotals> totals = new HashMap<>();
+		for (int i = 0; i < roomCount; i++) {
+			byte[] name = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(name);
+			totals.put(new String(name, StandardCharsets.UTF_8),
+					new RoomTotals(buffer.getLong(), buffer.getInt(), buffer.getLong()));
+		}
+		return totals;
+	}
+
+	@Override
+	public void read(long fromSequence, int limit, List<HistoryRecord> records) {
+		if (fromSequence > lastSequence || blockSequences.length == 0) {
+			return;
+		}
+		int block = Arrays.binarySearch(blockSequences, fromSequence);
+		if (block < 0) {
+			block = Math.max(0, -block - 2);
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Inflater inflater = new Inflater();
+			try {
+				for (; block < blockSequences.length && records.size() < limit; block++) {
+					ByteBuffer blockData = readBlock(channel, inflater, block);
+					HistoryRecord record;
+					while (records.size() < limit && (record = HistoryRecord.decode(blockData)) != null) {
+						if (record.getSequence() >= fromSequence) {
+							records.add(record);
+						}
+					}
+				}
+			} finally {
+				inflater.end();
+			}
+		} catch (IOException | DataFormatException e) {
+			System.out.println(e);
+			System.out.println("Could not read cold history segment " + file);
+		}
+	}
+
+	/**
+	 * Reads and decompresses a block of the segment.
+	 */
+	private ByteBuffer readBlock(FileChannel channel, Inflater inflater, int block)
+			throws IOException, DataFormatException {
+		ByteBuffer compressed = ByteBuffer.allocate(blockCompressedSizes[block]);
+		readFully(channel, compressed, blockPositions[block]);
+		inflater.reset();
+		inflater.setInput(compressed.array());
+		byte[] data = new byte[blockSizes[block]];
+		int size = 0;
+		while (size < data.length && !inflater.finished()) {
+			int inflated = inflater.inflate(data, size, data.length - size);
+			if (inflated == 0 && inflater.needsInput()) {
+				break;
+			}
+			size += inflated;
+		}
+		return ByteBuffer.wrap(data, 0, size);
+	}
+
+	/**
+	 * Reads from a channel at a given position until the buffer is full.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of history segment.");
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Writes the whole content of a buffer at the current position of a channel.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	@Override
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public long getFirstSequence() {
+		return firstSequence;
+	}
+
+	@Override
+	public long getFirstRecordSequence() {
+		return blockSequences.length == 0 ? firstSequence : blockSequences[0];
+	}
+
+	@Override
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return blockSequences.length == 0;
+	}
+
+	@Override
+	public long getSizeOnDisk() {
+		return sizeOnDisk;
+	}
+
+	@Override
+	public Map<String, RoomTotals> getRoomTotals() {
+		return RoomTotals.copy(roomTotals);
+	}
+
+	int getGeneration() {
+		return generation;
+	}
+
+	int getBlockCount() {
+		return blockSequences.length;
+	}
+}
@@ -0,0 +1,21 @@
+package edu.uni.ruse.server.history;
+
+/**
+ * Enumeration, holding the ways the history writer can force the written messages to the storage device.
+ *
+ * @author Alexander Andreev
+ */
+public enum DurabilityMode {
+	/**
+	 * Messages are never forced while the server runs, the operating system writes them when it decides to.
+	 */
+	NONE,
+	/**
+	 * Messages are forced at most once per force interval, so a crash loses at most that interval of history.
+	 */
+	PERIODIC,
+	/**
+	 * Messages are forced after each written batch, before they are acknowledged as durable.
+	 */
+	PER_BATCH
+}
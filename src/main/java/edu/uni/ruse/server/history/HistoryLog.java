@@ -0,0 +1,299 @@
+package edu.uni.ruse.server.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * HistoryLog class, that persists delivered messages in an append-only log of memory-mapped segment files. When the
+ * current segment cannot fit another record, a new segment is started. Appending is done by a single thread, while
+ * reading can be done from any thread. Sealed segments can be replaced with compressed ones or removed by the history
+ * maintenance.
+ *
+ * @author Alexander Andreev
+ */
+public class HistoryLog {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private final Path directory;
+	private final int segmentSize;
+	private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+	private volatile HistorySegment currentSegment;
+
+	/**
+	 * Constructor with the directory of the log and the default segment size.
+	 *
+	 * @param directory
+	 *            that holds the segment files
+	 */
+	public HistoryLog(Path directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Constructor with the directory of the log and the size, at which the segments are rolled over.
+	 *
+	 * @param directory
+	 *            that holds the segment files
+	 * @param segmentSize
+	 *            size of each segment file in bytes
+	 */
+	public HistoryLog(Path directory, int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Opens the log, mapping the already existing segments and finding the last written record.
+	 *
+	 * @throws IOException
+	 *             if the directory or the segments cannot be accessed
+	 */
+	public void open() throws IOException {
+		Files.createDirectories(directory);
+		TreeMap<Long, Path> segmentFiles = new TreeMap<>();
+		TreeMap<Long, Path> coldSegmentFiles = new TreeMap<>();
+		Map<Long, Integer> coldGenerations = new HashMap<>();
+		List<Path> replacedColdFiles = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				String fileName = file.getFileName().toString();
+				long firstSequence = HistorySegment.parseFirstSequence(fileName, HistorySegment.EXTENSION);
+				long[] coldSegment = ColdSegment.parseFileName(fileName);
+				if (firstSequence >= 0) {
+					segmentFiles.put(firstSequence, file);
+				} else if (coldSegment != null) {
+					Integer generation = coldGenerations.get(coldSegment[0]);
+					if (generation != null && generation > coldSegment[1]) {
+						replacedColdFiles.add(file);
+						continue;
+					}
+					if (generation != null) {
+						replacedColdFiles.add(coldSegmentFiles.get(coldSegment[0]));
+					}
+					coldSegmentFiles.put(coldSegment[0], file);
+					coldGenerations.put(coldSegment[0], (int) coldSegment[1]);
+				}
+			}
+		}
+		// a rewrite that was interrupted before the replaced file was deleted leaves an older generation
+		for (Path replacedColdFile : replacedColdFiles) {
+			Files.delete(replacedColdFile);
+		}
+		for (Map.Entry<Long, Path> coldSegmentFile : coldSegmentFiles.entrySet()) {
+			segments.put(coldSegmentFile.getKey(), new ColdSegment(coldSegmentFile.getValue(),
+					coldSegmentFile.getKey(), coldGenerations.get(coldSegmentFile.getKey())));
+			Path replacedFile = segmentFiles.remove(coldSegmentFile.getKey());
+			if (replacedFile != null) {
+				Files.delete(replacedFile);
+			}
+		}
+		for (Map.Entry<Long, Path> segmentFile : segmentFiles.entrySet()) {
+			HistorySegment segment = new HistorySegment(segmentFile.getValue(), segmentFile.getKey(), segmentSize);
+			segments.put(segment.getFirstSequence(), segment);
+			if (segments.lastKey() == segment.getFirstSequence()) {
+				currentSegment = segment;
+			}
+		}
+		if (currentSegment == null) {
+			currentSegment = createSegment(getLastSequence() + 1);
+		}
+		System.out.println("History log opened in " + directory + " with " + segments.size()
+				+ " segments. Last sequence: " + getLastSequence());
+	}
+
+	/**
+	 * Appends a record at the end of the log, rolling over to a new segment if needed. Must be called only from the
+	 * thread that writes to the log.
+	 *
+	 * @param record
+	 *            to be appended
+	 * @throws IOException
+	 *             if a new segment cannot be created
+	 */
+	public void append(HistoryRecord record) throws IOException {
+		ByteBuffer encodedRecord = record.encode();
+		if (encodedRecord.remaining() > segmentSize) {
+			System.out.println("History record " + record.getSequence() + " is larger than a segment and is skipped.");
+			return;
+		}
+		if (!currentSegment.canFit(encodedRecord.remaining())) {
+			currentSegment.force();
+			currentSegment = createSegment(record.getSequence());
+		}
+		currentSegment.append(encodedRecord, record);
+	}
+
+	/**
+	 * Creates a new segment, starting with the given sequence number.
+	 */
+	private HistorySegment createSegment(long firstSequence) throws IOException {
+		HistorySegment segment = new HistorySegment(directory.resolve(HistorySegment.fileName(firstSequence)),
+				firstSequence, segmentSize);
+		segments.put(firstSequence, segment);
+		return segment;
+	}
+
+	/**
+	 * Reads the records starting from a given sequence number.
+	 *
+	 * @param fromSequence
+	 *            first sequence number to be read
+	 * @param limit
+	 *            maximum number of records to be read
+	 * @return the read records, ordered by sequence number
+	 */
+	public List<HistoryRecord> read(long fromSequence, int limit) {
+		List<HistoryRecord> records = new ArrayList<>();
+		Long firstSegment = segments.floorKey(fromSequence);
+		if (firstSegment == null) {
+			firstSegment = segments.isEmpty() ? null : segments.firstKey();
+		}
+		if (firstSegment != null) {
+			for (LogSegment segment : segments.tailMap(firstSegment, true).values()) {
+				if (records.size() >= limit) {
+					break;
+				}
+				segment.read(fromSequence, limit, records);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Reads the records with sequence numbers lower than a given one, closest to it.
+	 *
+	 * @param beforeSequence
+	 *            exclusive upper bound of the sequence numbers
+	 * @param limit
+	 *            maximum number of records to be read
+	 * @return the read records, ordered by sequence number
+	 */
+	public List<HistoryRecord> readBefore(long beforeSequence, int limit) {
+		long fromSequence = Math.max(1, beforeSequence - limit);
+		List<HistoryRecord> records = read(fromSequence, limit);
+		int end = records.size();
+		while (end > 0 && records.get(end - 1).getSequence() >= beforeSequence) {
+			end--;
+		}
+		return new ArrayList<>(records.subList(0, end));
+	}
+
+	/**
+	 * Forces the written records of the current segment to the storage device.
+	 */
+	public void force() {
+		if (currentSegment != null) {
+			currentSegment.force();
+		}
+	}
+
+	/**
+	 * Closes the log, forcing the written records to the storage device.
+	 */
+	public void close() {
+		force();
+		System.out.println("History log closed. Last sequence: " + getLastSequence());
+	}
+
+	/**
+	 * Returns the segments that are no longer written to, ordered by sequence number.
+	 *
+	 * @return sealed segments
+	 */
+	List<LogSegment> getSealedSegments() {
+		List<LogSegment> sealedSegments = new ArrayList<>(segments.values());
+		sealedSegments.remove(currentSegment);
+		return sealedSegments;
+	}
+
+	/**
+	 * Returns all segments of the log, ordered by sequence number.
+	 *
+	 * @return segments of the log
+	 */
+	List<LogSegment> getSegments() {
+		return new ArrayList<>(segments.values());
+	}
+
+	/**
+	 * Replaces a sealed segment with one holding the same or fewer records, or removes it from the log.
+	 *
+	 * @param segment
+	 *            to be replaced
+	 * @param replacement
+	 *            segment, starting from the same sequence number, or null to remove the segment
+	 */
+	void replaceSegment(LogSegment segment, LogSegment replacement) {
+		if (segment == currentSegment) {
+			throw new IllegalArgumentException("The current segment of the history log cannot be replaced.");
+		}
+		if (replacement == null) {
+			segments.remove(segment.getFirstSequence(), segment);
+		} else {
+			segments.replace(segment.getFirstSequence(), segment, replacement);
+		}
+	}
+
+	/**
+	 * Returns the size that all segments of the log take on the storage device.
+	 *
+	 * @return size in bytes
+	 */
+	public long getSizeOnDisk() {
+		long size = 0;
+		for (LogSegment segment : segments.values()) {
+			size += segment.getSizeOnDisk();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the sequence number of the oldest record that is still kept in the log. The records before it have
+	 * been removed by the history maintenance.
+	 *
+	 * @return first kept sequence number, or 1 if the log is empty
+	 */
+	public long getFirstRetainedSequence() {
+		for (LogSegment segment : segments.values()) {
+			if (!segment.isEmpty()) {
+				return segment.getFirstRecordSequence();
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns the sequence number of the last record in the log.
+	 *
+	 * @return last sequence number, or 0 if the log is empty
+	 */
+	public long getLastSequence() {
+		for (LogSegment segment : segments.descendingMap().values()) {
+			if (!segment.isEmpty()) {
+				return segment.getLastSequence();
+			}
+		}
+		return 0;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+}
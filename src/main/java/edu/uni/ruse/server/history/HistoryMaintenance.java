@@ -0,0 +1,254 @@
+package edu.uni.ruse.server.history;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HistoryMaintenance class, that keeps the history log within its retention policy and compresses its sealed
+ * segments. It runs periodically on its own thread with the lowest priority, and only touches segments that are no
+ * longer written to, so it does not delay the delivery or persisting of messages. Each sealed segment is rewritten
+ * once into the compressed cold format, and cold segments are rewritten again only when some of their records have
+ * expired. A rewritten segment gets a new file, and the file it replaces is deleted only after the log uses the new
+ * segment. Segments with no remaining records are deleted. Which segments hold expired records is found from the
+ * totals of their rooms, so only the segments that are rewritten, and the ones where a room reaches its size limit,
+ * are read.
+ *
+ * @author Alexander Andreev
+ */
+public class HistoryMaintenance {
+
+	public static final long DEFAULT_INTERVAL_MS = 10 * 60 * 1000;
+	private final HistoryLog historyLog;
+	private final RetentionPolicy retentionPolicy;
+	private final AtomicLong savedBytes = new AtomicLong();
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Constructor with the log to be maintained and its retention policy.
+	 *
+	 * @param historyLog
+	 *            that is already opened
+	 * @param retentionPolicy
+	 *            of the messages in the log
+	 */
+	public HistoryMaintenance(HistoryLog historyLog, RetentionPolicy retentionPolicy) {
+		this.historyLog = historyLog;
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	/**
+	 * Starts running the maintenance periodically, the first time after one interval. The temporary files left by a
+	 * compaction that was interrupted are deleted first.
+	 *
+	 * @param intervalMs
+	 *            time in milliseconds between two runs
+	 */
+	public void start(long intervalMs) {
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "history-maintenance");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		executor.execute(this::deleteTemporaryFiles);
+		executor.scheduleWithFixedDelay(this::runSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Deletes the temporary segment files, left in the directory of the log when a compaction was interrupted.
+	 */
+	private void deleteTemporaryFiles() {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(historyLog.getDirectory(), "history-*.tmp")) {
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+				System.out.println("Deleted " + file + ", left by an interrupted history maintenance.");
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("I/O Exception while deleting the temporary files of the history maintenance.");
+		}
+	}
+
+	/**
+	 * Stops the periodic maintenance, waiting for a running maintenance to finish.
+	 */
+	public void stop() {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				System.out.println(e);
+				System.out.println("Interrupted while waiting for the history maintenance to finish.");
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Runs the maintenance, so an unexpected exception does not stop the following runs.
+	 */
+	private void runSafely() {
+		try {
+			run();
+		} catch (RuntimeException e) {
+			System.out.println(e);
+			System.out.println("History maintenance failed.");
+		}
+	}
+
+	/**
+	 * Runs the maintenance once: removes the expired records from the sealed segments and compresses them.
+	 *
+	 * @return number of bytes saved on the storage device
+	 */
+	public long run() {
+		long startNanos = System.nanoTime();
+		Map<String, Long> sizeCutoffs = findSizeCutoffs();
+		long ageCutoffTime = System.currentTimeMillis();
+		long bytesBefore = 0;
+		long bytesAfter = 0;
+		int compactedSegments = 0;
+		int removedSegments = 0;
+		for (LogSegment segment : historyLog.getSealedSegments()) {
+			boolean isCold = segment instanceof ColdSegment;
+			if (isCold && !hasExpiredRecords(segment, ageCutoffTime, sizeCutoffs)) {
+				continue;
+			}
+			List<HistoryRecord> records = readAll(segment);
+			List<HistoryRecord> keptRecords = new ArrayList<>(records.size());
+			for (HistoryRecord record : records) {
+				if (isRetained(record, ageCutoffTime, sizeCutoffs)) {
+					keptRecords.add(record);
+				}
+			}
+			if (isCold && keptRecords.size() == records.size()) {
+				continue;
+			}
+			try {
+				bytesBefore += segment.getSizeOnDisk();
+				if (keptRecords.isEmpty()) {
+					historyLog.replaceSegment(segment, null);
+					removedSegments++;
+				} else {
+					int generation = isCold ? ((ColdSegment) segment).getGeneration() + 1 : 0;
+					ColdSegment coldSegment = ColdSegment.write(historyLog.getDirectory(),
+							segment.getFirstSequence(), generation, keptRecords);
+					historyLog.replaceSegment(segment, coldSegment);
+					bytesAfter += coldSegment.getSizeOnDisk();
+					compactedSegments++;
+				}
+				Files.deleteIfExists(segment.getFile());
+			} catch (IOException e) {
+				System.out.println(e);
+				System.out.println("I/O Exception while compacting history segment " + segment.getFile());
+			}
+		}
+		long saved = bytesBefore - bytesAfter;
+		savedBytes.addAndGet(saved);
+		if (compactedSegments > 0 || removedSegments > 0) {
+			System.out.println("History maintenance compacted " + compactedSegments + " and removed "
+					+ removedSegments + " segments in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+					+ " ms. " + bytesBefore + " bytes reduced to " + bytesAfter + " bytes, " + savedBytes.get()
+					+ " bytes saved in total.");
+		}
+		return saved;
+	}
+
+	/**
+	 * Finds, for each room with a size limit, the sequence number of the newest record that does not fit in the limit.
+	 * The sizes are summed from the newest segment to the oldest one, using the totals of the rooms. Only the segment,
+	 * in which a room goes over its limit, is read, to find the record from the newest to the oldest one.
+	 */
+	private Map<String, Long> findSizeCutoffs() {
+		Map<String, Long> sizeCutoffs = new HashMap<>();
+		Map<String, Long> roomSizes = new HashMap<>();
+		List<LogSegment> segments = historyLog.getSegments();
+		for (int i = segments.size() - 1; i >= 0; i--) {
+			LogSegment segment = segments.get(i);
+			List<HistoryRecord> records = null;
+			for (Map.Entry<String, RoomTotals> room : segment.getRoomTotals().entrySet()) {
+				long maxBytes = retentionPolicy.getMaxBytes(room.getKey());
+				if (maxBytes == RetentionPolicy.UNLIMITED || sizeCutoffs.containsKey(room.getKey())) {
+					continue;
+				}
+				long roomSize = roomSizes.getOrDefault(room.getKey(), 0L);
+				if (roomSize + room.getValue().getBytes() <= maxBytes) {
+					roomSizes.put(room.getKey(), roomSize + room.getValue().getBytes());
+					continue;
+				}
+				if (records == null) {
+					records = readAll(segment);
+				}
+				for (int j = records.size() - 1; j >= 0 && !sizeCutoffs.containsKey(room.getKey()); j--) {
+					HistoryRecord record = records.get(j);
+					if (record.getRoom().equals(room.getKey())) {
+						roomSize += record.encode().remaining();
+						if (roomSize > maxBytes) {
+							sizeCutoffs.put(room.getKey(), record.getSequence());
+						}
+					}
+				}
+				roomSizes.put(room.getKey(), roomSize);
+			}
+		}
+		return sizeCutoffs;
+	}
+
+	/**
+	 * Checks by the totals of its rooms if a segment holds records that are no longer kept by the retention policy.
+	 * The size cutoff of a room is in this segment or a newer one, if it is not older than the start of the segment.
+	 */
+	private boolean hasExpiredRecords(LogSegment segment, long now, Map<String, Long> sizeCutoffs) {
+		for (Map.Entry<String, RoomTotals> room : segment.getRoomTotals().entrySet()) {
+			long maxAgeMs = retentionPolicy.getMaxAgeMs(room.getKey());
+			if (maxAgeMs != RetentionPolicy.UNLIMITED && room.getValue().getOldestTimestamp() < now - maxAgeMs) {
+				return true;
+			}
+			Long sizeCutoff = sizeCutoffs.get(room.getKey());
+			if (sizeCutoff != null && sizeCutoff >= segment.getFirstSequence()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a record is still kept by the retention policy.
+	 */
+	private boolean isRetained(HistoryRecord record, long now, Map<String, Long> sizeCutoffs) {
+		long maxAgeMs = retentionPolicy.getMaxAgeMs(record.getRoom());
+		if (maxAgeMs != RetentionPolicy.UNLIMITED && record.getTimestamp() < now - maxAgeMs) {
+			return false;
+		}
+		Long sizeCutoff = sizeCutoffs.get(record.getRoom());
+		return sizeCutoff == null || record.getSequence() > sizeCutoff;
+	}
+
+	/**
+	 * Reads all records of a segment.
+	 */
+	private static List<HistoryRecord> readAll(LogSegment segment) {
+		List<HistoryRecord> records = new ArrayList<>();
+		segment.read(segment.getFirstSequence(), Integer.MAX_VALUE, records);
+		return records;
+	}
+
+	public long getSavedBytes() {
+		return savedBytes.get();
+	}
+
+	public RetentionPolicy getRetentionPolicy() {
+		return retentionPolicy;
+	}
+}
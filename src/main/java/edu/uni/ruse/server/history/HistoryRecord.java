@@ -0,0 +1,143 @@
+package edu.uni.ruse.server.history;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * HistoryRecord class, holding one message delivered by the server and its binary representation in the history log.
+ * A record is stored as a header, holding the length of the body and its checksum, followed by the body with the
+ * sequence number, timestamp, sender, room and payload of the message.
+ *
+ * @author Alexander Andreev
+ */
+public class HistoryRecord {
+
+	public static final String DEFAULT_ROOM = "general";
+	static final int HEADER_SIZE = 8;
+	private static final int FIXED_BODY_SIZE = 8 + 8 + 2 + 2 + 4;
+	private final long sequence;
+	private final long timestamp;
+	private final String sender;
+	private final String room;
+	private final String payload;
+
+	/**
+	 * Constructor with all the values of a record.
+	 *
+	 * @param sequence
+	 *            number of the message
+	 * @param timestamp
+	 *            in milliseconds, when the message was delivered
+	 * @param sender
+	 *            of the message
+	 * @param room
+	 *            that the message was delivered in
+	 * @param payload
+	 *            text of the message
+	 */
+	public HistoryRecord(long sequence, long timestamp, String sender, String room, String payload) {
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.sender = sender;
+		this.room = room;
+		this.payload = payload;
+	}
+
+	/**
+	 * Encodes the record to its binary representation.
+	 *
+	 * @return buffer holding the header and the body of the record, ready to be read
+	 */
+	public ByteBuffer encode() {
+		byte[] senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+		byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+		byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+		int bodySize = FIXED_BODY_SIZE + senderBytes.length + roomBytes.length + payloadBytes.length;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+		buffer.position(HEADER_SIZE);
+		buffer.putLong(sequence);
+		buffer.putLong(timestamp);
+		buffer.putShort((short) senderBytes.length);
+		buffer.put(senderBytes);
+		buffer.putShort((short) roomBytes.length);
+		buffer.put(roomBytes);
+		buffer.putInt(payloadBytes.length);
+		buffer.put(payloadBytes);
+
+		CRC32 checksum = new CRC32();
+		ByteBuffer body = (ByteBuffer) buffer.duplicate().position(HEADER_SIZE).limit(buffer.capacity());
+		checksum.update(body);
+		buffer.putInt(0, bodySize);
+		buffer.putInt(4, (int) checksum.getValue());
+		buffer.rewind();
+		return buffer;
+	}
+
+	/**
+	 * Decodes a record from the current position of a buffer. If a valid record is found, the position of the buffer
+	 * is moved after it.
+	 *
+	 * @param buffer
+	 *            to read the record from
+	 * @return the decoded record, or null if the buffer holds no complete and valid record at its position
+	 */
+	public static HistoryRecord decode(ByteBuffer buffer) {
+		int start = buffer.position();
+		if (buffer.remaining() < HEADER_SIZE) {
+			return null;
+		}
+		int bodySize = buffer.getInt(start);
+		if (bodySize < FIXED_BODY_SIZE || bodySize > buffer.remaining() - HEADER_SIZE) {
+			return null;
+		}
+		CRC32 checksum = new CRC32();
+		ByteBuffer body = (ByteBuffer) buffer.duplicate().position(start + HEADER_SIZE)
+				.limit(start + HEADER_SIZE + bodySize);
+		checksum.update(body);
+		if ((int) checksum.getValue() != buffer.getInt(start + 4)) {
+			return null;
+		}
+		buffer.position(start + HEADER_SIZE);
+		long sequence = buffer.getLong();
+		long timestamp = buffer.getLong();
+		String sender = readString(buffer, buffer.getShort() & 0xFFFF);
+		String room = readString(buffer, buffer.getShort() & 0xFFFF);
+		String payload = readString(buffer, buffer.getInt());
+		return new HistoryRecord(sequence, timestamp, sender, room, payload);
+	}
+
+	/**
+	 * Reads an UTF-8 string with a given length in bytes from the current position of a buffer.
+	 */
+	private static String readString(ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getSender() {
+		return sender;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	@Override
+	public String toString() {
+		return "#" + sequence + " [" + room + "] " + sender + ": " + payload;
+	}
+}
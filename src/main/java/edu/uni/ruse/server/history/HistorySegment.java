@@ -0,0 +1,249 @@
+package edu.uni.ruse.server.history;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HistorySegment class, representing one memory-mapped file of the history log. Records are appended one after
+ * another and the first empty header marks the end of the written data. The mapped buffer itself is never moved, the
+ * writer uses its own view and readers take independent views of it, so reading can happen while appending. A sparse
+ * index of the positions of every few records lets reads start close to the requested sequence number. The records
+ * and bytes of each room are counted as they are appended, so they are known when the segment is sealed.
+ *
+ * @author Alexander Andreev
+ */
+class HistorySegment implements LogSegment {
+
+	static final String EXTENSION = ".seg";
+	private static final String FILE_NAME_FORMAT = "history-%020d" + EXTENSION;
+	private static final int INDEX_INTERVAL = 64;
+	private final Path file;
+	private final long firstSequence;
+	private final MappedByteBuffer mappedBuffer;
+	private final ByteBuffer writeView;
+	private volatile int writePosition;
+	private volatile long lastSequence;
+	private long[] indexedSequences = new long[16];
+	private int[] indexedPositions = new int[16];
+	private int indexSize;
+	private int recordsSinceIndexed = INDEX_INTERVAL;
+	private final Map<String, RoomTotals> roomTotals = new HashMap<>();
+
+	/**
+	 * Constructor that maps a segment file, creating it with the given size if it does not exist.
+	 *
+	 * @param file
+	 *            of the segment
+	 * @param firstSequence
+	 *            sequence number of the first record the segment can hold
+	 * @param size
+	 *            of the file in bytes, used only if the file is created
+	 * @throws IOException
+	 *             if the file cannot be created or mapped
+	 */
+	HistorySegment(Path file, long firstSequence, int size) throws IOException {
+		this.file = file;
+		this.firstSequence = firstSequence;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+			if (randomAccessFile.length() == 0) {
+				randomAccessFile.setLength(size);
+			}
+			FileChannel channel = randomAccessFile.getChannel();
+			mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		}
+		writeView = mappedBuffer.duplicate();
+		lastSequence = firstSequence - 1;
+		recover();
+	}
+
+	/**
+	 * Returns the name of the segment file, holding records starting from a given sequence number.
+	 *
+	 * @param firstSequence
+	 *            of the segment
+	 * @return file name
+	 */
+	static String fileName(long firstSequence) {
+		return String.format(FILE_NAME_FORMAT, firstSequence);
+	}
+
+	/**
+	 * Parses the first sequence number of a segment from its file name.
+	 *
+	 * @param fileName
+	 *            of the segment
+	 * @param extension
+	 *            of the segment files, including the dot
+	 * @return first sequence number, or -1 if the name is not a segment name
+	 */
+	static long parseFirstSequence(String fileName, String extension) {
+		if (!fileName.startsWith("history-") || !fileName.endsWith(extension)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(fileName.substring("history-".length(), fileName.length() - extension.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Finds the end of the written data by reading the records until an empty or damaged one is reached.
+	 */
+	private void recover() {
+		ByteBuffer readView = mappedBuffer.duplicate();
+		int position = 0;
+		HistoryRecord record;
+		while ((record = HistoryRecord.decode(readView)) != null) {
+			addToIndex(record.getSequence(), position);
+			addToTotals(record, readView.position() - position);
+			lastSequence = record.getSequence();
+			position = readView.position();
+		}
+		writePosition = position;
+	}
+
+	/**
+	 * Checks if a record with the given encoded size can be appended to the segment.
+	 *
+	 * @param encodedSize
+	 *            of the record
+	 * @return true if there is enough space left
+	 */
+	boolean canFit(int encodedSize) {
+		return writePosition + encodedSize <= mappedBuffer.capacity();
+	}
+
+	/**
+	 * Appends an encoded record to the segment. Only one thread is allowed to append.
+	 *
+	 * @param encodedRecord
+	 *            buffer, holding the encoded record
+	 * @param record
+	 *            that is appended
+	 */
+	void append(ByteBuffer encodedRecord, HistoryRecord record) {
+		addToIndex(record.getSequence(), writePosition);
+		addToTotals(record, encodedRecord.remaining());
+		writeView.position(writePosition);
+		writeView.put(encodedRecord);
+		lastSequence = record.getSequence();
+		writePosition = writeView.position();
+	}
+
+	/**
+	 * Adds the position of a record to the sparse index, if enough records were written since the last indexed one.
+	 */
+	private synchronized void addToIndex(long sequence, int position) {
+		if (recordsSinceIndexed++ < INDEX_INTERVAL) {
+			return;
+		}
+		recordsSinceIndexed = 1;
+		if (indexSize == indexedSequences.length) {
+			indexedSequences = Arrays.copyOf(indexedSequences, indexSize * 2);
+			indexedPositions = Arrays.copyOf(indexedPositions, indexSize * 2);
+		}
+		indexedSequences[indexSize] = sequence;
+		indexedPositions[indexSize] = position;
+		indexSize++;
+	}
+
+	/**
+	 * Counts a record in the totals of its room.
+	 */
+	private synchronized void addToTotals(HistoryRecord record, int encodedSize) {
+		roomTotals.computeIfAbsent(record.getRoom(), room -> new RoomTotals()).add(record, encodedSize);
+	}
+
+	/**
+	 * Finds the position of the closest indexed record, with sequence number not greater than the given one.
+	 *
+	 * @param sequence
+	 *            to look for
+	 * @return position in the segment to start reading from
+	 */
+	synchronized int findPosition(long sequence) {
+		int index = Arrays.binarySearch(indexedSequences, 0, indexSize, sequence);
+		if (index < 0) {
+			index = -index - 2;
+		}
+		return index < 0 ? 0 : indexedPositions[index];
+	}
+
+	/**
+	 * Reads the records with sequence numbers starting from a given one, until the limit is reached.
+	 *
+	 * @param fromSequence
+	 *            first sequence number to be read
+	 * @param limit
+	 *            of records to be added
+	 * @param records
+	 *            collection that the records are added to
+	 */
+	@Override
+	public void read(long fromSequence, int limit, List<HistoryRecord> records) {
+		ByteBuffer readView = mappedBuffer.duplicate();
+		readView.limit(writePosition);
+		readView.position(findPosition(fromSequence));
+		HistoryRecord record;
+		while (records.size() < limit && (record = HistoryRecord.decode(readView)) != null) {
+			if (record.getSequence() >= fromSequence) {
+				records.add(record);
+			}
+		}
+	}
+
+	/**
+	 * Forces the written data of the segment to the storage device.
+	 */
+	void force() {
+		mappedBuffer.force();
+	}
+
+	@Override
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public long getFirstSequence() {
+		return firstSequence;
+	}
+
+	@Override
+	public long getFirstRecordSequence() {
+		return firstSequence;
+	}
+
+	@Override
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return lastSequence < firstSequence;
+	}
+
+	@Override
+	public long getSizeOnDisk() {
+		return mappedBuffer.capacity();
+	}
+
+	@Override
+	public synchronized Map<String, RoomTotals> getRoomTotals() {
+		return RoomTotals.copy(roomTotals);
+	}
+
+	int getWritePosition() {
+		return writePosition;
+	}
+}
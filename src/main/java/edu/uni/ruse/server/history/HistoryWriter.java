@@ -0,0 +1,263 @@
+package edu.uni.ruse.server.history;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.uni.ruse.utilities.Histogram;
+
+/**
+ * HistoryWriter class, that persists delivered messages to a history log on its own thread, using group commit.
+ * Messages are queued by the thread that delivers them in a lock-free queue, which is never waited on, so a slow
+ * storage device cannot delay the delivery of messages. If the queue is full, the message is not persisted and is
+ * counted as dropped. The writer thread takes everything queued during a commit window, writes it as one batch and
+ * forces it to the storage device according to the durability mode, so the cost of a force is shared by the whole
+ * batch.
+ *
+ * @author Alexander Andreev
+ */
+public class HistoryWriter {
+
+	public static final int QUEUE_CAPACITY = 8192;
+	public static final long DEFAULT_COMMIT_WINDOW_MS = 2;
+	public static final long DEFAULT_FORCE_INTERVAL_MS = 1000;
+	public static final DurabilityMode DEFAULT_DURABILITY_MODE = DurabilityMode.PERIODIC;
+	private static final int WRITE_BATCH_LIMIT = 4096;
+	private final HistoryLog historyLog;
+	private final DurabilityMode durabilityMode;
+	private final long commitWindowNanos;
+	private final long forceIntervalNanos;
+	private final ConcurrentLinkedQueue<PendingRecord> pendingRecords = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final AtomicLong droppedRecords = new AtomicLong();
+	private final AtomicLong writtenRecords = new AtomicLong();
+	private final Histogram durableAckLatency = new Histogram("history.durableAckLatency", "us");
+	private final Histogram batchSize = new Histogram("history.batchSize", "messages");
+	private final List<PendingRecord> unacknowledged = new ArrayList<>();
+	private volatile long durableSequence;
+	private volatile boolean running;
+	private long lastForceNanos;
+	private Thread writerThread;
+
+	/**
+	 * Constructor with the log that the messages are written to, using the default durability mode.
+	 *
+	 * @param historyLog
+	 *            that is already opened
+	 */
+	public HistoryWriter(HistoryLog historyLog) {
+		this(historyLog, DEFAULT_DURABILITY_MODE, DEFAULT_COMMIT_WINDOW_MS, DEFAULT_FORCE_INTERVAL_MS);
+	}
+
+	/**
+	 * Constructor with the log that the messages are written to and the way they are forced to the storage device.
+	 *
+	 * @param historyLog
+	 *            that is already opened
+	 * @param durabilityMode
+	 *            when the written messages are forced
+	 * @param commitWindowMs
+	 *            time in milliseconds that the writer waits for more messages after writing a batch
+	 * @param forceIntervalMs
+	 *            minimal time in milliseconds between two forces in periodic mode
+	 */
+	public HistoryWriter(HistoryLog historyLog, DurabilityMode durabilityMode, long commitWindowMs,
+			long forceIntervalMs) {
+		this.historyLog = historyLog;
+		this.durabilityMode = durabilityMode;
+		this.commitWindowNanos = TimeUnit.MILLISECONDS.toNanos(commitWindowMs);
+		this.forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(forceIntervalMs);
+		this.durableSequence = historyLog.getLastSequence();
+	}
+
+	/**
+	 * Starts the thread that writes the queued messages to the log.
+	 */
+	public void start() {
+		running = true;
+		lastForceNanos = System.nanoTime();
+		writerThread = new Thread(this::writeQueuedRecords, "history-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops the writer thread after all queued messages are written and forced, and closes the log.
+	 */
+	public void stop() {
+		running = false;
+		if (writerThread != null) {
+			LockSupport.unpark(writerThread);
+			try {
+				writerThread.join();
+			} catch (InterruptedException e) {
+				System.out.println(e);
+				System.out.println("Interrupted while waiting for the history writer to finish.");
+				Thread.currentThread().interrupt();
+			}
+		}
+		historyLog.close();
+	}
+
+	/**
+	 * Queues the record of a delivered message to be written to the log. Never blocks.
+	 *
+	 * @param record
+	 *            of the message
+	 * @return true if the record was queued
+	 */
+	public boolean append(HistoryRecord record) {
+		if (pendingCount.incrementAndGet() > QUEUE_CAPACITY) {
+			pendingCount.decrementAndGet();
+			droppedRecords.incrementAndGet();
+			return false;
+		}
+		pendingRecords.offer(new PendingRecord(record, System.nanoTime()));
+		return true;
+	}
+
+	/**
+	 * Waits until a message is acknowledged as durable by the writer.
+	 *
+	 * @param sequence
+	 *            of the message
+	 * @param timeoutMs
+	 *            maximal time to wait in milliseconds
+	 * @return true if the message became durable in time
+	 */
+	public boolean awaitDurable(long sequence, long timeoutMs) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		while (durableSequence < sequence) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the queued records in batches, one batch per commit window, until the writer is stopped and the queue is
+	 * empty.
+	 */
+	private void writeQueuedRecords() {
+		List<PendingRecord> batch = new ArrayList<>(WRITE_BATCH_LIMIT);
+		while (running || pendingCount.get() > 0) {
+			PendingRecord pending;
+			while (batch.size() < WRITE_BATCH_LIMIT && (pending = pendingRecords.poll()) != null) {
+				batch.add(pending);
+			}
+			if (!batch.isEmpty()) {
+				writeBatch(batch);
+				pendingCount.addAndGet(-batch.size());
+				batch.clear();
+			} else if (durabilityMode == DurabilityMode.PERIODIC && !unacknowledged.isEmpty()
+					&& System.nanoTime() - lastForceNanos >= forceIntervalNanos) {
+				forceAndAcknowledge();
+			}
+			if (running && pendingCount.get() < WRITE_BATCH_LIMIT) {
+				LockSupport.parkNanos(commitWindowNanos);
+			}
+		}
+		forceAndAcknowledge();
+	}
+
+	/**
+	 * Writes a batch of records to the log, and forces and acknowledges it according to the durability mode.
+	 */
+	private void writeBatch(List<PendingRecord> batch) {
+		try {
+			for (PendingRecord pending : batch) {
+				historyLog.append(pending.record);
+			}
+			writtenRecords.addAndGet(batch.size());
+			batchSize.record(batch.size());
+			unacknowledged.addAll(batch);
+			if (durabilityMode == DurabilityMode.PER_BATCH || (durabilityMode == DurabilityMode.PERIODIC
+					&& System.nanoTime() - lastForceNanos >= forceIntervalNanos)) {
+				forceAndAcknowledge();
+			} else if (durabilityMode == DurabilityMode.NONE) {
+				acknowledge();
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("I/O Exception while writing to the history log. " + batch.size()
+					+ " messages are not persisted.");
+			droppedRecords.addAndGet(batch.size());
+		}
+	}
+
+	/**
+	 * Forces the written records to the storage device and acknowledges them as durable.
+	 */
+	private void forceAndAcknowledge() {
+		historyLog.force();
+		lastForceNanos = System.nanoTime();
+		acknowledge();
+	}
+
+	/**
+	 * Acknowledges the written records as durable, recording the time from queueing to acknowledgement.
+	 */
+	private void acknowledge() {
+		if (unacknowledged.isEmpty()) {
+			return;
+		}
+		long now = System.nanoTime();
+		for (PendingRecord pending : unacknowledged) {
+			durableAckLatency.record(TimeUnit.NANOSECONDS.toMicros(now - pending.enqueuedNanos));
+		}
+		durableSequence = unacknowledged.get(unacknowledged.size() - 1).record.getSequence();
+		unacknowledged.clear();
+	}
+
+	public HistoryLog getHistoryLog() {
+		return historyLog;
+	}
+
+	public DurabilityMode getDurabilityMode() {
+		return durabilityMode;
+	}
+
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	public long getWrittenRecords() {
+		return writtenRecords.get();
+	}
+
+	public int getPendingRecords() {
+		return pendingCount.get();
+	}
+
+	public long getDurableSequence() {
+		return durableSequence;
+	}
+
+	public Histogram getDurableAckLatency() {
+		return durableAckLatency;
+	}
+
+	public Histogram getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * PendingRecord class, holding a queued record and the time it was queued at.
+	 */
+	private static class PendingRecord {
+		private final HistoryRecord record;
+		private final long enqueuedNanos;
+
+		PendingRecord(HistoryRecord record, long enqueuedNanos) {
+			this.record = record;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+}
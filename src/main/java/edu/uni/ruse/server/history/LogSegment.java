@@ -0,0 +1,77 @@
+package edu.uni.ruse.server.history;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interface for the segments of the history log, that can be read by sequence number regardless of how their records
+ * are stored.
+ *
+ * @author Alexander Andreev
+ */
+interface LogSegment {
+
+	/**
+	 * Reads the records with sequence numbers starting from a given one, until the limit is reached.
+	 *
+	 * @param fromSequence
+	 *            first sequence number to be read
+	 * @param limit
+	 *            of records to be added
+	 * @param records
+	 *            collection that the records are added to
+	 */
+	void read(long fromSequence, int limit, List<HistoryRecord> records);
+
+	/**
+	 * Returns the sequence number that the segment starts from. It stays the same even if the first records are
+	 * removed by the history maintenance.
+	 *
+	 * @return first sequence number of the segment
+	 */
+	long getFirstSequence();
+
+	/**
+	 * Returns the sequence number of the first record that is still kept in the segment.
+	 *
+	 * @return sequence number of the first record
+	 */
+	long getFirstRecordSequence();
+
+	/**
+	 * Returns the sequence number of the last record in the segment.
+	 *
+	 * @return last sequence number
+	 */
+	long getLastSequence();
+
+	/**
+	 * Checks if the segment holds no records.
+	 *
+	 * @return true if the segment is empty
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Returns the file of the segment.
+	 *
+	 * @return segment file
+	 */
+	Path getFile();
+
+	/**
+	 * Returns the size that the segment takes on the storage device.
+	 *
+	 * @return size in bytes
+	 */
+	long getSizeOnDisk();
+
+	/**
+	 * Returns the number of records and bytes of each room in the segment, known without reading its records. The
+	 * returned totals do not change, even if records are appended to the segment later.
+	 *
+	 * @return the totals, by room
+	 */
+	Map<String, RoomTotals> getRoomTotals();
+}
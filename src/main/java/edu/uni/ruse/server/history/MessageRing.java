@@ -0,0 +1,97 @@
+package edu.uni.ruse.server.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MessageRing class, holding the last messages of a room in a fixed-size circular array. When the ring is full, each
+ * new message overwrites the oldest one.
+ *
+ * @author Alexander Andreev
+ */
+public class MessageRing {
+
+	private final HistoryRecord[] records;
+	private int next;
+	private int size;
+
+	/**
+	 * Constructor with the number of messages that the ring holds.
+	 *
+	 * @param capacity
+	 *            of the ring
+	 */
+	public MessageRing(int capacity) {
+		records = new HistoryRecord[capacity];
+	}
+
+	/**
+	 * Adds a message to the ring, overwriting the oldest one if the ring is full.
+	 *
+	 * @param record
+	 *            of the message
+	 */
+	public synchronized void add(HistoryRecord record) {
+		if (records.length == 0) {
+			return;
+		}
+		records[next] = record;
+		next = (next + 1) % records.length;
+		if (size < records.length) {
+			size++;
+		}
+	}
+
+	/**
+	 * Returns the messages in the ring, from the oldest to the newest.
+	 *
+	 * @return list of the messages
+	 */
+	public synchronized List<HistoryRecord> getRecords() {
+		List<HistoryRecord> result = new ArrayList<>(size);
+		int first = (next - size + records.length) % Math.max(records.length, 1);
+		for (int i = 0; i < size; i++) {
+			result.add(records[(first + i) % records.length]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the messages in the ring with sequence numbers lower than a given one, up to a limit, from the oldest to
+	 * the newest.
+	 *
+	 * @param beforeSequence
+	 *            exclusive upper bound of the sequence numbers
+	 * @param limit
+	 *            maximum number of messages
+	 * @return list of the messages, closest to the bound
+	 */
+	public synchronized List<HistoryRecord> getRecordsBefore(long beforeSequence, int limit) {
+		List<HistoryRecord> all = getRecords();
+		int end = all.size();
+		while (end > 0 && all.get(end - 1).getSequence() >= beforeSequence) {
+			end--;
+		}
+		return new ArrayList<>(all.subList(Math.max(0, end - limit), end));
+	}
+
+	/**
+	 * Returns the sequence number of the oldest message in the ring.
+	 *
+	 * @return oldest sequence number, or -1 if the ring is empty
+	 */
+	public synchronized long getOldestSequence() {
+		if (size == 0) {
+			return -1;
+		}
+		return records[(next - size + records.length) % records.length].getSequence();
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return records.length;
+	}
+}
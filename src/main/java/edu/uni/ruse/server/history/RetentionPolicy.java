@@ -0,0 +1,78 @@
+package edu.uni.ruse.server.history;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RetentionPolicy class, holding how long and how much of the history of each room is kept. Rooms without limits of
+ * their own use the default limits.
+ *
+ * @author Alexander Andreev
+ */
+public class RetentionPolicy {
+
+	public static final long UNLIMITED = -1;
+	private final long defaultMaxAgeMs;
+	private final long defaultMaxBytes;
+	private final Map<String, long[]> roomLimits = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor with the default limits for all rooms.
+	 *
+	 * @param maxAgeMs
+	 *            maximum age in milliseconds of the kept messages, or UNLIMITED
+	 * @param maxBytes
+	 *            maximum size in bytes of the kept messages of a room, or UNLIMITED
+	 */
+	public RetentionPolicy(long maxAgeMs, long maxBytes) {
+		this.defaultMaxAgeMs = maxAgeMs;
+		this.defaultMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns a policy that keeps all messages.
+	 *
+	 * @return unlimited policy
+	 */
+	public static RetentionPolicy keepAll() {
+		return new RetentionPolicy(UNLIMITED, UNLIMITED);
+	}
+
+	/**
+	 * Sets the limits of a room, overriding the default limits.
+	 *
+	 * @param room
+	 *            name of the room
+	 * @param maxAgeMs
+	 *            maximum age in milliseconds of the kept messages, or UNLIMITED
+	 * @param maxBytes
+	 *            maximum size in bytes of the kept messages, or UNLIMITED
+	 */
+	public void setRoomLimits(String room, long maxAgeMs, long maxBytes) {
+		roomLimits.put(room, new long[] { maxAgeMs, maxBytes });
+	}
+
+	/**
+	 * Returns the maximum age of the kept messages of a room.
+	 *
+	 * @param room
+	 *            name of the room
+	 * @return maximum age in milliseconds, or UNLIMITED
+	 */
+	public long getMaxAgeMs(String room) {
+		long[] limits = roomLimits.get(room);
+		return limits == null ? defaultMaxAgeMs : limits[0];
+	}
+
+	/**
+	 * Returns the maximum size of the kept messages of a room.
+	 *
+	 * @param room
+	 *            name of the room
+	 * @return maximum size in bytes, or UNLIMITED
+	 */
+	public long getMaxBytes(String room) {
+		long[] limits = roomLimits.get(room);
+		return limits == null ? defaultMaxBytes : limits[1];
+	}
+}
@@ -0,0 +1,79 @@
+package edu.uni.ruse.server.history;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RoomTotals class, that counts the records and encoded bytes of one room in a segment of the history log, and keeps
+ * the time of its oldest record. Segments keep the totals of their rooms, so the history maintenance can apply the
+ * retention policy without reading the records of every segment.
+ *
+ * @author Alexander Andreev
+ */
+class RoomTotals {
+
+	private long bytes;
+	private int records;
+	private long oldestTimestamp = Long.MAX_VALUE;
+
+	RoomTotals() {
+	}
+
+	/**
+	 * Constructor with already counted totals.
+	 *
+	 * @param bytes
+	 *            encoded size of the records
+	 * @param records
+	 *            number of records
+	 * @param oldestTimestamp
+	 *            time of the oldest record
+	 */
+	RoomTotals(long bytes, int records, long oldestTimestamp) {
+		this.bytes = bytes;
+		this.records = records;
+		this.oldestTimestamp = oldestTimestamp;
+	}
+
+	/**
+	 * Counts a record of the room.
+	 *
+	 * @param record
+	 *            to be counted
+	 * @param encodedSize
+	 *            of the record in bytes
+	 */
+	void add(HistoryRecord record, int encodedSize) {
+		bytes += encodedSize;
+		records++;
+		oldestTimestamp = Math.min(oldestTimestamp, record.getTimestamp());
+	}
+
+	/**
+	 * Copies the totals of each room, so they do not change while they are used.
+	 *
+	 * @param totals
+	 *            by room
+	 * @return copy of the totals
+	 */
+	static Map<String, RoomTotals> copy(Map<String, RoomTotals> totals) {
+		Map<String, RoomTotals> copy = new HashMap<>();
+		for (Map.Entry<String, RoomTotals> room : totals.entrySet()) {
+			RoomTotals roomTotals = room.getValue();
+			copy.put(room.getKey(), new RoomTotals(roomTotals.bytes, roomTotals.records, roomTotals.oldestTimestamp));
+		}
+		return copy;
+	}
+
+	long getBytes() {
+		return bytes;
+	}
+
+	int getRecords() {
+		return records;
+	}
+
+	long getOldestTimestamp() {
+		return oldestTimestamp;
+	}
+}
@@ -0,0 +1,47 @@
+package edu.uni.ruse.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter class, a value that only grows, such as the number of received messages. The count is striped over several
+ * cells, so threads that count at the same time do not contend on one value.
+ *
+ * @author Alexander Andreev
+ */
+public class Counter implements CounterMXBean {
+
+	private final String name;
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * Constructor with the name of the counter.
+	 *
+	 * @param name
+	 *            of the counter
+	 */
+	public Counter(String name) {
+		this.name = name;
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + getCount();
+	}
+}
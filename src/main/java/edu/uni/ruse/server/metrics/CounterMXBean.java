@@ -0,0 +1,11 @@
+package edu.uni.ruse.server.metrics;
+
+/**
+ * CounterMXBean interface, the management view of a counter.
+ *
+ * @author Alexander Andreev
+ */
+public interface CounterMXBean {
+
+	long getCount();
+}
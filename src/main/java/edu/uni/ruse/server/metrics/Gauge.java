@@ -0,0 +1,42 @@
+package edu.uni.ruse.server.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Gauge class, a value that is read when it is asked for, such as the number of connected users or the length of a
+ * queue.
+ *
+ * @author Alexander Andreev
+ */
+public class Gauge implements GaugeMXBean {
+
+	private final String name;
+	private final DoubleSupplier value;
+
+	/**
+	 * Constructor with the name of the gauge and the supplier of its value.
+	 *
+	 * @param name
+	 *            of the gauge
+	 * @param value
+	 *            supplier of the current value, called from the threads that read the gauge
+	 */
+	public Gauge(String name, DoubleSupplier value) {
+		this.name = name;
+		this.value = value;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public double getValue() {
+		return value.getAsDouble();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + getValue();
+	}
+}
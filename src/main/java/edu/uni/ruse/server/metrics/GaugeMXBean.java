@@ -0,0 +1,11 @@
+package edu.uni.ruse.server.metrics;
+
+/**
+ * GaugeMXBean interface, the management view of a gauge.
+ *
+ * @author Alexander Andreev
+ */
+public interface GaugeMXBean {
+
+	double getValue();
+}
@@ -0,0 +1,23 @@
+package edu.uni.ruse.server.metrics;
+
+/**
+ * HistogramMXBean interface, the management view of a histogram, with the percentiles that are watched the most.
+ *
+ * @author Alexander Andreev
+ */
+public interface HistogramMXBean {
+
+	String getUnit();
+
+	long getCount();
+
+	double getMean();
+
+	long getP50();
+
+	long getP99();
+
+	long getP999();
+
+	long getMax();
+}
@@ -0,0 +1,164 @@
+package edu.uni.ruse.server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.uni.ruse.server.Server;
+import edu.uni.ruse.utilities.InterfaceLang;
+
+/**
+ * HttpMonitor class, a small HTTP listener that lets the server be monitored without its interface. It serves the
+ * metrics of the server in the Prometheus format on /metrics, a liveness probe on /health/live, a readiness probe on
+ * /health/ready and the connected users as JSON on /sessions. The server is ready while it runs and its message
+ * queues are not close to full. Requests are answered by a small pool of its own, so monitoring never takes the
+ * threads that process messages.
+ *
+ * @author Alexander Andreev
+ */
+public class HttpMonitor {
+
+	public static final int THREADS = 2;
+	public static final double MAX_READY_QUEUE_SATURATION = 0.9;
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+	private final String address;
+	private final int port;
+	private final Server server;
+	private HttpServer httpServer;
+	private ExecutorService executor;
+
+	/**
+	 * Constructor with the address that the monitor listens on and the server it reports on.
+	 *
+	 * @param address
+	 *            to listen on
+	 * @param port
+	 *            to listen on
+	 * @param server
+	 *            that is monitored
+	 */
+	public HttpMonitor(String address, int port, Server server) {
+		this.address = address;
+		this.port = port;
+		this.server = server;
+	}
+
+	/**
+	 * Starts listening for requests.
+	 *
+	 * @throws IOException
+	 *             if the port cannot be opened
+	 */
+	public void start() throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(address, port), 0);
+		httpServer.createContext("/metrics", exchange -> respond(exchange, 200, PrometheusFormat.CONTENT_TYPE,
+				PrometheusFormat.format(server.getMetrics())));
+		httpServer.createContext("/health/live", exchange -> respondHealth(exchange, server.isRunning()));
+		httpServer.createContext("/health/ready", exchange -> respondHealth(exchange, isReady()));
+		httpServer.createContext("/sessions",
+				exchange -> respond(exchange, 200, JSON_CONTENT_TYPE, formatSessions()));
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "http-monitor-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		httpServer.setExecutor(executor);
+		httpServer.start();
+		System.out.println("HTTP monitor listening on " + address + ":" + port);
+	}
+
+	/**
+	 * Stops listening and the threads that answer requests.
+	 */
+	public void stop() {
+		httpServer.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Checks if the server can take more messages: it runs, and none of its message queues is close to full.
+	 *
+	 * @return true if the server is ready
+	 */
+	public boolean isReady() {
+		return server.isRunning() && getSaturation(server.getUnprocessedClientMessages()) < MAX_READY_QUEUE_SATURATION
+				&& getSaturation(server.getUnprocessedServerMessages()) < MAX_READY_QUEUE_SATURATION;
+	}
+
+	private static double getSaturation(ArrayBlockingQueue<String> queue) {
+		int length = queue.size();
+		return (double) length / (length + queue.remainingCapacity());
+	}
+
+	private void respondHealth(HttpExchange exchange, boolean healthy) throws IOException {
+		respond(exchange, healthy ? 200 : 503, JSON_CONTENT_TYPE,
+				"{\"status\": \"" + (healthy ? "UP" : "DOWN") + "\", \"clientMessages\": "
+						+ server.getUnprocessedClientMessages().size() + ", \"serverMessages\": "
+						+ server.getUnprocessedServerMessages().size() + "}\n");
+	}
+
+	/**
+	 * Returns the users connected to this server, with their addresses and languages, as a JSON array.
+	 */
+	private String formatSessions() {
+		StringBuilder json = new StringBuilder("[");
+		Map<Socket, InterfaceLang> languages = server.getLangPreferences();
+		for (Map.Entry<String, Socket> session : server.getNamesToConnections().entrySet()) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			InterfaceLang language = languages.get(session.getValue());
+			json.append("\n  {\"name\": ").append(quote(session.getKey())).append(", \"address\": ")
+					.append(quote(String.valueOf(session.getValue().getRemoteSocketAddress())))
+					.append(", \"language\": ").append(quote(language == null ? "" : language.name())).append('}');
+		}
+		return json.append("\n]\n").toString();
+	}
+
+	/**
+	 * Returns a string as a JSON string literal.
+	 */
+	private static String quote(String text) {
+		StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public int getPort() {
+		return port;
+	}
+}
@@ -0,0 +1,208 @@
+package edu.uni.ruse.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import edu.uni.ruse.utilities.Histogram;
+
+/**
+ * MetricsRegistry class, that holds the counters, gauges and histograms of a server by name, and publishes them as
+ * MBeans of the platform MBean server, so monitoring tools can read them from the running JVM. Each metric is
+ * published as its own MBean, named after the domain, the scope of the server and the name of the metric. Metrics are
+ * meant to be created once and kept by the code that updates them, so updating them never looks them up by name.
+ *
+ * @author Alexander Andreev
+ */
+public class MetricsRegistry {
+
+	public static final String DOMAIN = "edu.uni.ruse";
+	private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+	private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+	private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+	private final List<ObjectName> publishedNames = new ArrayList<>();
+
+	/**
+	 * Returns the counter with the given name, creating it if it does not exist.
+	 *
+	 * @param name
+	 *            of the counter
+	 * @return the counter
+	 */
+	public Counter counter(String name) {
+		return counters.computeIfAbsent(name, Counter::new);
+	}
+
+	/**
+	 * Adds a gauge, replacing the gauge with the same name if there is one.
+	 *
+	 * @param name
+	 *            of the gauge
+	 * @param value
+	 *            supplier of the current value
+	 * @return the gauge
+	 */
+	public Gauge gauge(String name, DoubleSupplier value) {
+		Gauge gauge = new Gauge(name, value);
+		gauges.put(name, gauge);
+		return gauge;
+	}
+
+	/**
+	 * Returns the histogram with the given name, creating it if it does not exist.
+	 *
+	 * @param name
+	 *            of the histogram
+	 * @param unit
+	 *            of the recorded values
+	 * @return the histogram
+	 */
+	public Histogram histogram(String name, String unit) {
+		return histograms.computeIfAbsent(name, histogramName -> new Histogram(histogramName, unit));
+	}
+
+	/**
+	 * Adds a histogram that is kept by another part of the server, replacing the histogram with the same name if
+	 * there is one.
+	 *
+	 * @param histogram
+	 *            to be added
+	 */
+	public void register(Histogram histogram) {
+		histograms.put(histogram.getName(), histogram);
+	}
+
+	/**
+	 * Publishes all metrics as MBeans of the platform MBean server. The metrics published before by this registry are
+	 * removed first, so the registry can be published again after metrics are added. A metric that cannot be
+	 * published, for example because another server in the JVM uses the same scope, is left out.
+	 *
+	 * @param scope
+	 *            of the metrics, for example the address and port of the server
+	 */
+	public synchronized void publish(String scope) {
+		unpublish();
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (Counter counter : counters.values()) {
+			publish(mBeanServer, scope, counter.getName(), new StandardMBean(counter, CounterMXBean.class, true));
+		}
+		for (Gauge gauge : gauges.values()) {
+			publish(mBeanServer, scope, gauge.getName(), new StandardMBean(gauge, GaugeMXBean.class, true));
+		}
+		for (Histogram histogram : histograms.values()) {
+			publish(mBeanServer, scope, histogram.getName(),
+					new StandardMBean(new HistogramView(histogram), HistogramMXBean.class, true));
+		}
+	}
+
+	private void publish(MBeanServer mBeanServer, String scope, String name, StandardMBean mBean) {
+		try {
+			ObjectName objectName = objectName(scope, name);
+			mBeanServer.registerMBean(mBean, objectName);
+			publishedNames.add(objectName);
+		} catch (JMException e) {
+			System.out.println(e);
+			System.out.println("Metric " + name + " could not be published.");
+		}
+	}
+
+	/**
+	 * Removes the MBeans published by this registry.
+	 */
+	public synchronized void unpublish() {
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName objectName : publishedNames) {
+			try {
+				mBeanServer.unregisterMBean(objectName);
+			} catch (JMException e) {
+				System.out.println(e);
+			}
+		}
+		publishedNames.clear();
+	}
+
+	/**
+	 * Returns the name of the MBean of a metric. The scope and the name are quoted, as they can hold characters that
+	 * are not allowed in the values of an MBean name, like the ':' in the name of an endpoint.
+	 *
+	 * @param scope
+	 *            of the metrics
+	 * @param name
+	 *            of the metric
+	 * @return the MBean name
+	 * @throws JMException
+	 *             if the name is not valid
+	 */
+	public static ObjectName objectName(String scope, String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Server,scope=" + ObjectName.quote(scope) + ",name=" + ObjectName.quote(name));
+	}
+
+	public Map<String, Counter> getCounters() {
+		return counters;
+	}
+
+	public Map<String, Gauge> getGauges() {
+		return gauges;
+	}
+
+	public Map<String, Histogram> getHistograms() {
+		return histograms;
+	}
+
+	/**
+	 * HistogramView class, the management view of a histogram.
+	 *
+	 * @author Alexander Andreev
+	 */
+	private static class HistogramView implements HistogramMXBean {
+
+		private final Histogram histogram;
+
+		private HistogramView(Histogram histogram) {
+			this.histogram = histogram;
+		}
+
+		@Override
+		public String getUnit() {
+			return histogram.getUnit();
+		}
+
+		@Override
+		public long getCount() {
+			return histogram.getCount();
+		}
+
+		@Override
+		public double getMean() {
+			return histogram.getMean();
+		}
+
+		@Override
+		public long getP50() {
+			return histogram.getValueAtPercentile(50);
+		}
+
+		@Override
+		public long getP99() {
+			return histogram.getValueAtPercentile(99);
+		}
+
+		@Override
+		public long getP999() {
+			return histogram.getValueAtPercentile(99.9);
+		}
+
+		@Override
+		public long getMax() {
+			return histogram.getMax();
+		}
+	}
+}
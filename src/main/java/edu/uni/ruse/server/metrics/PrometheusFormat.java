@@ -0,0 +1,85 @@
+package edu.uni.ruse.server.metrics;
+
+import java.util.Locale;
+
+import edu.uni.ruse.utilities.Histogram;
+
+/**
+ * PrometheusFormat class, that writes the metrics of a registry in the Prometheus text exposition format. Counters
+ * are written as counters, gauges as gauges, and histograms as summaries with their 50th, 99th and 99.9th
+ * percentiles. Metric names are prefixed, and every character that Prometheus does not allow in a name is written as
+ * an underscore.
+ *
+ * @author Alexander Andreev
+ */
+public final class PrometheusFormat {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final String PREFIX = "chatapp_";
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+	private PrometheusFormat() {
+	}
+
+	/**
+	 * Writes all metrics of a registry.
+	 *
+	 * @param metrics
+	 *            to be written
+	 * @return the metrics in the text exposition format
+	 */
+	public static String format(MetricsRegistry metrics) {
+		StringBuilder text = new StringBuilder();
+		for (Counter counter : metrics.getCounters().values()) {
+			String name = metricName(counter.getName()) + "_total";
+			text.append("# TYPE ").append(name).append(" counter\n");
+			text.append(name).append(' ').append(counter.getCount()).append('\n');
+		}
+		for (Gauge gauge : metrics.getGauges().values()) {
+			String name = metricName(gauge.getName());
+			text.append("# TYPE ").append(name).append(" gauge\n");
+			text.append(name).append(' ').append(formatValue(gauge.getValue())).append('\n');
+		}
+		for (Histogram histogram : metrics.getHistograms().values()) {
+			String name = metricName(histogram.getName() + "_" + histogram.getUnit());
+			text.append("# TYPE ").append(name).append(" summary\n");
+			for (double quantile : QUANTILES) {
+				text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+						.append(histogram.getValueAtPercentile(quantile * 100)).append('\n');
+			}
+			text.append(name).append("_sum ").append(formatValue(histogram.getMean() * histogram.getCount()))
+					.append('\n');
+			text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the Prometheus name of a metric: prefixed, with words of camel case names separated by underscores.
+	 *
+	 * @param name
+	 *            of the metric in the registry, for example connections.handshakeTime
+	 * @return the Prometheus name, for example chatapp_connections_handshake_time
+	 */
+	public static String metricName(String name) {
+		StringBuilder metricName = new StringBuilder(PREFIX);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				metricName.append('_').append(Character.toLowerCase(c));
+			} else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_') {
+				metricName.append(c);
+			} else {
+				metricName.append('_');
+			}
+		}
+		return metricName.toString();
+	}
+
+	private static String formatValue(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value)) {
+			return Long.toString((long) value);
+		}
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
@@ -0,0 +1,155 @@
+package edu.uni.ruse.server.replication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.server.snapshot.ServerSnapshot;
+
+/**
+ * ReplicationEvent class, representing a change of the state of a primary server, sent to its standby server. An event
+ * is written as a type byte followed by either text fields or an encoded record or snapshot.
+ *
+ * @author Alexander Andreev
+ */
+class ReplicationEvent {
+
+	static final byte FULL_STATE = 1;
+	static final byte SESSION = 2;
+	static final byte SESSION_CLOSED = 3;
+	static final byte RECORD = 4;
+	static final byte HEARTBEAT = 5;
+	private final byte type;
+	private final String[] fields;
+	private final HistoryRecord record;
+	private final ServerSnapshot state;
+
+	/**
+	 * Constructor of an event holding text fields.
+	 *
+	 * @param type
+	 *            of the event
+	 * @param fields
+	 *            of the event
+	 */
+	ReplicationEvent(byte type, String... fields) {
+		this(type, fields, null, null);
+	}
+
+	private ReplicationEvent(byte type, String[] fields, HistoryRecord record, ServerSnapshot state) {
+		this.type = type;
+		this.fields = fields;
+		this.record = record;
+		this.state = state;
+	}
+
+	/**
+	 * Creates an event holding a delivered message.
+	 *
+	 * @param record
+	 *            of the message
+	 * @return the event
+	 */
+	static ReplicationEvent record(HistoryRecord record) {
+		return new ReplicationEvent(RECORD, new String[0], record, null);
+	}
+
+	/**
+	 * Creates an event holding the whole state of the primary server.
+	 *
+	 * @param state
+	 *            of the server
+	 * @return the event
+	 */
+	static ReplicationEvent fullState(ServerSnapshot state) {
+		return new ReplicationEvent(FULL_STATE, new String[0], null, state);
+	}
+
+	/**
+	 * Writes the event to a stream. Records and snapshots are encoded here, so the thread that published the event
+	 * does not pay for it.
+	 *
+	 * @param out
+	 *            stream to the standby server
+	 * @throws IOException
+	 */
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeByte(type);
+		if (type == RECORD) {
+			writeBuffer(out, record.encode());
+		} else if (type == FULL_STATE) {
+			writeBuffer(out, state.encode());
+		} else {
+			out.writeByte(fields.length);
+			for (String field : fields) {
+				out.writeUTF(field);
+			}
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer, preceded by their number.
+	 */
+	private static void writeBuffer(DataOutputStream out, ByteBuffer buffer) throws IOException {
+		out.writeInt(buffer.remaining());
+		out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+	}
+
+	/**
+	 * Reads an event from a stream.
+	 *
+	 * @param in
+	 *            stream from the primary server
+	 * @return the event
+	 * @throws IOException
+	 *             if the stream ends or the event is not valid
+	 */
+	static ReplicationEvent readFrom(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		if (type == RECORD) {
+			HistoryRecord record = HistoryRecord.decode(readBuffer(in));
+			if (record == null) {
+				throw new IOException("Replicated record is not valid.");
+			}
+			return record(record);
+		} else if (type == FULL_STATE) {
+			ServerSnapshot state = ServerSnapshot.decode(readBuffer(in));
+			if (state == null) {
+				throw new IOException("Replicated state is not valid.");
+			}
+			return fullState(state);
+		}
+		String[] fields = new String[in.readUnsignedByte()];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = in.readUTF();
+		}
+		return new ReplicationEvent(type, fields);
+	}
+
+	/**
+	 * Reads bytes, preceded by their number, into a buffer.
+	 */
+	private static ByteBuffer readBuffer(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	byte getType() {
+		return type;
+	}
+
+	String getField(int index) {
+		return fields[index];
+	}
+
+	HistoryRecord getRecord() {
+		return record;
+	}
+
+	ServerSnapshot getState() {
+		return state;
+	}
+}
@@ -0,0 +1,212 @@
+package edu.uni.ruse.server.replication;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.server.snapshot.ServerSnapshot;
+import edu.uni.ruse.utilities.InterfaceLang;
+
+/**
+ * ReplicationSource class, that streams the sessions, the online users and the delivered messages of a primary server
+ * to a standby server. Publishing a change only queues it, and a separate thread writes the queued changes to the
+ * standby in batches, so replication adds no waiting to the processing of messages. When a standby connects, or when
+ * it falls too far behind, it is sent the whole state of the server first. Only one standby is served at a time.
+ *
+ * @author Alexander Andreev
+ */
+public class ReplicationSource {
+
+	public static final int HEARTBEAT_INTERVAL_MS = 100;
+	private static final int MAX_BATCH_SIZE = 256;
+	private static final int MAX_QUEUED_EVENTS = 100_000;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final String address;
+	private final int port;
+	private final Supplier<ServerSnapshot> stateSupplier;
+	private final BlockingQueue<ReplicationEvent> events = new LinkedBlockingQueue<>(MAX_QUEUED_EVENTS);
+	private final AtomicLong sentEvents = new AtomicLong();
+	private final AtomicLong sentBatches = new AtomicLong();
+	private volatile boolean running;
+	private volatile boolean standbyConnected;
+	private volatile boolean resyncNeeded;
+	private ServerSocket serverSocket;
+	private volatile Socket standbyConnection;
+	private Thread senderThread;
+
+	/**
+	 * Constructor with the address that the standby server connects to and the source of the whole state.
+	 *
+	 * @param address
+	 *            to listen on for the standby server
+	 * @param port
+	 *            to listen on for the standby server
+	 * @param stateSupplier
+	 *            that captures the whole state of the primary server
+	 */
+	public ReplicationSource(String address, int port, Supplier<ServerSnapshot> stateSupplier) {
+		this.address = address;
+		this.port = port;
+		this.stateSupplier = stateSupplier;
+	}
+
+	/**
+	 * Starts listening for a standby server.
+	 *
+	 * @throws IOException
+	 *             if the replication port cannot be opened
+	 */
+	public void start() throws IOException {
+		serverSocket = new ServerSocket(port, 1, InetAddress.getByName(address));
+		running = true;
+		senderThread = new Thread(this::serveStandbys, "replication-sender");
+		senderThread.setDaemon(true);
+		senderThread.start();
+		System.out.println("Replication source listening on " + address + ":" + port);
+	}
+
+	/**
+	 * Stops the replication. The standby server sees the link closed and takes over.
+	 */
+	public void stop() {
+		running = false;
+		try {
+			serverSocket.close();
+			Socket connection = standbyConnection;
+			if (connection != null) {
+				connection.close();
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+			System.out.println("I/O Exception while stopping the replication source.");
+		}
+		senderThread.interrupt();
+	}
+
+	/**
+	 * Publishes a connected user with its language preference.
+	 *
+	 * @param name
+	 *            of the user
+	 * @param language
+	 *            preference of the user
+	 * @param presenceVersion
+	 *            version of the online users list after the change
+	 */
+	public void publishSession(String name, InterfaceLang language, long presenceVersion) {
+		publish(new ReplicationEvent(ReplicationEvent.SESSION, name, language.name(), Long.toString(presenceVersion)));
+	}
+
+	/**
+	 * Publishes a user that left.
+	 *
+	 * @param name
+	 *            of the user
+	 * @param presenceVersion
+	 *            version of the online users list after the change
+	 */
+	public void publishSessionClosed(String name, long presenceVersion) {
+		publish(new ReplicationEvent(ReplicationEvent.SESSION_CLOSED, name, Long.toString(presenceVersion)));
+	}
+
+	/**
+	 * Publishes a delivered message.
+	 *
+	 * @param record
+	 *            of the message
+	 */
+	public void publishRecord(HistoryRecord record) {
+		publish(ReplicationEvent.record(record));
+	}
+
+	/**
+	 * Queues an event for the standby server, if one is connected. If the queue is full, the standby is sent the
+	 * whole state instead of the queued events.
+	 */
+	private void publish(ReplicationEvent event) {
+		if (standbyConnected && !events.offer(event)) {
+			resyncNeeded = true;
+		}
+	}
+
+	/**
+	 * Accepts standby servers, one at a time, and streams the changes to them until the source is stopped.
+	 */
+	private void serveStandbys() {
+		while (running) {
+			try (Socket connection = serverSocket.accept()) {
+				standbyConnection = connection;
+				connection.setTcpNoDelay(true);
+				System.out.println("Standby server connected from " + connection.getRemoteSocketAddress());
+				streamTo(new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE)));
+			} catch (IOException e) {
+				if (running) {
+					System.out.println(e);
+					System.out.println("Standby server disconnected. Waiting for it to connect again.");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				standbyConnected = false;
+				standbyConnection = null;
+				events.clear();
+			}
+		}
+	}
+
+	/**
+	 * Sends the whole state, and then the queued events in batches, flushing the stream once per batch. A heartbeat is
+	 * sent when there are no events, so the standby can tell a quiet primary from a failed one.
+	 */
+	private void streamTo(DataOutputStream out) throws IOException, InterruptedException {
+		standbyConnected = true;
+		resyncNeeded = true;
+		List<ReplicationEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+		while (running) {
+			if (resyncNeeded) {
+				resyncNeeded = false;
+				events.clear();
+				ReplicationEvent.fullState(stateSupplier.get()).writeTo(out);
+				out.flush();
+			}
+			ReplicationEvent event = events.poll(HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+			if (event == null) {
+				new ReplicationEvent(ReplicationEvent.HEARTBEAT).writeTo(out);
+			} else {
+				batch.add(event);
+				events.drainTo(batch, MAX_BATCH_SIZE - 1);
+				for (ReplicationEvent queuedEvent : batch) {
+					queuedEvent.writeTo(out);
+				}
+				sentEvents.addAndGet(batch.size());
+				sentBatches.incrementAndGet();
+				batch.clear();
+			}
+			out.flush();
+		}
+	}
+
+	public boolean isStandbyConnected() {
+		return standbyConnected;
+	}
+
+	public long getSentEvents() {
+		return sentEvents.get();
+	}
+
+	public long getSentBatches() {
+		return sentBatches.get();
+	}
+}
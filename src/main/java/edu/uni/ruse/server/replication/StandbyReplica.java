@@ -0,0 +1,210 @@
+package edu.uni.ruse.server.replication;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.server.snapshot.ServerSnapshot;
+import edu.uni.ruse.utilities.InterfaceLang;
+
+/**
+ * StandbyReplica class, that follows the replication stream of a primary server and keeps a copy of its sessions, its
+ * online users list version and its last delivered messages. When the primary server stops answering, after it was
+ * followed at least once, the copy is handed over so a standby server can take the place of the primary.
+ *
+ * @author Alexander Andreev
+ */
+public class StandbyReplica {
+
+	public static final int FAILOVER_TIMEOUT_MS = 1000;
+	private static final int CONNECT_RETRY_MS = 250;
+	private final InetSocketAddress primaryAddress;
+	private final int scrollbackSize;
+	private final Consumer<ServerSnapshot> takeOver;
+	private final Map<String, InterfaceLang> sessions = new LinkedHashMap<>();
+	private final Map<String, ArrayDeque<HistoryRecord>> rooms = new HashMap<>();
+	private long presenceVersion;
+	private long lastSequence;
+	private long appliedEvents;
+	private volatile boolean running;
+	private volatile boolean following;
+	private volatile Socket connection;
+	private volatile long failureDetectedNanos;
+
+	/**
+	 * Constructor with the replication address of the primary server.
+	 *
+	 * @param primaryAddress
+	 *            replication address of the primary server
+	 * @param scrollbackSize
+	 *            number of last messages kept for each room
+	 * @param takeOver
+	 *            called with the copied state when the primary server fails
+	 */
+	public StandbyReplica(InetSocketAddress primaryAddress, int scrollbackSize, Consumer<ServerSnapshot> takeOver) {
+		this.primaryAddress = primaryAddress;
+		this.scrollbackSize = scrollbackSize;
+		this.takeOver = takeOver;
+	}
+
+	/**
+	 * Starts following the primary server.
+	 */
+	public void start() {
+		running = true;
+		Thread thread = new Thread(this::follow, "standby-replica");
+		thread.setDaemon(true);
+		thread.start();
+		System.out.println("Standing by for primary server " + primaryAddress);
+	}
+
+	/**
+	 * Stops following the primary server, without taking over.
+	 */
+	public void stop() {
+		running = false;
+		Socket socket = connection;
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				System.out.println(e);
+			}
+		}
+	}
+
+	/**
+	 * Connects to the primary server, retrying until it is reachable, and applies its replication stream. A link that
+	 * ends or stays silent longer than the failover timeout is taken as a failure of the primary.
+	 */
+	private void follow() {
+		while (running) {
+			try (Socket socket = new Socket()) {
+				connection = socket;
+				socket.connect(primaryAddress, FAILOVER_TIMEOUT_MS);
+				socket.setSoTimeout(FAILOVER_TIMEOUT_MS);
+				following = true;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				while (running) {
+					apply(ReplicationEvent.readFrom(in));
+				}
+			} catch (IOException e) {
+				if (running && following) {
+					failureDetectedNanos = System.nanoTime();
+					System.out.println(e);
+					System.out.println("Primary server " + primaryAddress + " failed. Standby server takes over.");
+					running = false;
+					takeOver.accept(toSnapshot());
+					return;
+				}
+			}
+			try {
+				Thread.sleep(CONNECT_RETRY_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Applies an event of the replication stream to the copied state.
+	 *
+	 * @param event
+	 *            received from the primary server
+	 */
+	synchronized void apply(ReplicationEvent event) {
+		switch (event.getType()) {
+		case ReplicationEvent.FULL_STATE:
+			ServerSnapshot state = event.getState();
+			sessions.clear();
+			sessions.putAll(state.getSessions());
+			rooms.clear();
+			lastSequence = 0;
+			for (HistoryRecord record : state.getRecentMessages()) {
+				addRecord(record);
+			}
+			presenceVersion = state.getPresenceVersion();
+			break;
+		case ReplicationEvent.SESSION:
+			sessions.put(event.getField(0), InterfaceLang.valueOf(event.getField(1)));
+			presenceVersion = Long.parseLong(event.getField(2));
+			break;
+		case ReplicationEvent.SESSION_CLOSED:
+			sessions.remove(event.getField(0));
+			presenceVersion = Long.parseLong(event.getField(1));
+			break;
+		case ReplicationEvent.RECORD:
+			addRecord(event.getRecord());
+			break;
+		case ReplicationEvent.HEARTBEAT:
+			return;
+		default:
+			System.out.println("Unknown replication event type " + event.getType());
+			return;
+		}
+		appliedEvents++;
+	}
+
+	/**
+	 * Adds a delivered message to its room, if it is newer than the last one, keeping only the last messages.
+	 */
+	private void addRecord(HistoryRecord record) {
+		if (record.getSequence() <= lastSequence) {
+			return;
+		}
+		ArrayDeque<HistoryRecord> room = rooms.computeIfAbsent(record.getRoom(), name -> new ArrayDeque<>());
+		room.addLast(record);
+		if (room.size() > scrollbackSize) {
+			room.removeFirst();
+		}
+		lastSequence = record.getSequence();
+	}
+
+	/**
+	 * Returns the copied state as a snapshot. Messages waiting to be processed on the primary server are not
+	 * replicated, so the snapshot holds none.
+	 *
+	 * @return the copied state
+	 */
+	public synchronized ServerSnapshot toSnapshot() {
+		List<HistoryRecord> records = new ArrayList<>();
+		for (ArrayDeque<HistoryRecord> room : rooms.values()) {
+			records.addAll(room);
+		}
+		records.sort((first, second) -> Long.compare(first.getSequence(), second.getSequence()));
+		return new ServerSnapshot(System.currentTimeMillis(), presenceVersion, new LinkedHashMap<>(sessions),
+				Collections.emptyList(), records);
+	}
+
+	public synchronized Map<String, InterfaceLang> getSessions() {
+		return new LinkedHashMap<>(sessions);
+	}
+
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	public synchronized long getAppliedEvents() {
+		return appliedEvents;
+	}
+
+	public boolean isFollowing() {
+		return following;
+	}
+
+	public long getFailureDetectedNanos() {
+		return failureDetectedNanos;
+	}
+}
@@ -0,0 +1,309 @@
+package edu.uni.ruse.server.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * IndexSegment class, holding an immutable part of the search index. The terms are kept sorted, each with the sorted
+ * sequence numbers of the messages that contain it, together with the sorted sequence numbers of all indexed messages.
+ * Segments are never changed after they are built, two segments are merged into a new one instead, and the messages
+ * older than the retention floor are left out of the new one.
+ *
+ * @author Alexander Andreev
+ */
+class IndexSegment {
+
+	private static final long[] NO_POSTINGS = new long[0];
+	private final String[] terms;
+	private final long[][] postings;
+	private final long[] documents;
+
+	/**
+	 * Constructor with the sorted terms, their postings and the sequence numbers of the indexed messages.
+	 */
+	private IndexSegment(String[] terms, long[][] postings, long[] documents) {
+		this.terms = terms;
+		this.postings = postings;
+		this.documents = documents;
+	}
+
+	/**
+	 * Builds a segment from terms and their postings.
+	 *
+	 * @param termPostings
+	 *            map of each term to its sorted postings
+	 * @param documents
+	 *            sorted sequence numbers of the indexed messages
+	 * @return the built segment
+	 */
+	static IndexSegment build(Map<String, long[]> termPostings, long[] documents) {
+		TreeMap<String, long[]> sorted = new TreeMap<>(termPostings);
+		String[] terms = new String[sorted.size()];
+		long[][] postings = new long[sorted.size()][];
+		int i = 0;
+		for (Map.Entry<String, long[]> entry : sorted.entrySet()) {
+			terms[i] = entry.getKey();
+			postings[i] = entry.getValue();
+			i++;
+		}
+		return new IndexSegment(terms, postings, documents);
+	}
+
+	/**
+	 * Merges two segments into a new one, leaving out the messages older than the retention floor.
+	 *
+	 * @param first
+	 *            segment to be merged
+	 * @param second
+	 *            segment to be merged
+	 * @param floor
+	 *            sequence number of the oldest message that is still kept
+	 * @return the merged segment
+	 */
+	static IndexSegment merge(IndexSegment first, IndexSegment second, long floor) {
+		String[] terms = new String[first.terms.length + second.terms.length];
+		long[][] postings = new long[terms.length][];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < first.terms.length || j < second.terms.length) {
+			int compared;
+			if (i == first.terms.length) {
+				compared = 1;
+			} else if (j == second.terms.length) {
+				compared = -1;
+			} else {
+				compared = first.terms[i].compareTo(second.terms[j]);
+			}
+			String term;
+			long[] termPostings;
+			if (compared < 0) {
+				term = first.terms[i];
+				termPostings = first.postings[i++];
+			} else if (compared > 0) {
+				term = second.terms[j];
+				termPostings = second.postings[j++];
+			} else {
+				term = first.terms[i];
+				termPostings = union(first.postings[i++], second.postings[j++]);
+			}
+			termPostings = from(termPostings, floor);
+			if (termPostings.length > 0) {
+				terms[size] = term;
+				postings[size++] = termPostings;
+			}
+		}
+		return new IndexSegment(Arrays.copyOf(terms, size), Arrays.copyOf(postings, size),
+				from(union(first.documents, second.documents), floor));
+	}
+
+	/**
+	 * Returns a segment without the messages older than the retention floor.
+	 *
+	 * @param floor
+	 *            sequence number of the oldest message that is still kept
+	 * @return this segment if it holds no older messages, otherwise a new one
+	 */
+	IndexSegment retainFrom(long floor) {
+		if (documents.length == 0 || documents[0] >= floor) {
+			return this;
+		}
+		return merge(this, new IndexSegment(new String[0], new long[0][], NO_POSTINGS), floor);
+	}
+
+	/**
+	 * Finds the messages of this segment that contain all given terms and are not older than the retention floor.
+	 * Every message is indexed in one segment only, so the matches of a query are the union of the matches of the
+	 * segments. The rarest term is taken first, so the intersections stay small.
+	 *
+	 * @param queryTerms
+	 *            that the messages must contain
+	 * @param floor
+	 *            sequence number of the oldest message that is still kept
+	 * @return sorted sequence numbers of the matching messages
+	 */
+	long[] findAll(Set<String> queryTerms, long floor) {
+		if (queryTerms.isEmpty() || documents.length == 0 || documents[documents.length - 1] < floor) {
+			return NO_POSTINGS;
+		}
+		long[][] termPostings = new long[queryTerms.size()][];
+		int i = 0;
+		for (String term : queryTerms) {
+			termPostings[i] = getPostings(term);
+			if (termPostings[i].length == 0) {
+				return NO_POSTINGS;
+			}
+			i++;
+		}
+		return matchAll(termPostings, floor);
+	}
+
+	/**
+	 * Intersects the postings of all terms of a query, starting from the shortest ones, and leaves out the messages
+	 * older than the retention floor.
+	 *
+	 * @param termPostings
+	 *            sorted postings of each term
+	 * @param floor
+	 *            sequence number of the oldest message that is still kept
+	 * @return sorted sequence numbers of the messages found in all postings
+	 */
+	static long[] matchAll(long[][] termPostings, long floor) {
+		Arrays.sort(termPostings, (first, second) -> Integer.compare(first.length, second.length));
+		long[] matches = from(termPostings[0], floor);
+		for (int i = 1; i < termPostings.length && matches.length > 0; i++) {
+			matches = intersect(matches, termPostings[i]);
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns the postings of a term.
+	 *
+	 * @param term
+	 *            to look for
+	 * @return sorted sequence numbers of the messages containing the term
+	 */
+	long[] getPostings(String term) {
+		int index = Arrays.binarySearch(terms, term);
+		return index < 0 ? NO_POSTINGS : postings[index];
+	}
+
+	/**
+	 * Returns the part of a sorted array of sequence numbers that is not older than the retention floor.
+	 *
+	 * @param sequences
+	 *            sorted array
+	 * @param floor
+	 *            sequence number of the oldest message that is still kept
+	 * @return the array itself if nothing is older, otherwise a copy of the kept part
+	 */
+	static long[] from(long[] sequences, long floor) {
+		if (sequences.length == 0 || sequences[0] >= floor) {
+			return sequences;
+		}
+		int start = Arrays.binarySearch(sequences, floor);
+		if (start < 0) {
+			start = -start - 1;
+		}
+		return Arrays.copyOfRange(sequences, start, sequences.length);
+	}
+
+	/**
+	 * Merges sorted arrays of sequence numbers into one sorted array, without duplicates. Each step takes the
+	 * smallest head of the arrays, so every sequence number is copied once.
+	 *
+	 * @param sorted
+	 *            arrays to be merged
+	 * @return the merged array
+	 */
+	static long[] mergeAll(List<long[]> sorted) {
+		if (sorted.isEmpty()) {
+			return NO_POSTINGS;
+		}
+		if (sorted.size() == 1) {
+			return sorted.get(0);
+		}
+		int total = 0;
+		for (long[] array : sorted) {
+			total += array.length;
+		}
+		long[] result = new long[total];
+		int[] positions = new int[sorted.size()];
+		int size = 0;
+		while (true) {
+			int smallest = -1;
+			for (int i = 0; i < positions.length; i++) {
+				if (positions[i] < sorted.get(i).length && (smallest == -1
+						|| sorted.get(i)[positions[i]] < sorted.get(smallest)[positions[smallest]])) {
+					smallest = i;
+				}
+			}
+			if (smallest == -1) {
+				break;
+			}
+			long value = sorted.get(smallest)[positions[smallest]++];
+			if (size == 0 || result[size - 1] != value) {
+				result[size++] = value;
+			}
+		}
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Returns the sorted union of two sorted arrays of sequence numbers, without duplicates.
+	 *
+	 * @param first
+	 *            sorted array
+	 * @param second
+	 *            sorted array
+	 * @return the union
+	 */
+	static long[] union(long[] first, long[] second) {
+		if (first.length == 0) {
+			return second;
+		}
+		if (second.length == 0) {
+			return first;
+		}
+		long[] result = new long[first.length + second.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < first.length && j < second.length) {
+			if (first[i] < second[j]) {
+				result[size++] = first[i++];
+			} else if (first[i] > second[j]) {
+				result[size++] = second[j++];
+			} else {
+				result[size++] = first[i++];
+				j++;
+			}
+		}
+		while (i < first.length) {
+			result[size++] = first[i++];
+		}
+		while (j < second.length) {
+			result[size++] = second[j++];
+		}
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Returns the sorted intersection of two sorted arrays of sequence numbers.
+	 *
+	 * @param first
+	 *            sorted array
+	 * @param second
+	 *            sorted array
+	 * @return the intersection
+	 */
+	static long[] intersect(long[] first, long[] second) {
+		long[] result = new long[Math.min(first.length, second.length)];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < first.length && j < second.length) {
+			if (first[i] < second[j]) {
+				i++;
+			} else if (first[i] > second[j]) {
+				j++;
+			} else {
+				result[size++] = first[i++];
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	int getDocumentCount() {
+		return documents.length;
+	}
+
+	int getTermCount() {
+		return terms.length;
+	}
+}
@@ -0,0 +1,382 @@
+package edu.uni.ruse.server.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import edu.uni.ruse.server.history.HistoryLog;
+import edu.uni.ruse.server.history.HistoryRecord;
+
+/**
+ * SearchIndex class, an incremental inverted index of the delivered messages. New messages are added to an in-memory
+ * buffer, which is sealed into an immutable segment once it holds enough messages. Segments of similar size are merged
+ * on a background thread, so the number of segments that a query has to visit stays small as the history grows. The
+ * messages older than the retention floor of the history are left out of the results and dropped from the segments.
+ *
+ * @author Alexander Andreev
+ */
+public class SearchIndex {
+
+	public static final int DEFAULT_FLUSH_THRESHOLD = 4096;
+	private static final int MERGE_FACTOR = 4;
+	private final int flushThreshold;
+	private final Object bufferLock = new Object();
+	private final Object segmentsLock = new Object();
+	private Map<String, PostingList> buffer = new HashMap<>();
+	private PostingList bufferedDocuments = new PostingList();
+	private volatile List<IndexSegment> segments = Collections.emptyList();
+	private volatile long retentionFloor = 1;
+	private final ExecutorService merger;
+
+	/**
+	 * Default constructor.
+	 */
+	public SearchIndex() {
+		this(DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	/**
+	 * Constructor with the number of messages, after which the in-memory buffer is sealed into a segment.
+	 *
+	 * @param flushThreshold
+	 *            number of messages in the buffer
+	 */
+	public SearchIndex(int flushThreshold) {
+		this.flushThreshold = flushThreshold;
+		merger = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "search-index-merger");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+	}
+
+	/**
+	 * Adds a message to the index. Messages are expected to be added in the order of their sequence numbers.
+	 *
+	 * @param sequence
+	 *            number of the message
+	 * @param text
+	 *            of the message
+	 */
+	public void add(long sequence, String text) {
+		IndexSegment sealed = null;
+		synchronized (bufferLock) {
+			addTerms(buffer, sequence, text);
+			bufferedDocuments.add(sequence);
+			if (bufferedDocuments.size() >= flushThreshold) {
+				sealed = sealBuffer();
+			}
+		}
+		if (sealed != null) {
+			addSegment(sealed);
+		}
+	}
+
+	/**
+	 * Indexes the persisted messages up to a given sequence number on the background thread. The persisted messages
+	 * are built into their own segments, so the live messages can be added to the buffer meanwhile.
+	 *
+	 * @param historyLog
+	 *            holding the persisted messages
+	 * @param untilSequence
+	 *            sequence number of the last message to be indexed
+	 */
+	public void indexHistory(HistoryLog historyLog, long untilSequence) {
+		merger.execute(() -> {
+			long start = System.nanoTime();
+			long nextSequence = 1;
+			int indexed = 0;
+			while (nextSequence <= untilSequence && !merger.isShutdown()) {
+				List<HistoryRecord> records = historyLog.read(nextSequence, flushThreshold);
+				Map<String, PostingList> termPostings = new HashMap<>();
+				PostingList documents = new PostingList();
+				for (HistoryRecord record : records) {
+					if (record.getSequence() > untilSequence) {
+						break;
+					}
+					addTerms(termPostings, record.getSequence(), indexedText(record));
+					documents.add(record.getSequence());
+				}
+				if (documents.size() == 0) {
+					break;
+				}
+				Map<String, long[]> sealedPostings = new HashMap<>(termPostings.size() * 2);
+				for (Map.Entry<String, PostingList> entry : termPostings.entrySet()) {
+					sealedPostings.put(entry.getKey(), entry.getValue().toArray());
+				}
+				addSegment(IndexSegment.build(sealedPostings, documents.toArray()));
+				indexed += documents.size();
+				nextSequence = records.get(documents.size() - 1).getSequence() + 1;
+			}
+			System.out.println("Search index built from " + indexed + " persisted messages in "
+					+ (System.nanoTime() - start) / 1_000_000 + " ms.");
+		});
+	}
+
+	/**
+	 * Returns the text of a message that is indexed, including the name of its sender.
+	 *
+	 * @param record
+	 *            of the message
+	 * @return indexed text
+	 */
+	public static String indexedText(HistoryRecord record) {
+		return record.getSender() + " " + record.getPayload();
+	}
+
+	/**
+	 * Adds the terms of a text to a map of posting lists.
+	 */
+	private static void addTerms(Map<String, PostingList> termPostings, long sequence, String text) {
+		for (String term : Tokenizer.tokenize(text)) {
+			PostingList postingList = termPostings.get(term);
+			if (postingList == null) {
+				postingList = new PostingList();
+				termPostings.put(term, postingList);
+			}
+			postingList.add(sequence);
+		}
+	}
+
+	/**
+	 * Seals the in-memory buffer into a segment and starts a new buffer. Must be called holding the buffer lock.
+	 */
+	private IndexSegment sealBuffer() {
+		Map<String, long[]> termPostings = new HashMap<>(buffer.size() * 2);
+		for (Map.Entry<String, PostingList> entry : buffer.entrySet()) {
+			termPostings.put(entry.getKey(), entry.getValue().toArray());
+		}
+		IndexSegment segment = IndexSegment.build(termPostings, bufferedDocuments.toArray());
+		buffer = new HashMap<>();
+		bufferedDocuments = new PostingList();
+		return segment;
+	}
+
+	/**
+	 * Publishes a sealed segment and schedules a merge.
+	 */
+	private void addSegment(IndexSegment segment) {
+		synchronized (segmentsLock) {
+			List<IndexSegment> updated = new ArrayList<>(segments);
+			updated.add(segment);
+			segments = Collections.unmodifiableList(updated);
+		}
+		if (!merger.isShutdown()) {
+			merger.execute(this::mergeSegments);
+		}
+	}
+
+	/**
+	 * Merges groups of segments with similar size, until no such group is left.
+	 */
+	private void mergeSegments() {
+		List<IndexSegment> group;
+		while ((group = findMergeGroup(segments)) != null) {
+			IndexSegment merged = group.get(0);
+			for (int i = 1; i < group.size(); i++) {
+				merged = IndexSegment.merge(merged, group.get(i), retentionFloor);
+			}
+			synchronized (segmentsLock) {
+				List<IndexSegment> updated = new ArrayList<>(segments);
+				if (!updated.containsAll(group)) {
+					return;
+				}
+				updated.removeAll(group);
+				updated.add(merged);
+				segments = Collections.unmodifiableList(updated);
+			}
+		}
+	}
+
+	/**
+	 * Sets the sequence number of the oldest message that is still kept in the history. Older messages are left out of
+	 * the results at once and dropped from the segments on the background thread.
+	 *
+	 * @param floor
+	 *            sequence number of the oldest kept message
+	 */
+	public void setRetentionFloor(long floor) {
+		if (floor <= retentionFloor) {
+			return;
+		}
+		retentionFloor = floor;
+		if (!merger.isShutdown()) {
+			merger.execute(this::dropExpired);
+		}
+	}
+
+	/**
+	 * Drops the messages older than the retention floor from the segments. Segments holding only such messages are
+	 * removed, the others are rebuilt without them.
+	 */
+	private void dropExpired() {
+		List<IndexSegment> current = segments;
+		long floor = retentionFloor;
+		Map<IndexSegment, IndexSegment> retained = new HashMap<>();
+		for (IndexSegment segment : current) {
+			IndexSegment kept = segment.retainFrom(floor);
+			if (kept != segment) {
+				retained.put(segment, kept);
+			}
+		}
+		if (retained.isEmpty()) {
+			return;
+		}
+		synchronized (segmentsLock) {
+			List<IndexSegment> updated = new ArrayList<>(segments.size());
+			for (IndexSegment segment : segments) {
+				IndexSegment kept = retained.getOrDefault(segment, segment);
+				if (kept.getDocumentCount() > 0) {
+					updated.add(kept);
+				}
+			}
+			segments = Collections.unmodifiableList(updated);
+		}
+	}
+
+	/**
+	 * Finds the smallest segments, if there are enough of them with similar size to be merged.
+	 *
+	 * @return the segments to be merged, or null if there is nothing to merge
+	 */
+	private static List<IndexSegment> findMergeGroup(List<IndexSegment> current) {
+		if (current.size() < MERGE_FACTOR) {
+			return null;
+		}
+		List<IndexSegment> bySize = new ArrayList<>(current);
+		bySize.sort(Comparator.comparingInt(IndexSegment::getDocumentCount));
+		List<IndexSegment> group = bySize.subList(0, MERGE_FACTOR);
+		if (group.get(MERGE_FACTOR - 1).getDocumentCount() > group.get(0).getDocumentCount() * MERGE_FACTOR) {
+			return null;
+		}
+		return new ArrayList<>(group);
+	}
+
+	/**
+	 * Searches for the messages containing all terms of a query.
+	 *
+	 * @param query
+	 *            text of the query
+	 * @param page
+	 *            number, starting from 1. Pages after the last one have no messages.
+	 * @param pageSize
+	 *            number of messages on a page
+	 * @return the page of matching messages, from the newest to the oldest
+	 */
+	public SearchResult search(String query, long page, int pageSize) {
+		Set<String> terms = Tokenizer.tokenize(query);
+		long floor = retentionFloor;
+		List<long[]> segmentMatches = new ArrayList<>();
+		for (IndexSegment segment : segments) {
+			long[] found = segment.findAll(terms, floor);
+			if (found.length > 0) {
+				segmentMatches.add(found);
+			}
+		}
+		long[] buffered = findBuffered(terms, floor);
+		if (buffered.length > 0) {
+			segmentMatches.add(buffered);
+		}
+		long[] matches = IndexSegment.mergeAll(segmentMatches);
+		int pageCount = (matches.length + pageSize - 1) / pageSize;
+		int shownPage = (int) Math.max(1, Math.min(page, pageCount + 1L));
+		List<Long> sequences = new ArrayList<>(pageSize);
+		if (shownPage <= pageCount) {
+			long from = matches.length - 1 - (shownPage - 1L) * pageSize;
+			for (long i = from; i >= 0 && i > from - pageSize; i--) {
+				sequences.add(matches[(int) i]);
+			}
+		}
+		return new SearchResult(sequences, matches.length, shownPage, pageCount);
+	}
+
+	/**
+	 * Finds the messages of the in-memory buffer that contain all given terms and are not older than the retention
+	 * floor.
+	 */
+	private long[] findBuffered(Set<String> terms, long floor) {
+		if (terms.isEmpty()) {
+			return new long[0];
+		}
+		long[][] termPostings = new long[terms.size()][];
+		int i = 0;
+		synchronized (bufferLock) {
+			for (String term : terms) {
+				PostingList buffered = buffer.get(term);
+				if (buffered == null) {
+					return new long[0];
+				}
+				termPostings[i++] = buffered.toArray();
+			}
+		}
+		return IndexSegment.matchAll(termPostings, floor);
+	}
+
+	/**
+	 * Stops the background merging.
+	 */
+	public void close() {
+		merger.shutdown();
+		try {
+			merger.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			System.out.println(e);
+			System.out.println("Interrupted while waiting for the search index merges to finish.");
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Returns the number of indexed messages.
+	 *
+	 * @return number of messages in the segments and the buffer
+	 */
+	public int getDocumentCount() {
+		int count = 0;
+		for (IndexSegment segment : segments) {
+			count += segment.getDocumentCount();
+		}
+		synchronized (bufferLock) {
+			return count + bufferedDocuments.size();
+		}
+	}
+
+	/**
+	 * PostingList class, a growable array of sequence numbers used by the in-memory buffer.
+	 */
+	private static class PostingList {
+		private long[] values = new long[4];
+		private int size;
+
+		void add(long value) {
+			if (size > 0 && values[size - 1] == value) {
+				return;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package edu.uni.ruse.server.search;
+
+import java.util.List;
+
+/**
+ * SearchResult class, holding one page of the messages matching a search query.
+ *
+ * @author Alexander Andreev
+ */
+public class SearchResult {
+
+	private final List<Long> sequences;
+	private final int totalMatches;
+	private final int page;
+	private final int pageCount;
+
+	/**
+	 * Constructor with the matching messages of the page and the totals of the search.
+	 *
+	 * @param sequences
+	 *            of the matching messages on the page, from the newest to the oldest
+	 * @param totalMatches
+	 *            number of all matching messages
+	 * @param page
+	 *            number, starting from 1, or the number after the last page if the requested page was after it
+	 * @param pageCount
+	 *            number of all pages
+	 */
+	public SearchResult(List<Long> sequences, int totalMatches, int page, int pageCount) {
+		this.sequences = sequences;
+		this.totalMatches = totalMatches;
+		this.page = page;
+		this.pageCount = pageCount;
+	}
+
+	public List<Long> getSequences() {
+		return sequences;
+	}
+
+	public int getTotalMatches() {
+		return totalMatches;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public int getPageCount() {
+		return pageCount;
+	}
+}
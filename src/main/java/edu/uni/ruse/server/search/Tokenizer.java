@@ -0,0 +1,85 @@
+package edu.uni.ruse.server.search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tokenizer class, that splits the text of messages into the terms used by the search index. A term is a sequence of
+ * letters or digits in any script, so Latin and Cyrillic words are handled the same way, and is case-folded. Links
+ * are additionally kept as a whole term, so they can be found by their full address.
+ *
+ * @author Alexander Andreev
+ */
+public final class Tokenizer {
+
+	public static final int MIN_TERM_LENGTH = 2;
+	public static final int MAX_TERM_LENGTH = 64;
+	private static final int MAX_LINK_LENGTH = 512;
+
+	private Tokenizer() {
+	}
+
+	/**
+	 * Splits a text into distinct terms, in the order they first appear.
+	 *
+	 * @param text
+	 *            to be split
+	 * @return the terms of the text
+	 */
+	public static Set<String> tokenize(String text) {
+		Set<String> terms = new LinkedHashSet<>();
+		int length = text.length();
+		int wordStart = -1;
+		for (int i = 0; i <= length; i++) {
+			boolean partOfWord = i < length && Character.isLetterOrDigit(text.charAt(i));
+			if (partOfWord && wordStart == -1) {
+				wordStart = i;
+			} else if (!partOfWord && wordStart != -1) {
+				addTerm(terms, text, wordStart, i, MAX_TERM_LENGTH);
+				wordStart = -1;
+			}
+		}
+		addLinks(terms, text);
+		return terms;
+	}
+
+	/**
+	 * Adds the whitespace-separated parts of a text that look like links as whole terms.
+	 */
+	private static void addLinks(Set<String> terms, String text) {
+		int start = 0;
+		int length = text.length();
+		while (start < length) {
+			while (start < length && Character.isWhitespace(text.charAt(start))) {
+				start++;
+			}
+			int end = start;
+			while (end < length && !Character.isWhitespace(text.charAt(end))) {
+				end++;
+			}
+			if (end > start && isLink(text, start, end)) {
+				addTerm(terms, text, start, end, MAX_LINK_LENGTH);
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * Checks if a part of a text looks like a link.
+	 */
+	private static boolean isLink(String text, int start, int end) {
+		String part = text.substring(start, end);
+		return part.contains("://") || part.regionMatches(true, 0, "www.", 0, 4);
+	}
+
+	/**
+	 * Adds the case-folded part of a text as a term, if its length is in the accepted limits.
+	 */
+	private static void addTerm(Set<String> terms, String text, int start, int end, int maxLength) {
+		int termLength = end - start;
+		if (termLength >= MIN_TERM_LENGTH && termLength <= maxLength) {
+			terms.add(text.substring(start, end).toLowerCase(Locale.ROOT));
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package edu.uni.ruse.server.snapshot;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.utilities.InterfaceLang;
+
+/**
+ * ServerSnapshot class, holding the in-memory state of a server at a point in time: the connected users with their
+ * language preferences, the version of the online users list, the messages waiting to be processed and the last
+ * delivered messages. A snapshot is encoded as a header, holding the length and checksum of the body, followed by the
+ * body.
+ *
+ * @author Alexander Andreev
+ */
+public class ServerSnapshot {
+
+	static final int HEADER_SIZE = 4 + 4 + 4;
+	private static final int MAGIC = 0x43485353;
+	private final long createdMillis;
+	private final long presenceVersion;
+	private final Map<String, InterfaceLang> sessions;
+	private final List<String> pendingMessages;
+	private final List<HistoryRecord> recentMessages;
+
+	/**
+	 * Constructor with the state of the server.
+	 *
+	 * @param createdMillis
+	 *            time in milliseconds when the snapshot was taken
+	 * @param presenceVersion
+	 *            version of the online users list
+	 * @param sessions
+	 *            names of the connected users with their language preferences
+	 * @param pendingMessages
+	 *            messages waiting to be processed
+	 * @param recentMessages
+	 *            last delivered messages, ordered by sequence number
+	 */
+	public ServerSnapshot(long createdMillis, long presenceVersion, Map<String, InterfaceLang> sessions,
+			List<String> pendingMessages, List<HistoryRecord> recentMessages) {
+		this.createdMillis = createdMillis;
+		this.presenceVersion = presenceVersion;
+		this.sessions = sessions;
+		this.pendingMessages = pendingMessages;
+		this.recentMessages = recentMessages;
+	}
+
+	/**
+	 * Encodes the snapshot.
+	 *
+	 * @return buffer, ready to be read, holding the header and the body
+	 */
+	public ByteBuffer encode() {
+		List<byte[]> strings = new ArrayList<>();
+		List<ByteBuffer> records = new ArrayList<>(recentMessages.size());
+		int bodySize = 8 + 8 + 4 + 4 + 4;
+		for (Map.Entry<String, InterfaceLang> session : sessions.entrySet()) {
+			byte[] name = session.getKey().getBytes(StandardCharsets.UTF_8);
+			strings.add(name);
+			bodySize += 4 + name.length + 1;
+		}
+		for (String message : pendingMessages) {
+			byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+			strings.add(bytes);
+			bodySize += 4 + bytes.length;
+		}
+		for (HistoryRecord record : recentMessages) {
+			ByteBuffer encodedRecord = record.encode();
+			records.add(encodedRecord);
+			bodySize += encodedRecord.remaining();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+		buffer.position(HEADER_SIZE);
+		buffer.putLong(createdMillis);
+		buffer.putLong(presenceVersion);
+		buffer.putInt(sessions.size());
+		int string = 0;
+		for (InterfaceLang language : sessions.values()) {
+			byte[] name = strings.get(string++);
+			buffer.putInt(name.length).put(name).put((byte) language.ordinal());
+		}
+		buffer.putInt(pendingMessages.size());
+		for (int i = 0; i < pendingMessages.size(); i++) {
+			byte[] message = strings.get(string++);
+			buffer.putInt(message.length).put(message);
+		}
+		buffer.putInt(records.size());
+		for (ByteBuffer encodedRecord : records) {
+			buffer.put(encodedRecord);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), HEADER_SIZE, bodySize);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, bodySize);
+		buffer.putInt(8, (int) crc.getValue());
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Decodes a snapshot from a buffer.
+	 *
+	 * @param buffer
+	 *            holding an encoded snapshot from its current position
+	 * @return the snapshot, or null if the buffer does not hold a valid snapshot
+	 */
+	public static ServerSnapshot decode(ByteBuffer buffer) {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			return null;
+		}
+		int bodySize = buffer.getInt();
+		int checksum = buffer.getInt();
+		if (bodySize < 0 || bodySize > buffer.remaining()) {
+			return null;
+		}
+		ByteBuffer body = buffer.slice();
+		body.limit(bodySize);
+		CRC32 crc = new CRC32();
+		crc.update(body.duplicate());
+		if ((int) crc.getValue() != checksum) {
+			return null;
+		}
+		try {
+			long createdMillis = body.getLong();
+			long presenceVersion = body.getLong();
+			int sessionCount = body.getInt();
+			Map<String, InterfaceLang> sessions = new LinkedHashMap<>();
+			for (int i = 0; i < sessionCount; i++) {
+				String name = readString(body);
+				sessions.put(name, InterfaceLang.values()[body.get()]);
+			}
+			int pendingCount = body.getInt();
+			List<String> pendingMessages = new ArrayList<>(pendingCount);
+			for (int i = 0; i < pendingCount; i++) {
+				pendingMessages.add(readString(body));
+			}
+			int recordCount = body.getInt();
+			List<HistoryRecord> recentMessages = new ArrayList<>(recordCount);
+			for (int i = 0; i < recordCount; i++) {
+				HistoryRecord record = HistoryRecord.decode(body);
+				if (record == null) {
+					return null;
+				}
+				recentMessages.add(record);
+			}
+			return new ServerSnapshot(createdMillis, presenceVersion, sessions, pendingMessages, recentMessages);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a UTF-8 string, preceded by its length in bytes.
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public long getCreatedMillis() {
+		return createdMillis;
+	}
+
+	public long getPresenceVersion() {
+		return presenceVersion;
+	}
+
+	public Map<String, InterfaceLang> getSessions() {
+		return sessions;
+	}
+
+	public List<String> getPendingMessages() {
+		return pendingMessages;
+	}
+
+	public List<HistoryRecord> getRecentMessages() {
+		return recentMessages;
+	}
+}
@@ -0,0 +1,79 @@
+package edu.uni.ruse.server.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SnapshotStore class, that writes server snapshots to a file and reads them back. A snapshot is written under a
+ * temporary name and then moved over the previous one, so a crash while writing never leaves a damaged snapshot.
+ * Reading maps the file in memory, so the snapshot is decoded without copying the file first.
+ *
+ * @author Alexander Andreev
+ */
+public class SnapshotStore {
+
+	private final Path file;
+
+	/**
+	 * Constructor with the file that holds the snapshot.
+	 *
+	 * @param file
+	 *            of the snapshot
+	 */
+	public SnapshotStore(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Writes a snapshot, replacing the previous one.
+	 *
+	 * @param snapshot
+	 *            to be written
+	 * @return size of the written snapshot in bytes
+	 * @throws IOException
+	 *             if the snapshot cannot be written
+	 */
+	public int write(ServerSnapshot snapshot) throws IOException {
+		ByteBuffer encodedSnapshot = snapshot.encode();
+		int size = encodedSnapshot.remaining();
+		Path absoluteFile = file.toAbsolutePath();
+		Files.createDirectories(absoluteFile.getParent());
+		Path temporaryFile = absoluteFile.resolveSibling(absoluteFile.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (encodedSnapshot.hasRemaining()) {
+				channel.write(encodedSnapshot);
+			}
+			channel.force(true);
+		}
+		Files.move(temporaryFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return size;
+	}
+
+	/**
+	 * Reads the last written snapshot.
+	 *
+	 * @return the snapshot, or null if there is no snapshot or it is not valid
+	 * @throws IOException
+	 *             if the file exists but cannot be read
+	 */
+	public ServerSnapshot read() throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mappedSnapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return ServerSnapshot.decode(mappedSnapshot);
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+}
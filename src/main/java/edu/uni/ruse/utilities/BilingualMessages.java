@@ -16,7 +16,10 @@ public enum BilingualMessages {
 	LOST_CONNECTION("Lost connection with server.","Връзката със сървъра се прекъсна."),
 	TRY_TO_RECONNECT("Trying to reconnect","Опит за възстановяване на връзката със сървъра"),
 	SUCCESSFUL_RECONNECT("Reconnect successful.","Връзката със сървъра е възстановена успешно."),
-	UNSUCCESSFUL_RECONNECT("Reconnect failed.", "Опита да се възстанови връзката беше неуспешен.");
+	UNSUCCESSFUL_RECONNECT("Reconnect failed.", "Опита да се възстанови връзката беше неуспешен."),
+	PENDING_MESSAGES("Waiting to be sent: ", "Чакащи изпращане: "),
+	SEND_QUEUE_FULL("Too many messages are waiting to be sent. Try again later.",
+			"Твърде много съобщения чакат изпращане. Опитайте отново по-късно.");
 
 	private final String enMessage;
 	private final String bgMessage;
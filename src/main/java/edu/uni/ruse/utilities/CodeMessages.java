@@ -15,7 +15,17 @@ public enum CodeMessages {
     REFRESH_USERLIST("REFRESH_USERLIST"),
     CHANGE_LANG("CHANGE_LANGUAGE:"),
     CHANGE_USERNAME("/changename"),
-    WHISPER("/w");
+    WHISPER("/w"),
+    HISTORY("/history"),
+    SCROLLBACK("SCROLLBACK:"),
+    HISTORY_TAIL("HISTORY_TAIL:"),
+    HISTORY_CACHED("HISTORY_CACHED:"),
+    SEQUENCE("SEQUENCE:"),
+    HISTORY_PAGE("HISTORY_PAGE:"),
+    SEARCH("/search"),
+    SEARCH_RESULTS("SEARCH_RESULTS:"),
+    STATUS_REQUEST("STATUS_REQUEST"),
+    STATUS("STATUS:");
 
     private final String message;
 
@@ -0,0 +1,142 @@
+package edu.uni.ruse.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram class, that records the distribution of non negative values, such as latencies or sizes, with a small
+ * fixed memory footprint. Values are counted in buckets, each power of two split into a number of linear sub-buckets,
+ * so the relative error of the reported percentiles is bounded. Recording is lock-free and can be done from many
+ * threads.
+ *
+ * @author Alexander Andreev
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+	private final String name;
+	private final String unit;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Constructor with the name of the histogram and the unit of its values.
+	 *
+	 * @param name
+	 *            of the histogram
+	 * @param unit
+	 *            of the recorded values
+	 */
+	public Histogram(String name, String unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as zero.
+	 *
+	 * @param value
+	 *            to be recorded
+	 */
+	public void record(long value) {
+		long recorded = Math.max(0, value);
+		counts.incrementAndGet(bucketIndex(recorded));
+		totalCount.incrementAndGet();
+		sum.addAndGet(recorded);
+		long currentMax;
+		while (recorded > (currentMax = max.get()) && !max.compareAndSet(currentMax, recorded)) {
+			// retry until the maximum is updated or a bigger value is recorded
+		}
+	}
+
+	/**
+	 * Returns the index of the bucket that a value is counted in.
+	 */
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> exponent) - SUB_BUCKETS;
+		return SUB_BUCKETS + exponent * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the highest value that is counted in a bucket.
+	 */
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << exponent) - 1;
+	}
+
+	/**
+	 * Returns the value, below or at which a given percentage of the recorded values are.
+	 *
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the value at the percentile, or 0 if nothing is recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(bucketUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) sum.get() / count;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": count=" + getCount() + ", mean=" + String.format("%.1f", getMean()) + " " + unit + ", p50="
+				+ getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99) + ", p99.9="
+				+ getValueAtPercentile(99.9) + ", max=" + getMax() + " " + unit;
+	}
+}
@@ -4,6 +4,7 @@ import java.awt.Image;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
 
 /**
  * Enumeration holding different interface languages.
@@ -13,6 +14,8 @@ import javax.imageio.ImageIO;
 public enum InterfaceLang {
 	BG("BulgariaFlag.png"), EN("GreatBritainFlag.png");
 	private String langIconPath;
+	private Image flag;
+	private ImageIcon flagIcon;
 
 	/**
 	 * Constructor, holding the flag image of the specified language.
@@ -23,8 +26,50 @@ public enum InterfaceLang {
 		langIconPath = logoPath;
 	}
 
-	public Image getFlag() throws IOException {
-		return ImageIO.read(ClassLoader.getSystemResource(langIconPath));
+	/**
+	 * Returns the flag of the language. The image is decoded on first use and reused afterwards.
+	 * 
+	 * @return the flag image
+	 * @throws IOException
+	 *             if the image cannot be read
+	 */
+	public synchronized Image getFlag() throws IOException {
+		if (flag == null) {
+			flag = ImageIO.read(ClassLoader.getSystemResource(langIconPath));
+		}
+		return flag;
+	}
+
+	/**
+	 * Returns the flag of the language as an icon, created on first use and reused afterwards.
+	 * 
+	 * @return the flag icon
+	 * @throws IOException
+	 *             if the image cannot be read
+	 */
+	public synchronized ImageIcon getFlagIcon() throws IOException {
+		if (flagIcon == null) {
+			flagIcon = new ImageIcon(getFlag());
+		}
+		return flagIcon;
+	}
+
+	/**
+	 * Decodes the flags of all languages on a background thread, so they are ready when the interface is built.
+	 */
+	public static void preloadFlags() {
+		Thread thread = new Thread(() -> {
+			for (InterfaceLang lang : values()) {
+				try {
+					lang.getFlagIcon();
+				} catch (IOException e) {
+					System.out.println(e);
+					System.out.println("Could not preload the flag of language " + lang);
+				}
+			}
+		}, "flag-preload");
+		thread.setDaemon(true);
+		thread.start();
 	}
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+package edu.uni.ruse.utilities;
+
+import java.awt.Color;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enumeration, holding the palette of colors that a message can be displayed in. Each color is transferred as its
+ * palette index, so the receiving side can decode it with a single table lookup. Colors that are not part of the
+ * palette are transferred as a packed RGB value, prefixed with '#'.
+ *
+ * @author Alexander Andreev
+ */
+public enum MessageColor {
+	BLACK(Color.BLACK),
+	BLUE(Color.BLUE),
+	MAGENTA(Color.MAGENTA),
+	RED(Color.RED),
+	GREEN(Color.GREEN),
+	GRAY(Color.GRAY),
+	DARK_GRAY(Color.DARK_GRAY),
+	ORANGE(Color.ORANGE);
+
+	public static final char CODE_DELIMITER = '*';
+	private static final char RGB_PREFIX = '#';
+	private static final MessageColor[] PALETTE = values();
+	private static final Map<Integer, MessageColor> RGB_TO_PALETTE = new ConcurrentHashMap<>();
+	private static final Map<Integer, Color> DECODED_RGB_COLORS = new ConcurrentHashMap<>();
+
+	static {
+		for (MessageColor paletteColor : PALETTE) {
+			RGB_TO_PALETTE.put(paletteColor.color.getRGB(), paletteColor);
+		}
+	}
+
+	private final Color color;
+	private final String code;
+
+	/**
+	 * Constructor, holding the color that the palette entry stands for.
+	 *
+	 * @param color
+	 *            displayed on the client
+	 */
+	MessageColor(Color color) {
+		this.color = color;
+		this.code = String.valueOf(ordinal());
+	}
+
+	/**
+	 * Returns the color of the palette entry.
+	 *
+	 * @return color
+	 */
+	public Color getColor() {
+		return color;
+	}
+
+	/**
+	 * Returns the code that is transferred with a message to point to this palette entry.
+	 *
+	 * @return palette index as a string
+	 */
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * Encodes a color to the code, transferred in front of a message. Palette colors are encoded as their index and
+	 * all other colors as a packed RGB value.
+	 *
+	 * @param color
+	 *            to be encoded
+	 * @return color code
+	 */
+	public static String encode(Color color) {
+		MessageColor paletteColor = RGB_TO_PALETTE.get(color.getRGB());
+		if (paletteColor != null) {
+			return paletteColor.code;
+		}
+		return RGB_PREFIX + Integer.toHexString(color.getRGB() & 0xFFFFFF);
+	}
+
+	/**
+	 * Decodes a color code, located in a message between the given indexes, without creating substrings.
+	 *
+	 * @param message
+	 *            holding the color code
+	 * @param start
+	 *            index of the first character of the code
+	 * @param end
+	 *            index after the last character of the code
+	 * @return the decoded color, or black if the code cannot be recognized
+	 */
+	public static Color decode(String message, int start, int end) {
+		if (start >= end) {
+			return BLACK.color;
+		}
+		if (message.charAt(start) == RGB_PREFIX) {
+			int rgb = parseNumber(message, start + 1, end, 16);
+			if (rgb < 0) {
+				return BLACK.color;
+			}
+			MessageColor paletteColor = RGB_TO_PALETTE.get(rgb | 0xFF000000);
+			if (paletteColor != null) {
+				return paletteColor.color;
+			}
+			return DECODED_RGB_COLORS.computeIfAbsent(rgb, Color::new);
+		}
+		int index = parseNumber(message, start, end, 10);
+		if (index < 0 || index >= PALETTE.length) {
+			System.out.println("A color for a message was received that cannot be recognized");
+			return BLACK.color;
+		}
+		return PALETTE[index].color;
+	}
+
+	/**
+	 * Parses a non negative number from the characters of a string between the given indexes.
+	 *
+	 * @return the parsed number, or -1 if the characters are not a valid number
+	 */
+	private static int parseNumber(String text, int start, int end, int radix) {
+		if (start >= end || end - start > 7) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = Character.digit(text.charAt(i), radix);
+			if (digit < 0) {
+				return -1;
+			}
+			value = value * radix + digit;
+		}
+		return value;
+	}
+}
@@ -1,14 +1,32 @@
 package edu.uni.ruse.utilities;
 
 import edu.uni.ruse.server.Server;
+import edu.uni.ruse.server.events.BroadcastFanOutEvent;
+import edu.uni.ruse.server.events.MessageDispatchedEvent;
+import edu.uni.ruse.server.events.MessageEnqueuedEvent;
+import edu.uni.ruse.server.events.MessageWrittenEvent;
+import edu.uni.ruse.server.events.QueueStallEvent;
+import edu.uni.ruse.server.events.SlowSocketWriteEvent;
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.server.metrics.Counter;
+import edu.uni.ruse.server.metrics.MetricsRegistry;
 
 import java.awt.*;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 
+import jdk.jfr.EventType;
+
 /**
  * MessagesManager class that operates the messages between the server and it's clients.
  * 
@@ -17,9 +35,17 @@ import java.util.concurrent.ArrayBlockingQueue;
 public class MessagesManager {
 
 	public static final int UNPROCESSED_MESSAGES_CAPACITY = 512;
+	private static final int MAX_FRAME_BYTES = 60000;
+	private static final EventType DISPATCHED_EVENT_TYPE = EventType.getEventType(MessageDispatchedEvent.class);
+	private static final DateTimeFormatter HISTORY_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss")
+			.withZone(ZoneId.systemDefault());
 	private Server server;
 	private volatile ArrayBlockingQueue<String> unprocessedClientMessages;
 	private volatile ArrayBlockingQueue<String> unprocessedServerMessages;
+	private final Counter outboundMessages;
+	private final Counter outboundBytes;
+	private final Histogram fanOutTime;
+	private final Map<String, Long> enqueuedNanos = Collections.synchronizedMap(new IdentityHashMap<>());
 
 	/**
 	 * Constructor for the class.
@@ -31,29 +57,28 @@ public class MessagesManager {
 		server = parent;
 		unprocessedClientMessages = new ArrayBlockingQueue<>(UNPROCESSED_MESSAGES_CAPACITY, true);
 		unprocessedServerMessages = new ArrayBlockingQueue<>(UNPROCESSED_MESSAGES_CAPACITY, true);
+		MetricsRegistry metrics = parent.getMetrics();
+		outboundMessages = metrics.counter("messages.outbound");
+		outboundBytes = metrics.counter("bytes.outbound");
+		fanOutTime = metrics.histogram("broadcast.fanOutTime", "us");
+		metrics.gauge("queue.clientMessages", () -> unprocessedClientMessages.size());
+		metrics.gauge("queue.serverMessages", () -> unprocessedServerMessages.size());
 	}
 
 	/**
-	 *  Removes the color code before a message if it is irrelevant for its use
+	 * Gets the color of a message from the palette code in front of it.
 	 * @param message with color code
-	 * @return message without color code
+	 * @return color of the message
 	 */
 	public static Color getColorFromMessage(String message) {
-		String colorString = message.substring(message.indexOf("*") + 1, message.indexOf("*", message.indexOf("*") + 1));
-		if (colorString.contains("awt")) {
-			return getColorFromJavaAwtString(colorString);
-		} else {
-			try {
-				return (Color)Color.class.getField(colorString).get(null);
-			} catch (IllegalAccessException e) {
-				System.out.println(e);
-			} catch (NoSuchFieldException e) {
-				System.out.println(e);
-				System.out.println("A color for a message was received that cannot be recognized");
-			}
+		if (message.isEmpty() || message.charAt(0) != MessageColor.CODE_DELIMITER) {
+			return MessageColor.BLACK.getColor();
 		}
-
-		return Color.BLACK;
+		int codeEnd = message.indexOf(MessageColor.CODE_DELIMITER, 1);
+		if (codeEnd == -1) {
+			return MessageColor.BLACK.getColor();
+		}
+		return MessageColor.decode(message, 1, codeEnd);
 	}
 
 	/**
@@ -62,8 +87,10 @@ public class MessagesManager {
 	 * @return message without color code
 	 */
 	public static String removeColorCodeFromMessage(String message) {
-		int messageBeginning = message.indexOf("*", message.indexOf("*") + 1);
-		return message.substring(messageBeginning + 1);
+		if (message.isEmpty() || message.charAt(0) != MessageColor.CODE_DELIMITER) {
+			return message;
+		}
+		return message.substring(message.indexOf(MessageColor.CODE_DELIMITER, 1) + 1);
 	}
 
 	/**
@@ -93,9 +120,27 @@ public class MessagesManager {
 	 *             if the output stream between the server and the client is damaged.
 	 */
 	public void sendMessageToClient(String message, Socket receiver, Color messageColor) throws IOException {
-		message = "*" + messageColor + "*" + message;
+		message = MessageColor.CODE_DELIMITER + MessageColor.encode(messageColor) + MessageColor.CODE_DELIMITER + message;
 		DataOutputStream dOut = new DataOutputStream(receiver.getOutputStream());
+		MessageWrittenEvent written = new MessageWrittenEvent();
+		SlowSocketWriteEvent slowWrite = new SlowSocketWriteEvent();
+		written.begin();
+		slowWrite.begin();
 		dOut.writeUTF(message);
+		written.end();
+		slowWrite.end();
+		outboundMessages.increment();
+		outboundBytes.add(dOut.size());
+		if (written.shouldCommit()) {
+			written.receiver = String.valueOf(receiver.getRemoteSocketAddress());
+			written.size = dOut.size();
+			written.commit();
+		}
+		if (slowWrite.shouldCommit()) {
+			slowWrite.receiver = String.valueOf(receiver.getRemoteSocketAddress());
+			slowWrite.size = dOut.size();
+			slowWrite.commit();
+		}
 	}
 
 	/**
@@ -128,7 +173,7 @@ public class MessagesManager {
 	 * 			  color of message to be send
 	 */
 	public void sendMessageToAllUsers(String message, Color messageColor) {
-		Thread thread = new Thread(() -> server.getNamesToConnections().forEach((name, connection) -> {
+		startBroadcast(message, () -> server.getNamesToConnections().forEach((name, connection) -> {
 			try {
 				sendMessageToClient(message, connection, messageColor);
 			} catch (Exception e) {
@@ -140,7 +185,6 @@ public class MessagesManager {
 						"Exception while trying to read a message from client " + name + ". Connection will be removed");
 			}
 		}));
-		thread.start();
 	}
 
 	/**
@@ -153,7 +197,7 @@ public class MessagesManager {
 	 *            message in English
 	 */
 	public void sendBilingualMessageToAllUsers(String bulMessage, String engMessage) {
-		Thread thread = new Thread(() -> server.getNamesToConnections().forEach((name, connection) -> {
+		startBroadcast(engMessage, () -> server.getNamesToConnections().forEach((name, connection) -> {
 			try {
 				if (getLangFromSocket(connection) == InterfaceLang.BG) {
 					sendMessageToClient(bulMessage, connection);
@@ -169,7 +213,6 @@ public class MessagesManager {
 						+ name + ". Connection will be removed");
 			}
 		}));
-		thread.start();
 	}
 
 	/**
@@ -182,7 +225,7 @@ public class MessagesManager {
 	 *            message in English
 	 */
 	public void sendBilingualMessageToAllUsers(String bulMessage, String engMessage, Color messageColor) {
-		Thread thread = new Thread(() -> server.getNamesToConnections().forEach((name, connection) -> {
+		startBroadcast(engMessage, () -> server.getNamesToConnections().forEach((name, connection) -> {
 			try {
 				if (getLangFromSocket(connection) == InterfaceLang.BG) {
 					sendMessageToClient(bulMessage, connection, messageColor);
@@ -198,6 +241,31 @@ public class MessagesManager {
 						+ name + ". Connection will be removed");
 			}
 		}));
+	}
+
+	/**
+	 * Starts a new thread that sends a message to all users, and records how long it took.
+	 *
+	 * @param message
+	 *            to be sent, or its English version if it is sent in the language of each user
+	 * @param fanOut
+	 *            that sends the message to each user
+	 */
+	private void startBroadcast(String message, Runnable fanOut) {
+		Thread thread = new Thread(() -> {
+			BroadcastFanOutEvent event = new BroadcastFanOutEvent();
+			int recipients = server.getNamesToConnections().size();
+			long startNanos = System.nanoTime();
+			event.begin();
+			fanOut.run();
+			event.end();
+			fanOutTime.record((System.nanoTime() - startNanos) / 1000);
+			if (event.shouldCommit()) {
+				event.recipients = recipients;
+				event.size = 2 + encodedLength(message);
+				event.commit();
+			}
+		});
 		thread.start();
 	}
 
@@ -230,13 +298,78 @@ public class MessagesManager {
 	 */
 	public void sendMessageToServerFrame(String message) {
 		try {
-			unprocessedServerMessages.put(message);
+			putWaitingForRoom(unprocessedServerMessages, QueueStallEvent.SERVER_MESSAGES, message);
 		} catch (InterruptedException e) {
 			System.out.println(e);
 			System.out.println("InterruptedException while send message to server frame.");
 		}
 	}
 
+	/**
+	 * Puts a message received from a user in the queue of messages to be processed. If the message can be dispatched
+	 * while the flight recorder records dispatches, the time it was queued is kept, so its wait in the queue is known
+	 * when it is dispatched.
+	 *
+	 * @param user
+	 *            that sent the message
+	 * @param message
+	 *            received from the user
+	 * @param size
+	 *            of the message in bytes, as it was received
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for room in the queue
+	 */
+	public void enqueueClientMessage(String user, String message, int size) throws InterruptedException {
+		MessageEnqueuedEvent enqueued = new MessageEnqueuedEvent();
+		enqueued.begin();
+		if (DISPATCHED_EVENT_TYPE.isEnabled()) {
+			enqueuedNanos.put(message, System.nanoTime());
+		}
+		putWaitingForRoom(unprocessedClientMessages, QueueStallEvent.CLIENT_MESSAGES, message);
+		enqueued.end();
+		if (enqueued.shouldCommit()) {
+			enqueued.user = user;
+			enqueued.size = size;
+			enqueued.queueLength = unprocessedClientMessages.size();
+			enqueued.commit();
+		}
+	}
+
+	/**
+	 * Returns how long a dispatched message waited in the queue of messages to be processed, and forgets when it was
+	 * queued.
+	 *
+	 * @param message
+	 *            taken from the queue
+	 * @return the wait in nanoseconds, or 0 if it is not known
+	 */
+	public long takeQueueWait(String message) {
+		if (enqueuedNanos.isEmpty()) {
+			return 0;
+		}
+		Long queuedNanos = enqueuedNanos.remove(message);
+		return queuedNanos == null ? 0 : System.nanoTime() - queuedNanos;
+	}
+
+	/**
+	 * Puts a message in a queue, waiting for room if the queue is full. The wait is recorded as a queue stall.
+	 */
+	private static void putWaitingForRoom(ArrayBlockingQueue<String> queue, String queueName, String message)
+			throws InterruptedException {
+		if (queue.offer(message)) {
+			return;
+		}
+		QueueStallEvent stall = new QueueStallEvent();
+		stall.begin();
+		queue.put(message);
+		stall.end();
+		if (stall.shouldCommit()) {
+			stall.queue = queueName;
+			stall.capacity = UNPROCESSED_MESSAGES_CAPACITY;
+			stall.commit();
+		}
+	}
+
 	/**
 	 * Sends a message to the server's interface, telling it to update the user list.
 	 */
@@ -334,7 +467,7 @@ public class MessagesManager {
 	 * @throws IOException
 	 */
 	public void sendUsersListToClient(Socket client) throws IOException {
-		for (String user : server.getNamesToConnections().keySet()) {
+		for (String user : server.getOnlineUserNames()) {
 			sendMessageToClient(CodeMessages.ADDUSER.getMessage() + user, client);
 		}
 	}
@@ -356,6 +489,165 @@ public class MessagesManager {
 		}
 	}
 
+	/**
+	 * Sends past messages to a client as a single frame, starting with the sequence tag of the newest message and the
+	 * given code, and holding one message per line. If not all messages fit in a frame, the newest ones are sent. If
+	 * the newest message alone does not fit, it is sent cut to the size of the frame.
+	 * 
+	 * @param code
+	 *            telling the client how to display the messages
+	 * @param records
+	 *            of the messages, from the oldest to the newest
+	 * @param client
+	 *            to receive the messages
+	 * @return the number of newest messages that were sent, at least one if there are any messages
+	 * @throws IOException
+	 */
+	public int sendHistoryToClient(CodeMessages code, List<HistoryRecord> records, Socket client) throws IOException {
+		String[] lines = new String[records.size()];
+		String prefix = records.isEmpty() ? code.getMessage()
+				: sequenceTag(records.get(records.size() - 1).getSequence()) + code.getMessage();
+		int frameBytes = encodedLength(prefix) + 8;
+		int first = records.size();
+		while (first > 0) {
+			String line = formatHistoryRecord(records.get(first - 1));
+			int lineBytes = encodedLength(line) + 1;
+			if (frameBytes + lineBytes > MAX_FRAME_BYTES) {
+				if (first < records.size()) {
+					break;
+				}
+				line = truncateToEncodedLength(line, MAX_FRAME_BYTES - frameBytes - 1);
+				lineBytes = encodedLength(line) + 1;
+			}
+			frameBytes += lineBytes;
+			lines[--first] = line;
+		}
+		StringBuilder frame = new StringBuilder(frameBytes).append(prefix);
+		for (int i = first; i < lines.length; i++) {
+			if (i > first) {
+				frame.append('\n');
+			}
+			frame.append(lines[i]);
+		}
+		sendMessageToClient(frame.toString(), client);
+		return lines.length - first;
+	}
+
+	/**
+	 * Sends past messages to a client in as many frames as they need, from the oldest to the newest, so none of them
+	 * is left out. Each frame is sent as by {@link #sendHistoryToClient(CodeMessages, List, Socket)}.
+	 * 
+	 * @param code
+	 *            telling the client how to display the messages
+	 * @param records
+	 *            of the messages, from the oldest to the newest
+	 * @param client
+	 *            to receive the messages
+	 * @return the number of frames that were sent
+	 * @throws IOException
+	 */
+	public int sendHistoryInFramesToClient(CodeMessages code, List<HistoryRecord> records, Socket client)
+			throws IOException {
+		if (records.isEmpty()) {
+			return 0;
+		}
+		// the tag of the newest message is the longest, so every frame fits with room for it
+		int prefixBytes = encodedLength(sequenceTag(records.get(records.size() - 1).getSequence()) + code.getMessage())
+				+ 8;
+		int frames = 0;
+		int from = 0;
+		while (from < records.size()) {
+			int frameBytes = prefixBytes;
+			int to = from;
+			while (to < records.size()) {
+				int lineBytes = encodedLength(formatHistoryRecord(records.get(to))) + 1;
+				if (to > from && frameBytes + lineBytes > MAX_FRAME_BYTES) {
+					break;
+				}
+				frameBytes += lineBytes;
+				to++;
+			}
+			sendHistoryToClient(code, records.subList(from, to), client);
+			frames++;
+			from = to;
+		}
+		return frames;
+	}
+
+	/**
+	 * Returns the tag that is put in front of a message kept in the chat history, so clients can tell which messages
+	 * they already have.
+	 * 
+	 * @param sequence
+	 *            number of the message in the chat history
+	 * @return the tag
+	 */
+	public static String sequenceTag(long sequence) {
+		return CodeMessages.SEQUENCE.getMessage() + sequence + ":";
+	}
+
+	/**
+	 * Formats a past message the way it was displayed when it was delivered.
+	 * 
+	 * @param record
+	 *            of the message
+	 * @return the formatted message
+	 */
+	public static String formatHistoryRecord(HistoryRecord record) {
+		String time = "[" + HISTORY_TIME_FORMAT.format(Instant.ofEpochMilli(record.getTimestamp())) + "]";
+		if (record.getSender().isEmpty()) {
+			return time + record.getPayload();
+		}
+		return time + record.getSender() + ": " + record.getPayload();
+	}
+
+	/**
+	 * Returns the number of bytes that a string takes when written with writeUTF, without the two bytes of its length.
+	 *
+	 * @param text
+	 *            to be written
+	 * @return the number of bytes
+	 */
+	public static int encodedLength(String text) {
+		int length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			length += encodedLength(text.charAt(i));
+		}
+		return length;
+	}
+
+	private static int encodedLength(char c) {
+		if (c >= 0x0001 && c <= 0x007F) {
+			return 1;
+		} else if (c > 0x07FF) {
+			return 3;
+		}
+		return 2;
+	}
+
+	/**
+	 * Cuts a string, so it takes at most the given number of bytes when written with writeUTF. A surrogate pair is
+	 * never cut in half.
+	 *
+	 * @param text
+	 *            to be cut
+	 * @param maxLength
+	 *            number of bytes, without the two bytes of the length
+	 * @return the text, or its longest beginning that fits
+	 */
+	public static String truncateToEncodedLength(String text, int maxLength) {
+		int length = 0;
+		int end = 0;
+		while (end < text.length() && length + encodedLength(text.charAt(end)) <= maxLength) {
+			length += encodedLength(text.charAt(end));
+			end++;
+		}
+		if (end > 0 && end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+			end--;
+		}
+		return text.substring(0, end);
+	}
+
 	/**
 	 * Retrieves a message from a client.
 	 * 
@@ -368,13 +660,6 @@ public class MessagesManager {
 		return new DataInputStream(client.getInputStream()).readUTF();
 	}
 
-	public static Color getColorFromJavaAwtString(String awtString) {
-		int r = Integer.parseInt(awtString.substring(awtString.indexOf("r=") + 2, awtString.indexOf(",")));
-		int g = Integer.parseInt(awtString.substring(awtString.indexOf("g=") + 2, awtString.indexOf(",", awtString.indexOf(",") + 1)));
-		int b = Integer.parseInt(awtString.substring(awtString.indexOf("b=") + 2, awtString.indexOf("]")));
-		return new Color(r, g, b);
-	}
-
 	public ArrayBlockingQueue<String> getUnprocessedClientMessages() {
 		return unprocessedClientMessages;
 	}
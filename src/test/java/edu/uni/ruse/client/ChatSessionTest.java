@@ -0,0 +1,147 @@
+package edu.uni.ruse.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import edu.uni.ruse.server.Server;
+import edu.uni.ruse.utilities.CodeMessages;
+
+public class ChatSessionTest {
+
+	private static final int SESSIONS = 50;
+
+	private static class RecordingListener implements ChatListener {
+		private final Set<String> onlineUsers = ConcurrentHashMap.newKeySet();
+		private final AtomicInteger greetings = new AtomicInteger();
+
+		@Override
+		public void onMessage(ReceivedMessage message) {
+			if (message.getText().endsWith("user0: hello")) {
+				greetings.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void onUserJoined(String name) {
+			onlineUsers.add(name);
+		}
+
+		@Override
+		public void onUserLeft(String name) {
+			onlineUsers.remove(name);
+		}
+	}
+
+	@Test
+	public void testSessionsShareOneIoLoop() throws Exception {
+		Server server = new Server(7241, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.startServer();
+		List<ChatSession> sessions = new ArrayList<>();
+		List<RecordingListener> listeners = new ArrayList<>();
+		try (ClientIoLoop loop = new ClientIoLoop()) {
+			loop.start();
+			for (int i = 0; i < SESSIONS; i++) {
+				RecordingListener listener = new RecordingListener();
+				listeners.add(listener);
+				sessions.add(loop.openSession("user" + i, "127.0.0.1", 7241, listener));
+				assertEquals(true, sessions.get(i).connect().get(5, TimeUnit.SECONDS));
+			}
+			awaitCondition(() -> listeners.get(0).onlineUsers.contains("user" + (SESSIONS - 1)));
+			assertEquals(true, listeners.get(0).onlineUsers.contains("user" + (SESSIONS - 1)));
+			assertEquals(SESSIONS, server.getNamesToConnections().size());
+
+			sessions.get(0).send("user0: hello");
+			awaitCondition(() -> {
+				processMessages(server);
+				return listeners.stream().allMatch(listener -> listener.greetings.get() > 0);
+			});
+			for (RecordingListener listener : listeners) {
+				assertEquals(1, listener.greetings.get());
+			}
+
+			sessions.get(SESSIONS - 1).send(CodeMessages.REMOVEUSER.getMessage() + "user" + (SESSIONS - 1));
+			awaitCondition(() -> {
+				processMessages(server);
+				return !listeners.get(0).onlineUsers.contains("user" + (SESSIONS - 1));
+			});
+			assertEquals(false, listeners.get(0).onlineUsers.contains("user" + (SESSIONS - 1)));
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	@Test
+	public void testDeclinedSessionCompletesWithFalse() throws Exception {
+		Server server = new Server(7242, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.startServer();
+		try (ClientIoLoop loop = new ClientIoLoop()) {
+			loop.start();
+			ChatSession first = loop.openSession("twin", "127.0.0.1", 7242, new ChatListener() {
+			});
+			assertEquals(true, first.connect().get(5, TimeUnit.SECONDS));
+			ChatSession second = loop.openSession("twin", "127.0.0.1", 7242, new ChatListener() {
+			});
+			assertEquals(false, second.connect().get(5, TimeUnit.SECONDS));
+			assertEquals(false, second.isConnected());
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	@Test
+	public void testFailingListenerClosesOnlyItsSession() throws Exception {
+		Server server = new Server(7243, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.startServer();
+		try (ClientIoLoop loop = new ClientIoLoop()) {
+			loop.start();
+			ChatSession faulty = loop.openSession("faulty", "127.0.0.1", 7243, new ChatListener() {
+				@Override
+				public void onMessage(ReceivedMessage message) {
+					throw new IllegalStateException("Listener failed");
+				}
+			});
+			assertEquals(true, faulty.connect().get(5, TimeUnit.SECONDS));
+			awaitCondition(() -> !faulty.isConnected());
+			assertEquals(false, faulty.isConnected());
+
+			RecordingListener listener = new RecordingListener();
+			ChatSession healthy = loop.openSession("user0", "127.0.0.1", 7243, listener);
+			assertEquals(true, healthy.connect().get(5, TimeUnit.SECONDS));
+			healthy.send("user0: hello");
+			awaitCondition(() -> {
+				processMessages(server);
+				return listener.greetings.get() > 0;
+			});
+			assertEquals(1, listener.greetings.get());
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	private void processMessages(Server server) {
+		server.collectNewMessages();
+		while (server.havesUnprocessedClientMessages()) {
+			server.processOldestMessage();
+			server.collectNewMessages();
+		}
+	}
+
+	private void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package edu.uni.ruse.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uni.ruse.server.Server;
+
+public class ConnectionManagerTest {
+
+	@Test
+	public void testBackoffDoublesUpToLimitWithJitter() {
+		ReconnectBackoff backoff = new ReconnectBackoff(100, 1000);
+		assertEquals(100, backoff.getMaxDelayMs(1));
+		assertEquals(200, backoff.getMaxDelayMs(2));
+		assertEquals(800, backoff.getMaxDelayMs(4));
+		assertEquals(1000, backoff.getMaxDelayMs(5));
+		assertEquals(1000, backoff.getMaxDelayMs(100));
+		for (int attempt = 1; attempt <= 10; attempt++) {
+			long delay = backoff.getDelayMs(attempt);
+			assertEquals(true, delay >= backoff.getMaxDelayMs(attempt) / 2);
+			assertEquals(true, delay <= backoff.getMaxDelayMs(attempt));
+		}
+	}
+
+	@Test
+	public void testReconnectRetriesUntilServerIsBack() throws Exception {
+		Client client = new Client("returning", "127.0.0.1", 7221);
+		ConnectionManager connectionManager = new ConnectionManager(client, new ReconnectBackoff(50, 200));
+		CompletableFuture<Boolean> reconnected = connectionManager.reconnect(20);
+		Thread.sleep(300);
+		Server server = new Server(7221, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.startServer();
+		try {
+			assertEquals(true, reconnected.get(5, TimeUnit.SECONDS));
+			assertEquals(ConnectionManager.State.CONNECTED, connectionManager.getState());
+			assertEquals(true, connectionManager.getAttempt() > 1);
+			assertEquals(true, Client.getConnectTime().getCount() > 0);
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	@Test
+	public void testReconnectGivesUpAfterTries() throws Exception {
+		Client client = new Client("lost", "127.0.0.1", 7222);
+		ConnectionManager connectionManager = new ConnectionManager(client, new ReconnectBackoff(10, 20));
+		assertEquals(false, connectionManager.reconnect(3).get(5, TimeUnit.SECONDS));
+		assertEquals(ConnectionManager.State.FAILED, connectionManager.getState());
+		assertEquals(3, connectionManager.getAttempt());
+	}
+}
@@ -0,0 +1,75 @@
+package edu.uni.ruse.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testStoredMessagesAreReadAfterReopening() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("room.history");
+		try (HistoryStore historyStore = new HistoryStore(file, 10)) {
+			historyStore.appendHistory("first\nsecond", 2, Color.GRAY);
+			historyStore.append(new ReceivedMessage("third", Color.BLUE, 3));
+			historyStore.append(new ReceivedMessage("third again", Color.BLUE, 3));
+		}
+		try (HistoryStore historyStore = new HistoryStore(file, 10)) {
+			List<ReceivedMessage> messages = historyStore.getMessages();
+			assertEquals(3, messages.size());
+			assertEquals("first", messages.get(0).getText());
+			assertEquals("third", messages.get(2).getText());
+			assertEquals(Color.BLUE, messages.get(2).getColor());
+			assertEquals(1, historyStore.getFirstSequence());
+			assertEquals(3, historyStore.getLastSequence());
+		}
+	}
+
+	@Test
+	public void testOnlyNewestMessagesAreKept() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("room.history");
+		try (HistoryStore historyStore = new HistoryStore(file, 10)) {
+			for (int i = 1; i <= 45; i++) {
+				historyStore.append(new ReceivedMessage("message " + i, Color.BLACK, i));
+			}
+			assertEquals(10, historyStore.getMessages().size());
+			assertEquals(36, historyStore.getFirstSequence());
+		}
+		assertEquals(true, file.toFile().length() < 30 * ("message 45".length() + 14));
+		try (HistoryStore historyStore = new HistoryStore(file, 10)) {
+			assertEquals(36, historyStore.getFirstSequence());
+			assertEquals(45, historyStore.getLastSequence());
+		}
+	}
+
+	@Test
+	public void testIncompleteMessageIsRemoved() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("room.history");
+		try (HistoryStore historyStore = new HistoryStore(file, 10)) {
+			historyStore.append(new ReceivedMessage("complete", Color.BLACK, 1));
+			historyStore.append(new ReceivedMessage("cut off", Color.BLACK, 2));
+		}
+		try (RandomAccessFile stored = new RandomAccessFile(file.toFile(), "rw")) {
+			stored.setLength(stored.length() - 3);
+		}
+		try (HistoryStore historyStore = new HistoryStore(file, 10)) {
+			assertEquals(1, historyStore.getMessages().size());
+			assertEquals(1, historyStore.getLastSequence());
+			historyStore.append(new ReceivedMessage("next", Color.BLACK, 2));
+		}
+		try (HistoryStore historyStore = new HistoryStore(file, 10)) {
+			assertEquals("next", historyStore.getMessages().get(1).getText());
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package edu.uni.ruse.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uni.ruse.utilities.CodeMessages;
+
+public class MessageSenderTest {
+
+	private static final int MESSAGES = 200;
+
+	@Test
+	public void testQueuedMessagesAreSentInOrderOnWriterThread() throws Exception {
+		List<String> received = new ArrayList<>();
+		try (ServerSocket serverSocket = new ServerSocket(7231, 1, InetAddress.getByName("127.0.0.1"))) {
+			Thread server = new Thread(() -> {
+				try (Socket connection = serverSocket.accept()) {
+					DataInputStream in = new DataInputStream(connection.getInputStream());
+					DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+					in.readUTF();
+					out.writeUTF(CodeMessages.CONN_ACCEPTED.getMessage());
+					for (int i = 0; i < MESSAGES; i++) {
+						received.add(in.readUTF());
+					}
+				} catch (Exception e) {
+					System.out.println(e);
+				}
+			});
+			server.start();
+			Client client = new Client("sender", "127.0.0.1", 7231);
+			assertEquals(true, client.connectToServer());
+			AtomicInteger mostUnsent = new AtomicInteger();
+			client.getSender().setPendingListener(unsent -> mostUnsent.accumulateAndGet(unsent, Math::max));
+			for (int i = 0; i < MESSAGES; i++) {
+				assertEquals(true, client.queueMessage("sender: message " + i));
+			}
+			assertEquals(true, client.getSender().awaitSent(5000));
+			assertEquals(true, mostUnsent.get() > 0);
+			assertEquals(0, client.getSender().getUnsentMessages());
+			server.join(5000);
+		}
+		assertEquals(MESSAGES, received.size());
+		assertEquals("sender: message 0", received.get(0));
+		assertEquals("sender: message " + (MESSAGES - 1), received.get(MESSAGES - 1));
+	}
+
+	@Test
+	public void testFullQueueRefusesMessages() {
+		MessageSender sender = new MessageSender(new Client("sender"), 2);
+		assertEquals(true, sender.offer("first"));
+		assertEquals(true, sender.offer("second"));
+		assertEquals(false, sender.offer("third"));
+		assertEquals(2, sender.getUnsentMessages());
+	}
+
+	@Test
+	public void testFailedBatchIsSentAgainAfterReconnecting() throws Exception {
+		List<String> written = new ArrayList<>();
+		AtomicInteger failures = new AtomicInteger(1);
+		Client client = new Client("sender") {
+			@Override
+			void writeMessages(List<String> messages) throws IOException {
+				if (failures.getAndDecrement() > 0) {
+					throw new IOException("Connection reset");
+				}
+				written.addAll(messages);
+			}
+		};
+		MessageSender sender = new MessageSender(client, 10);
+		sender.start();
+		assertEquals(true, sender.offer("first"));
+		assertEquals(false, sender.awaitSent(200));
+		assertEquals(1, sender.getUnsentMessages());
+		sender.resume();
+		assertEquals(true, sender.awaitSent(5000));
+		assertEquals("first", written.get(0));
+		sender.stop();
+	}
+}
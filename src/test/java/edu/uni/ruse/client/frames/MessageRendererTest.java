@@ -0,0 +1,139 @@
+package edu.uni.ruse.client.frames;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.JScrollPane;
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+import org.junit.Test;
+
+import edu.uni.ruse.client.ReceivedMessage;
+
+public class MessageRendererTest {
+
+	private static final int MESSAGES_PER_SECOND = 1000;
+
+	@Test
+	public void testBurstIsRenderedInBatches() throws Exception {
+		JTextPane messagesArea = new JTextPane();
+		JScrollPane scrollPane = new JScrollPane(messagesArea);
+		SimpleAttributeSet style = new SimpleAttributeSet();
+		AtomicInteger inserts = new AtomicInteger();
+		messagesArea.getStyledDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				inserts.incrementAndGet();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+		MessageRenderer[] renderer = new MessageRenderer[1];
+		renderer[0] = new MessageRenderer(messagesArea.getStyledDocument(), scrollPane.getVerticalScrollBar(),
+				message -> renderer[0].append(message.getText() + System.lineSeparator(), style), color -> style, null);
+		SwingUtilities.invokeAndWait(renderer[0]::start);
+
+		long start = System.nanoTime();
+		int sent = 0;
+		while (sent < MESSAGES_PER_SECOND) {
+			long due = Math.min(MESSAGES_PER_SECOND, (System.nanoTime() - start) * MESSAGES_PER_SECOND / 1_000_000_000L);
+			for (; sent < due; sent++) {
+				renderer[0].enqueue(new ReceivedMessage("user" + (sent % 10) + ": message " + sent, Color.BLACK));
+			}
+			Thread.sleep(1);
+		}
+		awaitCondition(() -> renderer[0].getRenderedMessages() == MESSAGES_PER_SECOND);
+		SwingUtilities.invokeAndWait(renderer[0]::stop);
+
+		assertEquals(true, inserts.get() < MESSAGES_PER_SECOND / 4);
+		assertEquals(MESSAGES_PER_SECOND, messagesArea.getDocument().getDefaultRootElement().getElementCount() - 1);
+	}
+
+	@Test
+	public void testViewKeepsWindowAndRestoresOlderLinesFromCache() throws Exception {
+		JTextPane messagesArea = new JTextPane();
+		JScrollPane scrollPane = new JScrollPane(messagesArea);
+		StyledDocument document = messagesArea.getStyledDocument();
+		File cacheFile = File.createTempFile("chatapp-messages", ".cache");
+		cacheFile.deleteOnExit();
+		try (MessageCache cache = new MessageCache(cacheFile)) {
+			MessageRenderer[] renderer = new MessageRenderer[1];
+			renderer[0] = new MessageRenderer(document, scrollPane.getVerticalScrollBar(),
+					message -> renderer[0].append(message.getText() + System.lineSeparator(), styleOf(message.getColor())),
+					MessageRendererTest::styleOf, cache);
+			renderer[0].setWindowLines(100);
+			SwingUtilities.invokeAndWait(() -> {
+				for (int i = 0; i < 1000; i++) {
+					renderer[0].enqueue(new ReceivedMessage("message " + i, i % 2 == 0 ? Color.BLUE : Color.RED));
+					if (i % 10 == 9) {
+						renderer[0].renderFrame();
+					}
+				}
+			});
+			assertEquals(true, lineCount(document) <= 125);
+			assertEquals("message 999", lineText(document, lineCount(document) - 1));
+
+			SwingUtilities.invokeAndWait(() -> renderer[0].prepend("past 1" + System.lineSeparator() + "past 2"
+					+ System.lineSeparator(), Color.GRAY));
+			SwingUtilities.invokeAndWait(() -> {
+				while (renderer[0].restoreOlderLines() > 0) {
+					// restore all cached lines
+				}
+			});
+			assertEquals(1002, lineCount(document));
+			assertEquals("past 1", lineText(document, 0));
+			assertEquals("message 0", lineText(document, 2));
+			assertEquals(Color.RED, StyleConstants.getForeground(
+					document.getCharacterElement(document.getDefaultRootElement().getElement(3).getStartOffset())
+							.getAttributes()));
+
+			long cachedLength = cacheFile.length();
+			SwingUtilities.invokeAndWait(() -> {
+				renderer[0].enqueue(new ReceivedMessage("message 1000", Color.BLUE));
+				renderer[0].renderFrame();
+			});
+			assertEquals(100, lineCount(document));
+			// the restored lines are not written again, only the one line that was displayed and not cached yet
+			assertEquals(cachedLength + 4 + 2 + "message 900".length(), cacheFile.length());
+			assertEquals("message 901", lineText(document, 0));
+		}
+	}
+
+	private static SimpleAttributeSet styleOf(Color color) {
+		SimpleAttributeSet style = new SimpleAttributeSet();
+		StyleConstants.setForeground(style, color);
+		return style;
+	}
+
+	private static int lineCount(StyledDocument document) {
+		return document.getDefaultRootElement().getElementCount() - 1;
+	}
+
+	private static String lineText(StyledDocument document, int index) throws Exception {
+		Element line = document.getDefaultRootElement().getElement(index);
+		return document.getText(line.getStartOffset(), line.getEndOffset() - line.getStartOffset()).trim();
+	}
+
+	private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(50);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package edu.uni.ruse.client.frames;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Test;
+
+public class OnlineUsersModelTest {
+
+	@Test
+	public void testUsersAreSortedAfterOwnUserWithIncrementalNotifications() throws Exception {
+		OnlineUsersModel model = new OnlineUsersModel("me");
+		List<ListDataEvent> events = recordEvents(model);
+		SwingUtilities.invokeAndWait(() -> {
+			model.queueAdd("charlie");
+			model.queueAdd("Alice");
+			model.queueAdd("bob");
+			model.queueAdd("me");
+			model.applyPendingChanges();
+		});
+		assertEquals(4, model.getSize());
+		assertEquals("me", model.getElementAt(0));
+		assertEquals("Alice", model.getElementAt(1));
+		assertEquals("bob", model.getElementAt(2));
+		assertEquals("charlie", model.getElementAt(3));
+		assertEquals(3, events.size());
+		assertEquals(ListDataEvent.INTERVAL_ADDED, events.get(2).getType());
+
+		events.clear();
+		SwingUtilities.invokeAndWait(() -> {
+			model.queueRemove("bob");
+			model.queueAdd("dave");
+			model.queueRemove("dave");
+			model.applyPendingChanges();
+		});
+		assertEquals(3, model.getSize());
+		assertEquals("charlie", model.getElementAt(2));
+		assertEquals(1, events.size());
+		assertEquals(ListDataEvent.INTERVAL_REMOVED, events.get(0).getType());
+		assertEquals(2, events.get(0).getIndex0());
+	}
+
+	@Test
+	public void testFilterShowsUsersByPrefix() throws Exception {
+		OnlineUsersModel model = new OnlineUsersModel("me");
+		SwingUtilities.invokeAndWait(() -> {
+			for (String name : new String[] { "anna", "Andrew", "bob", "Benny", "ann" }) {
+				model.queueAdd(name);
+			}
+			model.applyPendingChanges();
+			model.setFilter("AN");
+		});
+		assertEquals(3, model.getSize());
+		assertEquals("Andrew", model.getElementAt(0));
+		assertEquals("ann", model.getElementAt(1));
+		assertEquals("anna", model.getElementAt(2));
+
+		SwingUtilities.invokeAndWait(() -> {
+			model.queueAdd("annie");
+			model.queueAdd("aaron");
+			model.queueRemove("bob");
+			model.applyPendingChanges();
+		});
+		assertEquals(4, model.getSize());
+		assertEquals("annie", model.getElementAt(3));
+		SwingUtilities.invokeAndWait(() -> model.setFilter(""));
+		assertEquals(7, model.getSize());
+		assertEquals("aaron", model.getElementAt(1));
+	}
+
+	@Test
+	public void testJoinStormIsAppliedAsOneChange() throws Exception {
+		OnlineUsersModel model = new OnlineUsersModel("me");
+		List<ListDataEvent> events = recordEvents(model);
+		SwingUtilities.invokeAndWait(() -> {
+			for (int i = 0; i < 5000; i++) {
+				model.queueAdd("user" + i);
+			}
+		});
+		SwingUtilities.invokeAndWait(() -> {
+			// the changes are applied on the next dispatch cycle
+		});
+		assertEquals(5001, model.getSize());
+		assertEquals(true, events.size() <= 2);
+		assertEquals(true, model.contains("user4999"));
+	}
+
+	private static List<ListDataEvent> recordEvents(OnlineUsersModel model) {
+		List<ListDataEvent> events = new ArrayList<>();
+		model.addListDataListener(new ListDataListener() {
+			@Override
+			public void intervalAdded(ListDataEvent e) {
+				events.add(e);
+			}
+
+			@Override
+			public void intervalRemoved(ListDataEvent e) {
+				events.add(e);
+			}
+
+			@Override
+			public void contentsChanged(ListDataEvent e) {
+				events.add(e);
+			}
+		});
+		return events;
+	}
+}
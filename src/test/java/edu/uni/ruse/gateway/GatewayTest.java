@@ -0,0 +1,144 @@
+package edu.uni.ruse.gateway;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import edu.uni.ruse.client.Client;
+import edu.uni.ruse.server.Server;
+import edu.uni.ruse.utilities.CodeMessages;
+import org.junit.Test;
+
+public class GatewayTest {
+
+	@Test
+	public void testClientsAreSpreadAcrossServers() throws InterruptedException, IOException {
+		Server first = startServer();
+		Server second = startServer();
+		Gateway gateway = new Gateway("127.0.0.1", 7150);
+		gateway.addBackend("127.0.0.1", first.getPort());
+		gateway.addBackend("127.0.0.1", second.getPort());
+		gateway.start();
+		List<Client> clients = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			clients.add(new Client("user" + i, "127.0.0.1", gateway.getPort()));
+			assertEquals(true, clients.get(i).connectToServer());
+		}
+		awaitCondition(() -> first.getNamesToConnections().size() + second.getNamesToConnections().size() == 4);
+		assertEquals(2, first.getNamesToConnections().size());
+		assertEquals(2, second.getNamesToConnections().size());
+		assertEquals(4, gateway.getAcceptedConnections());
+		gateway.stop();
+		first.stopServer();
+		second.stopServer();
+	}
+
+	@Test
+	public void testDrainedServerGetsNoNewClients() throws InterruptedException, IOException {
+		Server first = startServer();
+		Server second = startServer();
+		Gateway gateway = new Gateway("127.0.0.1", 7151);
+		gateway.addBackend("127.0.0.1", first.getPort());
+		gateway.addBackend("127.0.0.1", second.getPort());
+		gateway.start();
+		Backend drained = gateway.drain("127.0.0.1", first.getPort());
+		List<Client> clients = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			clients.add(new Client("user" + i, "127.0.0.1", gateway.getPort()));
+			assertEquals(true, clients.get(i).connectToServer());
+		}
+		awaitCondition(() -> first.getNamesToConnections().size() + second.getNamesToConnections().size() == 3);
+		assertEquals(0, first.getNamesToConnections().size());
+		assertEquals(3, second.getNamesToConnections().size());
+		assertEquals(true, drained.isDrained());
+		gateway.undrain("127.0.0.1", first.getPort());
+		clients.add(new Client("user3", "127.0.0.1", gateway.getPort()));
+		assertEquals(true, clients.get(3).connectToServer());
+		awaitCondition(() -> first.getNamesToConnections().size() == 1);
+		assertEquals(1, first.getNamesToConnections().size());
+		gateway.stop();
+		first.stopServer();
+		second.stopServer();
+	}
+
+	@Test
+	public void testMessagesArePassedBothWays() throws IOException {
+		ServerSocket echoServer = new ServerSocket(7152);
+		Thread echoThread = new Thread(() -> echo(echoServer));
+		echoThread.setDaemon(true);
+		echoThread.start();
+		Gateway gateway = new Gateway("127.0.0.1", 7153);
+		gateway.addBackend("127.0.0.1", echoServer.getLocalPort());
+		gateway.start();
+		try (Socket socket = new Socket("127.0.0.1", gateway.getPort())) {
+			DataOutputStream dout = new DataOutputStream(socket.getOutputStream());
+			DataInputStream din = new DataInputStream(socket.getInputStream());
+			for (int i = 0; i < 100; i++) {
+				dout.writeUTF("message " + i);
+				assertEquals("message " + i, din.readUTF());
+			}
+		}
+		gateway.stop();
+		echoServer.close();
+	}
+
+	private Server startServer() {
+		Server server = new Server();
+		server.setIpAddress("127.0.0.1");
+		server.startServer();
+		Thread acceptThread = new Thread(() -> {
+			while (server.isRunning()) {
+				server.getNewConnection();
+			}
+		});
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		return server;
+	}
+
+	private void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+	}
+
+	/**
+	 * Echoes the messages of every connection, and answers status requests like a chat server without users.
+	 */
+	private void echo(ServerSocket echoServer) {
+		while (!echoServer.isClosed()) {
+			try {
+				Socket socket = echoServer.accept();
+				socket.setTcpNoDelay(true);
+				Thread connectionThread = new Thread(() -> {
+					try (Socket connection = socket) {
+						DataInputStream din = new DataInputStream(connection.getInputStream());
+						DataOutputStream dout = new DataOutputStream(connection.getOutputStream());
+						while (true) {
+							String message = din.readUTF();
+							if (message.equals(CodeMessages.STATUS_REQUEST.getMessage())) {
+								dout.writeUTF(CodeMessages.STATUS.getMessage() + "0:0");
+								return;
+							}
+							dout.writeUTF(message);
+						}
+					} catch (IOException e) {
+						// connection ended
+					}
+				});
+				connectionThread.setDaemon(true);
+				connectionThread.start();
+			} catch (IOException e) {
+				// echo server closed
+			}
+		}
+	}
+}
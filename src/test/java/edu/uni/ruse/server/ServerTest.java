@@ -3,17 +3,35 @@ package edu.uni.ruse.server;
 
 import static org.junit.Assert.assertEquals;
 
+import java.awt.Color;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
 
 import edu.uni.ruse.client.Client;
+import edu.uni.ruse.client.HistoryStore;
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.server.metrics.MetricsRegistry;
 import edu.uni.ruse.utilities.CodeMessages;
 import edu.uni.ruse.utilities.InterfaceLang;
 import edu.uni.ruse.utilities.MessagesManager;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 
 public class ServerTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testServerStart() {
 		Server server = new Server();
@@ -249,6 +267,8 @@ public class ServerTest {
 		new Thread(connectionListener).start();
 		Client client = new Client("client", server.getIpAddress(), server.getPort());
 		client.connectToServer();
+		// let the first join be announced before the receiver connects, so the receiver gets it only once
+		Thread.sleep(250);
 		Client reciveingClient = new Client("receiver", server.getIpAddress(), server.getPort());
 		reciveingClient.connectToServer();
 		Thread.sleep(250);
@@ -268,6 +288,55 @@ public class ServerTest {
 		assertEquals(true, reciveingClient.getReceivedMessage().endsWith(message));
 	}
 
+	@Test
+	public void testMetricsCountMessagesAndRemovedUsers() throws InterruptedException {
+		Server server = new Server(7251, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.setHistoryDirectory(folder.getRoot().toPath());
+		server.startServer();
+		Client client = new Client("client", server.getIpAddress(), server.getPort());
+		client.connectToServer();
+		awaitCondition(() -> server.getNamesToConnections().size() == 1);
+		client.sendMessage(client.getName() + ": Hello");
+		client.sendMessage(CodeMessages.REMOVEUSER.getMessage() + client.getName());
+		awaitCondition(() -> {
+			server.collectNewMessages();
+			while (server.havesUnprocessedClientMessages()) {
+				server.processOldestMessage();
+			}
+			return server.getNamesToConnections().isEmpty();
+		});
+		MetricsRegistry metrics = server.getMetrics();
+		assertEquals(2, metrics.counter("messages.inbound").getCount());
+		assertEquals(true, metrics.counter("bytes.inbound").getCount() > 0);
+		assertEquals(true, metrics.counter("messages.outbound").getCount() > 0);
+		assertEquals(1, metrics.counter("users.removed").getCount());
+		assertEquals(1, metrics.getHistograms().get("connections.handshakeTime").getCount());
+		assertEquals(1.0, metrics.getGauges().get("connections.accepted").getValue(), 0);
+		awaitCondition(() -> metrics.getHistograms().get("history.batchSize").getCount() > 0);
+		assertEquals(true, metrics.getHistograms().get("history.batchSize").getCount() > 0);
+		assertEquals(true, metrics.getHistograms().containsKey("history.durableAckLatency"));
+		assertEquals(0.0, metrics.getGauges().get("history.droppedRecords").getValue(), 0);
+		assertEquals(true, metrics.getGauges().containsKey("history.pendingRecords"));
+		server.stopServer();
+	}
+
+	@Test
+	public void testEndpointMetricsArePublishedAsMBeans() throws InterruptedException, JMException {
+		Server server = new Server(7252, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.startServer();
+		Client client = new Client("client", server.getIpAddress(), server.getPort());
+		client.connectToServer();
+		awaitCondition(() -> server.getNamesToConnections().size() == 1);
+		String histogramName = server.getEndpoints().get(0).getAcceptQueueWait().getName();
+		assertEquals(true, histogramName.contains("127.0.0.1:7252"));
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		assertEquals(1L, mBeanServer.getAttribute(MetricsRegistry.objectName("127.0.0.1:7252", histogramName), "Count"));
+		server.stopServer();
+		assertEquals(false, mBeanServer.isRegistered(MetricsRegistry.objectName("127.0.0.1:7252", histogramName)));
+	}
+
 	@Test
 	public void testProcessMessageChangeUserName() throws InterruptedException {
 		Server server = new Server();
@@ -312,5 +381,448 @@ public class ServerTest {
 		assertEquals(2, server.getNamesToConnections().size());
 	}
 
+	@Test
+	public void testScrollbackSentAfterConnectionAccepted() throws InterruptedException, IOException {
+		Server server = new Server();
+		server.startServer();
+		for (int i = 0; i < 10_000; i++) {
+			server.getChatHistory().record("client", "general", "Message number " + i);
+		}
+		Runnable connectionListener = () -> {
+			server.getNewConnection();
+		};
+		new Thread(connectionListener).start();
+		Client client = new Client("receiver", server.getIpAddress(), server.getPort());
+		client.connectToServer();
+		client.receiveMessage();
+		assertEquals(true, client.getReceivedMessage()
+				.startsWith(MessagesManager.sequenceTag(10_000) + CodeMessages.SCROLLBACK.getMessage()));
+		assertEquals(true, client.getReceivedMessage().endsWith("Message number 9999"));
+		server.stopServer();
+	}
+
+	@Test
+	public void testClientWithStoredHistoryReceivesOnlyNewerMessages() throws InterruptedException, IOException {
+		Server server = new Server();
+		server.startServer();
+		for (int i = 1; i <= 10; i++) {
+			server.getChatHistory().record("client", "general", "Message number " + i);
+		}
+		Runnable connectionListener = () -> {
+			server.getNewConnection();
+			server.getNewConnection();
+		};
+		new Thread(connectionListener).start();
+		HistoryStore historyStore = HistoryStore.open(folder.getRoot().toPath(), server.getIpAddress(),
+				server.getPort(), HistoryStore.DEFAULT_ROOM);
+		historyStore.appendHistory("one\ntwo\nthree\nfour\nfive\nsix\nseven", 7, Color.GRAY);
+		Client client = new Client("returning", server.getIpAddress(), server.getPort());
+		client.setHistoryStore(historyStore);
+		assertEquals(true, client.connectToServer());
+		client.receiveMessage();
+		String tail = client.getReceivedMessage();
+		assertEquals(true, tail.startsWith(MessagesManager.sequenceTag(10) + CodeMessages.HISTORY_TAIL.getMessage()));
+		assertEquals(3, tail.split("\n").length);
+		assertEquals(true, tail.endsWith("Message number 10"));
+
+		historyStore.clear();
+		historyStore.appendHistory("from another server", 50, Color.GRAY);
+		Client otherClient = new Client("stale", server.getIpAddress(), server.getPort());
+		otherClient.setHistoryStore(historyStore);
+		assertEquals(true, otherClient.connectToServer());
+		// the join of the first client may be announced to the second one before its scrollback
+		do {
+			otherClient.receiveMessage();
+		} while (otherClient.getReceivedMessage().indexOf(CodeMessages.SCROLLBACK.getMessage()) == -1);
+		assertEquals(true, otherClient.getReceivedMessage()
+				.startsWith(MessagesManager.sequenceTag(10) + CodeMessages.SCROLLBACK.getMessage()));
+		historyStore.close();
+		server.stopServer();
+	}
+
+	@Test
+	public void testHistoryTailLargerThanFrameIsSentInFrames() throws InterruptedException, IOException {
+		Server server = new Server();
+		server.setScrollbackSize(200);
+		server.startServer();
+		StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			padding.append('x');
+		}
+		for (int i = 1; i <= 200; i++) {
+			server.getChatHistory().record("client", "general", padding + " message number " + i);
+		}
+		new Thread(server::getNewConnection).start();
+		HistoryStore historyStore = HistoryStore.open(folder.getRoot().toPath(), server.getIpAddress(),
+				server.getPort(), HistoryStore.DEFAULT_ROOM);
+		historyStore.appendHistory("one\ntwo\nthree\nfour\nfive", 5, Color.GRAY);
+		Client client = new Client("returning", server.getIpAddress(), server.getPort());
+		client.setHistoryStore(historyStore);
+		client.connectToServer();
+		client.getConnection().setSoTimeout(5000);
+		int frames = 0;
+		int lines = 0;
+		do {
+			client.receiveMessage();
+			assertEquals(true, client.getReceivedMessage().contains(CodeMessages.HISTORY_TAIL.getMessage()));
+			frames++;
+			lines += client.getReceivedMessage().split("\n").length;
+		} while (!client.getReceivedMessage().endsWith("message number 200"));
+		assertEquals(true, frames > 1);
+		assertEquals(195, lines);
+		historyStore.close();
+		server.stopServer();
+	}
+
+	@Test
+	public void testHistoryCommandSendsOlderPage() throws InterruptedException, IOException {
+		Server server = new Server();
+		server.setScrollbackSize(10);
+		server.startServer();
+		for (int i = 0; i < 10; i++) {
+			server.getChatHistory().record("client", "general", "Message number " + i);
+		}
+		Runnable connectionListener = () -> {
+			server.getNewConnection();
+		};
+		new Thread(connectionListener).start();
+		Client client = new Client("receiver", server.getIpAddress(), server.getPort());
+		client.connectToServer();
+		client.receiveMessage();
+		Thread.sleep(250);
+		client.sendMessage(client.getName() + ": " + CodeMessages.HISTORY.getMessage());
+		server.collectNewMessages();
+		server.processOldestMessage();
+		do {
+			client.receiveMessage();
+		} while (client.getReceivedMessage().startsWith(CodeMessages.ADDUSER.getMessage())
+				|| client.getReceivedMessage().contains("joined the server")
+				|| client.getReceivedMessage().contains("Wellcome"));
+		assertEquals(true, client.getReceivedMessage().endsWith("No older messages."));
+		server.stopServer();
+	}
+
+	@Test
+	public void testMessageLargerThanFrameIsSentCut() throws InterruptedException, IOException {
+		Server server = new Server();
+		server.setScrollbackSize(10);
+		server.startServer();
+		server.getChatHistory().record("client", "general", "Short message");
+		StringBuilder payload = new StringBuilder();
+		for (int i = 0; i < 60_000; i++) {
+			payload.append('x');
+		}
+		server.getChatHistory().record("client", "general", payload.toString());
+		new Thread(server::getNewConnection).start();
+		Client client = new Client("receiver", server.getIpAddress(), server.getPort());
+		client.connectToServer();
+		client.getConnection().setSoTimeout(5000);
+		client.receiveMessage();
+		assertEquals(true, client.getReceivedMessage()
+				.startsWith(MessagesManager.sequenceTag(2) + CodeMessages.SCROLLBACK.getMessage()));
+		assertEquals(false, client.getReceivedMessage().contains("Short message"));
+		Thread.sleep(250);
+		client.sendMessage(client.getName() + ": " + CodeMessages.HISTORY.getMessage());
+		server.collectNewMessages();
+		server.processOldestMessage();
+		do {
+			client.receiveMessage();
+		} while (!client.getReceivedMessage().contains(CodeMessages.HISTORY_PAGE.getMessage()));
+		assertEquals(true, client.getReceivedMessage().endsWith("Short message"));
+		server.stopServer();
+	}
+
+	@Test
+	public void testSearchWithPageNumberOutOfRange() throws InterruptedException, IOException {
+		Server server = new Server();
+		server.startServer();
+		for (int i = 0; i < 25; i++) {
+			server.getChatHistory().record("client", "general", "foo " + i);
+		}
+		new Thread(server::getNewConnection).start();
+		Client client = new Client("searcher", server.getIpAddress(), server.getPort());
+		client.connectToServer();
+		client.getConnection().setSoTimeout(5000);
+		Thread.sleep(250);
+		client.sendMessage(client.getName() + ": " + CodeMessages.SEARCH.getMessage() + " foo #99999999999");
+		client.sendMessage(client.getName() + ": " + CodeMessages.SEARCH.getMessage() + " foo #2147483647");
+		Thread.sleep(250);
+		for (int i = 0; i < 2; i++) {
+			server.collectNewMessages();
+			server.processOldestMessage();
+		}
+		for (int i = 0; i < 2; i++) {
+			do {
+				client.receiveMessage();
+			} while (!client.getReceivedMessage().contains("Search results for 'foo'"));
+			assertEquals(true, client.getReceivedMessage().contains("25 matches, page 4/3"));
+		}
+		server.stopServer();
+	}
+
+	@Test
+	public void testRestartReadmitsReturningUserFromSnapshot() throws InterruptedException, IOException {
+		Path snapshotFile = folder.getRoot().toPath().resolve("server.snapshot");
+		Server server = new Server();
+		server.setSnapshotFile(snapshotFile);
+		server.startServer();
+		new Thread(server::getNewConnection).start();
+		Client client = new Client("returning", server.getIpAddress(), server.getPort());
+		client.connectToServer();
+		Thread.sleep(250);
+		client.sendMessage(CodeMessages.CHANGE_LANG.getMessage() + client.getName());
+		server.collectNewMessages();
+		server.processOldestMessage();
+		server.getChatHistory().record("returning", "general", "Before restart");
+		server.stopServer();
+
+		Server restartedServer = new Server(server.getPort());
+		restartedServer.setSnapshotFile(snapshotFile);
+		restartedServer.startServer();
+		assertEquals(true, restartedServer.getReturningUsers().contains("returning"));
+		assertEquals(true, restartedServer.getRestartToReadyMs() >= 0);
+		assertEquals(1, restartedServer.getChatHistory().getLastSequence());
+		restartedServer.getChatHistory().record("other", "general", "While away");
+		new Thread(restartedServer::getNewConnection).start();
+		HistoryStore historyStore = HistoryStore.open(folder.getRoot().toPath(), restartedServer.getIpAddress(),
+				restartedServer.getPort(), HistoryStore.DEFAULT_ROOM);
+		historyStore.appendHistory("Before restart", 1, Color.GRAY);
+		Client returningClient = new Client("returning", restartedServer.getIpAddress(), restartedServer.getPort());
+		returningClient.setHistoryStore(historyStore);
+		assertEquals(true, returningClient.connectToServer());
+		returningClient.getConnection().setSoTimeout(5000);
+		returningClient.receiveMessage();
+		assertEquals(true, returningClient.getReceivedMessage()
+				.startsWith(MessagesManager.sequenceTag(2) + CodeMessages.HISTORY_TAIL.getMessage()));
+		assertEquals(true, returningClient.getReceivedMessage().endsWith("While away"));
+		historyStore.close();
+		assertEquals(InterfaceLang.BG, restartedServer.getLangPreferences()
+				.get(restartedServer.getNamesToConnections().get("returning")));
+		assertEquals(0, restartedServer.getReturningUsers().size());
+		restartedServer.stopServer();
+	}
+
+	private void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+	}
 
+	@Test
+	public void testClusterRelaysMessagesBetweenNodes() throws InterruptedException, IOException {
+		Server first = new Server();
+		first.setIpAddress("127.0.0.1");
+		first.setClusterPort(7101);
+		first.addClusterPeer("127.0.0.1", 7102);
+		first.startServer();
+		Server second = new Server();
+		second.setIpAddress("127.0.0.1");
+		second.setClusterPort(7102);
+		second.addClusterPeer("127.0.0.1", 7101);
+		second.startServer();
+		awaitCondition(() -> first.getClusterNode().getLinkedNodeCount() == 1
+				&& second.getClusterNode().getLinkedNodeCount() == 1);
+		assertEquals(1, first.getClusterNode().getLinkedNodeCount());
+
+		new Thread(first::getNewConnection).start();
+		Client alice = new Client("alice", first.getIpAddress(), first.getPort());
+		alice.connectToServer();
+		alice.getConnection().setSoTimeout(5000);
+		new Thread(second::getNewConnection).start();
+		Client bob = new Client("bob", second.getIpAddress(), second.getPort());
+		bob.connectToServer();
+		bob.getConnection().setSoTimeout(5000);
+		awaitCondition(() -> second.getClusterNode().isRemoteUser("alice")
+				&& first.getClusterNode().isRemoteUser("bob"));
+		assertEquals(true, second.getOnlineUserNames().contains("alice"));
+		assertEquals(true, second.getOnlineUserNames().contains("bob"));
+		assertEquals(false, second.userCanJoin("ALICE"));
+		assertEquals(true, first.userCanJoin("carol"));
+		assertEquals(true, second.userCanJoin("Carol"));
+		new Thread(first::getNewConnection).start();
+		Client carol = new Client("carol", first.getIpAddress(), first.getPort());
+		assertEquals(true, carol.connectToServer());
+		awaitCondition(() -> second.getClusterNode().isRemoteUser("carol"));
+		assertEquals(false, second.userCanJoin("Carol"));
+		assertEquals(true, second.getClusterNode().getUserDirectory().getAverageHops() <= 1);
+
+		long sentFrames = first.getClusterNode().getSentFrames();
+		alice.sendMessage("alice: hello cluster");
+		Thread.sleep(250);
+		first.collectNewMessages();
+		first.processOldestMessage();
+		do {
+			bob.receiveMessage();
+		} while (!bob.getReceivedMessage().endsWith("alice: hello cluster"));
+		assertEquals(1, first.getClusterNode().getSentFrames() - sentFrames);
+
+		bob.sendMessage("bob: " + CodeMessages.WHISPER.getMessage() + " alice psst");
+		Thread.sleep(250);
+		second.collectNewMessages();
+		second.processOldestMessage();
+		do {
+			alice.receiveMessage();
+		} while (!alice.getReceivedMessage().contains("Whisper from (bob)"));
+		assertEquals(true, alice.getReceivedMessage().endsWith("psst"));
+
+		bob.sendMessage("bob: " + CodeMessages.CHANGE_USERNAME.getMessage() + " robert");
+		Thread.sleep(250);
+		second.collectNewMessages();
+		second.processOldestMessage();
+		awaitCondition(() -> second.getNamesToConnections().containsKey("robert")
+				&& first.getClusterNode().isRemoteUser("robert"));
+		assertEquals(false, second.getNamesToConnections().containsKey("bob"));
+		assertEquals(true, first.getClusterNode().isRemoteUser("robert"));
+		assertEquals(false, first.userCanJoin("Robert"));
+		first.stopServer();
+		awaitCondition(() -> !second.getClusterNode().isRemoteUser("alice"));
+		assertEquals(false, second.getClusterNode().isRemoteUser("alice"));
+		second.stopServer();
+	}
+
+	@Test
+	public void testClusterRecordsLocalAndRelayedMessagesInOrder() throws InterruptedException, IOException {
+		int messagesPerNode = 150;
+		Server first = new Server();
+		first.setIpAddress("127.0.0.1");
+		first.setScrollbackSize(2 * messagesPerNode);
+		first.setClusterPort(7103);
+		first.addClusterPeer("127.0.0.1", 7104);
+		first.startServer();
+		Server second = new Server();
+		second.setIpAddress("127.0.0.1");
+		second.setClusterPort(7104);
+		second.addClusterPeer("127.0.0.1", 7103);
+		second.startServer();
+		awaitCondition(() -> first.getClusterNode().getLinkedNodeCount() == 1
+				&& second.getClusterNode().getLinkedNodeCount() == 1);
+		assertEquals(1, second.getClusterNode().getLinkedNodeCount());
+
+		Thread localTraffic = new Thread(() -> {
+			for (int i = 0; i < messagesPerNode; i++) {
+				first.getUnprocessedClientMessages().offer("alice: local message " + i);
+				first.processOldestMessage();
+			}
+		});
+		localTraffic.start();
+		for (int i = 0; i < messagesPerNode; i++) {
+			second.getUnprocessedClientMessages().offer("bob: remote message " + i);
+			second.processOldestMessage();
+		}
+		localTraffic.join();
+		awaitCondition(() -> first.getChatHistory().getLastSequence() == 2 * messagesPerNode);
+		assertEquals(2 * messagesPerNode, first.getChatHistory().getLastSequence());
+
+		List<HistoryRecord> history = first.getChatHistory().getPageBefore(HistoryRecord.DEFAULT_ROOM,
+				first.getChatHistory().getLastSequence() + 1, 2 * messagesPerNode);
+		assertEquals(2 * messagesPerNode, history.size());
+		for (int i = 0; i < history.size(); i++) {
+			assertEquals(i + 1, history.get(i).getSequence());
+		}
+
+		new Thread(first::getNewConnection).start();
+		Client carol = new Client("carol", first.getIpAddress(), first.getPort());
+		carol.connectToServer();
+		carol.getConnection().setSoTimeout(5000);
+		Thread.sleep(250);
+		carol.sendMessage("carol: " + CodeMessages.SEARCH.getMessage() + " remote");
+		Thread.sleep(250);
+		first.collectNewMessages();
+		first.processOldestMessage();
+		do {
+			carol.receiveMessage();
+		} while (!carol.getReceivedMessage().contains("Search results for 'remote'"));
+		assertEquals(true, carol.getReceivedMessage().contains(messagesPerNode + " matches"));
+		carol.sendMessage("carol: " + CodeMessages.SEARCH.getMessage() + " local");
+		Thread.sleep(250);
+		first.collectNewMessages();
+		first.processOldestMessage();
+		do {
+			carol.receiveMessage();
+		} while (!carol.getReceivedMessage().contains("Search results for 'local'"));
+		assertEquals(true, carol.getReceivedMessage().contains(messagesPerNode + " matches"));
+		first.stopServer();
+		second.stopServer();
+	}
+
+	@Test
+	public void testStandbyTakesOverWhenPrimaryFails() throws InterruptedException, IOException {
+		Server primary = new Server();
+		primary.setIpAddress("127.0.0.1");
+		primary.setReplicationPort(7201);
+		primary.startServer();
+		Server standby = new Server(primary.getPort(), "127.0.0.1");
+		standby.setStandbyOf("127.0.0.1", 7201);
+		standby.startServer();
+		assertEquals(false, standby.isRunning());
+		awaitCondition(() -> primary.getReplicationSource().isStandbyConnected());
+
+		new Thread(primary::getNewConnection).start();
+		Client alice = new Client("alice", primary.getIpAddress(), primary.getPort());
+		alice.connectToServer();
+		alice.sendMessage("alice: before failover");
+		Thread.sleep(250);
+		primary.collectNewMessages();
+		primary.processOldestMessage();
+		long lastSequence = primary.getChatHistory().getLastSequence();
+		awaitCondition(() -> standby.getStandbyReplica().getLastSequence() == lastSequence
+				&& standby.getStandbyReplica().getSessions().containsKey("alice"));
+		assertEquals(true, standby.getStandbyReplica().getSessions().containsKey("alice"));
+
+		primary.stopServer();
+		awaitCondition(standby::isRunning);
+		assertEquals(true, standby.isRunning());
+		assertEquals(lastSequence, standby.getChatHistory().getLastSequence());
+		assertEquals(true, standby.getReturningUsers().contains("alice"));
+
+		new Thread(standby::getNewConnection).start();
+		assertEquals(true, alice.connectToServer());
+		awaitCondition(() -> standby.getNamesToConnections().containsKey("alice"));
+		assertEquals(true, standby.getNamesToConnections().containsKey("alice"));
+		assertEquals(false, standby.getReturningUsers().contains("alice"));
+		standby.stopServer();
+	}
+
+	@Test
+	public void testSilentConnectionIsDisconnectedAfterHandshakeTimeout() throws InterruptedException, IOException {
+		Server server = new Server();
+		server.setIpAddress("127.0.0.1");
+		server.setAcceptLanes(1);
+		server.setHandshakeTimeoutMs(500);
+		server.startServer();
+		Socket silentConnection = new Socket("127.0.0.1", server.getPort());
+		silentConnection.setSoTimeout(5000);
+		Client client = new Client("talker", "127.0.0.1", server.getPort());
+		assertEquals(true, client.connectToServer());
+		assertEquals(-1, silentConnection.getInputStream().read());
+		awaitCondition(() -> server.getNamesToConnections().containsKey("talker"));
+		assertEquals(1, server.getNamesToConnections().size());
+		silentConnection.close();
+		server.stopServer();
+	}
+
+	@Test
+	public void testAcceptLoopsServeSeveralEndpoints() throws InterruptedException {
+		Server server = new Server();
+		server.setIpAddress("127.0.0.1");
+		server.addEndpoint("127.0.0.1", 7211);
+		server.setAcceptLanes(2);
+		server.startServer();
+		assertEquals(2, server.getEndpoints().size());
+		List<Client> clients = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			ListeningEndpoint endpoint = server.getEndpoints().get(i % 2);
+			clients.add(new Client("user" + i, "127.0.0.1", endpoint.getPort()));
+			assertEquals(true, clients.get(i).connectToServer());
+		}
+		awaitCondition(() -> server.getNamesToConnections().size() == 6);
+		assertEquals(6, server.getNamesToConnections().size());
+		for (ListeningEndpoint endpoint : server.getEndpoints()) {
+			assertEquals(3, endpoint.getAcceptedConnections());
+			assertEquals(3, endpoint.getAcceptQueueWait().getCount());
+			assertEquals(true, endpoint.getAcceptsPerSecond() > 0);
+		}
+		server.stopServer();
+	}
 }
@@ -0,0 +1,46 @@
+package edu.uni.ruse.server.cluster;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HashRingTest {
+
+	@Test
+	public void testOwnersAreDistinctNodes() {
+		HashRing ring = new HashRing();
+		ring.addNode("127.0.0.1:7101");
+		ring.addNode("127.0.0.1:7102");
+		ring.addNode("127.0.0.1:7103");
+		List<String> owners = ring.getOwners("client", UserDirectory.REPLICATION_FACTOR);
+		assertEquals(2, owners.size());
+		assertEquals(false, owners.get(0).equals(owners.get(1)));
+		assertEquals(0, new HashRing().getOwners("client", 2).size());
+	}
+
+	@Test
+	public void testAddingNodeMovesOnlyItsShare() {
+		HashRing ring = new HashRing();
+		ring.addNode("127.0.0.1:7101");
+		ring.addNode("127.0.0.1:7102");
+		ring.addNode("127.0.0.1:7103");
+		Map<String, String> primaries = new HashMap<>();
+		for (int i = 0; i < 10_000; i++) {
+			primaries.put("user" + i, ring.getOwners("user" + i, 1).get(0));
+		}
+		ring.addNode("127.0.0.1:7104");
+		int moved = 0;
+		for (Map.Entry<String, String> primary : primaries.entrySet()) {
+			String newPrimary = ring.getOwners(primary.getKey(), 1).get(0);
+			if (!newPrimary.equals(primary.getValue())) {
+				assertEquals("127.0.0.1:7104", newPrimary);
+				moved++;
+			}
+		}
+		assertEquals(true, moved > 1500 && moved < 3500);
+	}
+}
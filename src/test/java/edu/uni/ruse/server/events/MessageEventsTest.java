@@ -0,0 +1,80 @@
+package edu.uni.ruse.server.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uni.ruse.client.Client;
+import edu.uni.ruse.server.Server;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class MessageEventsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMessageLifecycleIsRecorded() throws Exception {
+		Server server = new Server(7261, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.startServer();
+		Path recordingFile = folder.getRoot().toPath().resolve("messages.jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(MessageReceivedEvent.class);
+			recording.enable(MessageEnqueuedEvent.class);
+			recording.enable(MessageDispatchedEvent.class);
+			recording.enable(BroadcastFanOutEvent.class);
+			recording.enable(MessageWrittenEvent.class);
+			recording.start();
+			Client client = new Client("client", server.getIpAddress(), server.getPort());
+			client.connectToServer();
+			awaitCondition(() -> server.getNamesToConnections().size() == 1);
+			client.sendMessage(client.getName() + ": Hello");
+			awaitCondition(() -> {
+				server.collectNewMessages();
+				return server.havesUnprocessedClientMessages();
+			});
+			server.processOldestMessage();
+			// let the broadcast thread finish, so its event is committed
+			Thread.sleep(250);
+			recording.stop();
+			recording.dump(recordingFile);
+		} finally {
+			server.stopServer();
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+		RecordedEvent received = findEvent(events, "edu.uni.ruse.MessageReceived");
+		assertEquals("client", received.getString("user"));
+		assertEquals(15L, received.getLong("size"));
+		assertEquals("client", findEvent(events, "edu.uni.ruse.MessageEnqueued").getString("user"));
+		RecordedEvent dispatched = findEvent(events, "edu.uni.ruse.MessageDispatched");
+		assertEquals("client", dispatched.getString("user"));
+		assertEquals(true, dispatched.getLong("queueWait") > 0);
+		assertEquals(true, findEvent(events, "edu.uni.ruse.BroadcastFanOut").getInt("recipients") >= 1);
+		assertEquals(true, findEvent(events, "edu.uni.ruse.MessageWritten").getLong("size") > 0);
+	}
+
+	private RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name)) {
+				return event;
+			}
+		}
+		throw new AssertionError("No " + name + " event was recorded.");
+	}
+
+	private void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+	}
+}
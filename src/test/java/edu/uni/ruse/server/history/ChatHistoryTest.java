@@ -0,0 +1,70 @@
+package edu.uni.ruse.server.history;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChatHistoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRingKeepsLastMessages() {
+		MessageRing ring = new MessageRing(3);
+		for (int i = 1; i <= 5; i++) {
+			ring.add(new HistoryRecord(i, i, "client", HistoryRecord.DEFAULT_ROOM, "Message " + i));
+		}
+		List<HistoryRecord> records = ring.getRecords();
+		assertEquals(3, records.size());
+		assertEquals(3, records.get(0).getSequence());
+		assertEquals(5, records.get(2).getSequence());
+		assertEquals(3, ring.getOldestSequence());
+	}
+
+	@Test
+	public void testPageBeforeFromMemory() {
+		ChatHistory history = new ChatHistory(10);
+		for (int i = 1; i <= 10; i++) {
+			history.record("client", HistoryRecord.DEFAULT_ROOM, "Message " + i);
+		}
+		List<HistoryRecord> page = history.getPageBefore(HistoryRecord.DEFAULT_ROOM, 8, 3);
+		assertEquals(3, page.size());
+		assertEquals(5, page.get(0).getSequence());
+		assertEquals(7, page.get(2).getSequence());
+	}
+
+	@Test
+	public void testPageBeforeFallsBackToLog() throws IOException {
+		HistoryLog log = new HistoryLog(folder.getRoot().toPath(), 4096);
+		log.open();
+		HistoryWriter writer = new HistoryWriter(log);
+		writer.start();
+		ChatHistory history = new ChatHistory(5);
+		history.attachWriter(writer);
+		for (int i = 1; i <= 200; i++) {
+			history.record("client", HistoryRecord.DEFAULT_ROOM, "Message " + i);
+		}
+		history.close();
+		List<HistoryRecord> page = history.getPageBefore(HistoryRecord.DEFAULT_ROOM, 196, 20);
+		assertEquals(20, page.size());
+		assertEquals(176, page.get(0).getSequence());
+		assertEquals("Message 195", page.get(19).getPayload());
+	}
+
+	@Test
+	public void testAttachWriterContinuesNumbering() throws IOException {
+		HistoryLog log = new HistoryLog(folder.getRoot().toPath(), 4096);
+		log.open();
+		log.append(new HistoryRecord(41, 0, "client", HistoryRecord.DEFAULT_ROOM, "Persisted"));
+		ChatHistory history = new ChatHistory(5);
+		history.attachWriter(new HistoryWriter(log));
+		assertEquals(1, history.getScrollback(HistoryRecord.DEFAULT_ROOM).size());
+		assertEquals(42, history.record("client", HistoryRecord.DEFAULT_ROOM, "New").getSequence());
+	}
+}
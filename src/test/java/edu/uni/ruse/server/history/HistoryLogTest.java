@@ -0,0 +1,103 @@
+package edu.uni.ruse.server.history;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAppendAndRead() throws IOException {
+		HistoryLog log = new HistoryLog(folder.getRoot().toPath(), 64 * 1024);
+		log.open();
+		log.append(new HistoryRecord(1, 100, "client", HistoryRecord.DEFAULT_ROOM, "Hello"));
+		log.append(new HistoryRecord(2, 200, "клиент", HistoryRecord.DEFAULT_ROOM, "Здравей"));
+		List<HistoryRecord> records = log.read(1, 10);
+		assertEquals(2, records.size());
+		assertEquals("клиент", records.get(1).getSender());
+		assertEquals("Здравей", records.get(1).getPayload());
+		assertEquals(200, records.get(1).getTimestamp());
+	}
+
+	@Test
+	public void testSegmentRollover() throws IOException {
+		HistoryLog log = new HistoryLog(folder.getRoot().toPath(), 1024);
+		log.open();
+		for (int i = 1; i <= 100; i++) {
+			log.append(new HistoryRecord(i, i, "client", HistoryRecord.DEFAULT_ROOM, "Message number " + i));
+		}
+		assertEquals(true, log.getSegmentCount() > 1);
+		assertEquals(100, log.read(1, 1000).size());
+		assertEquals(51, log.read(50, 1000).get(1).getSequence());
+	}
+
+	@Test
+	public void testReopenRecoversLastSequence() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		HistoryLog log = new HistoryLog(directory, 1024);
+		log.open();
+		for (int i = 1; i <= 40; i++) {
+			log.append(new HistoryRecord(i, i, "client", HistoryRecord.DEFAULT_ROOM, "Message number " + i));
+		}
+		log.close();
+		HistoryLog reopenedLog = new HistoryLog(directory, 1024);
+		reopenedLog.open();
+		assertEquals(40, reopenedLog.getLastSequence());
+		reopenedLog.append(new HistoryRecord(41, 41, "client", HistoryRecord.DEFAULT_ROOM, "After restart"));
+		assertEquals("After restart", reopenedLog.read(41, 1).get(0).getPayload());
+	}
+
+	@Test
+	public void testWriterAccountsForEveryAppendedRecord() throws IOException, InterruptedException {
+		int messages = 200_000;
+		HistoryLog log = new HistoryLog(folder.getRoot().toPath(), 4 * 1024 * 1024);
+		log.open();
+		HistoryWriter writer = new HistoryWriter(log);
+		writer.start();
+		for (int i = 0; i < messages; i++) {
+			writer.append(new HistoryRecord(i + 1, i, "client", HistoryRecord.DEFAULT_ROOM, "Message number " + i));
+			if (writer.getPendingRecords() > HistoryWriter.QUEUE_CAPACITY / 2) {
+				Thread.yield();
+			}
+		}
+		writer.stop();
+		assertEquals(messages, writer.getWrittenRecords() + writer.getDroppedRecords());
+		assertEquals(writer.getWrittenRecords(), log.read(1, messages).size());
+	}
+
+	@Test
+	public void testPerBatchWriterAcknowledgesDurableMessages() throws IOException {
+		HistoryLog log = new HistoryLog(folder.getRoot().toPath(), 1024 * 1024);
+		log.open();
+		HistoryWriter writer = new HistoryWriter(log, DurabilityMode.PER_BATCH, 2, 1000);
+		writer.start();
+		for (int i = 1; i <= 1000; i++) {
+			writer.append(new HistoryRecord(i, i, "client", HistoryRecord.DEFAULT_ROOM, "Message number " + i));
+		}
+		assertEquals(true, writer.awaitDurable(1000, 5000));
+		assertEquals(1000, writer.getDurableAckLatency().getCount());
+		assertEquals(true, writer.getBatchSize().getCount() < 1000);
+		writer.stop();
+	}
+
+	@Test
+	public void testPeriodicWriterAcknowledgesOnlyAfterForce() throws IOException {
+		HistoryLog log = new HistoryLog(folder.getRoot().toPath(), 1024 * 1024);
+		log.open();
+		HistoryWriter writer = new HistoryWriter(log, DurabilityMode.PERIODIC, 2, 60_000);
+		writer.start();
+		writer.append(new HistoryRecord(1, 1, "client", HistoryRecord.DEFAULT_ROOM, "Message"));
+		assertEquals(false, writer.awaitDurable(1, 100));
+		writer.stop();
+		assertEquals(1, writer.getDurableSequence());
+	}
+}
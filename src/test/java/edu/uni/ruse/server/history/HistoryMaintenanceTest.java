@@ -0,0 +1,148 @@
+package edu.uni.ruse.server.history;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryMaintenanceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HistoryLog writeLog(Path directory, int count, long timestamp) throws IOException {
+		HistoryLog log = new HistoryLog(directory, 4096);
+		log.open();
+		for (int i = 1; i <= count; i++) {
+			String room = i % 2 == 0 ? HistoryRecord.DEFAULT_ROOM : "other";
+			log.append(new HistoryRecord(i, timestamp, "client", room, "Message number " + i + " in the chat"));
+		}
+		return log;
+	}
+
+	@Test
+	public void testCompressedSegmentsKeepRandomAccess() throws IOException {
+		HistoryLog log = writeLog(folder.getRoot().toPath(), 1000, System.currentTimeMillis());
+		long sizeBefore = log.getSizeOnDisk();
+		HistoryMaintenance maintenance = new HistoryMaintenance(log, RetentionPolicy.keepAll());
+		assertEquals(true, maintenance.run() > 0);
+		assertEquals(true, log.getSizeOnDisk() < sizeBefore);
+		assertEquals(1000, log.read(1, 2000).size());
+		List<HistoryRecord> records = log.read(537, 3);
+		assertEquals(537, records.get(0).getSequence());
+		assertEquals("Message number 539 in the chat", records.get(2).getPayload());
+		assertEquals(91, log.readBefore(101, 10).get(0).getSequence());
+	}
+
+	@Test
+	public void testCompressedSegmentsAreLoadedOnReopen() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		HistoryLog log = writeLog(directory, 500, System.currentTimeMillis());
+		new HistoryMaintenance(log, RetentionPolicy.keepAll()).run();
+		log.close();
+		HistoryLog reopenedLog = new HistoryLog(directory, 4096);
+		reopenedLog.open();
+		assertEquals(500, reopenedLog.getLastSequence());
+		assertEquals(500, reopenedLog.read(1, 1000).size());
+		assertEquals(250, reopenedLog.read(250, 1).get(0).getSequence());
+	}
+
+	@Test
+	public void testRetentionByAgeRemovesExpiredSegments() throws IOException {
+		HistoryLog log = writeLog(folder.getRoot().toPath(), 500, 1000);
+		int segmentCount = log.getSegmentCount();
+		new HistoryMaintenance(log, new RetentionPolicy(60 * 1000, RetentionPolicy.UNLIMITED)).run();
+		assertEquals(1, log.getSegmentCount());
+		assertEquals(true, segmentCount > 1);
+		assertEquals(500, log.getLastSequence());
+	}
+
+	@Test
+	public void testRetentionBySizeIsPerRoom() throws IOException {
+		HistoryLog log = writeLog(folder.getRoot().toPath(), 1000, System.currentTimeMillis());
+		RetentionPolicy policy = RetentionPolicy.keepAll();
+		policy.setRoomLimits("other", RetentionPolicy.UNLIMITED, 8 * 1024);
+		new HistoryMaintenance(log, policy).run();
+		int generalCount = 0;
+		int otherCount = 0;
+		for (HistoryRecord record : log.read(1, 2000)) {
+			if (record.getRoom().equals(HistoryRecord.DEFAULT_ROOM)) {
+				generalCount++;
+			} else {
+				otherCount++;
+			}
+		}
+		assertEquals(500, generalCount);
+		assertEquals(true, otherCount < 500);
+	}
+
+	@Test
+	public void testColdSegmentsKeepRoomTotals() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		HistoryLog log = writeLog(directory, 1000, System.currentTimeMillis());
+		new HistoryMaintenance(log, RetentionPolicy.keepAll()).run();
+		log.close();
+		HistoryLog reopenedLog = new HistoryLog(directory, 4096);
+		reopenedLog.open();
+		int generalCount = 0;
+		long generalBytes = 0;
+		for (LogSegment segment : reopenedLog.getSegments()) {
+			Map<String, RoomTotals> totals = segment.getRoomTotals();
+			if (totals.containsKey(HistoryRecord.DEFAULT_ROOM)) {
+				generalCount += totals.get(HistoryRecord.DEFAULT_ROOM).getRecords();
+				generalBytes += totals.get(HistoryRecord.DEFAULT_ROOM).getBytes();
+			}
+		}
+		assertEquals(500, generalCount);
+		long expectedBytes = 0;
+		for (HistoryRecord record : reopenedLog.read(1, 2000)) {
+			if (record.getRoom().equals(HistoryRecord.DEFAULT_ROOM)) {
+				expectedBytes += record.encode().remaining();
+			}
+		}
+		assertEquals(expectedBytes, generalBytes);
+		assertEquals(0, new HistoryMaintenance(reopenedLog, RetentionPolicy.keepAll()).run());
+	}
+
+	@Test
+	public void testRewrittenColdSegmentIsWrittenToNewFile() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		HistoryLog log = writeLog(directory, 1000, System.currentTimeMillis());
+		new HistoryMaintenance(log, RetentionPolicy.keepAll()).run();
+		LogSegment firstSegment = log.getSegments().get(0);
+		assertEquals(ColdSegment.fileName(1, 0), firstSegment.getFile().getFileName().toString());
+		RetentionPolicy policy = RetentionPolicy.keepAll();
+		policy.setRoomLimits("other", RetentionPolicy.UNLIMITED, 8 * 1024);
+		new HistoryMaintenance(log, policy).run();
+		LogSegment rewrittenSegment = log.getSegments().get(0);
+		assertEquals(ColdSegment.fileName(1, 1), rewrittenSegment.getFile().getFileName().toString());
+		assertEquals(false, Files.exists(firstSegment.getFile()));
+		int recordCount = log.read(1, 2000).size();
+		log.close();
+
+		// a rewrite interrupted before the replaced file was deleted leaves the previous generation behind
+		Files.write(firstSegment.getFile(), new byte[] { 1, 2, 3 });
+		HistoryLog reopenedLog = new HistoryLog(directory, 4096);
+		reopenedLog.open();
+		assertEquals(false, Files.exists(firstSegment.getFile()));
+		assertEquals(recordCount, reopenedLog.read(1, 2000).size());
+	}
+
+	@Test
+	public void testStartDeletesFilesOfInterruptedCompaction() throws IOException {
+		HistoryLog log = writeLog(folder.getRoot().toPath(), 10, System.currentTimeMillis());
+		Path temporaryFile = log.getDirectory().resolve(ColdSegment.fileName(1, 0) + ".tmp");
+		Files.write(temporaryFile, new byte[] { 1, 2, 3 });
+		HistoryMaintenance maintenance = new HistoryMaintenance(log, RetentionPolicy.keepAll());
+		maintenance.start(HistoryMaintenance.DEFAULT_INTERVAL_MS);
+		maintenance.stop();
+		assertEquals(false, Files.exists(temporaryFile));
+	}
+}
@@ -0,0 +1,112 @@
+package edu.uni.ruse.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import edu.uni.ruse.client.Client;
+import edu.uni.ruse.server.Server;
+
+public class HttpMonitorTest {
+
+	@Test
+	public void testMonitorServesMetricsHealthAndSessions() throws IOException, InterruptedException {
+		Server server = new Server(7271, "127.0.0.1");
+		server.setAcceptLanes(1);
+		server.setHttpPort(7272);
+		server.startServer();
+		try {
+			Client client = new Client("client", server.getIpAddress(), server.getPort());
+			client.connectToServer();
+			awaitCondition(() -> server.getNamesToConnections().size() == 1);
+
+			HttpURLConnection metrics = open(7272, "/metrics");
+			assertEquals(200, metrics.getResponseCode());
+			String metricsBody = read(metrics);
+			assertEquals(true, metricsBody.contains("# TYPE chatapp_messages_outbound_total counter"));
+			assertEquals(true, metricsBody.contains("chatapp_connections_open 1\n"));
+			assertEquals(true, metricsBody.contains("chatapp_connections_handshake_time_us_count 1\n"));
+
+			HttpURLConnection live = open(7272, "/health/live");
+			assertEquals(200, live.getResponseCode());
+			HttpURLConnection ready = open(7272, "/health/ready");
+			assertEquals(200, ready.getResponseCode());
+			assertEquals(true, read(ready).contains("\"status\": \"UP\""));
+
+			HttpURLConnection sessions = open(7272, "/sessions");
+			assertEquals(200, sessions.getResponseCode());
+			assertEquals(true, read(sessions).contains("\"name\": \"client\""));
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	@Test
+	public void testServerIsNotReadyWhenQueueIsNearlyFull() throws IOException {
+		Server server = new Server(7273, "127.0.0.1");
+		server.setHttpPort(7274);
+		server.startServer();
+		try {
+			while (server.getUnprocessedClientMessages().offer("user: message")) {
+				// fill the queue of received messages
+			}
+			assertEquals(false, server.getHttpMonitor().isReady());
+			assertEquals(503, open(7274, "/health/ready").getResponseCode());
+			assertEquals(200, open(7274, "/health/live").getResponseCode());
+		} finally {
+			server.getUnprocessedClientMessages().clear();
+			server.stopServer();
+		}
+	}
+
+	@Test
+	public void testMonitorListensOnLoopbackByDefault() throws IOException {
+		Server server = new Server(7275, "0.0.0.0");
+		server.setHttpPort(7276);
+		server.startServer();
+		try {
+			assertEquals(Server.DEFAULT_HTTP_ADDRESS, server.getHttpMonitor().getAddress());
+			assertEquals(200, open(7276, "/health/live").getResponseCode());
+		} finally {
+			server.stopServer();
+		}
+	}
+
+	@Test
+	public void testMetricNames() {
+		assertEquals("chatapp_connections_handshake_time", PrometheusFormat.metricName("connections.handshakeTime"));
+		assertEquals("chatapp_endpoint_127_0_0_1_7000_accept_queue_wait",
+				PrometheusFormat.metricName("endpoint.127.0.0.1:7000.acceptQueueWait"));
+	}
+
+	private HttpURLConnection open(int port, String path) throws IOException {
+		return (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+	}
+
+	private String read(HttpURLConnection connection) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package edu.uni.ruse.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void testCounterCountsFromManyThreads() throws InterruptedException {
+		MetricsRegistry metrics = new MetricsRegistry();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				for (int j = 0; j < 10_000; j++) {
+					metrics.counter("messages.inbound").increment();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40_000, metrics.counter("messages.inbound").getCount());
+	}
+
+	@Test
+	public void testPublishedMetricsAreReadableOverJmx() throws Exception {
+		MetricsRegistry metrics = new MetricsRegistry();
+		metrics.counter("users.removed").add(3);
+		metrics.gauge("connections.open", () -> 7);
+		metrics.histogram("connections.handshakeTime", "us").record(120);
+		metrics.publish("127.0.0.1:7999");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertEquals(3L, mBeanServer.getAttribute(MetricsRegistry.objectName("127.0.0.1:7999", "users.removed"),
+					"Count"));
+			assertEquals(7.0, mBeanServer.getAttribute(
+					MetricsRegistry.objectName("127.0.0.1:7999", "connections.open"), "Value"));
+			assertEquals(1L, mBeanServer.getAttribute(
+					MetricsRegistry.objectName("127.0.0.1:7999", "connections.handshakeTime"), "Count"));
+		} finally {
+			metrics.unpublish();
+		}
+		assertEquals(false, mBeanServer.isRegistered(MetricsRegistry.objectName("127.0.0.1:7999", "users.removed")));
+	}
+}
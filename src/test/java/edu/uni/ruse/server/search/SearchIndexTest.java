@@ -0,0 +1,78 @@
+package edu.uni.ruse.server.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SearchIndexTest {
+
+	@Test
+	public void testTokenizeLatinAndCyrillic() {
+		assertEquals(true, Tokenizer.tokenize("Hello, Свят!").containsAll(Arrays.asList("hello", "свят")));
+	}
+
+	@Test
+	public void testTokenizeKeepsLinks() {
+		assertEquals(true, Tokenizer.tokenize("look at https://example.com/page now")
+				.contains("https://example.com/page"));
+	}
+
+	@Test
+	public void testSearchAllTerms() {
+		SearchIndex index = new SearchIndex();
+		index.add(1, "Здравей свят");
+		index.add(2, "Hello world");
+		index.add(3, "ЗДРАВЕЙ отново");
+		assertEquals(Arrays.asList(3L, 1L), index.search("здравей", 1, 10).getSequences());
+		assertEquals(Arrays.asList(1L), index.search("здравей свят", 1, 10).getSequences());
+		assertEquals(0, index.search("missing", 1, 10).getTotalMatches());
+		index.close();
+	}
+
+	@Test
+	public void testSearchPages() {
+		SearchIndex index = new SearchIndex();
+		for (int i = 1; i <= 25; i++) {
+			index.add(i, "message " + i);
+		}
+		SearchResult result = index.search("message", 3, 10);
+		assertEquals(25, result.getTotalMatches());
+		assertEquals(3, result.getPageCount());
+		assertEquals(Arrays.asList(5L, 4L, 3L, 2L, 1L), result.getSequences());
+		assertEquals(true, index.search("message", 4, 10).getSequences().isEmpty());
+		assertEquals(true, index.search("message", Integer.MAX_VALUE, 10).getSequences().isEmpty());
+		assertEquals(4, index.search("message", Long.MAX_VALUE, 10).getPage());
+		index.close();
+	}
+
+	@Test
+	public void testSegmentsAreMergedInBackground() throws InterruptedException {
+		SearchIndex index = new SearchIndex(100);
+		for (int i = 1; i <= 10_000; i++) {
+			index.add(i, (i % 2 == 0 ? "even" : "odd") + " link https://example.com/" + i);
+		}
+		Thread.sleep(500);
+		assertEquals(true, index.getSegmentCount() < 20);
+		assertEquals(10_000, index.getDocumentCount());
+		assertEquals(5000, index.search("even", 1, 10).getTotalMatches());
+		assertEquals(Arrays.asList(4242L), index.search("https://example.com/4242", 1, 10).getSequences());
+		index.close();
+	}
+
+	@Test
+	public void testMessagesBeforeRetentionFloorAreDropped() throws InterruptedException {
+		SearchIndex index = new SearchIndex(100);
+		for (int i = 1; i <= 1000; i++) {
+			index.add(i, (i % 2 == 0 ? "even" : "odd") + " message");
+		}
+		index.setRetentionFloor(601);
+		assertEquals(200, index.search("even message", 1, 10).getTotalMatches());
+		assertEquals(Arrays.asList(1000L, 999L), index.search("message", 1, 2).getSequences());
+		Thread.sleep(500);
+		assertEquals(400, index.getDocumentCount());
+		assertEquals(400, index.search("message", 1, 10).getTotalMatches());
+		index.close();
+	}
+}
@@ -0,0 +1,66 @@
+package edu.uni.ruse.server.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uni.ruse.server.history.HistoryRecord;
+import edu.uni.ruse.utilities.InterfaceLang;
+
+public class SnapshotStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ServerSnapshot createSnapshot() {
+		Map<String, InterfaceLang> sessions = new LinkedHashMap<>();
+		sessions.put("client", InterfaceLang.EN);
+		sessions.put("клиент", InterfaceLang.BG);
+		List<HistoryRecord> records = new ArrayList<>();
+		for (int i = 1; i <= 100; i++) {
+			records.add(new HistoryRecord(i, i, "client", HistoryRecord.DEFAULT_ROOM, "Message number " + i));
+		}
+		return new ServerSnapshot(1000, 7, sessions, Arrays.asList("client: pending"), records);
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		SnapshotStore store = new SnapshotStore(folder.getRoot().toPath().resolve("server.snapshot"));
+		store.write(createSnapshot());
+		ServerSnapshot snapshot = store.read();
+		assertEquals(1000, snapshot.getCreatedMillis());
+		assertEquals(7, snapshot.getPresenceVersion());
+		assertEquals(InterfaceLang.BG, snapshot.getSessions().get("клиент"));
+		assertEquals("client: pending", snapshot.getPendingMessages().get(0));
+		assertEquals(100, snapshot.getRecentMessages().size());
+		assertEquals("Message number 100", snapshot.getRecentMessages().get(99).getPayload());
+	}
+
+	@Test
+	public void testMissingSnapshot() throws IOException {
+		assertNull(new SnapshotStore(folder.getRoot().toPath().resolve("missing.snapshot")).read());
+	}
+
+	@Test
+	public void testDamagedSnapshotIsIgnored() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("server.snapshot");
+		SnapshotStore store = new SnapshotStore(file);
+		store.write(createSnapshot());
+		byte[] content = Files.readAllBytes(file);
+		content[content.length / 2] ^= 0xFF;
+		Files.write(file, content);
+		assertNull(store.read());
+	}
+}
@@ -0,0 +1,26 @@
+package edu.uni.ruse.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void testPercentilesWithinBucketPrecision() {
+		Histogram histogram = new Histogram("test", "us");
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(true, Math.abs(histogram.getValueAtPercentile(50) - 500) <= 500 / 16);
+		assertEquals(true, Math.abs(histogram.getValueAtPercentile(99) - 990) <= 990 / 16);
+		assertEquals(500.5, histogram.getMean(), 0.001);
+	}
+
+	@Test
+	public void testEmptyHistogram() {
+		assertEquals(0, new Histogram("test", "us").getValueAtPercentile(99));
+	}
+}
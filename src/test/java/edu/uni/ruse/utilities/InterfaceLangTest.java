@@ -0,0 +1,18 @@
+package edu.uni.ruse.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class InterfaceLangTest {
+
+	@Test
+	public void testFlagIsDecodedOnce() throws IOException {
+		assertEquals(true, InterfaceLang.BG.getFlag() == InterfaceLang.BG.getFlag());
+		assertEquals(true, InterfaceLang.EN.getFlagIcon() == InterfaceLang.EN.getFlagIcon());
+		assertEquals(true, InterfaceLang.EN.getFlagIcon().getImage() == InterfaceLang.EN.getFlag());
+		assertEquals(false, InterfaceLang.BG.getFlag() == InterfaceLang.EN.getFlag());
+	}
+}
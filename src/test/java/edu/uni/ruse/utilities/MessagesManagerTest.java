@@ -0,0 +1,49 @@
+package edu.uni.ruse.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+public class MessagesManagerTest {
+
+	@Test
+	public void testPaletteColorIsEncodedAsIndex() {
+		assertEquals("2", MessageColor.encode(Color.MAGENTA));
+	}
+
+	@Test
+	public void testGetPaletteColorFromMessage() {
+		String message = "*" + MessageColor.encode(Color.BLUE) + "*Hello";
+		assertEquals(Color.BLUE, MessagesManager.getColorFromMessage(message));
+		assertEquals("Hello", MessagesManager.removeColorCodeFromMessage(message));
+	}
+
+	@Test
+	public void testGetRgbColorFromMessage() {
+		Color color = new Color(12, 34, 56);
+		String message = "*" + MessageColor.encode(color) + "*Hello";
+		assertEquals(color, MessagesManager.getColorFromMessage(message));
+		assertEquals("Hello", MessagesManager.removeColorCodeFromMessage(message));
+	}
+
+	@Test
+	public void testUnknownColorCodeFallsBackToBlack() {
+		assertEquals(Color.BLACK, MessagesManager.getColorFromMessage("*99*Hello"));
+	}
+
+	@Test
+	public void testTruncateToEncodedLength() {
+		assertEquals("abc", MessagesManager.truncateToEncodedLength("abc", 3));
+		assertEquals("ab", MessagesManager.truncateToEncodedLength("abc", 2));
+		assertEquals("аб", MessagesManager.truncateToEncodedLength("абв", 5));
+		assertEquals("a", MessagesManager.truncateToEncodedLength("a\uD83D\uDE00", 6));
+		assertEquals("a\uD83D\uDE00", MessagesManager.truncateToEncodedLength("a\uD83D\uDE00", 7));
+	}
+
+	@Test
+	public void testRemoveColorCodeFromMessageWithoutCode() {
+		assertEquals("a*b*c", MessagesManager.removeColorCodeFromMessage("a*b*c"));
+	}
+}